@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coremedia.iso;
+
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.ContainerBox;
+import com.coremedia.iso.boxes.UserBox;
+import com.googlecode.mp4parser.AbstractContainerBox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Walks the boxes of an ISO file without building the box tree. Only box
+ * headers are read; the visitor decides for every box whether to skip it,
+ * descend into it or have it parsed. Skipped payloads are never read, so
+ * the cost depends on the number of boxes visited, not on the file size.
+ * <p/>
+ * <pre>
+ * List&lt;Box&gt; boxes = BoxWalker.parse(channel, "moov");
+ * </pre>
+ */
+public class BoxWalker {
+
+    /**
+     * Boxes that contain nothing but other boxes
+     */
+    public static final Set<String> CONTAINERS = new HashSet<String>(Arrays.asList(
+            "moov", "trak", "mdia", "minf", "stbl", "dinf", "edts", "udta",
+            "mvex", "moof", "traf", "mfra"));
+
+    public enum Action {
+        /**
+         * don't read the box
+         */
+        SKIP,
+        /**
+         * walk the child boxes, which start right after the header
+         */
+        DESCEND,
+        /**
+         * parse the box with the box parser and pass it to
+         * {@link Visitor#visitBox(String, Box)}
+         */
+        PARSE,
+        /**
+         * stop walking
+         */
+        STOP
+    }
+
+    public interface Visitor {
+        /**
+         * Called for each box header.
+         *
+         * @param path   types of the enclosing boxes separated by '/', empty at top level
+         * @param type   the box type
+         * @param offset file offset of the box
+         * @param size   size of the box including its header
+         * @return what to do with the box
+         */
+        Action visitHeader(String path, String type, long offset, long size);
+
+        /**
+         * Called with each box the visitor asked to parse.
+         *
+         * @return false to stop walking
+         */
+        boolean visitBox(String path, Box box);
+    }
+
+    private final FileChannel channel;
+    private final BoxParser boxParser;
+    private final IsoFile root;
+    private final ByteBuffer header = ByteBuffer.allocate(32);
+    private boolean stopped;
+
+    public BoxWalker(FileChannel channel) {
+        this(channel, new PropertyBoxParserImpl());
+    }
+
+    public BoxWalker(FileChannel channel, BoxParser boxParser) {
+        this.channel = channel;
+        this.boxParser = boxParser;
+        this.root = new IsoFile();
+    }
+
+    /**
+     * Parses only the boxes of the given types, descending into
+     * {@link #CONTAINERS} to find nested ones. Top level boxes are returned
+     * as children of an otherwise empty <code>IsoFile</code>.
+     */
+    public static List<Box> parse(FileChannel channel, String... types) throws IOException {
+        final Set<String> wanted = new HashSet<String>(Arrays.asList(types));
+        final List<Box> boxes = new ArrayList<Box>();
+        new BoxWalker(channel).walk(new Visitor() {
+            public Action visitHeader(String path, String type, long offset, long size) {
+                if (wanted.contains(type)) {
+                    return Action.PARSE;
+                }
+                return CONTAINERS.contains(type) ? Action.DESCEND : Action.SKIP;
+            }
+
+            public boolean visitBox(String path, Box box) {
+                boxes.add(box);
+                return true;
+            }
+        });
+        return boxes;
+    }
+
+    /**
+     * Walks all top level boxes of the channel.
+     */
+    public void walk(Visitor visitor) throws IOException {
+        stopped = false;
+        walk(visitor, "", root, 0, channel.size());
+    }
+
+    private void walk(Visitor visitor, String path, ContainerBox parent, long start, long end) throws IOException {
+        long offset = start;
+        while (!stopped && offset + 8 <= end) {
+            header.clear();
+            header.limit(8);
+            if (readFully(offset) < 8) {
+                return;
+            }
+            long size = IsoTypeReader.readUInt32(header);
+            String type = IsoTypeReader.read4cc(header);
+            int headerSize = 8;
+            if (size == 1) {
+                header.clear();
+                header.limit(8);
+                if (readFully(offset + 8) < 8) {
+                    return;
+                }
+                size = IsoTypeReader.readUInt64(header);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - offset;
+            }
+            if (UserBox.TYPE.equals(type)) {
+                headerSize += 16;
+            }
+            if (size < headerSize) {
+                // same plausibility check as the box parser
+                return;
+            }
+
+            switch (visitor.visitHeader(path, type, offset, size)) {
+                case STOP:
+                    stopped = true;
+                    return;
+                case DESCEND:
+                    walk(visitor, path.length() == 0 ? type : path + "/" + type,
+                            new PathBox(type, parent), offset + headerSize, Math.min(offset + size, end));
+                    break;
+                case PARSE:
+                    channel.position(offset);
+                    Box box = boxParser.parseBox(channel, parent);
+                    if (box != null) {
+                        if (parent == root) {
+                            root.addBox(box);
+                        }
+                        if (!visitor.visitBox(path, box)) {
+                            stopped = true;
+                            return;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+            offset += size;
+        }
+    }
+
+    private int readFully(long position) throws IOException {
+        int total = 0;
+        while (header.hasRemaining()) {
+            int read = channel.read(header, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        header.flip();
+        return total;
+    }
+
+    /**
+     * Stands in for a container that is walked but not parsed, so that boxes
+     * parsed inside it see the right parent type.
+     */
+    private static class PathBox extends AbstractContainerBox {
+        PathBox(String type, ContainerBox parent) {
+            super(type);
+            setParent(parent);
+        }
+    }
+}
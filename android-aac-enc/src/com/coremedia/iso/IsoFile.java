@@ -35,7 +35,7 @@ import java.nio.channels.WritableByteChannel;
  */
 @DoNotParseDetail
 public class IsoFile extends AbstractContainerBox {
-    protected BoxParser boxParser = new PropertyBoxParserImpl();
+    protected BoxParser boxParser;
     ReadableByteChannel byteChannel;
 
     public IsoFile() {
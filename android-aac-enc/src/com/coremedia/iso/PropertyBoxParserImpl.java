@@ -22,6 +22,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -34,15 +35,46 @@ import com.todoroo.aacenc.AACToM4A;
 import com.todoroo.aacenc.R;
 
 /**
- * A Property file based BoxFactory
+ * A Property file based BoxFactory. The mapping is turned into a table of
+ * factories once, so creating a box is a hash lookup and a constructor call
+ * rather than a class lookup per box.
  */
 public class PropertyBoxParserImpl extends AbstractBoxParser {
     Properties mapping;
 
+    /**
+     * factories of the default mapping, shared by all parsers without custom properties
+     */
+    private static Properties defaultMapping;
+    private static HashMap<String, BoxFactory> defaultFactories;
+
+    private final HashMap<String, BoxFactory> factories;
+
     public PropertyBoxParserImpl(String... customProperties) {
+        if (customProperties.length == 0) {
+            synchronized (PropertyBoxParserImpl.class) {
+                if (defaultFactories == null) {
+                    defaultMapping = loadMapping(customProperties);
+                    defaultFactories = createFactories(defaultMapping);
+                }
+                mapping = defaultMapping;
+                factories = defaultFactories;
+            }
+        } else {
+            mapping = loadMapping(customProperties);
+            factories = createFactories(mapping);
+        }
+    }
+
+    public PropertyBoxParserImpl(Properties mapping) {
+        this.mapping = mapping;
+        this.factories = createFactories(mapping);
+    }
+
+    private static Properties loadMapping(String... customProperties) {
         Context context = AACToM4A.getContext();
         InputStream raw = null, is = null;
-        mapping = new Properties();
+        Properties mapping = new Properties();
         try {
             raw = context.getResources().openRawResource(R.raw.isoparser);
             is = new BufferedInputStream(raw);
@@ -59,7 +91,7 @@ public class PropertyBoxParserImpl extends AbstractBoxParser {
                 }
             }
             for (String customProperty : customProperties) {
-                mapping.load(new BufferedInputStream(getClass().getResourceAsStream(customProperty)));
+                mapping.load(new BufferedInputStream(PropertyBoxParserImpl.class.getResourceAsStream(customProperty)));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -74,66 +106,149 @@ public class PropertyBoxParserImpl extends AbstractBoxParser {
                 // ignore - I can't help
             }
         }
+        return mapping;
     }
 
-    public PropertyBoxParserImpl(Properties mapping) {
-        this.mapping = mapping;
-    }
+    private static final Pattern p = Pattern.compile("(.*)\\((.*?)\\)");
 
-    Pattern p = Pattern.compile("(.*)\\((.*?)\\)");
+    private static HashMap<String, BoxFactory> createFactories(Properties mapping) {
+        HashMap<String, BoxFactory> factories = new HashMap<String, BoxFactory>();
+        Enumeration<?> keys = mapping.propertyNames();
+        while (keys.hasMoreElements()) {
+            String key = (String) keys.nextElement();
+            String constructor = mapping.getProperty(key);
+            Matcher m = p.matcher(constructor);
+            if (m.matches()) {
+                factories.put(key, new BoxFactory(m.group(1), m.group(2).split(",")));
+            } else {
+                // not a box mapping; fail like before if it's ever looked up
+                factories.put(key, new BoxFactory(constructor));
+            }
+        }
+        return factories;
+    }
 
-    @SuppressWarnings("unchecked")
     public Class<? extends Box> getClassForFourCc(String type, byte[] userType, String parent) {
-        FourCcToBox fourCcToBox = new FourCcToBox(type, userType, parent).invoke();
-        try {
-            return (Class<? extends Box>) Class.forName(fourCcToBox.clazzName);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+        return getFactory(type, userType, parent).getBoxClass();
     }
 
     @Override
     public Box createBox(String type, byte[] userType, String parent) {
+        return getFactory(type, userType, parent).create(type, userType, parent);
+    }
 
-        FourCcToBox fourCcToBox = new FourCcToBox(type, userType, parent).invoke();
-        String[] param = fourCcToBox.getParam();
-        String clazzName = fourCcToBox.getClazzName();
-        try {
+    private BoxFactory getFactory(String type, byte[] userType, String parent) {
+        BoxFactory factory;
+        if (userType != null) {
+            if (!"uuid".equals((type))) {
+                throw new RuntimeException("we have a userType but no uuid box type. Something's wrong");
+            }
+            String uuid = Hex.encodeHex(userType).toUpperCase();
+            factory = factories.get((parent) + "-uuid[" + uuid + "]");
+            if (factory == null) {
+                factory = factories.get("uuid[" + uuid + "]");
+            }
+            if (factory == null) {
+                factory = factories.get("uuid");
+            }
+        } else {
+            factory = factories.get((parent) + "-" + (type));
+            if (factory == null) {
+                factory = factories.get((type));
+            }
+        }
+        if (factory == null) {
+            factory = factories.get("default");
+        }
+        if (factory == null) {
+            throw new RuntimeException("No box object found for " + type);
+        }
+        return factory;
+    }
+
+    /**
+     * Creates the boxes of one mapping entry. The constructor is looked up on
+     * first use and kept.
+     */
+    private static class BoxFactory {
+        private static final int TYPE = 0, USER_TYPE = 1, PARENT = 2;
+
+        private final String clazzName;
+        private final int[] params;
+        private final String invalidConstructor;
+        private Constructor<? extends Box> constructor;
+
+        BoxFactory(String clazzName, String[] param) {
+            this.clazzName = clazzName;
+            this.invalidConstructor = null;
             if (param[0].trim().length() == 0) {
                 param = new String[]{};
             }
-            Class clazz = Class.forName(clazzName);
-
-            Class[] constructorArgsClazz = new Class[param.length];
-            Object[] constructorArgs = new Object[param.length];
+            params = new int[param.length];
             for (int i = 0; i < param.length; i++) {
-
                 if ("userType".equals(param[i])) {
-                    constructorArgs[i] = userType;
-                    constructorArgsClazz[i] = byte[].class;
+                    params[i] = USER_TYPE;
                 } else if ("type".equals(param[i])) {
-                    constructorArgs[i] = type;
-                    constructorArgsClazz[i] = String.class;
+                    params[i] = TYPE;
                 } else if ("parent".equals(param[i])) {
-                    constructorArgs[i] = parent;
-                    constructorArgsClazz[i] = String.class;
+                    params[i] = PARENT;
                 } else {
                     throw new InternalError("No such param: " + param[i]);
                 }
+            }
+        }
 
+        BoxFactory(String invalidConstructor) {
+            this.clazzName = null;
+            this.params = null;
+            this.invalidConstructor = invalidConstructor;
+        }
 
+        @SuppressWarnings("unchecked")
+        Class<? extends Box> getBoxClass() {
+            if (invalidConstructor != null) {
+                throw new RuntimeException("Cannot work with that constructor: " + invalidConstructor);
             }
-            Constructor<AbstractBox> constructorObject;
             try {
-                if (param.length > 0) {
-                    constructorObject = clazz.getConstructor(constructorArgsClazz);
-                } else {
-                    constructorObject = clazz.getConstructor();
+                return (Class<? extends Box>) Class.forName(clazzName);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        synchronized Constructor<? extends Box> getConstructor() {
+            if (constructor == null) {
+                Class<? extends Box> clazz = getBoxClass();
+                Class<?>[] constructorArgsClazz = new Class<?>[params.length];
+                for (int i = 0; i < params.length; i++) {
+                    constructorArgsClazz[i] = params[i] == USER_TYPE ? byte[].class : String.class;
                 }
+                try {
+                    constructor = clazz.getConstructor(constructorArgsClazz);
+                } catch (NoSuchMethodException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return constructor;
+        }
 
+        Box create(String type, byte[] userType, String parent) {
+            Constructor<? extends Box> constructorObject = getConstructor();
+            Object[] constructorArgs = new Object[params.length];
+            for (int i = 0; i < params.length; i++) {
+                switch (params[i]) {
+                    case USER_TYPE:
+                        constructorArgs[i] = userType;
+                        break;
+                    case TYPE:
+                        constructorArgs[i] = type;
+                        break;
+                    default:
+                        constructorArgs[i] = parent;
+                }
+            }
+            try {
                 return constructorObject.newInstance(constructorArgs);
-            } catch (NoSuchMethodException e) {
-                throw new RuntimeException(e);
             } catch (InvocationTargetException e) {
                 throw new RuntimeException(e);
             } catch (InstantiationException e) {
@@ -141,67 +256,6 @@ public class PropertyBoxParserImpl extends AbstractBoxParser {
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
-
-
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private class FourCcToBox {
-        private String type;
-        private byte[] userType;
-        private String parent;
-        private String clazzName;
-        private String[] param;
-
-        public FourCcToBox(String type, byte[] userType, String parent) {
-            this.type = type;
-            this.parent = parent;
-            this.userType = userType;
-        }
-
-        public String getClazzName() {
-            return clazzName;
-        }
-
-        public String[] getParam() {
-            return param;
-        }
-
-        public FourCcToBox invoke() {
-            String constructor;
-            if (userType != null) {
-                if (!"uuid".equals((type))) {
-                    throw new RuntimeException("we have a userType but no uuid box type. Something's wrong");
-                }
-                constructor = mapping.getProperty((parent) + "-uuid[" + Hex.encodeHex(userType).toUpperCase() + "]");
-                if (constructor == null) {
-                    constructor = mapping.getProperty("uuid[" + Hex.encodeHex(userType).toUpperCase() + "]");
-                }
-                if (constructor == null) {
-                    constructor = mapping.getProperty("uuid");
-                }
-            } else {
-                constructor = mapping.getProperty((parent) + "-" + (type));
-                if (constructor == null) {
-                    constructor = mapping.getProperty((type));
-                }
-            }
-            if (constructor == null) {
-                constructor = mapping.getProperty("default");
-            }
-            if (constructor == null) {
-                throw new RuntimeException("No box object found for " + type);
-            }
-            Matcher m = p.matcher(constructor);
-            boolean matches = m.matches();
-            if (!matches) {
-                throw new RuntimeException("Cannot work with that constructor: " + constructor);
-            }
-            clazzName = m.group(1);
-            param = m.group(2).split(",");
-            return this;
         }
     }
 }
@@ -5,9 +5,10 @@ import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractFullBox;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.RandomAccess;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
 
@@ -45,7 +46,7 @@ import static com.googlecode.mp4parser.util.CastUtils.l2i;
 public class CompositionTimeToSample extends AbstractFullBox {
     public static final String TYPE = "ctts";
 
-    List<Entry> entries = Collections.emptyList();
+    EntryList entries = new EntryList(0);
 
     public CompositionTimeToSample() {
         super(TYPE);
@@ -59,18 +60,21 @@ public class CompositionTimeToSample extends AbstractFullBox {
         return entries;
     }
 
+    /**
+     * Sets the entries. An {@link EntryList} is used as is, any other list
+     * is copied.
+     */
     public void setEntries(List<Entry> entries) {
-        this.entries = entries;
+        this.entries = entries instanceof EntryList ? (EntryList) entries : new EntryList(entries);
     }
 
     @Override
     public void _parseDetails(ByteBuffer content) {
         parseVersionAndFlags(content);
         int numberOfEntries = l2i(IsoTypeReader.readUInt32(content));
-        entries = new ArrayList<Entry>(numberOfEntries);
+        entries = new EntryList(numberOfEntries);
         for (int i = 0; i < numberOfEntries; i++) {
-            Entry e = new Entry(l2i(IsoTypeReader.readUInt32(content)), content.getInt());
-            entries.add(e);
+            entries.add(l2i(IsoTypeReader.readUInt32(content)), content.getInt());
         }
     }
 
@@ -79,9 +83,9 @@ public class CompositionTimeToSample extends AbstractFullBox {
         writeVersionAndFlags(byteBuffer);
         IsoTypeWriter.writeUInt32(byteBuffer, entries.size());
 
-        for (Entry entry : entries) {
-            IsoTypeWriter.writeUInt32(byteBuffer, entry.getCount());
-            byteBuffer.putInt(entry.getOffset());
+        for (int i = 0; i < entries.size(); i++) {
+            IsoTypeWriter.writeUInt32(byteBuffer, entries.getCount(i));
+            byteBuffer.putInt(entries.getOffset(i));
         }
 
     }
@@ -122,12 +126,214 @@ public class CompositionTimeToSample extends AbstractFullBox {
     }
 
 
+    /**
+     * Entries stored in two parallel arrays. {@link #get(int)} returns a
+     * view of the entry at that index which reads and writes the arrays,
+     * so no entry objects are kept. Views are only valid until an entry is
+     * inserted or removed; after that they throw
+     * {@link ConcurrentModificationException} rather than read another entry.
+     */
+    public static class EntryList extends AbstractList<Entry> implements RandomAccess {
+        private int[] counts;
+        private int[] offsets;
+        private int size = 0;
+
+        public EntryList() {
+            this(16);
+        }
+
+        public EntryList(int capacity) {
+            counts = new int[capacity];
+            offsets = new int[capacity];
+        }
+
+        public EntryList(List<Entry> entries) {
+            this(entries.size());
+            for (Entry entry : entries) {
+                add(entry.getCount(), entry.getOffset());
+            }
+        }
+
+        public int getCount(int index) {
+            checkIndex(index);
+            return counts[index];
+        }
+
+        public int getOffset(int index) {
+            checkIndex(index);
+            return offsets[index];
+        }
+
+        /**
+         * Appends an entry
+         */
+        public void add(int count, int offset) {
+            insert(size, count, offset);
+        }
+
+        /**
+         * Appends one sample, extending the last entry if it has the same offset.
+         */
+        public void addSample(int offset) {
+            addSamples(1, offset);
+        }
+
+        /**
+         * Appends samples, extending the last entry if it has the same offset.
+         */
+        public void addSamples(int count, int offset) {
+            if (size > 0 && offsets[size - 1] == offset) {
+                counts[size - 1] += count;
+            } else if (count > 0) {
+                add(count, offset);
+            }
+        }
+
+        /**
+         * @return the sum of all counts
+         */
+        public long getSampleCount() {
+            long sampleCount = 0;
+            for (int i = 0; i < size; i++) {
+                sampleCount += counts[i];
+            }
+            return sampleCount;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Entry get(int index) {
+            checkIndex(index);
+            return new EntryView(index);
+        }
+
+        @Override
+        public Entry set(int index, Entry entry) {
+            checkIndex(index);
+            Entry previous = new Entry(counts[index], offsets[index]);
+            counts[index] = entry.getCount();
+            offsets[index] = entry.getOffset();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Entry entry) {
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            insert(index, entry.getCount(), entry.getOffset());
+        }
+
+        @Override
+        public Entry remove(int index) {
+            checkIndex(index);
+            Entry previous = new Entry(counts[index], offsets[index]);
+            System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+            System.arraycopy(offsets, index + 1, offsets, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        private void insert(int index, int count, int offset) {
+            if (size == counts.length) {
+                int capacity = Math.max(16, size * 2);
+                int[] newCounts = new int[capacity];
+                int[] newOffsets = new int[capacity];
+                System.arraycopy(counts, 0, newCounts, 0, size);
+                System.arraycopy(offsets, 0, newOffsets, 0, size);
+                counts = newCounts;
+                offsets = newOffsets;
+            }
+            System.arraycopy(counts, index, counts, index + 1, size - index);
+            System.arraycopy(offsets, index, offsets, index + 1, size - index);
+            counts[index] = count;
+            offsets[index] = offset;
+            size++;
+            modCount++;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+        }
+
+        private class EntryView extends Entry {
+            private final int index;
+            private final int expectedModCount = modCount;
+
+            EntryView(int index) {
+                super(0, 0);
+                this.index = index;
+            }
+
+            /**
+             * @return the index of the entry, if no entries have been
+             *         inserted or removed since the view was created
+             */
+            private int checkedIndex() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                return index;
+            }
+
+            @Override
+            public int getCount() {
+                return counts[checkedIndex()];
+            }
+
+            @Override
+            public int getOffset() {
+                return offsets[checkedIndex()];
+            }
+
+            @Override
+            public void setCount(int count) {
+                counts[checkedIndex()] = count;
+            }
+
+            @Override
+            public void setOffset(int offset) {
+                offsets[checkedIndex()] = offset;
+            }
+
+            @Override
+            public String toString() {
+                return "Entry{" +
+                        "count=" + getCount() +
+                        ", offset=" + getOffset() +
+                        '}';
+            }
+        }
+    }
+
     /**
      * Decompresses the list of entries and returns the list of composition times.
      *
      * @return decoding time per sample
      */
     public static int[] blowupCompositionTimes(List<CompositionTimeToSample.Entry> entries) {
+        if (entries instanceof EntryList) {
+            EntryList list = (EntryList) entries;
+            long numOfSamples = list.getSampleCount();
+            assert numOfSamples <= Integer.MAX_VALUE;
+            int[] compositionTime = new int[(int) numOfSamples];
+            int current = 0;
+            for (int i = 0; i < list.size; i++) {
+                int offset = list.offsets[i];
+                for (int j = 0; j < list.counts[i]; j++) {
+                    compositionTime[current++] = offset;
+                }
+            }
+            return compositionTime;
+        }
+
         long numOfSamples = 0;
         for (CompositionTimeToSample.Entry entry : entries) {
             numOfSamples += entry.getCount();
@@ -21,8 +21,10 @@ import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractFullBox;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * aligned(8) class SampleDependencyTypeBox
@@ -38,7 +40,7 @@ import java.util.List;
 public class SampleDependencyTypeBox extends AbstractFullBox {
     public static final String TYPE = "sdtp";
 
-    private List<Entry> entries = new ArrayList<Entry>();
+    private EntryList entries = new EntryList();
 
     public static class Entry {
 
@@ -48,37 +50,47 @@ public class SampleDependencyTypeBox extends AbstractFullBox {
 
         private int value;
 
+        /**
+         * @return the entry as it is stored in the box
+         */
+        public int getValue() {
+            return value;
+        }
+
+        void setValue(int value) {
+            this.value = value;
+        }
 
         public int getReserved() {
-            return (value >> 6) & 0x03;
+            return (getValue() >> 6) & 0x03;
         }
 
         public void setReserved(int res) {
-            value = (res & 0x03) << 6 | value & 0x3f;
+            setValue((res & 0x03) << 6 | getValue() & 0x3f);
         }
 
         public int getSampleDependsOn() {
-            return (value >> 4) & 0x03;
+            return (getValue() >> 4) & 0x03;
         }
 
         public void setSampleDependsOn(int sdo) {
-            value = (sdo & 0x03) << 4 | value & 0xcf;
+            setValue((sdo & 0x03) << 4 | getValue() & 0xcf);
         }
 
         public int getSampleIsDependentOn() {
-            return (value >> 2) & 0x03;
+            return (getValue() >> 2) & 0x03;
         }
 
         public void setSampleIsDependentOn(int sido) {
-            value = (sido & 0x03) << 2 | value & 0xf3;
+            setValue((sido & 0x03) << 2 | getValue() & 0xf3);
         }
 
         public int getSampleHasRedundancy() {
-            return value & 0x03;
+            return getValue() & 0x03;
         }
 
         public void setSampleHasRedundancy(int shr) {
-            value = shr & 0x03 | value & 0xfc;
+            setValue(shr & 0x03 | getValue() & 0xfc);
         }
 
         @Override
@@ -92,6 +104,131 @@ public class SampleDependencyTypeBox extends AbstractFullBox {
         }
     }
 
+    /**
+     * Entries stored as one byte each. {@link #get(int)} returns a view of
+     * the entry at that index which reads and writes the array, so no entry
+     * objects are kept. Views are only valid until an entry is inserted or
+     * removed; after that they throw {@link ConcurrentModificationException}
+     * rather than read another entry.
+     */
+    public static class EntryList extends AbstractList<Entry> implements RandomAccess {
+        private byte[] values;
+        private int size = 0;
+
+        public EntryList() {
+            this(16);
+        }
+
+        public EntryList(int capacity) {
+            values = new byte[capacity];
+        }
+
+        public EntryList(List<Entry> entries) {
+            this(entries.size());
+            for (Entry entry : entries) {
+                addValue(entry.getValue());
+            }
+        }
+
+        public int getValue(int index) {
+            checkIndex(index);
+            return values[index] & 0xff;
+        }
+
+        /**
+         * Appends an entry given as it is stored in the box
+         */
+        public void addValue(int value) {
+            insert(size, value);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Entry get(int index) {
+            checkIndex(index);
+            return new EntryView(index);
+        }
+
+        @Override
+        public Entry set(int index, Entry entry) {
+            checkIndex(index);
+            Entry previous = new Entry(values[index] & 0xff);
+            values[index] = (byte) entry.getValue();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Entry entry) {
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            insert(index, entry.getValue());
+        }
+
+        @Override
+        public Entry remove(int index) {
+            checkIndex(index);
+            Entry previous = new Entry(values[index] & 0xff);
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        private void insert(int index, int value) {
+            if (size == values.length) {
+                byte[] newValues = new byte[Math.max(16, size * 2)];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = (byte) value;
+            size++;
+            modCount++;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+        }
+
+        private class EntryView extends Entry {
+            private final int index;
+            private final int expectedModCount = modCount;
+
+            EntryView(int index) {
+                super(0);
+                this.index = index;
+            }
+
+            /**
+             * @return the index of the entry, if no entries have been
+             *         inserted or removed since the view was created
+             */
+            private int checkedIndex() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                return index;
+            }
+
+            @Override
+            public int getValue() {
+                return values[checkedIndex()] & 0xff;
+            }
+
+            @Override
+            void setValue(int value) {
+                values[checkedIndex()] = (byte) value;
+            }
+        }
+    }
+
     public SampleDependencyTypeBox() {
         super(TYPE);
     }
@@ -104,16 +241,17 @@ public class SampleDependencyTypeBox extends AbstractFullBox {
     @Override
     protected void getContent(ByteBuffer byteBuffer) {
         writeVersionAndFlags(byteBuffer);
-        for (Entry entry : entries) {
-            IsoTypeWriter.writeUInt8(byteBuffer, entry.value);
+        for (int i = 0; i < entries.size(); i++) {
+            IsoTypeWriter.writeUInt8(byteBuffer, entries.getValue(i));
         }
     }
 
     @Override
     public void _parseDetails(ByteBuffer content) {
         parseVersionAndFlags(content);
+        entries = new EntryList(content.remaining());
         while (content.remaining() > 0) {
-            entries.add(new Entry(IsoTypeReader.readUInt8(content)));
+            entries.addValue(IsoTypeReader.readUInt8(content));
         }
     }
 
@@ -121,8 +259,12 @@ public class SampleDependencyTypeBox extends AbstractFullBox {
         return entries;
     }
 
+    /**
+     * Sets the entries. An {@link EntryList} is used as is, any other list
+     * is copied.
+     */
     public void setEntries(List<Entry> entries) {
-        this.entries = entries;
+        this.entries = entries instanceof EntryList ? (EntryList) entries : new EntryList(entries);
     }
 
     @Override
@@ -22,9 +22,10 @@ import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractFullBox;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.RandomAccess;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
 
@@ -44,7 +45,7 @@ import static com.googlecode.mp4parser.util.CastUtils.l2i;
 public class TimeToSampleBox extends AbstractFullBox {
     public static final String TYPE = "stts";
 
-    List<Entry> entries = Collections.emptyList();
+    EntryList entries = new EntryList(0);
 
 
     public TimeToSampleBox() {
@@ -59,10 +60,10 @@ public class TimeToSampleBox extends AbstractFullBox {
     public void _parseDetails(ByteBuffer content) {
         parseVersionAndFlags(content);
         int entryCount = l2i(IsoTypeReader.readUInt32(content));
-        entries = new ArrayList<Entry>(entryCount);
+        entries = new EntryList(entryCount);
 
         for (int i = 0; i < entryCount; i++) {
-            entries.add(new Entry(IsoTypeReader.readUInt32(content), IsoTypeReader.readUInt32(content)));
+            entries.add(IsoTypeReader.readUInt32(content), IsoTypeReader.readUInt32(content));
         }
 
     }
@@ -71,9 +72,9 @@ public class TimeToSampleBox extends AbstractFullBox {
     protected void getContent(ByteBuffer byteBuffer) {
         writeVersionAndFlags(byteBuffer);
         IsoTypeWriter.writeUInt32(byteBuffer, entries.size());
-        for (Entry entry : entries) {
-            IsoTypeWriter.writeUInt32(byteBuffer, entry.getCount());
-            IsoTypeWriter.writeUInt32(byteBuffer, entry.getDelta());
+        for (int i = 0; i < entries.size(); i++) {
+            IsoTypeWriter.writeUInt32(byteBuffer, entries.getCount(i));
+            IsoTypeWriter.writeUInt32(byteBuffer, entries.getDelta(i));
         }
     }
 
@@ -81,8 +82,12 @@ public class TimeToSampleBox extends AbstractFullBox {
         return entries;
     }
 
+    /**
+     * Sets the entries. An {@link EntryList} is used as is, any other list
+     * is copied.
+     */
     public void setEntries(List<Entry> entries) {
-        this.entries = entries;
+        this.entries = entries instanceof EntryList ? (EntryList) entries : new EntryList(entries);
     }
 
     public String toString() {
@@ -123,12 +128,214 @@ public class TimeToSampleBox extends AbstractFullBox {
         }
     }
 
+    /**
+     * Entries stored in two parallel arrays. {@link #get(int)} returns a
+     * view of the entry at that index which reads and writes the arrays,
+     * so no entry objects are kept. Views are only valid until an entry is
+     * inserted or removed; after that they throw
+     * {@link ConcurrentModificationException} rather than read another entry.
+     */
+    public static class EntryList extends AbstractList<Entry> implements RandomAccess {
+        private long[] counts;
+        private long[] deltas;
+        private int size = 0;
+
+        public EntryList() {
+            this(16);
+        }
+
+        public EntryList(int capacity) {
+            counts = new long[capacity];
+            deltas = new long[capacity];
+        }
+
+        public EntryList(List<Entry> entries) {
+            this(entries.size());
+            for (Entry entry : entries) {
+                add(entry.getCount(), entry.getDelta());
+            }
+        }
+
+        public long getCount(int index) {
+            checkIndex(index);
+            return counts[index];
+        }
+
+        public long getDelta(int index) {
+            checkIndex(index);
+            return deltas[index];
+        }
+
+        /**
+         * Appends an entry
+         */
+        public void add(long count, long delta) {
+            insert(size, count, delta);
+        }
+
+        /**
+         * Appends one sample, extending the last entry if it has the same delta.
+         */
+        public void addSample(long delta) {
+            addSamples(1, delta);
+        }
+
+        /**
+         * Appends samples, extending the last entry if it has the same delta.
+         */
+        public void addSamples(long count, long delta) {
+            if (size > 0 && deltas[size - 1] == delta) {
+                counts[size - 1] += count;
+            } else if (count > 0) {
+                add(count, delta);
+            }
+        }
+
+        /**
+         * @return the sum of all counts
+         */
+        public long getSampleCount() {
+            long sampleCount = 0;
+            for (int i = 0; i < size; i++) {
+                sampleCount += counts[i];
+            }
+            return sampleCount;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Entry get(int index) {
+            checkIndex(index);
+            return new EntryView(index);
+        }
+
+        @Override
+        public Entry set(int index, Entry entry) {
+            checkIndex(index);
+            Entry previous = new Entry(counts[index], deltas[index]);
+            counts[index] = entry.getCount();
+            deltas[index] = entry.getDelta();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Entry entry) {
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            insert(index, entry.getCount(), entry.getDelta());
+        }
+
+        @Override
+        public Entry remove(int index) {
+            checkIndex(index);
+            Entry previous = new Entry(counts[index], deltas[index]);
+            System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+            System.arraycopy(deltas, index + 1, deltas, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        private void insert(int index, long count, long delta) {
+            if (size == counts.length) {
+                int capacity = Math.max(16, size * 2);
+                long[] newCounts = new long[capacity];
+                long[] newDeltas = new long[capacity];
+                System.arraycopy(counts, 0, newCounts, 0, size);
+                System.arraycopy(deltas, 0, newDeltas, 0, size);
+                counts = newCounts;
+                deltas = newDeltas;
+            }
+            System.arraycopy(counts, index, counts, index + 1, size - index);
+            System.arraycopy(deltas, index, deltas, index + 1, size - index);
+            counts[index] = count;
+            deltas[index] = delta;
+            size++;
+            modCount++;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+        }
+
+        private class EntryView extends Entry {
+            private final int index;
+            private final int expectedModCount = modCount;
+
+            EntryView(int index) {
+                super(0, 0);
+                this.index = index;
+            }
+
+            /**
+             * @return the index of the entry, if no entries have been
+             *         inserted or removed since the view was created
+             */
+            private int checkedIndex() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                return index;
+            }
+
+            @Override
+            public long getCount() {
+                return counts[checkedIndex()];
+            }
+
+            @Override
+            public long getDelta() {
+                return deltas[checkedIndex()];
+            }
+
+            @Override
+            public void setCount(long count) {
+                counts[checkedIndex()] = count;
+            }
+
+            @Override
+            public void setDelta(long delta) {
+                deltas[checkedIndex()] = delta;
+            }
+
+            @Override
+            public String toString() {
+                return "Entry{" +
+                        "count=" + getCount() +
+                        ", delta=" + getDelta() +
+                        '}';
+            }
+        }
+    }
+
     /**
      * Decompresses the list of entries and returns the list of decoding times.
      *
      * @return decoding time per sample
      */
     public static long[] blowupTimeToSamples(List<TimeToSampleBox.Entry> entries) {
+        if (entries instanceof EntryList) {
+            EntryList list = (EntryList) entries;
+            long numOfSamples = list.getSampleCount();
+            assert numOfSamples <= Integer.MAX_VALUE;
+            long[] decodingTime = new long[(int) numOfSamples];
+            int current = 0;
+            for (int i = 0; i < list.size; i++) {
+                long delta = list.deltas[i];
+                for (long j = 0; j < list.counts[i]; j++) {
+                    decodingTime[current++] = delta;
+                }
+            }
+            return decodingTime;
+        }
+
         long numOfSamples = 0;
         for (TimeToSampleBox.Entry entry : entries) {
             numOfSamples += entry.getCount();
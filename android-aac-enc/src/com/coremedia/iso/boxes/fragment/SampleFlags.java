@@ -57,6 +57,32 @@ public class SampleFlags {
     }
 
 
+    /**
+     * @param value the flags as the 32 bit value they are stored as
+     */
+    public SampleFlags(int value) {
+        reserved = value >>> 26;
+        sampleDependsOn = value >>> 24 & 0x3;
+        sampleIsDependedOn = value >>> 22 & 0x3;
+        sampleHasRedundancy = value >>> 20 & 0x3;
+        samplePaddingValue = value >>> 17 & 0x7;
+        sampleIsDifferenceSample = (value >>> 16 & 0x1) == 1;
+        sampleDegradationPriority = value & 0xffff;
+    }
+
+    /**
+     * @return the flags as the 32 bit value they are stored as
+     */
+    public int getValue() {
+        return (reserved & 0x3f) << 26 |
+                (sampleDependsOn & 0x3) << 24 |
+                (sampleIsDependedOn & 0x3) << 22 |
+                (sampleHasRedundancy & 0x3) << 20 |
+                (samplePaddingValue & 0x7) << 17 |
+                (sampleIsDifferenceSample ? 1 : 0) << 16 |
+                sampleDegradationPriority & 0xffff;
+    }
+
     public void getContent(ByteBuffer os) {
         BitWriterBuffer bitWriterBuffer = new BitWriterBuffer(os);
         bitWriterBuffer.writeBits(reserved, 6);
@@ -21,8 +21,10 @@ import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractFullBox;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.RandomAccess;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
 
@@ -47,7 +49,7 @@ public class TrackRunBox extends AbstractFullBox {
     public static final String TYPE = "trun";
     private int dataOffset;
     private SampleFlags firstSampleFlags;
-    private List<Entry> entries = new ArrayList<Entry>();
+    private EntryList entries = new EntryList();
 
 
     public List<Entry> getEntries() {
@@ -113,6 +115,248 @@ public class TrackRunBox extends AbstractFullBox {
         }
     }
 
+    /**
+     * Entries stored in parallel arrays, one per field. {@link #get(int)}
+     * returns a view of the entry at that index which reads and writes the
+     * arrays, so no entry objects are kept. Sample flags are stored as their
+     * 32 bit value; a {@link SampleFlags} object returned by a view is a copy.
+     * <p/>
+     * A view refers to an index, not to a sample. Once an entry is inserted
+     * or removed, using a view created before throws
+     * {@link ConcurrentModificationException} instead of silently reading or
+     * writing whichever sample has moved to its index. Replacing an entry
+     * with {@link #set(int, Entry)} leaves views valid.
+     */
+    public static class EntryList extends AbstractList<Entry> implements RandomAccess {
+        /**
+         * marks an entry without sample flags
+         */
+        private static final long NO_FLAGS = -1;
+
+        private long[] durations;
+        private long[] sizes;
+        private long[] flags;
+        private int[] compositionTimeOffsets;
+        private int size = 0;
+
+        public EntryList() {
+            this(16);
+        }
+
+        public EntryList(int capacity) {
+            durations = new long[capacity];
+            sizes = new long[capacity];
+            flags = new long[capacity];
+            compositionTimeOffsets = new int[capacity];
+        }
+
+        public EntryList(List<Entry> entries) {
+            this(entries.size());
+            for (Entry entry : entries) {
+                add(entry.getSampleDuration(), entry.getSampleSize(), entry.getSampleFlags(), entry.getSampleCompositionTimeOffset());
+            }
+        }
+
+        /**
+         * Appends an entry
+         *
+         * @param sampleFlags may be null
+         */
+        public void add(long sampleDuration, long sampleSize, SampleFlags sampleFlags, int sampleCompositionTimeOffset) {
+            insert(size, sampleDuration, sampleSize, toValue(sampleFlags), sampleCompositionTimeOffset);
+        }
+
+        public long getSampleDuration(int index) {
+            checkIndex(index);
+            return durations[index];
+        }
+
+        public long getSampleSize(int index) {
+            checkIndex(index);
+            return sizes[index];
+        }
+
+        /**
+         * @return the sample flags as stored in the box
+         */
+        public int getSampleFlagsValue(int index) {
+            checkIndex(index);
+            return (int) flags[index];
+        }
+
+        public boolean hasSampleFlags(int index) {
+            checkIndex(index);
+            return flags[index] != NO_FLAGS;
+        }
+
+        public int getSampleCompositionTimeOffset(int index) {
+            checkIndex(index);
+            return compositionTimeOffsets[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Entry get(int index) {
+            checkIndex(index);
+            return new EntryView(index);
+        }
+
+        @Override
+        public Entry set(int index, Entry entry) {
+            checkIndex(index);
+            Entry previous = copy(index);
+            durations[index] = entry.getSampleDuration();
+            sizes[index] = entry.getSampleSize();
+            flags[index] = toValue(entry.getSampleFlags());
+            compositionTimeOffsets[index] = entry.getSampleCompositionTimeOffset();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Entry entry) {
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            insert(index, entry.getSampleDuration(), entry.getSampleSize(),
+                    toValue(entry.getSampleFlags()), entry.getSampleCompositionTimeOffset());
+        }
+
+        @Override
+        public Entry remove(int index) {
+            checkIndex(index);
+            Entry previous = copy(index);
+            int moved = size - index - 1;
+            System.arraycopy(durations, index + 1, durations, index, moved);
+            System.arraycopy(sizes, index + 1, sizes, index, moved);
+            System.arraycopy(flags, index + 1, flags, index, moved);
+            System.arraycopy(compositionTimeOffsets, index + 1, compositionTimeOffsets, index, moved);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        private Entry copy(int index) {
+            return new Entry(durations[index], sizes[index], toFlags(flags[index]), compositionTimeOffsets[index]);
+        }
+
+        private void insert(int index, long sampleDuration, long sampleSize, long sampleFlags, int sampleCompositionTimeOffset) {
+            if (size == durations.length) {
+                int capacity = Math.max(16, size * 2);
+                durations = grow(durations, capacity);
+                sizes = grow(sizes, capacity);
+                flags = grow(flags, capacity);
+                int[] newOffsets = new int[capacity];
+                System.arraycopy(compositionTimeOffsets, 0, newOffsets, 0, size);
+                compositionTimeOffsets = newOffsets;
+            }
+            int moved = size - index;
+            System.arraycopy(durations, index, durations, index + 1, moved);
+            System.arraycopy(sizes, index, sizes, index + 1, moved);
+            System.arraycopy(flags, index, flags, index + 1, moved);
+            System.arraycopy(compositionTimeOffsets, index, compositionTimeOffsets, index + 1, moved);
+            durations[index] = sampleDuration;
+            sizes[index] = sampleSize;
+            flags[index] = sampleFlags;
+            compositionTimeOffsets[index] = sampleCompositionTimeOffset;
+            size++;
+            modCount++;
+        }
+
+        private long[] grow(long[] array, int capacity) {
+            long[] result = new long[capacity];
+            System.arraycopy(array, 0, result, 0, size);
+            return result;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+        }
+
+        private static long toValue(SampleFlags sampleFlags) {
+            return sampleFlags == null ? NO_FLAGS : sampleFlags.getValue() & 0xffffffffL;
+        }
+
+        private static SampleFlags toFlags(long value) {
+            return value == NO_FLAGS ? null : new SampleFlags((int) value);
+        }
+
+        private class EntryView extends Entry {
+            private final int index;
+            private final int expectedModCount = modCount;
+
+            EntryView(int index) {
+                this.index = index;
+            }
+
+            /**
+             * @return the index of the entry, if no entries have been
+             *         inserted or removed since the view was created
+             */
+            private int checkedIndex() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                return index;
+            }
+
+            @Override
+            public long getSampleDuration() {
+                return durations[checkedIndex()];
+            }
+
+            @Override
+            public long getSampleSize() {
+                return sizes[checkedIndex()];
+            }
+
+            @Override
+            public SampleFlags getSampleFlags() {
+                return toFlags(flags[checkedIndex()]);
+            }
+
+            @Override
+            public int getSampleCompositionTimeOffset() {
+                return compositionTimeOffsets[checkedIndex()];
+            }
+
+            @Override
+            public void setSampleDuration(long sampleDuration) {
+                durations[checkedIndex()] = sampleDuration;
+            }
+
+            @Override
+            public void setSampleSize(long sampleSize) {
+                sizes[checkedIndex()] = sampleSize;
+            }
+
+            @Override
+            public void setSampleFlags(SampleFlags sampleFlags) {
+                flags[checkedIndex()] = toValue(sampleFlags);
+            }
+
+            @Override
+            public void setSampleCompositionTimeOffset(int sampleCompositionTimeOffset) {
+                compositionTimeOffsets[checkedIndex()] = sampleCompositionTimeOffset;
+            }
+
+            @Override
+            public String toString() {
+                return "Entry{" +
+                        "sampleDuration=" + getSampleDuration() +
+                        ", sampleSize=" + getSampleSize() +
+                        ", sampleFlags=" + getSampleFlags() +
+                        ", sampleCompositionTimeOffset=" + getSampleCompositionTimeOffset() +
+                        '}';
+            }
+        }
+    }
+
     public void setDataOffset(int dataOffset) {
         if (dataOffset == -1) {
             setFlags(getFlags() & (0xFFFFFF ^ 1));
@@ -129,7 +373,7 @@ public class TrackRunBox extends AbstractFullBox {
         for (int i = 0; i < result.length; i++) {
             result[i] = offset;
             if (isSampleSizePresent()) {
-                offset += entries.get(i).getSampleSize();
+                offset += entries.sizes[i];
             } else {
                 offset += ((TrackFragmentBox) getParent()).getTrackFragmentHeaderBox().getDefaultSampleSize();
             }
@@ -143,7 +387,7 @@ public class TrackRunBox extends AbstractFullBox {
 
         for (int i = 0; i < result.length; i++) {
             if (isSampleSizePresent()) {
-                result[i] = entries.get(i).getSampleSize();
+                result[i] = entries.sizes[i];
             } else {
                 result[i] = ((TrackFragmentBox) getParent()).getTrackFragmentHeaderBox().getDefaultSampleSize();
             }
@@ -157,7 +401,7 @@ public class TrackRunBox extends AbstractFullBox {
             long[] result = new long[entries.size()];
 
             for (int i = 0; i < result.length; i++) {
-                result[i] = entries.get(i).getSampleCompositionTimeOffset();
+                result[i] = entries.compositionTimeOffsets[i];
             }
             return result;
         }
@@ -169,7 +413,7 @@ public class TrackRunBox extends AbstractFullBox {
 
         for (int i = 0; i < result.length; i++) {
             if (isSampleDurationPresent()) {
-                result[i] = entries.get(i).getSampleDuration();
+                result[i] = entries.durations[i];
             } else {
                 result[i] = ((TrackFragmentBox) getParent()).getTrackFragmentHeaderBox().getDefaultSampleDuration();
             }
@@ -222,18 +466,21 @@ public class TrackRunBox extends AbstractFullBox {
             firstSampleFlags.getContent(byteBuffer);
         }
 
-        for (Entry entry : entries) {
+        for (int i = 0; i < entries.size; i++) {
             if ((flags & 0x100) == 0x100) { //sampleDurationPresent
-                IsoTypeWriter.writeUInt32(byteBuffer, entry.sampleDuration);
+                IsoTypeWriter.writeUInt32(byteBuffer, entries.durations[i]);
             }
             if ((flags & 0x200) == 0x200) { //sampleSizePresent
-                IsoTypeWriter.writeUInt32(byteBuffer, entry.sampleSize);
+                IsoTypeWriter.writeUInt32(byteBuffer, entries.sizes[i]);
             }
             if ((flags & 0x400) == 0x400) { //sampleFlagsPresent
-                entry.sampleFlags.getContent(byteBuffer);
+                if (entries.flags[i] == EntryList.NO_FLAGS) {
+                    throw new NullPointerException("Sample flags of entry " + i + " are missing");
+                }
+                byteBuffer.putInt((int) entries.flags[i]);
             }
             if ((flags & 0x800) == 0x800) { //sampleCompositionTimeOffsetPresent
-                byteBuffer.putInt(entry.sampleCompositionTimeOffset);
+                byteBuffer.putInt(entries.compositionTimeOffsets[i]);
             }
         }
     }
@@ -252,21 +499,25 @@ public class TrackRunBox extends AbstractFullBox {
             firstSampleFlags = new SampleFlags(content);
         }
 
+        entries = new EntryList(l2i(sampleCount));
         for (int i = 0; i < sampleCount; i++) {
-            Entry entry = new Entry();
+            long sampleDuration = 0;
+            long sampleSize = 0;
+            long sampleFlags = EntryList.NO_FLAGS;
+            int sampleCompositionTimeOffset = 0;
             if ((getFlags() & 0x100) == 0x100) { //sampleDurationPresent
-                entry.sampleDuration = IsoTypeReader.readUInt32(content);
+                sampleDuration = IsoTypeReader.readUInt32(content);
             }
             if ((getFlags() & 0x200) == 0x200) { //sampleSizePresent
-                entry.sampleSize = IsoTypeReader.readUInt32(content);
+                sampleSize = IsoTypeReader.readUInt32(content);
             }
             if ((getFlags() & 0x400) == 0x400) { //sampleFlagsPresent
-                entry.sampleFlags = new SampleFlags(content);
+                sampleFlags = IsoTypeReader.readUInt32(content);
             }
             if ((getFlags() & 0x800) == 0x800) { //sampleCompositionTimeOffsetPresent
-                entry.sampleCompositionTimeOffset = content.getInt();
+                sampleCompositionTimeOffset = content.getInt();
             }
-            entries.add(entry);
+            entries.insert(i, sampleDuration, sampleSize, sampleFlags, sampleCompositionTimeOffset);
         }
 
     }
@@ -375,7 +626,11 @@ public class TrackRunBox extends AbstractFullBox {
         return sb.toString();
     }
 
+    /**
+     * Sets the entries. An {@link EntryList} is used as is, any other list
+     * is copied.
+     */
     public void setEntries(List<Entry> entries) {
-        this.entries = entries;
+        this.entries = entries instanceof EntryList ? (EntryList) entries : new EntryList(entries);
     }
 }
@@ -25,6 +25,7 @@ import com.coremedia.iso.boxes.Box;
 import com.coremedia.iso.boxes.ContainerBox;
 import com.coremedia.iso.boxes.UserBox;
 import com.googlecode.mp4parser.annotations.DoNotParseDetail;
+import com.googlecode.mp4parser.util.ByteBufferByteChannel;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -48,6 +49,17 @@ import static com.googlecode.mp4parser.util.CastUtils.l2i;
 public abstract class AbstractBox implements Box {
     private static Logger LOG = Logger.getLogger(AbstractBox.class.getName());
 
+    /**
+     * Boxes up to this size are serialized through a reusable per thread
+     * heap buffer of this size, larger ones through a buffer of their own
+     * that is not kept.
+     */
+    private static final int MAX_WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> writeBuffer = new ThreadLocal<ByteBuffer>();
+
+    private static final byte[] ZEROS = new byte[4096];
+
     protected String type;
     private byte[] userType;
     private ContainerBox parent;
@@ -111,7 +123,50 @@ public abstract class AbstractBox implements Box {
     }
 
     public void getBox(WritableByteChannel os) throws IOException {
-        ByteBuffer bb = ByteBuffer.allocate(l2i(getSize()));
+        int size = l2i(getSize());
+        if (os instanceof ByteBufferByteChannel) {
+            // a child box written by its container: serialize in place
+            ByteBuffer target = ((ByteBufferByteChannel) os).getByteBuffer();
+            ByteBuffer bb = target.slice();
+            bb.limit(size);
+            writeBox(bb);
+            target.position(target.position() + size);
+            return;
+        }
+
+        boolean reusable = size <= MAX_WRITE_BUFFER_SIZE;
+        ByteBuffer buffer = reusable ? writeBuffer.get() : null;
+        if (buffer != null) {
+            // take the buffer while in use so a nested call can't clobber it
+            writeBuffer.set(null);
+        } else {
+            buffer = ByteBuffer.allocate(reusable ? MAX_WRITE_BUFFER_SIZE : size);
+        }
+        try {
+            buffer.clear();
+            buffer.limit(size);
+            ByteBuffer bb = buffer.slice();
+            writeBox(bb);
+            while (bb.hasRemaining()) {
+                os.write(bb);
+            }
+        } finally {
+            if (reusable) {
+                writeBuffer.set(buffer);
+            }
+        }
+    }
+
+    /**
+     * Serializes header and content into a buffer of exactly
+     * <code>getSize()</code> bytes and rewinds it. The buffer is zeroed
+     * first as bit writers only set bits.
+     */
+    private void writeBox(ByteBuffer bb) {
+        while (bb.hasRemaining()) {
+            bb.put(ZEROS, 0, Math.min(ZEROS.length, bb.remaining()));
+        }
+        bb.rewind();
         getHeader(bb);
         if (content == null) {
             getContent(bb);
@@ -126,7 +181,6 @@ public abstract class AbstractBox implements Box {
             bb.put(content);
         }
         bb.rewind();
-        os.write(bb);
     }
 
 
@@ -23,7 +23,6 @@ import com.coremedia.iso.boxes.fragment.TrackRunBox;
 import com.coremedia.iso.boxes.mdat.SampleList;
 
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
 import java.util.List;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
@@ -54,9 +53,11 @@ public class Mp4TrackImpl extends AbstractTrack {
         sampleDescriptionBox = stbl.getSampleDescriptionBox();
         if (trackBox.getParent().getBoxes(MovieExtendsBox.class).size() > 0) {
 
-            decodingTimeEntries = new LinkedList<TimeToSampleBox.Entry>();
-            compositionTimeEntries = new LinkedList<CompositionTimeToSample.Entry>();
-            sampleDependencies = new LinkedList<SampleDependencyTypeBox.Entry>();
+            TimeToSampleBox.EntryList decodingTimes = new TimeToSampleBox.EntryList();
+            CompositionTimeToSample.EntryList compositionTimes = new CompositionTimeToSample.EntryList();
+            decodingTimeEntries = decodingTimes;
+            compositionTimeEntries = compositionTimes;
+            sampleDependencies = new SampleDependencyTypeBox.EntryList(0);
 
             for (MovieFragmentBox movieFragmentBox : trackBox.getIsoFile().getBoxes(MovieFragmentBox.class)) {
                 List<TrackFragmentBox> trafs = movieFragmentBox.getBoxes(TrackFragmentBox.class);
@@ -66,22 +67,10 @@ public class Mp4TrackImpl extends AbstractTrack {
                         for (TrackRunBox trun : truns) {
                             for (TrackRunBox.Entry entry : trun.getEntries()) {
                                 if (trun.isSampleDurationPresent()) {
-                                    if (decodingTimeEntries.size() == 0 ||
-                                            decodingTimeEntries.get(decodingTimeEntries.size() - 1).getDelta() != entry.getSampleDuration()) {
-                                        decodingTimeEntries.add(new TimeToSampleBox.Entry(1, entry.getSampleDuration()));
-                                    } else {
-                                        TimeToSampleBox.Entry e = decodingTimeEntries.get(decodingTimeEntries.size() - 1);
-                                        e.setCount(e.getCount() + 1);
-                                    }
+                                    decodingTimes.addSample(entry.getSampleDuration());
                                 }
                                 if (trun.isSampleCompositionTimeOffsetPresent()) {
-                                    if (compositionTimeEntries.size() == 0 ||
-                                            compositionTimeEntries.get(compositionTimeEntries.size() - 1).getOffset() != entry.getSampleCompositionTimeOffset()) {
-                                        compositionTimeEntries.add(new CompositionTimeToSample.Entry(1, l2i(entry.getSampleCompositionTimeOffset())));
-                                    } else {
-                                        CompositionTimeToSample.Entry e = compositionTimeEntries.get(compositionTimeEntries.size() - 1);
-                                        e.setCount(e.getCount() + 1);
-                                    }
+                                    compositionTimes.addSample(l2i(entry.getSampleCompositionTimeOffset()));
                                 }
 
                             }
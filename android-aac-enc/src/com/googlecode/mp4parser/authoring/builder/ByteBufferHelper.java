@@ -15,15 +15,59 @@
  */
 package com.googlecode.mp4parser.authoring.builder;
 
+import com.googlecode.mp4parser.authoring.tracks.MappedSampleList;
+
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Used to merge adjacent byte buffers.
+ * Used to merge adjacent byte buffers and to write sample lists.
  */
 public class ByteBufferHelper {
+    /**
+     * Gets the size of a sample without reading it if the samples are
+     * backed by a file.
+     */
+    public static long getSampleSize(List<ByteBuffer> samples, int index) {
+        if (samples instanceof MappedSampleList) {
+            return ((MappedSampleList) samples).getSampleSize(index);
+        }
+        return samples.get(index).limit();
+    }
+
+    /**
+     * Writes the samples to the channel. Samples backed by a file are
+     * transferred from the file directly, others are merged where adjacent
+     * and written with gathering writes.
+     */
+    public static void writeSamples(List<ByteBuffer> samples, WritableByteChannel writableByteChannel) throws IOException {
+        if (samples instanceof MappedSampleList) {
+            ((MappedSampleList) samples).transferTo(writableByteChannel);
+        } else if (writableByteChannel instanceof GatheringByteChannel) {
+            List<ByteBuffer> nuSamples = mergeAdjacentBuffers(samples);
+            int STEPSIZE = 1024;
+            for (int i = 0; i < Math.ceil((double) nuSamples.size() / STEPSIZE); i++) {
+                List<ByteBuffer> sublist = nuSamples.subList(
+                        i * STEPSIZE, // start
+                        (i + 1) * STEPSIZE < nuSamples.size() ? (i + 1) * STEPSIZE : nuSamples.size()); // end
+                ByteBuffer sampleArray[] = sublist.toArray(new ByteBuffer[sublist.size()]);
+                do {
+                    ((GatheringByteChannel) writableByteChannel).write(sampleArray);
+                } while (sampleArray[sampleArray.length - 1].remaining() > 0);
+            }
+        } else {
+            for (ByteBuffer sample : samples) {
+                sample.rewind();
+                writableByteChannel.write(sample);
+            }
+        }
+    }
+
     public static List<ByteBuffer> mergeAdjacentBuffers(List<ByteBuffer> samples) {
         ArrayList<ByteBuffer> nuSamples = new ArrayList<ByteBuffer>(samples.size());
         for (ByteBuffer buffer : samples) {
@@ -45,11 +45,11 @@ import com.coremedia.iso.boxes.TrackHeaderBox;
 import com.googlecode.mp4parser.authoring.DateHelper;
 import com.googlecode.mp4parser.authoring.Movie;
 import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.tracks.MappedSampleList;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
-import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
@@ -97,7 +97,7 @@ public class DefaultMp4Builder implements Mp4Builder {
             track2Sample.put(track, samples);
             long[] sizes = new long[samples.size()];
             for (int i = 0; i < sizes.length; i++) {
-                sizes[i] = samples.get(i).limit();
+                sizes[i] = ByteBufferHelper.getSampleSize(samples, i);
             }
             track2SampleSizes.put(track, sizes);
         }
@@ -259,9 +259,9 @@ public class DefaultMp4Builder implements Mp4Builder {
         stbl.addBox(track.getSampleDescriptionBox());
 
         List<TimeToSampleBox.Entry> decodingTimeToSampleEntries = track.getDecodingTimeEntries();
-        if (decodingTimeToSampleEntries != null && !track.getDecodingTimeEntries().isEmpty()) {
+        if (decodingTimeToSampleEntries != null && !decodingTimeToSampleEntries.isEmpty()) {
             TimeToSampleBox stts = new TimeToSampleBox();
-            stts.setEntries(track.getDecodingTimeEntries());
+            stts.setEntries(decodingTimeToSampleEntries);
             stbl.addBox(stts);
         }
 
@@ -279,9 +279,10 @@ public class DefaultMp4Builder implements Mp4Builder {
             stbl.addBox(stss);
         }
 
-        if (track.getSampleDependencies() != null && !track.getSampleDependencies().isEmpty()) {
+        List<SampleDependencyTypeBox.Entry> sampleDependencies = track.getSampleDependencies();
+        if (sampleDependencies != null && !sampleDependencies.isEmpty()) {
             SampleDependencyTypeBox sdtp = new SampleDependencyTypeBox();
-            sdtp.setEntries(track.getSampleDependencies());
+            sdtp.setEntries(sampleDependencies);
             stbl.addBox(sdtp);
         }
         int chunkSize[] = getChunkSizes(track, movie);
@@ -344,7 +345,7 @@ public class DefaultMp4Builder implements Mp4Builder {
 
     private class InterleaveChunkMdat implements Box {
         List<Track> tracks;
-        List<ByteBuffer> samples = new LinkedList<ByteBuffer>();
+        List<List<ByteBuffer>> chunkList = new ArrayList<List<ByteBuffer>>();
         ContainerBox parent;
 
         long contentSize = 0;
@@ -368,22 +369,24 @@ public class DefaultMp4Builder implements Mp4Builder {
                 chunks.put(track, getChunkSizes(track, movie));
             }
 
+            Map<Track, Integer> firstSampleOfChunk = new HashMap<Track, Integer>();
+            for (Track track : tracks) {
+                firstSampleOfChunk.put(track, 0);
+            }
             for (int i = 0; i < chunks.values().iterator().next().length; i++) {
                 for (Track track : tracks) {
 
                     int[] chunkSizes = chunks.get(track);
-                    long firstSampleOfChunk = 0;
-                    for (int j = 0; j < i; j++) {
-                        firstSampleOfChunk += chunkSizes[j];
-                    }
+                    int first = firstSampleOfChunk.get(track);
+                    int end = first + chunkSizes[i];
+                    firstSampleOfChunk.put(track, end);
 
-                    for (int j = l2i(firstSampleOfChunk); j < firstSampleOfChunk + chunkSizes[i]; j++) {
-
-                        ByteBuffer s = DefaultMp4Builder.this.track2Sample.get(track).get(j);
-                        contentSize += s.limit();
-                        samples.add((ByteBuffer) s.rewind());
+                    long[] sizes = DefaultMp4Builder.this.track2SampleSizes.get(track);
+                    for (int j = first; j < end; j++) {
+                        contentSize += sizes[j];
                     }
-
+                    // file backed sample lists return file backed views
+                    chunkList.add(DefaultMp4Builder.this.track2Sample.get(track).subList(first, end));
                 }
 
             }
@@ -435,26 +438,23 @@ public class DefaultMp4Builder implements Mp4Builder {
             }
             bb.rewind();
             writableByteChannel.write(bb);
-            if (writableByteChannel instanceof GatheringByteChannel) {
-                List<ByteBuffer> nuSamples = unifyAdjacentBuffers(samples);
-
-                int STEPSIZE = 1024;
-                for (int i = 0; i < Math.ceil((double) nuSamples.size() / STEPSIZE); i++) {
-                    List<ByteBuffer> sublist = nuSamples.subList(
-                            i * STEPSIZE, // start
-                            (i + 1) * STEPSIZE < nuSamples.size() ? (i + 1) * STEPSIZE : nuSamples.size()); // end
-                    ByteBuffer sampleArray[] = sublist.toArray(new ByteBuffer[sublist.size()]);
-                    do {
-                        ((GatheringByteChannel) writableByteChannel).write(sampleArray);
-                    } while (sampleArray[sampleArray.length - 1].remaining() > 0);
-                }
-                //System.err.println(bytesWritten);
-            } else {
-                for (ByteBuffer sample : samples) {
-                    sample.rewind();
-                    writableByteChannel.write(sample);
+
+            // in-memory samples are collected so consecutive chunks go out in
+            // as few gathering writes as possible; file backed chunks are
+            // transferred from their file
+            List<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+            for (List<ByteBuffer> chunk : chunkList) {
+                if (chunk instanceof MappedSampleList) {
+                    ByteBufferHelper.writeSamples(pending, writableByteChannel);
+                    pending.clear();
+                    ByteBufferHelper.writeSamples(chunk, writableByteChannel);
+                } else {
+                    for (ByteBuffer sample : chunk) {
+                        pending.add((ByteBuffer) sample.rewind());
+                    }
                 }
             }
+            ByteBufferHelper.writeSamples(pending, writableByteChannel);
         }
 
     }
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.authoring.builder;
+
+import com.coremedia.iso.boxes.CompositionTimeToSample;
+import com.coremedia.iso.boxes.SampleDependencyTypeBox;
+import com.coremedia.iso.boxes.TimeToSampleBox;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed layout of a fragmented movie. Fragment boundaries, sample
+ * sizes, durations, composition offsets and flags are read from each track
+ * once and kept in arrays, so fragment sizes, the per fragment track order
+ * and trun entries are derived without walking the tracks again.
+ */
+public class FragmentPlan {
+
+    /**
+     * Per track arrays. All sample numbers are one based, like the ones
+     * returned by the {@link FragmentIntersectionFinder}.
+     */
+    public static class TrackPlan {
+        final Track track;
+        final long[] startSamples;
+        final int sampleCount;
+        /**
+         * <code>sizePrefix[n]</code> is the number of bytes in the first n samples
+         */
+        final long[] sizePrefix;
+        final long[] durations;
+        final int[] compositionOffsets;
+        /**
+         * sdtp values as stored in the box, -1 for samples without one
+         */
+        final int[] dependencies;
+        final boolean[] syncSamples;
+
+        TrackPlan(Track track, long[] startSamples) {
+            this.track = track;
+            this.startSamples = startSamples;
+
+            List<ByteBuffer> samples = track.getSamples();
+            sampleCount = samples.size();
+            sizePrefix = new long[sampleCount + 1];
+            for (int i = 0; i < sampleCount; i++) {
+                sizePrefix[i + 1] = sizePrefix[i] + ByteBufferHelper.getSampleSize(samples, i);
+            }
+
+            durations = new long[sampleCount];
+            List<TimeToSampleBox.Entry> stts = track.getDecodingTimeEntries();
+            int current = 0;
+            long delta = 0;
+            for (TimeToSampleBox.Entry entry : stts) {
+                delta = entry.getDelta();
+                for (long i = 0; i < entry.getCount() && current < sampleCount; i++) {
+                    durations[current++] = delta;
+                }
+            }
+            // samples beyond the table keep the last duration
+            while (current < sampleCount) {
+                durations[current++] = delta;
+            }
+
+            List<CompositionTimeToSample.Entry> ctts = track.getCompositionTimeEntries();
+            if (ctts != null && !ctts.isEmpty()) {
+                compositionOffsets = new int[sampleCount];
+                current = 0;
+                int offset = 0;
+                for (CompositionTimeToSample.Entry entry : ctts) {
+                    offset = entry.getOffset();
+                    for (int i = 0; i < entry.getCount() && current < sampleCount; i++) {
+                        compositionOffsets[current++] = offset;
+                    }
+                }
+                while (current < sampleCount) {
+                    compositionOffsets[current++] = offset;
+                }
+            } else {
+                compositionOffsets = null;
+            }
+
+            List<SampleDependencyTypeBox.Entry> sdtp = track.getSampleDependencies();
+            if (sdtp != null && !sdtp.isEmpty()) {
+                dependencies = new int[sampleCount];
+                Arrays.fill(dependencies, -1);
+                if (sdtp instanceof SampleDependencyTypeBox.EntryList) {
+                    SampleDependencyTypeBox.EntryList list = (SampleDependencyTypeBox.EntryList) sdtp;
+                    for (int i = 0; i < list.size() && i < sampleCount; i++) {
+                        dependencies[i] = list.getValue(i);
+                    }
+                } else {
+                    current = 0;
+                    for (SampleDependencyTypeBox.Entry entry : sdtp) {
+                        if (current == sampleCount) {
+                            break;
+                        }
+                        dependencies[current++] = entry.getValue();
+                    }
+                }
+            } else {
+                dependencies = null;
+            }
+
+            long[] stss = track.getSyncSamples();
+            if (stss != null && stss.length > 0) {
+                syncSamples = new boolean[sampleCount + 1];
+                for (long syncSample : stss) {
+                    if (syncSample > 0 && syncSample <= sampleCount) {
+                        syncSamples[(int) syncSample] = true;
+                    }
+                }
+            } else {
+                syncSamples = null;
+            }
+        }
+
+        public int getFragmentCount() {
+            return startSamples.length;
+        }
+
+        /**
+         * @return first sample of the fragment
+         */
+        public long getStartSample(int fragment) {
+            return startSamples[fragment];
+        }
+
+        /**
+         * @return first sample after the fragment
+         */
+        public long getEndSample(int fragment) {
+            return fragment + 1 < startSamples.length ? startSamples[fragment + 1] : sampleCount + 1;
+        }
+
+        /**
+         * @return number of bytes in the samples from startSample up to endSample
+         */
+        public long getSize(long startSample, long endSample) {
+            return sizePrefix[(int) endSample - 1] - sizePrefix[(int) startSample - 1];
+        }
+
+        public long getFragmentSize(int fragment) {
+            return fragment < startSamples.length ? getSize(getStartSample(fragment), getEndSample(fragment)) : 0;
+        }
+
+        public long getSampleSize(long sample) {
+            return sizePrefix[(int) sample] - sizePrefix[(int) sample - 1];
+        }
+
+        public long getSampleDuration(long sample) {
+            return durations[(int) sample - 1];
+        }
+
+        public boolean hasCompositionOffsets() {
+            return compositionOffsets != null;
+        }
+
+        public int getSampleCompositionOffset(long sample) {
+            return compositionOffsets[(int) sample - 1];
+        }
+
+        /**
+         * @return the sample's sdtp value as stored in the box, or -1 if it
+         *         has none
+         */
+        public int getSampleDependency(long sample) {
+            return dependencies == null ? -1 : dependencies[(int) sample - 1];
+        }
+
+        public boolean hasSampleDependencies() {
+            return dependencies != null;
+        }
+
+        public boolean hasSyncSamples() {
+            return syncSamples != null;
+        }
+
+        public boolean isSyncSample(long sample) {
+            return syncSamples[(int) sample];
+        }
+    }
+
+    private final Map<Track, TrackPlan> plans = new HashMap<Track, TrackPlan>();
+    private final List<Track> tracks;
+    private int fragmentCount = 0;
+
+    public FragmentPlan(Movie movie, FragmentIntersectionFinder intersectionFinder) {
+        tracks = movie.getTracks();
+        for (Track track : tracks) {
+            TrackPlan plan = new TrackPlan(track, intersectionFinder.sampleNumbers(track, movie));
+            plans.put(track, plan);
+            fragmentCount = Math.max(fragmentCount, plan.getFragmentCount());
+        }
+    }
+
+    /**
+     * @return the maximum number of fragments of any track
+     */
+    public int getFragmentCount() {
+        return fragmentCount;
+    }
+
+    /**
+     * @return the track's plan or null if the track is not part of the movie
+     */
+    public TrackPlan getTrackPlan(Track track) {
+        return plans.get(track);
+    }
+
+    /**
+     * @return all tracks ordered by the size of their part of the fragment,
+     *         smallest first
+     */
+    public List<Track> getSizeSortedTracks(final int fragment) {
+        List<Track> sorted = new ArrayList<Track>(tracks);
+        Collections.sort(sorted, new Comparator<Track>() {
+            public int compare(Track o1, Track o2) {
+                long size1 = plans.get(o1).getFragmentSize(fragment);
+                long size2 = plans.get(o2).getFragmentSize(fragment);
+                return size1 < size2 ? -1 : (size1 == size2 ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+}
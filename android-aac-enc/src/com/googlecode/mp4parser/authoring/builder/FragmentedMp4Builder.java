@@ -19,7 +19,6 @@ import com.coremedia.iso.BoxParser;
 import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeWriter;
 import com.coremedia.iso.boxes.Box;
-import com.coremedia.iso.boxes.CompositionTimeToSample;
 import com.coremedia.iso.boxes.ContainerBox;
 import com.coremedia.iso.boxes.DataEntryUrlBox;
 import com.coremedia.iso.boxes.DataInformationBox;
@@ -31,7 +30,6 @@ import com.coremedia.iso.boxes.MediaHeaderBox;
 import com.coremedia.iso.boxes.MediaInformationBox;
 import com.coremedia.iso.boxes.MovieBox;
 import com.coremedia.iso.boxes.MovieHeaderBox;
-import com.coremedia.iso.boxes.SampleDependencyTypeBox;
 import com.coremedia.iso.boxes.SampleTableBox;
 import com.coremedia.iso.boxes.StaticChunkOffsetBox;
 import com.coremedia.iso.boxes.TimeToSampleBox;
@@ -54,17 +52,13 @@ import com.googlecode.mp4parser.authoring.Track;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.logging.Logger;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
@@ -91,55 +85,26 @@ public class FragmentedMp4Builder implements Mp4Builder {
 
     protected List<Box> createMoofMdat(final Movie movie) {
         List<Box> boxes = new LinkedList<Box>();
-        int maxNumberOfFragments = 0;
-        for (Track track : movie.getTracks()) {
-            int currentLength = intersectionFinder.sampleNumbers(track, movie).length;
-            maxNumberOfFragments = currentLength > maxNumberOfFragments ? currentLength : maxNumberOfFragments;
-        }
+        // boundaries, sizes and sample tables are read from each track once
+        FragmentPlan plan = new FragmentPlan(movie, intersectionFinder);
         int sequence = 1;
-        for (int i = 0; i < maxNumberOfFragments; i++) {
-
-            final List<Track> sizeSortedTracks = new LinkedList<Track>(movie.getTracks());
-            final int j = i;
-            Collections.sort(sizeSortedTracks, new Comparator<Track>() {
-                public int compare(Track o1, Track o2) {
-                    long[] startSamples1 = intersectionFinder.sampleNumbers(o1, movie);
-                    long startSample1 = startSamples1[j];
-                    // one based sample numbers - the first sample is 1
-                    long endSample1 = j + 1 < startSamples1.length ? startSamples1[j + 1] : o1.getSamples().size() + 1;
-                    long[] startSamples2 = intersectionFinder.sampleNumbers(o2, movie);
-                    long startSample2 = startSamples2[j];
-                    // one based sample numbers - the first sample is 1
-                    long endSample2 = j + 1 < startSamples2.length ? startSamples2[j + 1] : o2.getSamples().size() + 1;
-                    List<ByteBuffer> samples1 = o1.getSamples().subList(l2i(startSample1) - 1, l2i(endSample1) - 1);
-                    List<ByteBuffer> samples2 = o2.getSamples().subList(l2i(startSample2) - 1, l2i(endSample2) - 1);
-                    int size1 = 0;
-                    for (ByteBuffer byteBuffer : samples1) {
-                        size1 += byteBuffer.limit();
-                    }
-                    int size2 = 0;
-                    for (ByteBuffer byteBuffer : samples2) {
-                        size2 += byteBuffer.limit();
-                    }
-                    return size1 - size2;
-                }
-            });
+        for (int i = 0; i < plan.getFragmentCount(); i++) {
 
-            for (Track track : sizeSortedTracks) {
+            for (Track track : plan.getSizeSortedTracks(i)) {
                 if (getAllowedHandlers().isEmpty() || getAllowedHandlers().contains(track.getHandler())) {
-                    long[] startSamples = intersectionFinder.sampleNumbers(track, movie);
+                    FragmentPlan.TrackPlan trackPlan = plan.getTrackPlan(track);
 
-                    if (i < startSamples.length) {
-                        long startSample = startSamples[i];
+                    if (i < trackPlan.getFragmentCount()) {
+                        long startSample = trackPlan.getStartSample(i);
                         // one based sample numbers - the first sample is 1
-                        long endSample = i + 1 < startSamples.length ? startSamples[i + 1] : track.getSamples().size() + 1;
+                        long endSample = trackPlan.getEndSample(i);
 
                         if (startSample == endSample) {
                             // empty fragment
                             // just don't add any boxes.
                         } else {
-                            boxes.add(createMoof(startSample, endSample, track, sequence));
-                            boxes.add(createMdat(startSample, endSample, track, sequence++));
+                            boxes.add(createMoof(startSample, endSample, track, sequence, trackPlan));
+                            boxes.add(createMdat(startSample, endSample, track, sequence++, trackPlan));
                         }
 
                     } else {
@@ -172,10 +137,12 @@ public class FragmentedMp4Builder implements Mp4Builder {
         return isoFile;
     }
 
-    protected Box createMdat(final long startSample, final long endSample, final Track track, final int i) {
+    protected Box createMdat(final long startSample, final long endSample, final Track track, final int i,
+                             final FragmentPlan.TrackPlan trackPlan) {
 
         class Mdat implements Box {
             ContainerBox parent;
+            long size = -1;
 
             public ContainerBox getParent() {
                 return parent;
@@ -186,9 +153,8 @@ public class FragmentedMp4Builder implements Mp4Builder {
             }
 
             public long getSize() {
-                long size = 8; // I don't expect 2gig fragments
-                for (ByteBuffer sample : getSamples(startSample, endSample, track, i)) {
-                    size += sample.limit();
+                if (size < 0) {
+                    size = 8 + trackPlan.getSize(startSample, endSample); // I don't expect 2gig fragments
                 }
                 return size;
             }
@@ -198,33 +164,13 @@ public class FragmentedMp4Builder implements Mp4Builder {
             }
 
             public void getBox(WritableByteChannel writableByteChannel) throws IOException {
-                List<ByteBuffer> bbs = getSamples(startSample, endSample, track, i);
-                final List<ByteBuffer> samples = ByteBufferHelper.mergeAdjacentBuffers(bbs);
                 ByteBuffer header = ByteBuffer.allocate(8);
                 IsoTypeWriter.writeUInt32(header, l2i(getSize()));
                 header.put(IsoFile.fourCCtoBytes(getType()));
                 header.rewind();
                 writableByteChannel.write(header);
-                if (writableByteChannel instanceof GatheringByteChannel) {
-
-                    int STEPSIZE = 1024;
-                    for (int i = 0; i < Math.ceil((double) samples.size() / STEPSIZE); i++) {
-                        List<ByteBuffer> sublist = samples.subList(
-                                i * STEPSIZE, // start
-                                (i + 1) * STEPSIZE < samples.size() ? (i + 1) * STEPSIZE : samples.size()); // end
-                        ByteBuffer sampleArray[] = sublist.toArray(new ByteBuffer[sublist.size()]);
-                        do {
-                            ((GatheringByteChannel) writableByteChannel).write(sampleArray);
-                        } while (sampleArray[sampleArray.length - 1].remaining() > 0);
-                    }
-                    //System.err.println(bytesWritten);
-                } else {
-                    for (ByteBuffer sample : samples) {
-                        sample.rewind();
-                        writableByteChannel.write(sample);
-                    }
-                }
-
+                // file backed samples are transferred straight from their file
+                ByteBufferHelper.writeSamples(getSamples(startSample, endSample, track, i), writableByteChannel);
             }
 
             public void parse(ReadableByteChannel readableByteChannel, ByteBuffer header, long contentSize, BoxParser boxParser) throws IOException {
@@ -251,10 +197,11 @@ public class FragmentedMp4Builder implements Mp4Builder {
         return mfhd;
     }
 
-    protected Box createTraf(long startSample, long endSample, Track track, int sequenceNumber) {
+    protected Box createTraf(long startSample, long endSample, Track track, int sequenceNumber,
+                             FragmentPlan.TrackPlan trackPlan) {
         TrackFragmentBox traf = new TrackFragmentBox();
         traf.addBox(createTfhd(startSample, endSample, track, sequenceNumber));
-        for (Box trun : createTruns(startSample, endSample, track, sequenceNumber)) {
+        for (Box trun : createTruns(startSample, endSample, track, sequenceNumber, trackPlan)) {
             traf.addBox(trun);
         }
 
@@ -275,72 +222,39 @@ public class FragmentedMp4Builder implements Mp4Builder {
     }
 
 
-    protected List<? extends Box> createTruns(long startSample, long endSample, Track track, int sequenceNumber) {
-        List<ByteBuffer> samples = getSamples(startSample, endSample, track, sequenceNumber);
-
-        long[] sampleSizes = new long[samples.size()];
-        for (int i = 0; i < sampleSizes.length; i++) {
-            sampleSizes[i] = samples.get(i).limit();
-        }
+    protected List<? extends Box> createTruns(long startSample, long endSample, Track track, int sequenceNumber,
+                                              FragmentPlan.TrackPlan trackPlan) {
         TrackRunBox trun = new TrackRunBox();
 
 
         trun.setSampleDurationPresent(true);
         trun.setSampleSizePresent(true);
-        List<TrackRunBox.Entry> entries = new ArrayList<TrackRunBox.Entry>(l2i(endSample - startSample));
-
-
-        Queue<TimeToSampleBox.Entry> timeQueue = new LinkedList<TimeToSampleBox.Entry>(track.getDecodingTimeEntries());
-        long left = startSample;
-        long curEntryLeft = timeQueue.peek().getCount();
-        while (left >= curEntryLeft) {
-            left -= curEntryLeft;
-            timeQueue.remove();
-            curEntryLeft = timeQueue.peek().getCount();
-        }
-        curEntryLeft -= left;
-
-
-        Queue<CompositionTimeToSample.Entry> compositionTimeQueue =
-                track.getCompositionTimeEntries() != null && track.getCompositionTimeEntries().size() > 0 ?
-                        new LinkedList<CompositionTimeToSample.Entry>(track.getCompositionTimeEntries()) : null;
-        long compositionTimeEntriesLeft = compositionTimeQueue != null ? compositionTimeQueue.peek().getCount() : -1;
-
+        TrackRunBox.EntryList entries = new TrackRunBox.EntryList(l2i(endSample - startSample));
 
-        trun.setSampleCompositionTimeOffsetPresent(compositionTimeEntriesLeft > 0);
-
-        // fast forward composition stuff
-        for (long i = 1; i < startSample; i++) {
-            if (compositionTimeQueue != null) {
-                trun.setSampleCompositionTimeOffsetPresent(true);
-                if (--compositionTimeEntriesLeft == 0 && compositionTimeQueue.size() > 1) {
-                    compositionTimeQueue.remove();
-                    compositionTimeEntriesLeft = compositionTimeQueue.element().getCount();
-                }
-            }
-        }
+        trun.setSampleCompositionTimeOffsetPresent(trackPlan.hasCompositionOffsets());
 
-        boolean sampleFlagsRequired = (track.getSampleDependencies() != null && !track.getSampleDependencies().isEmpty() ||
-                track.getSyncSamples() != null && track.getSyncSamples().length != 0);
+        boolean sampleFlagsRequired = trackPlan.hasSampleDependencies() || trackPlan.hasSyncSamples();
 
         trun.setSampleFlagsPresent(sampleFlagsRequired);
 
-        for (int i = 0; i < sampleSizes.length; i++) {
-            TrackRunBox.Entry entry = new TrackRunBox.Entry();
-            entry.setSampleSize(sampleSizes[i]);
+        // the entry list only keeps the flags' value, so one object will do
+        SampleFlags sflags = sampleFlagsRequired ? new SampleFlags() : null;
+        for (long sample = startSample; sample < endSample; sample++) {
             if (sampleFlagsRequired) {
-                //if (false) {
-                SampleFlags sflags = new SampleFlags();
-
-                if (track.getSampleDependencies() != null && !track.getSampleDependencies().isEmpty()) {
-                    SampleDependencyTypeBox.Entry e = track.getSampleDependencies().get(i);
-                    sflags.setSampleDependsOn(e.getSampleDependsOn());
-                    sflags.setSampleIsDependedOn(e.getSampleIsDependentOn());
-                    sflags.setSampleHasRedundancy(e.getSampleHasRedundancy());
+                int e = trackPlan.getSampleDependency(sample);
+                if (e != -1) {
+                    sflags.setSampleDependsOn(e >> 4 & 0x3);
+                    sflags.setSampleIsDependedOn(e >> 2 & 0x3);
+                    sflags.setSampleHasRedundancy(e & 0x3);
+                } else {
+                    sflags.setSampleDependsOn(0);
+                    sflags.setSampleIsDependedOn(0);
+                    sflags.setSampleHasRedundancy(0);
                 }
-                if (track.getSyncSamples() != null && track.getSyncSamples().length > 0) {
+                sflags.setSampleIsDifferenceSample(false);
+                if (trackPlan.hasSyncSamples()) {
                     // we have to mark non-sync samples!
-                    if (Arrays.binarySearch(track.getSyncSamples(), startSample + i) >= 0) {
+                    if (trackPlan.isSyncSample(sample)) {
                         sflags.setSampleIsDifferenceSample(false);
                         sflags.setSampleDependsOn(2);
                     } else {
@@ -349,25 +263,12 @@ public class FragmentedMp4Builder implements Mp4Builder {
                     }
                 }
                 // i don't have sample degradation
-                entry.setSampleFlags(sflags);
-
             }
 
-            entry.setSampleDuration(timeQueue.peek().getDelta());
-            if (--curEntryLeft == 0 && timeQueue.size() > 1) {
-                timeQueue.remove();
-                curEntryLeft = timeQueue.peek().getCount();
-            }
-
-            if (compositionTimeQueue != null) {
-                trun.setSampleCompositionTimeOffsetPresent(true);
-                entry.setSampleCompositionTimeOffset(compositionTimeQueue.peek().getOffset());
-                if (--compositionTimeEntriesLeft == 0 && compositionTimeQueue.size() > 1) {
-                    compositionTimeQueue.remove();
-                    compositionTimeEntriesLeft = compositionTimeQueue.element().getCount();
-                }
-            }
-            entries.add(entry);
+            entries.add(trackPlan.getSampleDuration(sample),
+                    trackPlan.getSampleSize(sample),
+                    sflags,
+                    trackPlan.hasCompositionOffsets() ? trackPlan.getSampleCompositionOffset(sample) : 0);
         }
 
         trun.setEntries(entries);
@@ -375,12 +276,13 @@ public class FragmentedMp4Builder implements Mp4Builder {
         return Collections.singletonList(trun);
     }
 
-    protected Box createMoof(long startSample, long endSample, Track track, int sequenceNumber) {
+    protected Box createMoof(long startSample, long endSample, Track track, int sequenceNumber,
+                             FragmentPlan.TrackPlan trackPlan) {
 
 
         MovieFragmentBox moof = new MovieFragmentBox();
         moof.addBox(createMfhd(startSample, endSample, track, sequenceNumber));
-        moof.addBox(createTraf(startSample, endSample, track, sequenceNumber));
+        moof.addBox(createTraf(startSample, endSample, track, sequenceNumber, trackPlan));
 
         TrackRunBox firstTrun = moof.getTrackRunBoxes().get(0);
         firstTrun.setDataOffset(1); // dummy to make size correct
@@ -21,9 +21,9 @@ import com.googlecode.mp4parser.authoring.Movie;
 import com.googlecode.mp4parser.authoring.Track;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.logging.Logger;
 
 import static com.googlecode.mp4parser.util.Math.lcm;
@@ -172,7 +172,7 @@ public class SyncSampleIntersectFinderImpl implements FragmentIntersectionFinder
     private static long[] getTimes(Movie m, Track track) {
         long[] syncSamples = track.getSyncSamples();
         long[] syncSampleTimes = new long[syncSamples.length];
-        Queue<TimeToSampleBox.Entry> timeQueue = new LinkedList<TimeToSampleBox.Entry>(track.getDecodingTimeEntries());
+        Iterator<TimeToSampleBox.Entry> timeQueue = track.getDecodingTimeEntries().iterator();
 
         int currentSample = 1;  // first syncsample is 1
         long currentDuration = 0;
@@ -193,7 +193,7 @@ public class SyncSampleIntersectFinderImpl implements FragmentIntersectionFinder
                 syncSampleTimes[currentSyncSampleIndex++] = currentDuration * timeScale;
             }
             if (left-- == 0) {
-                TimeToSampleBox.Entry entry = timeQueue.poll();
+                TimeToSampleBox.Entry entry = timeQueue.next();
                 left = entry.getCount();
                 currentDelta = entry.getDelta();
             }
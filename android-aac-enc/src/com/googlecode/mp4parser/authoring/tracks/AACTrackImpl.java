@@ -3,6 +3,7 @@ package com.googlecode.mp4parser.authoring.tracks;
 import java.io.IOException;
 import java.io.PushbackInputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -48,14 +49,154 @@ public class AACTrackImpl extends AbstractTrack {
 
     private PushbackInputStream inputStream;
     private List<ByteBuffer> samples;
+    private int[] sampleSizes = new int[256];
     boolean readSamples = false;
-    List<TimeToSampleBox.Entry> stts;
+    TimeToSampleBox.EntryList stts;
     public static Map<Integer, Integer> samplingFrequencyIndexMap = new HashMap<Integer, Integer>();
 
     public AACTrackImpl(PushbackInputStream inputStream) throws IOException {
         this.inputStream = inputStream;
-        stts = new LinkedList<TimeToSampleBox.Entry>();
+        initSamplingFrequencyIndexMap();
 
+        byte[] data = new byte[100];
+        if (100 != inputStream.read(data, 0, 100)) {
+            throw new IOException();
+        }
+        inputStream.unread(data);
+        if (!readVariables(ByteBuffer.wrap(data))) {
+            throw new IOException();
+        }
+
+        samples = new LinkedList<ByteBuffer>();
+        if (!readSamples()) {
+            throw new IOException();
+        }
+        init();
+    }
+
+    /**
+     * Creates the track from an ADTS file without reading the audio data
+     * into memory. Only the frame headers are read; the returned samples
+     * are served from the file on demand, so the channel must stay open
+     * until the track has been written.
+     */
+    public AACTrackImpl(FileChannel channel) throws IOException {
+        this(new Indexer(channel));
+    }
+
+    private AACTrackImpl(Indexer indexer) throws IOException {
+        initSamplingFrequencyIndexMap();
+
+        if (!indexer.index(true)) {
+            throw new IOException();
+        }
+        if (!readVariables(indexer.firstHeader)) {
+            throw new IOException();
+        }
+        samples = indexer.samples;
+        sampleSizes = indexer.sampleSizes;
+        readSamples = true;
+        init();
+    }
+
+    /**
+     * Builds the sample index of an ADTS file while the file is still being
+     * written, so that the track is ready as soon as the last frame is
+     * flushed. Call {@link #update()} whenever new frames may have been
+     * appended and {@link #finish()} once the file is complete.
+     */
+    public static class Indexer {
+        private final FileChannel channel;
+        private final MappedSampleList samples;
+        private final ByteBuffer header = ByteBuffer.allocate(9);
+        private ByteBuffer firstHeader;
+        private int[] sampleSizes = new int[256];
+        private long position = 0;
+        private boolean invalid = false;
+
+        public Indexer(FileChannel channel) {
+            this.channel = channel;
+            this.samples = new MappedSampleList(channel, false);
+        }
+
+        /**
+         * Indexes the frames that have been completely written since the
+         * last call.
+         *
+         * @return number of frames indexed so far
+         */
+        public int update() throws IOException {
+            index(false);
+            return samples.size();
+        }
+
+        /**
+         * Indexes the rest of the file and creates the track.
+         */
+        public AACTrackImpl finish() throws IOException {
+            return new AACTrackImpl(this);
+        }
+
+        /**
+         * @param complete whether the file has been written completely, in
+         *                 which case a truncated last frame is indexed as
+         *                 far as it was written
+         * @return false if the file is not a valid ADTS stream
+         */
+        private boolean index(boolean complete) throws IOException {
+            long end = channel.size();
+            while (!invalid && position < end) {
+                header.clear();
+                if (readFully(channel, header, position) < 7) {
+                    break;
+                }
+                header.rewind();
+                BitReaderBuffer brb = new BitReaderBuffer(header);
+                int syncword = brb.readBits(12);
+
+                if (syncword != 0xfff) {
+                    invalid = true;
+                    break;
+                }
+                brb.readBits(3);
+                int protectionAbsent = brb.readBits(1);
+                brb.readBits(14);
+                int frameSize = brb.readBits(13);
+                int used = protectionAbsent == 0 ? 9 : 7;
+                if (frameSize < used) {
+                    invalid = true;
+                    break;
+                }
+                if (position + frameSize > end && !complete) {
+                    // wait for the rest of the frame
+                    break;
+                }
+                // a truncated last frame is kept as far as it was written
+                int size = (int) Math.min(frameSize - used, end - position - used);
+                if (size < 0) {
+                    break;
+                }
+                if (firstHeader == null) {
+                    firstHeader = ByteBuffer.allocate(used);
+                    header.rewind();
+                    header.limit(used);
+                    firstHeader.put(header);
+                    firstHeader.rewind();
+                }
+                if (samples.size() == sampleSizes.length) {
+                    int[] newSizes = new int[sampleSizes.length * 2];
+                    System.arraycopy(sampleSizes, 0, newSizes, 0, sampleSizes.length);
+                    sampleSizes = newSizes;
+                }
+                sampleSizes[samples.size()] = size;
+                samples.add(position + used, size);
+                position += frameSize;
+            }
+            return !invalid && samples.size() > 0;
+        }
+    }
+
+    private static void initSamplingFrequencyIndexMap() {
         samplingFrequencyIndexMap.put(96000, 0);
         samplingFrequencyIndexMap.put(88200, 1);
         samplingFrequencyIndexMap.put(64000, 2);
@@ -80,34 +221,30 @@ public class AACTrackImpl extends AbstractTrack {
         samplingFrequencyIndexMap.put(0x9, 12000);
         samplingFrequencyIndexMap.put(0xa, 11025);
         samplingFrequencyIndexMap.put(0xb, 8000);
+    }
 
-        if (!readVariables()) {
-            throw new IOException();
-        }
-
-        samples = new LinkedList<ByteBuffer>();
-        if (!readSamples()) {
-            throw new IOException();
-        }
+    private void init() {
+        int sampleCount = samples.size();
+        // every ADTS frame holds 1024 samples per channel
+        stts = new TimeToSampleBox.EntryList(1);
+        stts.add(sampleCount, 1024);
 
         double packetsPerSecond = (double)samplerate / 1024.0;
-        double duration = samples.size() / packetsPerSecond;
+        double duration = sampleCount / packetsPerSecond;
 
+        // sliding window of one second worth of frames
+        int window = (int) Math.floor(packetsPerSecond);
         long dataSize = 0;
-        LinkedList<Integer> queue = new LinkedList<Integer>();
-        for (int i = 0; i < samples.size(); i++) {
-            int size = samples.get(i).capacity();
+        long windowSize = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            int size = sampleSizes[i];
             dataSize += size;
-            queue.add(size);
-            while (queue.size() > packetsPerSecond) {
-                queue.removeFirst();
+            windowSize += size;
+            if (i >= window) {
+                windowSize -= sampleSizes[i - window];
             }
-            if (queue.size() == (int) packetsPerSecond) {
-                int currSize = 0;
-                for (int j = 0 ; j < queue.size(); j++) {
-                    currSize += queue.get(j);
-                }
-                double currBitrate = 8.0 * currSize / queue.size() * packetsPerSecond;
+            if (window > 0 && i + 1 >= window) {
+                double currBitrate = 8.0 * windowSize / window * packetsPerSecond;
                 if (currBitrate > maxBitRate) {
                     maxBitRate = (int)currBitrate;
                 }
@@ -159,7 +296,7 @@ public class AACTrackImpl extends AbstractTrack {
         trackMetaData.setLanguage("eng");
         trackMetaData.setTimescale(samplerate); // Audio tracks always use samplerate as timescale
 
-     }
+    }
 
     public SampleDescriptionBox getSampleDescriptionBox() {
         return sampleDescriptionBox;  //To change body of implemented methods use File | Settings | File Templates.
@@ -201,14 +338,7 @@ public class AACTrackImpl extends AbstractTrack {
         return null;  //To change body of implemented methods use File | Settings | File Templates.
     }
 
-    private boolean readVariables() throws IOException {
-        byte[] data = new byte[100];
-        if (100 != inputStream.read(data, 0, 100)) {
-            return false;
-        }
-        inputStream.unread(data);
-
-        ByteBuffer bb = ByteBuffer.wrap(data);
+    private boolean readVariables(ByteBuffer bb) throws IOException {
         BitReaderBuffer brb = new BitReaderBuffer(bb);
         int syncword = brb.readBits(12);
 
@@ -263,11 +393,32 @@ public class AACTrackImpl extends AbstractTrack {
 //            System.out.println("Size: " + frameSize + " fullness: " + bufferFullness + " no blocks: " + noBlocks);
             byte[] data = new byte[frameSize];
             inputStream.read(data);
+            addSampleSize(samples.size(), frameSize);
             samples.add(ByteBuffer.wrap(data));
-            stts.add(new TimeToSampleBox.Entry(1, 1024));
 
         }
         return ret;
     }
+
+    private void addSampleSize(int index, int size) {
+        if (index == sampleSizes.length) {
+            int[] newSizes = new int[sampleSizes.length * 2];
+            System.arraycopy(sampleSizes, 0, newSizes, 0, sampleSizes.length);
+            sampleSizes = newSizes;
+        }
+        sampleSizes[index] = size;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
 }
 
@@ -35,12 +35,12 @@ public class AC3TrackImpl extends AbstractTrack {
     private InputStream inputStream;
     private List<ByteBuffer> samples;
     boolean readSamples = false;
-    List<TimeToSampleBox.Entry> stts;
+    TimeToSampleBox.EntryList stts;
 
     public AC3TrackImpl(InputStream fin) throws IOException {
         inputStream = fin;
         bitRateAndFrameSizeTable = new int[19][2][3][2];
-        stts = new LinkedList<TimeToSampleBox.Entry>();
+        stts = new TimeToSampleBox.EntryList();
         initBitRateAndFrameSizeTable();
         if (!readVariables()) {
             throw new IOException();
@@ -255,7 +255,7 @@ public class AC3TrackImpl extends AbstractTrack {
             byte[] data = new byte[frameSize];
             inputStream.read(data);
             samples.add(ByteBuffer.wrap(data));
-            stts.add(new TimeToSampleBox.Entry(1, 1536));
+            stts.addSample(1536);
 
         }
         return ret;
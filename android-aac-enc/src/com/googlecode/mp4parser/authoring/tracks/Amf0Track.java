@@ -66,17 +66,12 @@ public class Amf0Track extends AbstractTrack {
     }
 
     public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
-        LinkedList<TimeToSampleBox.Entry> timesToSample = new LinkedList<TimeToSampleBox.Entry>();
+        TimeToSampleBox.EntryList timesToSample = new TimeToSampleBox.EntryList();
         LinkedList<Long> keys = new LinkedList<Long>(rawSamples.keySet());
         Collections.sort(keys);
         long lastTimeStamp = 0;
         for (Long key : keys) {
-            long delta = key - lastTimeStamp;
-            if (timesToSample.size() > 0 && timesToSample.peek().getDelta() == delta) {
-                timesToSample.peek().setCount(timesToSample.peek().getCount() + 1);
-            } else {
-                timesToSample.add(new TimeToSampleBox.Entry(1, delta));
-            }
+            timesToSample.addSample(key - lastTimeStamp);
             lastTimeStamp = key;
         }
         return timesToSample;
@@ -26,7 +26,6 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -66,21 +65,10 @@ public class AppendTrack extends AbstractTrack {
 
     public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
         if (tracks[0].getDecodingTimeEntries() != null && !tracks[0].getDecodingTimeEntries().isEmpty()) {
-            List<long[]> lists = new LinkedList<long[]>();
+            TimeToSampleBox.EntryList returnDecodingEntries = new TimeToSampleBox.EntryList();
             for (Track track : tracks) {
-                lists.add(TimeToSampleBox.blowupTimeToSamples(track.getDecodingTimeEntries()));
-            }
-
-            LinkedList<TimeToSampleBox.Entry> returnDecodingEntries = new LinkedList<TimeToSampleBox.Entry>();
-            for (long[] list : lists) {
-                for (long nuDecodingTime : list) {
-                    if (returnDecodingEntries.isEmpty() || returnDecodingEntries.getLast().getDelta() != nuDecodingTime) {
-                        TimeToSampleBox.Entry e = new TimeToSampleBox.Entry(1, nuDecodingTime);
-                        returnDecodingEntries.add(e);
-                    } else {
-                        TimeToSampleBox.Entry e = returnDecodingEntries.getLast();
-                        e.setCount(e.getCount() + 1);
-                    }
+                for (TimeToSampleBox.Entry entry : track.getDecodingTimeEntries()) {
+                    returnDecodingEntries.addSamples(entry.getCount(), entry.getDelta());
                 }
             }
             return returnDecodingEntries;
@@ -91,20 +79,10 @@ public class AppendTrack extends AbstractTrack {
 
     public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
         if (tracks[0].getCompositionTimeEntries() != null && !tracks[0].getCompositionTimeEntries().isEmpty()) {
-            List<int[]> lists = new LinkedList<int[]>();
+            CompositionTimeToSample.EntryList compositionTimeEntries = new CompositionTimeToSample.EntryList();
             for (Track track : tracks) {
-                lists.add(CompositionTimeToSample.blowupCompositionTimes(track.getCompositionTimeEntries()));
-            }
-            LinkedList<CompositionTimeToSample.Entry> compositionTimeEntries = new LinkedList<CompositionTimeToSample.Entry>();
-            for (int[] list : lists) {
-                for (int compositionTime : list) {
-                    if (compositionTimeEntries.isEmpty() || compositionTimeEntries.getLast().getOffset() != compositionTime) {
-                        CompositionTimeToSample.Entry e = new CompositionTimeToSample.Entry(1, compositionTime);
-                        compositionTimeEntries.add(e);
-                    } else {
-                        CompositionTimeToSample.Entry e = compositionTimeEntries.getLast();
-                        e.setCount(e.getCount() + 1);
-                    }
+                for (CompositionTimeToSample.Entry entry : track.getCompositionTimeEntries()) {
+                    compositionTimeEntries.addSamples(entry.getCount(), entry.getOffset());
                 }
             }
             return compositionTimeEntries;
@@ -137,9 +115,11 @@ public class AppendTrack extends AbstractTrack {
 
     public List<SampleDependencyTypeBox.Entry> getSampleDependencies() {
         if (tracks[0].getSampleDependencies() != null && !tracks[0].getSampleDependencies().isEmpty()) {
-            List<SampleDependencyTypeBox.Entry> list = new LinkedList<SampleDependencyTypeBox.Entry>();
+            SampleDependencyTypeBox.EntryList list = new SampleDependencyTypeBox.EntryList();
             for (Track track : tracks) {
-                list.addAll(track.getSampleDependencies());
+                for (SampleDependencyTypeBox.Entry entry : track.getSampleDependencies()) {
+                    list.addValue(entry.getValue());
+                }
             }
             return list;
         } else {
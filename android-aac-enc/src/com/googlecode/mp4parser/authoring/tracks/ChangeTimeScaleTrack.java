@@ -18,9 +18,7 @@ package com.googlecode.mp4parser.authoring.tracks;
 import static java.lang.Math.round;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 import com.coremedia.iso.boxes.AbstractMediaHeaderBox;
@@ -118,9 +116,9 @@ public class ChangeTimeScaleTrack implements Track {
      */
     static List<CompositionTimeToSample.Entry> adjustCtts(List<CompositionTimeToSample.Entry> source, double timeScaleFactor) {
         if (source != null) {
-            List<CompositionTimeToSample.Entry> entries2 = new ArrayList<CompositionTimeToSample.Entry>(source.size());
+            CompositionTimeToSample.EntryList entries2 = new CompositionTimeToSample.EntryList(source.size());
             for (CompositionTimeToSample.Entry entry : source) {
-                entries2.add(new CompositionTimeToSample.Entry(entry.getCount(), (int) Math.round(timeScaleFactor * entry.getOffset())));
+                entries2.add(entry.getCount(), (int) Math.round(timeScaleFactor * entry.getOffset()));
             }
             return entries2;
         } else {
@@ -131,13 +129,12 @@ public class ChangeTimeScaleTrack implements Track {
     static List<TimeToSampleBox.Entry> adjustTts(List<TimeToSampleBox.Entry> source, double timeScaleFactor, long[] syncSample) {
         double deviation = 0;
         long[] sourceArray = TimeToSampleBox.blowupTimeToSamples(source);
-        LinkedList<TimeToSampleBox.Entry> entries2 = new LinkedList<TimeToSampleBox.Entry>();
+        TimeToSampleBox.EntryList entries2 = new TimeToSampleBox.EntryList();
         for (int i = 0; i < sourceArray.length; i++) {
             long duration = sourceArray[i];
             double d = timeScaleFactor * duration;
             long x = round(d);
             deviation += d - x;
-            TimeToSampleBox.Entry last = entries2.getLast();
             if (Arrays.binarySearch(syncSample, i + 1) >= 0) {
                 // apply correction here!
                 if (Math.abs(deviation) >= 1) {
@@ -147,13 +144,7 @@ public class ChangeTimeScaleTrack implements Track {
 
                 }
             }
-            if (last == null) {
-                entries2.add(new TimeToSampleBox.Entry(1, x));
-            } else if (last.getDelta() != x) {
-                entries2.add(new TimeToSampleBox.Entry(1, x));
-            } else {
-                last.setCount(last.getCount() + 1);
-            }
+            entries2.addSample(x);
 
         }
         return entries2;
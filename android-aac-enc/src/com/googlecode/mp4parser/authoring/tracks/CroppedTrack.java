@@ -56,20 +56,20 @@ public class CroppedTrack extends AbstractTrack {
 
     public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
         if (origTrack.getDecodingTimeEntries() != null && !origTrack.getDecodingTimeEntries().isEmpty()) {
-            long[] decodingTimes = TimeToSampleBox.blowupTimeToSamples(origTrack.getDecodingTimeEntries());
-            long[] nuDecodingTimes = new long[toSample - fromSample];
-            System.arraycopy(decodingTimes, fromSample, nuDecodingTimes, 0, toSample - fromSample);
-
-            LinkedList<TimeToSampleBox.Entry> returnDecodingEntries = new LinkedList<TimeToSampleBox.Entry>();
-
-            for (long nuDecodingTime : nuDecodingTimes) {
-                if (returnDecodingEntries.isEmpty() || returnDecodingEntries.getLast().getDelta() != nuDecodingTime) {
-                    TimeToSampleBox.Entry e = new TimeToSampleBox.Entry(1, nuDecodingTime);
-                    returnDecodingEntries.add(e);
-                } else {
-                    TimeToSampleBox.Entry e = returnDecodingEntries.getLast();
-                    e.setCount(e.getCount() + 1);
+            TimeToSampleBox.EntryList returnDecodingEntries = new TimeToSampleBox.EntryList();
+
+            // clip each run to [fromSample, toSample)
+            long runStart = 0;
+            for (TimeToSampleBox.Entry entry : origTrack.getDecodingTimeEntries()) {
+                long runEnd = runStart + entry.getCount();
+                long count = Math.min(runEnd, toSample) - Math.max(runStart, fromSample);
+                if (count > 0) {
+                    returnDecodingEntries.addSamples(count, entry.getDelta());
                 }
+                if (runEnd >= toSample) {
+                    break;
+                }
+                runStart = runEnd;
             }
             return returnDecodingEntries;
         } else {
@@ -79,20 +79,20 @@ public class CroppedTrack extends AbstractTrack {
 
     public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
         if (origTrack.getCompositionTimeEntries() != null && !origTrack.getCompositionTimeEntries().isEmpty()) {
-            int[] compositionTime = CompositionTimeToSample.blowupCompositionTimes(origTrack.getCompositionTimeEntries());
-            int[] nuCompositionTimes = new int[toSample - fromSample];
-            System.arraycopy(compositionTime, fromSample, nuCompositionTimes, 0, toSample - fromSample);
-
-            LinkedList<CompositionTimeToSample.Entry> returnDecodingEntries = new LinkedList<CompositionTimeToSample.Entry>();
-
-            for (int nuDecodingTime : nuCompositionTimes) {
-                if (returnDecodingEntries.isEmpty() || returnDecodingEntries.getLast().getOffset() != nuDecodingTime) {
-                    CompositionTimeToSample.Entry e = new CompositionTimeToSample.Entry(1, nuDecodingTime);
-                    returnDecodingEntries.add(e);
-                } else {
-                    CompositionTimeToSample.Entry e = returnDecodingEntries.getLast();
-                    e.setCount(e.getCount() + 1);
+            CompositionTimeToSample.EntryList returnDecodingEntries = new CompositionTimeToSample.EntryList();
+
+            // clip each run to [fromSample, toSample)
+            long runStart = 0;
+            for (CompositionTimeToSample.Entry entry : origTrack.getCompositionTimeEntries()) {
+                long runEnd = runStart + entry.getCount();
+                long count = Math.min(runEnd, toSample) - Math.max(runStart, fromSample);
+                if (count > 0) {
+                    returnDecodingEntries.addSamples((int) count, entry.getOffset());
+                }
+                if (runEnd >= toSample) {
+                    break;
                 }
+                runStart = runEnd;
             }
             return returnDecodingEntries;
         } else {
@@ -25,8 +25,6 @@ import com.googlecode.mp4parser.authoring.Track;
 import com.googlecode.mp4parser.authoring.TrackMetaData;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -95,9 +93,9 @@ public class DivideTimeScaleTrack implements Track {
     List<CompositionTimeToSample.Entry> adjustCtts() {
         List<CompositionTimeToSample.Entry> origCtts = this.source.getCompositionTimeEntries();
         if (origCtts != null) {
-            List<CompositionTimeToSample.Entry> entries2 = new ArrayList<CompositionTimeToSample.Entry>(origCtts.size());
+            CompositionTimeToSample.EntryList entries2 = new CompositionTimeToSample.EntryList(origCtts.size());
             for (CompositionTimeToSample.Entry entry : origCtts) {
-                entries2.add(new CompositionTimeToSample.Entry(entry.getCount(), entry.getOffset() / timeScaleDivisor));
+                entries2.add(entry.getCount(), entry.getOffset() / timeScaleDivisor);
             }
             return entries2;
         } else {
@@ -107,9 +105,9 @@ public class DivideTimeScaleTrack implements Track {
 
     List<TimeToSampleBox.Entry> adjustTts() {
         List<TimeToSampleBox.Entry> origTts = source.getDecodingTimeEntries();
-        LinkedList<TimeToSampleBox.Entry> entries2 = new LinkedList<TimeToSampleBox.Entry>();
+        TimeToSampleBox.EntryList entries2 = new TimeToSampleBox.EntryList(origTts.size());
         for (TimeToSampleBox.Entry e : origTts) {
-            entries2.add(new TimeToSampleBox.Entry(e.getCount(), e.getDelta() / timeScaleDivisor));
+            entries2.add(e.getCount(), e.getDelta() / timeScaleDivisor);
         }
         return entries2;
     }
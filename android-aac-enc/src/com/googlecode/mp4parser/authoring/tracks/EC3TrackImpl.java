@@ -34,7 +34,7 @@ public class EC3TrackImpl extends AbstractTrack {
 
     private InputStream inputStream;
     private List<ByteBuffer> samples;
-    List<TimeToSampleBox.Entry> stts = new LinkedList<TimeToSampleBox.Entry>();
+    TimeToSampleBox.EntryList stts = new TimeToSampleBox.EntryList();
 
     public EC3TrackImpl(InputStream fin) throws IOException {
         inputStream = fin;
@@ -386,7 +386,7 @@ public class EC3TrackImpl extends AbstractTrack {
             read = inputStream.read(data);
             if (read == frameSize) {
                 samples.add(ByteBuffer.wrap(data));
-                stts.add(new TimeToSampleBox.Entry(1, 1536));
+                stts.addSample(1536);
             }
         }
         return ret;
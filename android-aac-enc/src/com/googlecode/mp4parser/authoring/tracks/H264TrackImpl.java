@@ -19,26 +19,32 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The <code>H264TrackImpl</code> creates a <code>Track</code> from an H.264
  * Annex B file.
  */
 public class H264TrackImpl extends AbstractTrack {
+    private static final Logger LOG = Logger.getLogger(H264TrackImpl.class.getName());
+
     TrackMetaData trackMetaData = new TrackMetaData();
     SampleDescriptionBox sampleDescriptionBox;
 
     private ReaderWrapper reader;
     private List<ByteBuffer> samples;
+    private MappedSampleList mappedSamples;
     boolean readSamples = false;
 
-    List<TimeToSampleBox.Entry> stts;
-    List<CompositionTimeToSample.Entry> ctts;
-    List<SampleDependencyTypeBox.Entry> sdtp;
+    TimeToSampleBox.EntryList stts;
+    CompositionTimeToSample.EntryList ctts;
+    SampleDependencyTypeBox.EntryList sdtp;
     List<Integer> stss;
 
     SeqParameterSet seqParameterSet = null;
@@ -56,12 +62,30 @@ public class H264TrackImpl extends AbstractTrack {
 
     public H264TrackImpl(InputStream inputStream) throws IOException {
         this.reader = new ReaderWrapper(inputStream);
-        stts = new LinkedList<TimeToSampleBox.Entry>();
-        ctts = new LinkedList<CompositionTimeToSample.Entry>();
-        sdtp = new LinkedList<SampleDependencyTypeBox.Entry>();
+        samples = new LinkedList<ByteBuffer>();
+        init();
+    }
+
+    /**
+     * Creates the track from an Annex B file without keeping the video data
+     * in memory. NAL units are read once to parse their headers, but the
+     * samples only record where their NAL units are in the file and are
+     * served from it on demand, so the channel must stay open until the
+     * track has been written.
+     */
+    public H264TrackImpl(FileChannel channel) throws IOException {
+        this.reader = new ReaderWrapper(channel);
+        mappedSamples = new MappedSampleList(channel, true);
+        samples = mappedSamples;
+        init();
+    }
+
+    private void init() throws IOException {
+        stts = new TimeToSampleBox.EntryList();
+        ctts = new CompositionTimeToSample.EntryList();
+        sdtp = new SampleDependencyTypeBox.EntryList();
         stss = new LinkedList<Integer>();
 
-        samples = new LinkedList<ByteBuffer>();
         if (!readSamples()) {
             throw new IOException();
         }
@@ -200,6 +224,7 @@ public class H264TrackImpl extends AbstractTrack {
         findNextStartcode();
 
         ArrayList<byte[]> buffered = new ArrayList<byte[]>();
+        ArrayList<Long> bufferedOffsets = new ArrayList<Long>();
 
         int frameNr = 0;
 
@@ -212,7 +237,9 @@ public class H264TrackImpl extends AbstractTrack {
             int type = data[0];
             int nal_ref_idc = (type >> 5) & 3;
             int nal_unit_type = type & 0x1f;
-            System.out.println("Found startcode at " + pos + " Type: " + nal_unit_type + " ref idc: " + nal_ref_idc + " (size " + size + ")");
+            if (LOG.isLoggable(Level.FINEST)) {
+                LOG.finest("Found startcode at " + pos + " Type: " + nal_unit_type + " ref idc: " + nal_ref_idc + " (size " + size + ")");
+            }
             NALActions action = handleNALUnit(nal_ref_idc, nal_unit_type, data);
             switch (action) {
                 case IGNORE:
@@ -220,13 +247,14 @@ public class H264TrackImpl extends AbstractTrack {
 
                 case BUFFER:
                     buffered.add(data);
+                    bufferedOffsets.add(pos + 4);
                     break;
 
                 case STORE:
                     int stdpValue = 22;
                     frameNr++;
                     buffered.add(data);
-                    ByteBuffer bb = createSample(buffered);
+                    bufferedOffsets.add(pos + 4);
                     boolean IdrPicFlag = false;
                     if (nal_unit_type == 5) {
                         stdpValue += 16;
@@ -237,10 +265,24 @@ public class H264TrackImpl extends AbstractTrack {
                     if (sh.slice_type == SliceHeader.SliceType.B) {
                         stdpValue += 4;
                     }
-                    System.out.println("Adding sample with size " + bb.capacity() + " and header " + sh);
+                    int sampleSize;
+                    if (mappedSamples != null) {
+                        for (int i = 0; i < buffered.size(); i++) {
+                            mappedSamples.addRange(bufferedOffsets.get(i), buffered.get(i).length);
+                        }
+                        mappedSamples.endSample();
+                        sampleSize = mappedSamples.getSampleSize(mappedSamples.size() - 1);
+                    } else {
+                        ByteBuffer bb = createSample(buffered);
+                        sampleSize = bb.capacity();
+                        samples.add(bb);
+                    }
+                    if (LOG.isLoggable(Level.FINEST)) {
+                        LOG.finest("Adding sample with size " + sampleSize + " and header " + sh);
+                    }
                     buffered.clear();
-                    samples.add(bb);
-                    stts.add(new TimeToSampleBox.Entry(1, frametick));
+                    bufferedOffsets.clear();
+                    stts.addSample(frametick);
                     if (nal_unit_type == 5) { // IDR Picture
                         stss.add(frameNr);
                     }
@@ -253,8 +295,8 @@ public class H264TrackImpl extends AbstractTrack {
                     } else if (seiMessage.removal_delay_flag) {
                         offset = seiMessage.dpb_removal_delay / 2;
                     }
-                    ctts.add(new CompositionTimeToSample.Entry(1, offset * frametick));
-                    sdtp.add(new SampleDependencyTypeBox.Entry(stdpValue));
+                    ctts.addSample(offset * frametick);
+                    sdtp.addValue(stdpValue);
                     frameNrInGop++;
                     break;
 
@@ -336,7 +378,7 @@ public class H264TrackImpl extends AbstractTrack {
                         timescale = seqParameterSet.vuiParams.time_scale >> 1; // Not sure why, but I found this in several places, and it works...
                         frametick = seqParameterSet.vuiParams.num_units_in_tick;
                     } else {
-                        System.err.println("Warning: Can't determine frame rate. Guessing 25 fps");
+                        LOG.warning("Can't determine frame rate. Guessing 25 fps");
                         timescale = 90000;
                         frametick = 3600;
                     }
@@ -360,7 +402,7 @@ public class H264TrackImpl extends AbstractTrack {
                 break;
 
             default:
-                System.err.println("Unknown NAL unit type: " + nal_unit_type);
+                LOG.warning("Unknown NAL unit type: " + nal_unit_type);
                 action = NALActions.IGNORE;
 
         }
@@ -369,7 +411,7 @@ public class H264TrackImpl extends AbstractTrack {
     }
 
     public void printAccessUnitDelimiter(byte[] data) {
-        System.out.println("Access unit delimiter: " + (data[0] >> 5));
+        LOG.fine("Access unit delimiter: " + (data[0] >> 5));
     }
 
     public static class SliceHeader {
@@ -464,28 +506,83 @@ public class H264TrackImpl extends AbstractTrack {
         private InputStream inputStream;
         private long pos = 0;
 
+        /**
+         * when reading from a channel, a window of the file starting at
+         * <code>windowStart</code>, so that the byte-wise start code search
+         * and rewinds don't hit the file
+         */
+        private FileChannel channel;
+        private ByteBuffer window;
+        private long windowStart;
+
         private ReaderWrapper(InputStream inputStream) {
             this.inputStream = inputStream;
         }
 
+        private ReaderWrapper(FileChannel channel) {
+            this.channel = channel;
+            this.window = ByteBuffer.allocate(64 * 1024);
+            this.window.limit(0);
+        }
+
         int read() throws IOException {
+            if (channel != null) {
+                if ((pos < windowStart || pos >= windowStart + window.limit()) && !fill()) {
+                    return -1;
+                }
+                return window.get((int) (pos++ - windowStart)) & 0xff;
+            }
             pos++;
             return inputStream.read();
         }
 
         long read(byte[] data) throws IOException {
+            if (channel != null) {
+                int read = 0;
+                while (read < data.length) {
+                    if ((pos < windowStart || pos >= windowStart + window.limit()) && !fill()) {
+                        break;
+                    }
+                    int offset = (int) (pos - windowStart);
+                    int count = Math.min(data.length - read, window.limit() - offset);
+                    window.position(offset);
+                    window.get(data, read, count);
+                    read += count;
+                    pos += count;
+                }
+                return read == 0 && data.length > 0 ? -1 : read;
+            }
             long read = inputStream.read(data);
             pos += read;
             return read;
         }
 
+        private boolean fill() throws IOException {
+            window.clear();
+            windowStart = pos;
+            if (channel.read(window, pos) <= 0) {
+                window.limit(0);
+                return false;
+            }
+            window.flip();
+            return true;
+        }
+
         long rewind(int dist) throws IOException {
+            if (channel != null) {
+                pos -= dist;
+                return dist;
+            }
             long skipped = inputStream.skip(-dist);
             pos += skipped;
             return -skipped;
         }
 
         long seek(int dist) throws IOException {
+            if (channel != null) {
+                pos += dist;
+                return dist;
+            }
             long seeked = inputStream.skip(dist);
             pos += seeked;
             return seeked;
@@ -553,7 +650,7 @@ public class H264TrackImpl extends AbstractTrack {
                             byte[] data = new byte[payloadSize];
                             is.read(data);
                             read += payloadSize;
-                            CAVLCReader reader = new CAVLCReader(new ByteArrayInputStream(data));
+                            CAVLCReader reader = new CAVLCReader(data);
                             if (sps.vuiParams.nalHRDParams != null || sps.vuiParams.vclHRDParams != null) {
                                 removal_delay_flag = true;
                                 cpb_removal_delay = reader.readU(sps.vuiParams.nalHRDParams.cpb_removal_delay_length_minus1 + 1, "SEI: cpb_removal_delay");
@@ -638,7 +735,9 @@ public class H264TrackImpl extends AbstractTrack {
                 } else {
                     read = datasize;
                 }
-                System.out.println(this);
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine(toString());
+                }
             }
         }
 
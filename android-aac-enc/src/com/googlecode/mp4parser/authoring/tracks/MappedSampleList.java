@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.authoring.tracks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A random access list of samples that live in a file. Only a compact index
+ * of byte ranges is kept on the heap; sample contents are served as slices
+ * of memory-mapped regions of the file.
+ * <p/>
+ * A sample consists of one or more ranges. If the list is length prefixed
+ * (as for H.264 NAL units in an MP4 file), every range is preceded by its
+ * size as a 4 byte big endian integer in the returned sample. Such samples,
+ * and samples that consist of several ranges, are assembled into a fresh
+ * heap buffer on each <code>get</code> and not retained.
+ */
+public class MappedSampleList extends AbstractList<ByteBuffer> implements RandomAccess {
+
+    /**
+     * Size of the regions the file is mapped in
+     */
+    private static final long SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final boolean lengthPrefixed;
+
+    /**
+     * the list that owns the file mappings; <code>this</code> unless this
+     * list is a {@link #subList(int, int)} view
+     */
+    private final MappedSampleList root;
+
+    /**
+     * index of this list's first sample in the arrays below
+     */
+    private final int sampleBase;
+
+    private long[] rangeOffsets = new long[256];
+    private int[] rangeSizes = new int[256];
+    private int rangeCount = 0;
+
+    /**
+     * index of the first range of each sample, plus one trailing entry
+     */
+    private int[] sampleStarts = new int[257];
+    private int sampleCount = 0;
+
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * @param channel        file containing the samples
+     * @param lengthPrefixed whether each range is to be prefixed with its 4 byte size
+     */
+    public MappedSampleList(FileChannel channel, boolean lengthPrefixed) {
+        this.channel = channel;
+        this.lengthPrefixed = lengthPrefixed;
+        this.root = this;
+        this.sampleBase = 0;
+    }
+
+    private MappedSampleList(MappedSampleList parent, int fromIndex, int toIndex) {
+        this.channel = parent.channel;
+        this.lengthPrefixed = parent.lengthPrefixed;
+        this.root = parent.root;
+        // samples before toIndex are never modified, so the arrays can be shared
+        this.rangeOffsets = parent.rangeOffsets;
+        this.rangeSizes = parent.rangeSizes;
+        this.rangeCount = parent.rangeCount;
+        this.sampleStarts = parent.sampleStarts;
+        this.sampleBase = parent.sampleBase + fromIndex;
+        this.sampleCount = toIndex - fromIndex;
+    }
+
+    /**
+     * Adds a sample consisting of a single range of the file.
+     */
+    public void add(long offset, int size) {
+        addRange(offset, size);
+        endSample();
+    }
+
+    /**
+     * Adds a range to the sample that is currently being built. Call
+     * {@link #endSample()} once all ranges of a sample have been added.
+     */
+    public void addRange(long offset, int size) {
+        if (root != this) {
+            throw new UnsupportedOperationException("Can't add to a sub list");
+        }
+        if (rangeCount == rangeOffsets.length) {
+            rangeOffsets = grow(rangeOffsets);
+            rangeSizes = grow(rangeSizes);
+        }
+        rangeOffsets[rangeCount] = offset;
+        rangeSizes[rangeCount] = size;
+        rangeCount++;
+    }
+
+    /**
+     * Completes the sample made of the ranges added since the previous sample.
+     */
+    public void endSample() {
+        if (root != this) {
+            throw new UnsupportedOperationException("Can't add to a sub list");
+        }
+        if (sampleCount + 1 == sampleStarts.length) {
+            sampleStarts = grow(sampleStarts);
+        }
+        sampleCount++;
+        sampleStarts[sampleCount] = rangeCount;
+    }
+
+    @Override
+    public int size() {
+        return sampleCount;
+    }
+
+    /**
+     * @return size in bytes of the sample as returned by {@link #get(int)}
+     */
+    public int getSampleSize(int index) {
+        checkIndex(index);
+        index += sampleBase;
+        int size = 0;
+        for (int r = sampleStarts[index]; r < sampleStarts[index + 1]; r++) {
+            size += rangeSizes[r] + (lengthPrefixed ? 4 : 0);
+        }
+        return size;
+    }
+
+    /**
+     * @return whether the sample is stored contiguously in the file exactly
+     *         as it is returned by {@link #get(int)}
+     */
+    public boolean isContiguous(int index) {
+        checkIndex(index);
+        index += sampleBase;
+        return !lengthPrefixed && sampleStarts[index + 1] - sampleStarts[index] == 1;
+    }
+
+    /**
+     * @return file offset of a contiguous sample
+     * @see #isContiguous(int)
+     */
+    public long getSampleOffset(int index) {
+        checkIndex(index);
+        return rangeOffsets[sampleStarts[index + sampleBase]];
+    }
+
+    /**
+     * @return the file the samples are read from
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns a view of a range of this list that shares its index and file
+     * mappings and can itself be written with {@link #transferTo}.
+     */
+    @Override
+    public MappedSampleList subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > sampleCount || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", Size: " + sampleCount);
+        }
+        return new MappedSampleList(this, fromIndex, toIndex);
+    }
+
+    @Override
+    public ByteBuffer get(int index) {
+        checkIndex(index);
+        try {
+            int first = sampleStarts[index + sampleBase];
+            int last = sampleStarts[index + sampleBase + 1];
+            if (!lengthPrefixed && last - first == 1) {
+                return slice(rangeOffsets[first], rangeSizes[first]);
+            }
+            ByteBuffer sample = ByteBuffer.allocate(getSampleSize(index));
+            for (int r = first; r < last; r++) {
+                if (lengthPrefixed) {
+                    sample.putInt(rangeSizes[r]);
+                }
+                sample.put(slice(rangeOffsets[r], rangeSizes[r]));
+            }
+            sample.rewind();
+            return sample;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes all samples of this list to the target, exactly as they are
+     * returned by {@link #get(int)}, using {@link FileChannel#transferTo}
+     * so the sample data is not copied through the heap. Adjacent ranges
+     * are transferred in one call.
+     *
+     * @return number of bytes written
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        int first = sampleStarts[sampleBase];
+        int last = sampleStarts[sampleBase + sampleCount];
+        ByteBuffer prefix = lengthPrefixed ? ByteBuffer.allocate(4) : null;
+        long written = 0;
+        int r = first;
+        while (r < last) {
+            if (lengthPrefixed) {
+                prefix.clear();
+                prefix.putInt(rangeSizes[r]);
+                prefix.flip();
+                while (prefix.hasRemaining()) {
+                    written += target.write(prefix);
+                }
+            }
+            long offset = rangeOffsets[r];
+            long length = rangeSizes[r];
+            r++;
+            while (!lengthPrefixed && r < last && rangeOffsets[r] == offset + length) {
+                length += rangeSizes[r];
+                r++;
+            }
+            written += transfer(offset, length, target);
+        }
+        return written;
+    }
+
+    private long transfer(long offset, long length, WritableByteChannel target) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long count = channel.transferTo(offset + done, length - done, target);
+            if (count <= 0) {
+                throw new IOException("Unexpected end of file at " + (offset + done));
+            }
+            done += count;
+        }
+        return done;
+    }
+
+    /**
+     * Returns the given range of the file, from a mapped segment if the range
+     * lies within one, otherwise read into a heap buffer.
+     */
+    private ByteBuffer slice(long offset, int size) throws IOException {
+        int segment = (int) (offset / SEGMENT_SIZE);
+        long segmentStart = segment * SEGMENT_SIZE;
+        if (offset + size <= segmentStart + SEGMENT_SIZE) {
+            ByteBuffer mapped = root.getSegment(segment).duplicate();
+            int position = (int) (offset - segmentStart);
+            if (position + size <= mapped.limit()) {
+                mapped.position(position);
+                mapped.limit(position + size);
+                return mapped.slice();
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    private synchronized MappedByteBuffer getSegment(int segment) throws IOException {
+        if (segment >= segments.length) {
+            MappedByteBuffer[] newSegments = new MappedByteBuffer[segment + 1];
+            System.arraycopy(segments, 0, newSegments, 0, segments.length);
+            segments = newSegments;
+        }
+        if (segments[segment] == null) {
+            long start = segment * SEGMENT_SIZE;
+            long length = Math.min(SEGMENT_SIZE, channel.size() - start);
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+        return segments[segment];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= sampleCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + sampleCount);
+        }
+    }
+
+    private static long[] grow(long[] array) {
+        long[] result = new long[array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] result = new int[array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+}
@@ -26,8 +26,6 @@ import com.googlecode.mp4parser.authoring.Track;
 import com.googlecode.mp4parser.authoring.TrackMetaData;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
@@ -100,9 +98,9 @@ public class MultiplyTimeScaleTrack implements Track {
 
     static List<CompositionTimeToSample.Entry> adjustCtts(List<CompositionTimeToSample.Entry> source, int timeScaleFactor) {
         if (source != null) {
-            List<CompositionTimeToSample.Entry> entries2 = new ArrayList<CompositionTimeToSample.Entry>(source.size());
+            CompositionTimeToSample.EntryList entries2 = new CompositionTimeToSample.EntryList(source.size());
             for (CompositionTimeToSample.Entry entry : source) {
-                entries2.add(new CompositionTimeToSample.Entry(entry.getCount(), timeScaleFactor * entry.getOffset()));
+                entries2.add(entry.getCount(), timeScaleFactor * entry.getOffset());
             }
             return entries2;
         } else {
@@ -111,9 +109,9 @@ public class MultiplyTimeScaleTrack implements Track {
     }
 
     static List<TimeToSampleBox.Entry> adjustTts(List<TimeToSampleBox.Entry> source, int timeScaleFactor) {
-        LinkedList<TimeToSampleBox.Entry> entries2 = new LinkedList<TimeToSampleBox.Entry>();
+        TimeToSampleBox.EntryList entries2 = new TimeToSampleBox.EntryList(source.size());
         for (TimeToSampleBox.Entry e : source) {
-            entries2.add(new TimeToSampleBox.Entry(e.getCount(), timeScaleFactor * e.getDelta()));
+            entries2.add(e.getCount(), timeScaleFactor * e.getDelta());
         }
         return entries2;
     }
@@ -93,16 +93,16 @@ public class TextTrackImpl extends AbstractTrack {
     }
 
     public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
-        List<TimeToSampleBox.Entry> stts = new LinkedList<TimeToSampleBox.Entry>();
+        TimeToSampleBox.EntryList stts = new TimeToSampleBox.EntryList();
         long lastEnd = 0;
         for (Line sub : subs) {
             long silentTime = sub.from - lastEnd;
             if (silentTime > 0) {
-                stts.add(new TimeToSampleBox.Entry(1, silentTime));
+                stts.addSample(silentTime);
             } else if (silentTime < 0) {
                 throw new Error("Subtitle display times may not intersect");
             }
-            stts.add(new TimeToSampleBox.Entry(1, sub.to - sub.from));
+            stts.addSample(sub.to - sub.from);
             lastEnd = sub.to;
         }
         return stts;
@@ -21,28 +21,85 @@ OR OTHER DEALINGS IN THE SOFTWARE.
 package com.googlecode.mp4parser.h264.read;
 
 import com.googlecode.mp4parser.h264.CharCache;
+import com.googlecode.mp4parser.h264.Debug;
 
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * A dummy implementation of H264 RBSP reading
+ * <p>
+ * Bits are served from a 64 bit cache word that is refilled a byte at a
+ * time from a byte array, or from chunks read off an input stream, so
+ * reading n bits or counting leading zeros costs a shift instead of a
+ * method call per bit.
  *
  * @author Stanislav Vitvitskiy
  */
 public class BitstreamReader {
+    private static final int CHUNK_SIZE = 256;
+
+    /** stream to read more bytes from, null when reading an array or at its end */
     private InputStream is;
-    private int curByte;
-    private int nextByte;
-    int nBit;
+    private byte[] buf;
+    private int bufPos;
+    private int bufLimit;
+
+    /** upcoming bits, most significant first, zero below cacheBits */
+    private long cache;
+    private int cacheBits;
+
     protected static int bitsRead;
 
     protected CharCache debugBits = new CharCache(50);
 
     public BitstreamReader(InputStream is) throws IOException {
         this.is = is;
-        curByte = is.read();
-        nextByte = is.read();
+        this.buf = new byte[CHUNK_SIZE];
+    }
+
+    public BitstreamReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public BitstreamReader(byte[] data, int offset, int length) {
+        this.buf = data;
+        this.bufPos = offset;
+        this.bufLimit = offset + length;
+    }
+
+    /**
+     * Fills the cache to more than 56 bits, unless the input ends first
+     */
+    private void refill() throws IOException {
+        while (cacheBits <= 56) {
+            if (bufPos == bufLimit) {
+                if (is == null)
+                    return;
+                int read = is.read(buf, 0, buf.length);
+                if (read <= 0) {
+                    is = null;
+                    return;
+                }
+                bufPos = 0;
+                bufLimit = read;
+            }
+            cache |= (buf[bufPos++] & 0xffL) << (56 - cacheBits);
+            cacheBits += 8;
+        }
+    }
+
+    /**
+     * Drops n bits (at most 63) from the cache
+     */
+    private void skip(int n) {
+        if (Debug.debug) {
+            for (int i = 0; i < n; i++)
+                debugBits.append((cache << i) < 0 ? '1' : '0');
+        }
+        cache <<= n;
+        cacheBits -= n;
+        bitsRead += n;
     }
 
     /*
@@ -51,17 +108,14 @@ public class BitstreamReader {
       * @see ua.org.jplayer.javcodec.h264.RBSPInputStream#read1Bit()
       */
     public int read1Bit() throws IOException {
-        if (nBit == 8) {
-            advance();
-            if (curByte == -1) {
+        if (cacheBits == 0) {
+            refill();
+            if (cacheBits == 0) {
                 return -1;
             }
         }
-        int res = (curByte >> (7 - nBit)) & 1;
-        nBit++;
-
-        debugBits.append(res == 0 ? '0' : '1');
-        ++bitsRead;
+        int res = (int) (cache >>> 63);
+        skip(1);
 
         return res;
     }
@@ -74,9 +128,19 @@ public class BitstreamReader {
     public long readNBit(int n) throws IOException {
         if (n > 64)
             throw new IllegalArgumentException("Can not readByte more then 64 bit");
+        if (n == 0)
+            return 0;
+
+        if (cacheBits < n)
+            refill();
+        if (cacheBits >= n && n < 64) {
+            long val = cache >>> (64 - n);
+            skip(n);
+            return val;
+        }
 
+        // more than the cache holds, or running into the end of the input
         long val = 0;
-
         for (int i = 0; i < n; i++) {
             val <<= 1;
             val |= read1Bit();
@@ -85,10 +149,27 @@ public class BitstreamReader {
         return val;
     }
 
-    private void advance() throws IOException {
-        curByte = nextByte;
-        nextByte = is.read();
-        nBit = 0;
+    /**
+     * Reads zero bits up to and including the next one bit
+     *
+     * @return number of zero bits read
+     */
+    public int readLeadingZeros() throws IOException {
+        int count = 0;
+        while (true) {
+            if (cacheBits <= 32) {
+                refill();
+                if (cacheBits == 0)
+                    return count;
+            }
+            int zeros = Long.numberOfLeadingZeros(cache);
+            if (zeros < cacheBits) {
+                skip(zeros + 1);
+                return count + zeros;
+            }
+            count += cacheBits;
+            skip(cacheBits);
+        }
     }
 
     /*
@@ -97,13 +178,15 @@ public class BitstreamReader {
       * @see ua.org.jplayer.javcodec.h264.RBSPInputStream#readByte()
       */
     public int readByte() throws IOException {
-        if (nBit > 0) {
-            advance();
-        }
-
-        int res = curByte;
+        skip(cacheBits & 7);
 
-        advance();
+        if (cacheBits < 8) {
+            refill();
+            if (cacheBits < 8)
+                return -1;
+        }
+        int res = (int) (cache >>> 56);
+        skip(8);
 
         return res;
     }
@@ -114,18 +197,26 @@ public class BitstreamReader {
       * @see ua.org.jplayer.javcodec.h264.RBSPInputStream#moreRBSPData()
       */
     public boolean moreRBSPData() throws IOException {
-        if (nBit == 8) {
-            advance();
-        }
-        int tail = 1 << (8 - nBit - 1);
-        int mask = ((tail << 1) - 1);
-        boolean hasTail = (curByte & mask) == tail;
-
-        return !(curByte == -1 || (nextByte == -1 && hasTail));
+        refill();
+        if (cacheBits == 0)
+            return false;
+
+        // bits left in the current byte, which is the last one if nothing
+        // follows it in the cache
+        int left = cacheBits & 7;
+        if (left == 0)
+            left = 8;
+        if (cacheBits > left)
+            return true;
+
+        int tail = 1 << (left - 1);
+        boolean hasTail = (cache >>> (64 - left)) == tail;
+
+        return !hasTail;
     }
 
     public long getBitPosition() {
-        return (bitsRead * 8 + (nBit % 8));
+        return (bitsRead * 8 + getCurBit());
     }
 
     /*
@@ -134,7 +225,7 @@ public class BitstreamReader {
       * @see ua.org.jplayer.javcodec.h264.RBSPInputStream#readRemainingByte()
       */
     public long readRemainingByte() throws IOException {
-        return readNBit(8 - nBit);
+        return readNBit(cacheBits & 7);
     }
 
     /*
@@ -145,28 +236,17 @@ public class BitstreamReader {
     public int peakNextBits(int n) throws IOException {
         if (n > 8)
             throw new IllegalArgumentException("N should be less then 8");
-        if (nBit == 8) {
-            advance();
-            if (curByte == -1) {
+        if (cacheBits < n) {
+            refill();
+            if (cacheBits == 0) {
                 return -1;
             }
         }
-        int[] bits = new int[16 - nBit];
-
-        int cnt = 0;
-        for (int i = nBit; i < 8; i++) {
-            bits[cnt++] = (curByte >> (7 - i)) & 0x1;
-        }
+        int result = (int) (cache >>> (64 - n));
 
-        for (int i = 0; i < 8; i++) {
-            bits[cnt++] = (nextByte >> (7 - i)) & 0x1;
-        }
-
-        int result = 0;
-        for (int i = 0; i < n; i++) {
-            result <<= 1;
-            result |= bits[i];
-        }
+        // past the end of the input reads as ones
+        if (cacheBits < n)
+            result |= (1 << (n - cacheBits)) - 1;
 
         return result;
     }
@@ -177,7 +257,7 @@ public class BitstreamReader {
       * @see ua.org.jplayer.javcodec.h264.RBSPInputStream#byte_aligned()
       */
     public boolean isByteAligned() {
-        return (nBit % 8) == 0;
+        return (cacheBits & 7) == 0;
     }
 
     /*
@@ -189,6 +269,6 @@ public class BitstreamReader {
     }
 
     public int getCurBit() {
-        return nBit;
+        return (8 - (cacheBits & 7)) & 7;
     }
 }
\ No newline at end of file
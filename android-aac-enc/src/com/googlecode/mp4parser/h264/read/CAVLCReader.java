@@ -22,6 +22,7 @@ package com.googlecode.mp4parser.h264.read;
 
 
 import com.googlecode.mp4parser.h264.BTree;
+import com.googlecode.mp4parser.h264.Debug;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,10 +36,19 @@ public class CAVLCReader extends BitstreamReader {
         super(is);
     }
 
+    public CAVLCReader(byte[] data) {
+        super(data);
+    }
+
+    public CAVLCReader(byte[] data, int offset, int length) {
+        super(data, offset, length);
+    }
+
     public long readNBit(int n, String message) throws IOException {
         long val = readNBit(n);
 
-        trace(message, String.valueOf(val));
+        if (Debug.debug)
+            trace(message, String.valueOf(val));
 
         return val;
     }
@@ -51,9 +61,7 @@ public class CAVLCReader extends BitstreamReader {
      * @throws java.io.IOException
      */
     private int readUE() throws IOException {
-        int cnt = 0;
-        while (read1Bit() == 0)
-            cnt++;
+        int cnt = readLeadingZeros();
 
         int res = 0;
         if (cnt > 0) {
@@ -74,7 +82,8 @@ public class CAVLCReader extends BitstreamReader {
     public int readUE(String message) throws IOException {
         int res = readUE();
 
-        trace(message, String.valueOf(res));
+        if (Debug.debug)
+            trace(message, String.valueOf(res));
 
         return res;
     }
@@ -85,7 +94,8 @@ public class CAVLCReader extends BitstreamReader {
         int sign = ((val & 0x1) << 1) - 1;
         val = ((val >> 1) + (val & 0x1)) * sign;
 
-        trace(message, String.valueOf(val));
+        if (Debug.debug)
+            trace(message, String.valueOf(val));
 
         return val;
     }
@@ -94,7 +104,8 @@ public class CAVLCReader extends BitstreamReader {
 
         boolean res = read1Bit() == 0 ? false : true;
 
-        trace(message, res ? "1" : "0");
+        if (Debug.debug)
+            trace(message, res ? "1" : "0");
 
         return res;
     }
@@ -140,18 +151,18 @@ public class CAVLCReader extends BitstreamReader {
             }
             Object i = bt.getValue();
             if (i != null) {
-                trace(message, i.toString());
+                if (Debug.debug)
+                    trace(message, i.toString());
                 return i;
             }
         }
     }
 
     public int readZeroBitCount(String message) throws IOException {
-        int count = 0;
-        while (read1Bit() == 0)
-            count++;
+        int count = readLeadingZeros();
 
-        trace(message, String.valueOf(count));
+        if (Debug.debug)
+            trace(message, String.valueOf(count));
 
         return count;
     }
@@ -30,6 +30,13 @@ public class ByteBufferByteChannel implements ByteChannel {
         this.byteBuffer = byteBuffer;
     }
 
+    /**
+     * @return the buffer read from and written to
+     */
+    public ByteBuffer getByteBuffer() {
+        return byteBuffer;
+    }
+
     public int read(ByteBuffer dst) throws IOException {
         byte[] b = dst.array();
         int r = dst.remaining();
@@ -1,6 +1,6 @@
 package com.todoroo.aacenc;
 
-public class AACEncoder {
+public class AACEncoder implements AudioEncoder {
 
     /**
      * Native JNI - initialize AAC encoder
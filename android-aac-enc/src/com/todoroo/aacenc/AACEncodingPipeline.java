@@ -0,0 +1,173 @@
+package com.todoroo.aacenc;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import com.googlecode.mp4parser.authoring.tracks.AACTrackImpl;
+
+/**
+ * Encodes PCM audio to AAC while it is being captured. The producer writes
+ * into the {@link #getRingBuffer() ring buffer}; a worker thread drains it
+ * one encoder frame at a time and indexes every ADTS frame as soon as it
+ * reaches the output file. When the input ends the track is complete and
+ * can be muxed without parsing the file again.
+ * <p>
+ * Contains no Android code, so it can be driven on a plain JVM with a stub
+ * {@link AudioEncoder}.
+ *
+ */
+public class AACEncodingPipeline {
+
+    /** PCM samples per channel in one AAC frame */
+    public static final int FRAME_SAMPLES = 1024;
+
+    public interface Callback {
+        /**
+         * Called on the worker thread once all input has been encoded.
+         * {@link AACEncodingPipeline#getTrack()} can be called from here.
+         */
+        public void encodingFinished();
+    }
+
+    private final AudioEncoder encoder;
+    private final int bitrate;
+    private final int channels;
+    private final int sampleRate;
+    private final PcmRingBuffer ringBuffer;
+    private final byte[] frame;
+
+    private RandomAccessFile output;
+    private AACTrackImpl.Indexer indexer;
+    private Thread worker;
+    private Callback callback;
+
+    private AACTrackImpl track;
+    private Exception error;
+
+    /**
+     * @param bufferFrames number of frames the ring buffer holds
+     */
+    public AACEncodingPipeline(AudioEncoder encoder, int bitrate, int channels,
+            int sampleRate, int bufferFrames) {
+        this.encoder = encoder;
+        this.bitrate = bitrate;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.frame = new byte[FRAME_SAMPLES * channels * 2];
+        this.ringBuffer = new PcmRingBuffer(frame.length * bufferFrames);
+    }
+
+    public PcmRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Creates the ADTS file and starts the encoder worker
+     */
+    public synchronized void start(String outputFile) throws IOException {
+        encoder.init(bitrate, channels, sampleRate, 16, outputFile);
+        output = new RandomAccessFile(outputFile, "r");
+        indexer = new AACTrackImpl.Indexer(output.getChannel());
+
+        worker = new Thread("aac-encoder") {
+            @Override
+            public void run() {
+                encode();
+            }
+        };
+        worker.start();
+    }
+
+    private void encode() {
+        try {
+            try {
+                while (true) {
+                    int count = ringBuffer.read(frame);
+                    if (count == 0)
+                        break;
+                    if (count < frame.length) {
+                        // the encoder only takes whole frames, pad the last with silence
+                        for (int i = count; i < frame.length; i++)
+                            frame[i] = 0;
+                    }
+                    encoder.encode(frame);
+                    indexer.update();
+                    if (count < frame.length)
+                        break;
+                }
+            } finally {
+                encoder.uninit();
+            }
+            AACTrackImpl result = indexer.finish();
+            synchronized (this) {
+                track = result;
+            }
+        } catch (Exception e) {
+            synchronized (this) {
+                error = e;
+            }
+        }
+
+        Callback currentCallback = callback;
+        if (currentCallback != null)
+            currentCallback.encodingFinished();
+    }
+
+    /**
+     * Ends the input. Audio already in the ring buffer is still encoded.
+     */
+    public void close() {
+        ringBuffer.close();
+    }
+
+    /**
+     * Waits for the worker to encode the remaining input. Does not wait
+     * when called from the worker itself, i.e. from the callback, since
+     * the track is complete by then.
+     *
+     * @return the encoded track, whose samples are read from the ADTS file
+     *         until {@link #release()} is called
+     */
+    public AACTrackImpl getTrack() throws IOException {
+        Thread currentWorker;
+        synchronized (this) {
+            currentWorker = worker;
+        }
+        if (currentWorker == null)
+            throw new IllegalStateException("Pipeline has not been started");
+        if (currentWorker != Thread.currentThread()) {
+            try {
+                currentWorker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while encoding");
+            }
+        }
+        synchronized (this) {
+            if (error instanceof IOException)
+                throw (IOException) error;
+            if (error != null)
+                throw new RuntimeException(error);
+            return track;
+        }
+    }
+
+    /**
+     * Closes the ADTS file
+     */
+    public synchronized void release() {
+        try {
+            if (output != null)
+                output.close();
+        } catch (IOException e) {
+            //
+        }
+        output = null;
+    }
+
+}
@@ -1,63 +1,88 @@
 package com.todoroo.aacenc;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import android.content.Context;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder.AudioSource;
+import android.os.Handler;
+import android.os.Looper;
 
 /**
  * This class combines an Android AudioRecord and our own AACEncoder
  * to directly record an AAC audio file from the mic. Users should call
  * startRecording() and stopRecording() in sequence, and then listen
  * for the encodingFinished() callback to perform final actions like
- * converting to M4A format.
+ * writing the M4A file with writeM4A(). The callback is delivered on
+ * the main thread.
+ * <p>
+ * Audio is encoded while it is recorded: the reader thread fills the
+ * ring buffer of an {@link AACEncodingPipeline}, whose worker encodes
+ * and indexes it, so little work is left when recording stops.
  * @author Sam
  *
  */
 public class AACRecorder {
 
 	private AudioRecord audioRecord;
-	private AACEncoder encoder;
+	private AACEncodingPipeline pipeline;
 	
 	private boolean recording;
 	private AACRecorderCallbacks listener;
+	private final Handler handler = new Handler(Looper.getMainLooper());
 	
 	private static final int SAMPLE_RATE = 8000;
 	private static final int NOTIFICATION_PERIOD = 160;
 	private static final int MIN_BUFFER_SIZE = AudioRecord.getMinBufferSize(SAMPLE_RATE, 
 			AudioFormat.CHANNEL_CONFIGURATION_MONO, AudioFormat.ENCODING_PCM_16BIT) * 10;
+
+	/** ring buffer size in encoder frames, about 10 seconds of audio */
+	private static final int BUFFER_FRAMES = 10 * SAMPLE_RATE / AACEncodingPipeline.FRAME_SAMPLES;
 	
 	public interface AACRecorderCallbacks {
 		public void encodingFinished();
 	}
 	
-	private Thread readerThread = new Thread() {
-		private byte[] readBuffer = new byte[NOTIFICATION_PERIOD * 2];
+	private final Thread readerThread = new Thread() {
 		public void run() {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream(SAMPLE_RATE * 2);
-			int bytesRead = 0;
-			while(recording) {
-				bytesRead = audioRecord.read(readBuffer, 0, readBuffer.length);
-				try {
-					baos.write(readBuffer);
-				} catch (IOException e) {
-					//
+			PcmRingBuffer ringBuffer = pipeline.getRingBuffer();
+			try {
+				while(recording) {
+					int writable = ringBuffer.awaitWritable();
+					if (writable <= 0)
+						break;
+					int bytesRead = audioRecord.read(ringBuffer.array(), ringBuffer.getWriteOffset(),
+							Math.min(writable, NOTIFICATION_PERIOD * 2));
+					if (bytesRead <= 0)
+						break;
+					ringBuffer.commit(bytesRead);
 				}
-				if (bytesRead <= 0)
-					break;
+			} catch (InterruptedException e) {
+				//
 			}
-			encoder.encode(baos.toByteArray());
-			finishRecording();
-			baos.reset();
+			pipeline.close();
 		}
 	};
 	
 	
 	public AACRecorder() {
-		encoder = new AACEncoder();
+		this(new AACEncoder());
+	}
+
+	public AACRecorder(AudioEncoder encoder) {
+		pipeline = new AACEncodingPipeline(encoder, 64000, 1, SAMPLE_RATE, BUFFER_FRAMES);
+		pipeline.setCallback(new AACEncodingPipeline.Callback() {
+			public void encodingFinished() {
+				// the listener shows ui, so it is called on the main
+				// thread rather than on the encoder worker
+				handler.post(new Runnable() {
+					public void run() {
+						finishRecording();
+					}
+				});
+			}
+		});
 	}
 	
 	public synchronized void startRecording(String tempFile) {
@@ -70,7 +95,12 @@ public class AACRecorder {
 		
 		audioRecord.setPositionNotificationPeriod(NOTIFICATION_PERIOD);
 		
-		encoder.init(64000, 1, SAMPLE_RATE, 16, tempFile);
+		try {
+			pipeline.start(tempFile);
+		} catch (IOException e) {
+			audioRecord.release();
+			throw new RuntimeException(e);
+		}
 		
 		recording = true;
 		audioRecord.startRecording();
@@ -88,9 +118,22 @@ public class AACRecorder {
 	public synchronized void finishRecording() {
 		recording = false;
 		audioRecord.release();
-		encoder.uninit();
 		if (listener != null)
 			listener.encodingFinished();
+		else
+			pipeline.release();
+	}
+
+	/**
+	 * Muxes the recorded audio into an M4A file. The sample index was built
+	 * while recording, so the AAC file is not parsed again.
+	 */
+	public void writeM4A(Context context, String outFile) throws IOException {
+		try {
+			new AACToM4A().convert(context, pipeline.getTrack(), outFile);
+		} finally {
+			pipeline.release();
+		}
 	}
 	
 	public void setListener(AACRecorderCallbacks listener) {
@@ -3,8 +3,7 @@ package com.todoroo.aacenc;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PushbackInputStream;
+import java.nio.channels.FileChannel;
 
 import android.content.Context;
 
@@ -23,22 +22,33 @@ public class AACToM4A {
     }
 
     public void convert(Context context, String infile, String outfile) throws IOException {
-        AACToM4A.context = context;
-
-        InputStream input = new FileInputStream(infile);
+        FileInputStream input = new FileInputStream(infile);
+        try {
+            FileChannel channel = input.getChannel();
+
+            // samples are served from the input file while the output is written
+            convert(context, new AACTrackImpl(channel), outfile);
+        } finally {
+            input.close();
+        }
+    }
 
-        PushbackInputStream pbi = new PushbackInputStream(input, 100);
+    /**
+     * Writes an M4A file containing the given audio track
+     */
+    public void convert(Context context, Track audioTrack, String outfile) throws IOException {
+        AACToM4A.context = context;
 
-        System.err.println("well you got " + input.available());
         Movie movie = new Movie();
-
-        Track audioTrack = new AACTrackImpl(pbi);
         movie.addTrack(audioTrack);
 
         IsoFile out = new DefaultMp4Builder().build(movie);
         FileOutputStream output = new FileOutputStream(outfile);
-        out.getBox(output.getChannel());
-        output.close();
+        try {
+            out.getBox(output.getChannel());
+        } finally {
+            output.close();
+        }
     }
 
 }
@@ -0,0 +1,26 @@
+package com.todoroo.aacenc;
+
+/**
+ * Encodes 16 bit PCM into a file. Implemented by the native
+ * {@link AACEncoder}; tests can substitute a pure Java encoder.
+ *
+ */
+public interface AudioEncoder {
+
+    /**
+     * Prepares the encoder and creates the output file
+     */
+    public void init(int bitrate, int channels,
+            int sampleRate, int bitsPerSample, String outputFile);
+
+    /**
+     * Encodes one or more complete frames and appends them to the file
+     */
+    public void encode(byte[] inputArray);
+
+    /**
+     * Releases the encoder and flushes the file
+     */
+    public void uninit();
+
+}
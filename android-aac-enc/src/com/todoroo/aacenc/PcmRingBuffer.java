@@ -0,0 +1,97 @@
+package com.todoroo.aacenc;
+
+/**
+ * Fixed size ring buffer between the thread capturing PCM audio and the
+ * thread encoding it. The capturing thread reads straight into the backing
+ * array: it asks for {@link #awaitWritable()} contiguous bytes at
+ * {@link #getWriteOffset()} and then calls {@link #commit(int)}. The
+ * encoding thread takes whole frames with {@link #read(byte[])}. No memory
+ * is allocated once the buffer has been created.
+ *
+ */
+public class PcmRingBuffer {
+
+    private final byte[] buffer;
+
+    /** total bytes committed and read; positions are these modulo capacity */
+    private long written = 0;
+    private long read = 0;
+
+    private boolean closed = false;
+
+    public PcmRingBuffer(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * @return the backing array the producer writes into
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    public synchronized int getWriteOffset() {
+        return (int) (written % buffer.length);
+    }
+
+    /**
+     * Blocks until there is free space, which the consumer makes by reading.
+     *
+     * @return number of bytes that can be written contiguously from
+     *         {@link #getWriteOffset()}, or 0 if the buffer has been closed
+     */
+    public synchronized int awaitWritable() throws InterruptedException {
+        while (!closed && written - read == buffer.length)
+            wait();
+        if (closed)
+            return 0;
+        int free = (int) (buffer.length - (written - read));
+        return Math.min(free, buffer.length - getWriteOffset());
+    }
+
+    /**
+     * Publishes bytes the producer has written at {@link #getWriteOffset()}
+     */
+    public synchronized void commit(int count) {
+        if (count < 0 || written + count - read > buffer.length)
+            throw new IllegalArgumentException("Can't commit " + count + " bytes");
+        written += count;
+        notifyAll();
+    }
+
+    /**
+     * Blocks until a whole frame is available, or the buffer is closed and
+     * drained.
+     *
+     * @return number of bytes copied into the frame, which is less than its
+     *         length only for the last frame after {@link #close()}
+     */
+    public synchronized int read(byte[] frame) throws InterruptedException {
+        while (!closed && written - read < frame.length)
+            wait();
+        int count = (int) Math.min(frame.length, written - read);
+        int offset = (int) (read % buffer.length);
+        int first = Math.min(count, buffer.length - offset);
+        System.arraycopy(buffer, offset, frame, 0, first);
+        System.arraycopy(buffer, 0, frame, first, count - first);
+        read += count;
+        notifyAll();
+        return count;
+    }
+
+    /**
+     * Ends the stream. Data already committed can still be read.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * @return number of bytes committed but not yet read
+     */
+    public synchronized int available() {
+        return (int) (written - read);
+    }
+
+}
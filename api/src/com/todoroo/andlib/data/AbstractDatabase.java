@@ -5,7 +5,10 @@
  */
 package com.todoroo.andlib.data;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -14,6 +17,7 @@ import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.todoroo.andlib.data.Property.PropertyVisitor;
@@ -58,6 +62,27 @@ abstract public class AbstractDatabase {
      */
     protected abstract int getVersion();
 
+    /**
+     * Override to opt in to write-ahead logging. When enabled (and supported
+     * by the platform), queries from threads not inside a transaction are
+     * served by a small pool of read-only connections so they don't wait
+     * behind long-running writes.
+     *
+     * @return true if write-ahead logging should be used
+     */
+    protected boolean shouldUseWriteAheadLogging() {
+        return false;
+    }
+
+    /**
+     * Override to turn on the {@link QueryProfiler} when the database opens
+     *
+     * @return true if statements should be profiled
+     */
+    protected boolean shouldProfileQueries() {
+        return false;
+    }
+
     /**
      * Called after database and tables are created. Use this method to
      * create indices and perform other database maintenance
@@ -85,6 +110,62 @@ abstract public class AbstractDatabase {
      */
     protected SQLiteDatabase database = null;
 
+    /**
+     * Nesting depth of {@link #runInTransaction(Runnable)} calls
+     */
+    private int transactionDepth = 0;
+
+    /**
+     * Whether a write occurred inside the current transaction
+     */
+    private boolean updatedInTransaction = false;
+
+    /**
+     * Modification generation of each table, indexed as in {@link #getTables()}
+     */
+    private volatile AtomicLongArray tableGenerations = null;
+
+    /**
+     * Cache of small query results, invalidated by table generations
+     */
+    private final QueryResultCache queryCache = new QueryResultCache();
+
+    /**
+     * Number of read-only connections opened in write-ahead logging mode
+     */
+    private static final int READER_COUNT = 2;
+
+    /**
+     * Whether write-ahead logging was successfully enabled on the writer
+     */
+    private volatile boolean writeAheadLogging = false;
+
+    /**
+     * Read-only connections, opened lazily in write-ahead logging mode
+     */
+    private final SQLiteDatabase[] readers = new SQLiteDatabase[READER_COUNT];
+
+    /**
+     * Round-robin index into {@link #readers}
+     */
+    private final AtomicInteger nextReader = new AtomicInteger(0);
+
+    /**
+     * Thread currently running {@link #runInTransaction(Runnable)}, which
+     * must read from the writer to see its own uncommitted changes
+     */
+    private volatile Thread transactionThread = null;
+
+    /**
+     * Time spent waiting for the writer lock
+     */
+    private final LockWaitStats lockWaitStats = new LockWaitStats();
+
+    /**
+     * Statement timing and slow query log
+     */
+    private final QueryProfiler profiler = new QueryProfiler(getClass().getSimpleName());
+
     // --- listeners
 
     /**
@@ -104,6 +185,11 @@ abstract public class AbstractDatabase {
     }
 
     protected void onDatabaseUpdated() {
+        // defer notification until the outermost transaction completes
+        if(transactionDepth > 0) {
+            updatedInTransaction = true;
+            return;
+        }
         for(DatabaseUpdateListener listener : listeners) {
             listener.onDatabaseUpdated();
         }
@@ -152,6 +238,8 @@ abstract public class AbstractDatabase {
 
         try {
             database = helper.getWritableDatabase();
+            enableWriteAheadLogging();
+            profiler.setEnabled(shouldProfileQueries());
         } catch (NullPointerException e) {
             // don't know why this happens
             throw new IllegalStateException(e);
@@ -170,6 +258,17 @@ abstract public class AbstractDatabase {
         }
     }
 
+    private void enableWriteAheadLogging() {
+        writeAheadLogging = false;
+        if(!shouldUseWriteAheadLogging() || AndroidUtilities.getSdkVersion() < 11)
+            return;
+        try {
+            writeAheadLogging = database.enableWriteAheadLogging();
+        } catch (RuntimeException e) {
+            Log.e("database-" + getName(), "Error enabling write-ahead logging", e);
+        }
+    }
+
     /**
      * Open the database for reading. Must be closed afterwards
      */
@@ -184,10 +283,13 @@ abstract public class AbstractDatabase {
      * Close the database if it has been opened previously
      */
     public synchronized final void close() {
+        closeReaders();
         if(database != null) {
             database.close();
         }
         database = null;
+        writeAheadLogging = false;
+        queryCache.clear();
     }
 
     /**
@@ -210,6 +312,74 @@ abstract public class AbstractDatabase {
         return database;
     }
 
+    /**
+     * @return database to run a query on: one of the read-only connections
+     * in write-ahead logging mode, otherwise the main database
+     */
+    public final SQLiteDatabase getDatabaseForQuery() {
+        SQLiteDatabase reader = getReader();
+        if(reader != null)
+            return reader;
+        return getDatabase();
+    }
+
+    /**
+     * @return a read-only connection, or null if queries from this thread
+     * should go to the writer
+     */
+    private SQLiteDatabase getReader() {
+        if(!writeAheadLogging || transactionThread == Thread.currentThread())
+            return null;
+
+        int index = (nextReader.getAndIncrement() & Integer.MAX_VALUE) % READER_COUNT;
+        synchronized(readers) {
+            SQLiteDatabase reader = readers[index];
+            if(reader != null && reader.isOpen())
+                return reader;
+            try {
+                File path = ContextManager.getContext().getDatabasePath(getName());
+                reader = SQLiteDatabase.openDatabase(path.getPath(), null,
+                        SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+                readers[index] = reader;
+                return reader;
+            } catch (RuntimeException e) {
+                Log.e("database-" + getName(), "Error opening reader", e);
+                return null;
+            }
+        }
+    }
+
+    private void closeReaders() {
+        synchronized(readers) {
+            for(int i = 0; i < readers.length; i++) {
+                if(readers[i] != null)
+                    readers[i].close();
+                readers[i] = null;
+            }
+        }
+    }
+
+    /**
+     * @return whether write-ahead logging with read-only connections is active
+     */
+    public boolean isWriteAheadLogging() {
+        return writeAheadLogging;
+    }
+
+    /**
+     * @return profiler recording statement timings for this database
+     */
+    public QueryProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @return statistics on time spent waiting for the writer lock
+     */
+    public LockWaitStats getLockWaitStats() {
+        return lockWaitStats;
+    }
+
     /**
      * @return human-readable database name for debugging
      */
@@ -218,48 +388,201 @@ abstract public class AbstractDatabase {
         return "DB:" + getName();
     }
 
+    // --- modification tracking
+
+    private AtomicLongArray getTableGenerations() {
+        if(tableGenerations == null) {
+            synchronized(queryCache) {
+                if(tableGenerations == null)
+                    tableGenerations = new AtomicLongArray(getTables().length);
+            }
+        }
+        return tableGenerations;
+    }
+
+    /**
+     * Record a modification of the given table
+     * @param table table name
+     */
+    public void bumpGeneration(String table) {
+        Table[] tables = getTables();
+        AtomicLongArray generations = getTableGenerations();
+        for(int i = 0; i < tables.length; i++) {
+            if(tables[i].name.equals(table)) {
+                generations.incrementAndGet(i);
+                return;
+            }
+        }
+        bumpAllGenerations();
+    }
+
+    /**
+     * Record a modification to every table. Used when the set of modified
+     * tables is not known
+     */
+    public void bumpAllGenerations() {
+        AtomicLongArray generations = getTableGenerations();
+        for(int i = 0; i < generations.length(); i++)
+            generations.incrementAndGet(i);
+    }
+
+    /**
+     * Returns a number that changes whenever any table referenced by the
+     * given SQL is modified. Table references are found by name, so this may
+     * include tables the query does not actually read.
+     *
+     * @param sql compiled query
+     * @return combined generation of referenced tables
+     */
+    public long getGeneration(String sql) {
+        Table[] tables = getTables();
+        AtomicLongArray generations = getTableGenerations();
+        long generation = 0;
+        for(int i = 0; i < tables.length; i++) {
+            if(sql.contains(tables[i].name))
+                generation += generations.get(i);
+        }
+        return generation;
+    }
+
+    /**
+     * @return cache for query results keyed by {@link #getGeneration(String)}
+     */
+    public QueryResultCache getQueryCache() {
+        return queryCache;
+    }
+
     // --- database wrapper
 
     /*
      * @see android.database.sqlite.SQLiteDatabase#rawQuery(String  sql, String[] selectionArgs)
      */
-    public synchronized Cursor rawQuery(String sql, String[] selectionArgs) {
-        return getDatabase().rawQuery(sql, selectionArgs);
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        long start = System.nanoTime();
+        SQLiteDatabase reader = getReader();
+        if(reader != null)
+            return profileQuery(reader, reader.rawQuery(sql, selectionArgs), sql, start);
+
+        synchronized(this) {
+            lockWaitStats.record(start);
+            SQLiteDatabase db = getDatabase();
+            return profileQuery(db, db.rawQuery(sql, selectionArgs), sql, start);
+        }
+    }
+
+    /**
+     * Record query timing if profiling. Queries are executed lazily, so
+     * this forces execution by counting the rows.
+     *
+     * @return cursor
+     */
+    public Cursor profileQuery(SQLiteDatabase db, Cursor cursor, String sql, long startNanos) {
+        if(profiler.isEnabled())
+            profiler.record(db, sql, sql, startNanos, cursor.getCount());
+        return cursor;
     }
 
     /*
      * @see android.database.sqlite.SQLiteDatabase#insert(String  table, String  nullColumnHack, ContentValues  values)
      */
-    public synchronized long insert(String table, String nullColumnHack, ContentValues values) {
-        long result = -1;
-        try {
-            result = getDatabase().insertOrThrow(table, nullColumnHack, values);
-        } catch (SQLiteConstraintException e) { // Throw these exceptions
-            throw e;
-        } catch (Exception e) { // Suppress others
-            Log.e("SQLiteDatabase", "Error inserting " + values, e);
-            result = -1;
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        long start = System.nanoTime();
+        synchronized(this) {
+            lockWaitStats.record(start);
+            long result = -1;
+            try {
+                result = getDatabase().insertOrThrow(table, nullColumnHack, values);
+            } catch (SQLiteConstraintException e) { // Throw these exceptions
+                throw e;
+            } catch (Exception e) { // Suppress others
+                Log.e("SQLiteDatabase", "Error inserting " + values, e);
+                result = -1;
+            }
+            if(profiler.isEnabled())
+                profiler.record(null, "INSERT INTO " + table + " " + values.keySet(),
+                        null, start, result == -1 ? 0 : 1);
+            bumpGeneration(table);
+            onDatabaseUpdated();
+            return result;
         }
-        onDatabaseUpdated();
-        return result;
     }
 
     /*
      * @see android.database.sqlite.SQLiteDatabase#delete(String  table, String  whereClause, String[] whereArgs)
      */
-    public synchronized int delete(String table, String whereClause, String[] whereArgs) {
-        int result = getDatabase().delete(table, whereClause, whereArgs);
-        onDatabaseUpdated();
-        return result;
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        long start = System.nanoTime();
+        synchronized(this) {
+            lockWaitStats.record(start);
+            int result = getDatabase().delete(table, whereClause, whereArgs);
+            if(profiler.isEnabled())
+                profileWrite("DELETE FROM " + table, table, whereClause, start, result);
+            bumpGeneration(table);
+            onDatabaseUpdated();
+            return result;
+        }
     }
 
     /*
      * @see android.database.sqlite.SQLiteDatabase#update(String  table, ContentValues  values, String  whereClause, String[] whereArgs)
      */
-    public synchronized int update(String  table, ContentValues  values, String  whereClause, String[] whereArgs) {
-        int result = getDatabase().update(table, values, whereClause, whereArgs);
-        onDatabaseUpdated();
-        return result;
+    public int update(String  table, ContentValues  values, String  whereClause, String[] whereArgs) {
+        long start = System.nanoTime();
+        synchronized(this) {
+            lockWaitStats.record(start);
+            int result = getDatabase().update(table, values, whereClause, whereArgs);
+            if(profiler.isEnabled())
+                profileWrite("UPDATE " + table + " SET " + values.keySet(), table, whereClause, start, result);
+            bumpGeneration(table);
+            onDatabaseUpdated();
+            return result;
+        }
+    }
+
+    private void profileWrite(String statement, String table, String whereClause,
+            long startNanos, int rows) {
+        String where = TextUtils.isEmpty(whereClause) ? "" : " WHERE " + whereClause;
+        profiler.record(database, statement + where, "SELECT rowid FROM " + table + where,
+                startNanos, rows);
+    }
+
+    /**
+     * Run the given operations inside a single database transaction. The
+     * transaction is committed if the runnable completes normally and rolled
+     * back if it throws. Listeners are notified once at the end of the
+     * outermost transaction instead of once per write.
+     * <p>
+     * The database lock is held for the duration of the runnable, so keep
+     * network access and other slow work outside of it.
+     *
+     * @param runnable operations to perform
+     */
+    public void runInTransaction(Runnable runnable) {
+        long start = System.nanoTime();
+        synchronized(this) {
+            lockWaitStats.record(start);
+            SQLiteDatabase db = getDatabase();
+            db.beginTransaction();
+            transactionDepth++;
+            transactionThread = Thread.currentThread();
+            try {
+                runnable.run();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                transactionDepth--;
+                if(transactionDepth == 0) {
+                    transactionThread = null;
+                    if(updatedInTransaction) {
+                        updatedInTransaction = false;
+                        // readers may have cached pre-commit results under
+                        // generations bumped inside the transaction
+                        bumpAllGenerations();
+                        onDatabaseUpdated();
+                    }
+                }
+            }
+        }
     }
 
     // --- helper classes
@@ -326,6 +649,40 @@ abstract public class AbstractDatabase {
         }
     }
 
+    /**
+     * Accumulates time threads spent waiting for the writer lock
+     */
+    public static class LockWaitStats {
+
+        /** waits shorter than this are not counted as contended */
+        private static final long CONTENDED_NANOS = 1000000L;
+
+        private long acquisitions = 0;
+        private long contended = 0;
+        private long totalWaitNanos = 0;
+        private long maxWaitNanos = 0;
+
+        synchronized void record(long startNanos) {
+            long wait = System.nanoTime() - startNanos;
+            acquisitions++;
+            if(wait >= CONTENDED_NANOS)
+                contended++;
+            totalWaitNanos += wait;
+            if(wait > maxWaitNanos)
+                maxWaitNanos = wait;
+        }
+
+        public synchronized void reset() {
+            acquisitions = contended = totalWaitNanos = maxWaitNanos = 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("lock acquisitions: %d, contended: %d, total wait: %d ms, max wait: %d ms",
+                    acquisitions, contended, totalWaitNanos / 1000000L, maxWaitNanos / 1000000L);
+        }
+    }
+
     /**
      * Visitor that returns SQL constructor for this property
      *
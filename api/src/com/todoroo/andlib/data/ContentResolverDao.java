@@ -7,13 +7,19 @@ package com.todoroo.andlib.data;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.util.Log;
 
 import com.todoroo.andlib.service.Autowired;
@@ -113,6 +119,99 @@ public class ContentResolverDao<TYPE extends AbstractModel> {
         return true;
     }
 
+    /**
+     * Insert all models in one call and one transaction. Ids of the new rows
+     * are not read back, use {@link #saveAll(List)} if you need them.
+     * @param models
+     * @return number of rows inserted
+     */
+    public int bulkInsert(List<TYPE> models) {
+        ContentValues[] values = new ContentValues[models.size()];
+        for(int i = 0; i < values.length; i++) {
+            TYPE model = models.get(i);
+            writeTransitoriesToModelContentValues(model);
+            values[i] = model.getMergedValues();
+        }
+        return cr.bulkInsert(baseUri, values);
+    }
+
+    /**
+     * Create new or save existing models in one call and one transaction
+     * @param models
+     * @return number of models written to the db
+     */
+    public int saveAll(List<TYPE> models) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        ArrayList<TYPE> written = new ArrayList<TYPE>();
+        for(TYPE model : models) {
+            ContentProviderOperation operation = saveOperation(model);
+            if(operation != null) {
+                operations.add(operation);
+                written.add(model);
+            }
+        }
+        if(operations.isEmpty())
+            return 0;
+
+        ContentProviderResult[] results = applyBatch(operations);
+        int count = 0;
+        for(int i = 0; i < results.length; i++) {
+            TYPE model = written.get(i);
+            if(results[i].uri != null) {
+                model.setId(Long.parseLong(results[i].uri.getLastPathSegment()));
+                model.markSaved();
+                count++;
+            } else if(results[i].count != null && results[i].count > 0) {
+                count++;
+            } else if(save(model)) {
+                // row was gone, re-create it like save does
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Apply operations on this dao's content provider in one call and one
+     * transaction. If an operation fails, none of them are applied.
+     * @param operations
+     * @return operation results
+     */
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations) {
+        try {
+            return cr.applyBatch(baseUri.getAuthority(), operations);
+        } catch (RemoteException e) {
+            throw new RuntimeException(e);
+        } catch (OperationApplicationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param model
+     * @return operation that saves the model like {@link #save(AbstractModel)}
+     *         does, null if an existing model has no changes
+     */
+    protected ContentProviderOperation saveOperation(TYPE model) {
+        writeTransitoriesToModelContentValues(model);
+        if(model.isSaved()) {
+            if(model.getSetValues() == null)
+                return null;
+            return ContentProviderOperation.newUpdate(uriWithId(model.getId())).
+                withValues(model.getSetValues()).build();
+        }
+        return ContentProviderOperation.newInsert(baseUri).
+            withValues(model.getMergedValues()).build();
+    }
+
+    /**
+     * @param id
+     * @return operation that deletes the item with the given id
+     */
+    protected ContentProviderOperation deleteOperation(long id) {
+        return ContentProviderOperation.newDelete(uriWithId(id)).build();
+    }
+
     private void writeTransitoriesToModelContentValues(AbstractModel model) {
         Set<String> keys = model.getAllTransitoryKeys();
         if (keys != null) {
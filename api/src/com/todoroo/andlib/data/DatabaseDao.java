@@ -11,12 +11,15 @@ import java.util.ArrayList;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.util.Log;
 
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.DependencyInjectionService;
 import com.todoroo.andlib.sql.Criterion;
 import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.DateUtilities;
 
 
 
@@ -105,6 +108,71 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         return new TodorooCursor<TYPE>(cursor, query.getFields());
     }
 
+    /**
+     * Interface for converting a query result into a value that can be cached
+     */
+    public interface CursorReader<MTYPE extends AbstractModel, RESULT> {
+        /**
+         * @param cursor cursor positioned before the first row. It will be
+         *        closed by the caller
+         * @return result object. Must not be modified once returned
+         */
+        public RESULT read(TodorooCursor<MTYPE> cursor);
+    }
+
+    /**
+     * Run a query and convert its result with the given reader
+     *
+     * @param query
+     * @param reader converts the cursor into a result
+     * @return result of reader
+     */
+    public <RESULT> RESULT queryAndRead(Query query, CursorReader<TYPE, RESULT> reader) {
+        return read(query(query), reader);
+    }
+
+    /**
+     * Run a query and convert its result with the given reader, reusing
+     * the previous result if none of the tables referenced by the query
+     * have been modified since. Intended for counts, aggregates and other
+     * small results that are requested repeatedly. The current time is
+     * bound to the minute, see {@link QueryResultCache#bindNow(String, long)};
+     * queries that read it in other ways are always run.
+     *
+     * @param query
+     * @param reader converts the cursor into a result. Results must be
+     *        immutable as they are shared between callers
+     * @return result of reader
+     */
+    @SuppressWarnings("unchecked")
+    public <RESULT> RESULT queryCached(Query query, CursorReader<TYPE, RESULT> reader) {
+        query.from(table);
+        String sql = QueryResultCache.bindNow(query.toString(), DateUtilities.now());
+        if(QueryResultCache.isTimeDependent(sql))
+            return queryAndRead(query, reader);
+
+        QueryResultCache cache = database.getQueryCache();
+        long generation = database.getGeneration(sql);
+        Object cached = cache.get(sql, generation);
+        if(cached != null)
+            return (RESULT) cached;
+
+        if(debug)
+            Log.i("SQL-" + modelClass.getSimpleName(), sql); //$NON-NLS-1$
+        RESULT result = read(new TodorooCursor<TYPE>(database.rawQuery(sql, null),
+                query.getFields()), reader);
+        cache.put(sql, generation, result);
+        return result;
+    }
+
+    private <RESULT> RESULT read(TodorooCursor<TYPE> cursor, CursorReader<TYPE, RESULT> reader) {
+        try {
+            return reader.read(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Construct a query with raw SQL
      *
@@ -117,9 +185,13 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         String[] fields = new String[properties.length];
         for(int i = 0; i < properties.length; i++)
             fields[i] = properties[i].name;
-        return new TodorooCursor<TYPE>(database.getDatabase().query(table.name,
-                fields, selection, selectionArgs, null, null, null),
-                properties);
+        long start = System.nanoTime();
+        SQLiteDatabase db = database.getDatabaseForQuery();
+        Cursor cursor = db.query(table.name, fields, selection, selectionArgs, null, null, null);
+        if(database.getProfiler().isEnabled())
+            database.profileQuery(db, cursor, SQLiteQueryBuilder.buildQueryString(false,
+                    table.name, fields, selection, null, null, null, null), start);
+        return new TodorooCursor<TYPE>(cursor, properties);
     }
 
     /**
@@ -277,6 +349,16 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         return database.update(table.name, values, criterion.toString(), null);
     }
 
+    /**
+     * Perform the given operations in a single transaction on this DAO's
+     * database. See {@link AbstractDatabase#runInTransaction(Runnable)}
+     *
+     * @param runnable operations to perform
+     */
+    public void runInTransaction(Runnable runnable) {
+        database.runInTransaction(runnable);
+    }
+
     // --- helper methods
 
 
@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Query profiler for {@link AbstractDatabase}. When enabled, records the
+ * time spent in every query and write, aggregated per query template
+ * (the statement with literals replaced by <code>?</code>), and keeps the
+ * most recent slow statements along with their
+ * <code>EXPLAIN QUERY PLAN</code> output.
+ * <p>
+ * Statements are usually recorded while the caller holds the database
+ * lock, so slow statements are explained later on a background thread.
+ * <p>
+ * Profiling is off by default and costs a single volatile read per
+ * statement while disabled.
+ */
+@SuppressWarnings("nls")
+public class QueryProfiler {
+
+    /** statements slower than this are logged with their query plan */
+    private static final long SLOW_NANOS = 50 * 1000000L;
+
+    /** number of slow statements to keep */
+    private static final int SLOW_LOG_SIZE = 32;
+
+    /** maximum number of distinct templates to track */
+    private static final int MAX_TEMPLATES = 500;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    /**
+     * Aggregated statistics for a query template
+     */
+    public static class TemplateStats {
+        public final String template;
+        public long calls;
+        public long rows;
+        public long totalNanos;
+        public long maxNanos;
+
+        public TemplateStats(String template) {
+            this.template = template;
+        }
+    }
+
+    /**
+     * A single slow statement
+     */
+    public static class SlowStatement {
+        public final long timestamp;
+        public final String sql;
+        public final long nanos;
+        public final int rows;
+
+        /** query plan, filled in once the statement has been explained */
+        public volatile String plan;
+
+        public SlowStatement(long timestamp, String sql, long nanos, int rows, String plan) {
+            this.timestamp = timestamp;
+            this.sql = sql;
+            this.nanos = nanos;
+            this.rows = rows;
+            this.plan = plan;
+        }
+    }
+
+    private volatile boolean enabled = false;
+
+    private final String name;
+
+    private final HashMap<String, TemplateStats> templates = new HashMap<String, TemplateStats>();
+
+    private final SlowStatement[] slowLog = new SlowStatement[SLOW_LOG_SIZE];
+
+    private int slowLogNext = 0;
+
+    /** runs EXPLAIN QUERY PLAN for slow statements, created on first use */
+    private ExecutorService explainer = null;
+
+    public QueryProfiler(String name) {
+        this.name = name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Record a completed statement.
+     *
+     * @param db database the statement ran on, used to explain slow statements
+     * @param sql statement
+     * @param explainSql query to pass to EXPLAIN QUERY PLAN, or null if
+     *        the statement can't be explained
+     * @param startNanos {@link System#nanoTime()} before the statement ran
+     * @param rows rows returned or affected
+     */
+    public void record(SQLiteDatabase db, String sql, String explainSql, long startNanos, int rows) {
+        if(!enabled)
+            return;
+        long nanos = System.nanoTime() - startNanos;
+        String template = toTemplate(sql);
+
+        synchronized(this) {
+            TemplateStats stats = templates.get(template);
+            if(stats == null) {
+                if(templates.size() >= MAX_TEMPLATES)
+                    templates.clear();
+                stats = new TemplateStats(template);
+                templates.put(template, stats);
+            }
+            stats.calls++;
+            stats.rows += Math.max(rows, 0);
+            stats.totalNanos += nanos;
+            if(nanos > stats.maxNanos)
+                stats.maxNanos = nanos;
+        }
+
+        if(nanos < SLOW_NANOS)
+            return;
+
+        Log.w("db-profile-" + name, String.format("%d ms: %s", nanos / 1000000L, sql));
+        final SlowStatement statement = new SlowStatement(System.currentTimeMillis(), sql, nanos, rows, null);
+        synchronized(this) {
+            slowLog[slowLogNext] = statement;
+            slowLogNext = (slowLogNext + 1) % SLOW_LOG_SIZE;
+        }
+
+        if(db != null && explainSql != null) {
+            final SQLiteDatabase explainDb = db;
+            final String explainQuery = explainSql;
+            getExplainer().execute(new Runnable() {
+                public void run() {
+                    statement.plan = explain(explainDb, explainQuery);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return single background thread for explaining slow statements.
+     *         Explains beyond the size of the slow log are dropped
+     */
+    private synchronized ExecutorService getExplainer() {
+        if(explainer == null) {
+            explainer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(SLOW_LOG_SIZE), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "db-profile-explain-" + name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.DiscardPolicy());
+        }
+        return explainer;
+    }
+
+    /**
+     * @return statement with literals replaced by placeholders
+     */
+    public static String toTemplate(String sql) {
+        String template = STRING_LITERAL.matcher(sql).replaceAll("?");
+        template = NUMBER_LITERAL.matcher(template).replaceAll("?");
+        return IN_LIST.matcher(template).replaceAll("(?...)");
+    }
+
+    private static String explain(SQLiteDatabase db, String sql) {
+        if(db == null || !db.isOpen())
+            return null;
+        try {
+            Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+            try {
+                StringBuilder plan = new StringBuilder();
+                int detail = cursor.getColumnIndex("detail");
+                for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                    if(plan.length() > 0)
+                        plan.append('\n');
+                    plan.append(detail >= 0 ? cursor.getString(detail) : cursor.getString(cursor.getColumnCount() - 1));
+                }
+                return plan.toString();
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            return "explain failed: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Clear all recorded statistics
+     */
+    public synchronized void reset() {
+        templates.clear();
+        for(int i = 0; i < slowLog.length; i++)
+            slowLog[i] = null;
+        slowLogNext = 0;
+    }
+
+    /**
+     * @return copies of the statistics of each template, in no particular order
+     */
+    public synchronized ArrayList<TemplateStats> getTemplateStats() {
+        ArrayList<TemplateStats> stats = new ArrayList<TemplateStats>(templates.size());
+        for(TemplateStats item : templates.values()) {
+            TemplateStats copy = new TemplateStats(item.template);
+            copy.calls = item.calls;
+            copy.rows = item.rows;
+            copy.totalNanos = item.totalNanos;
+            copy.maxNanos = item.maxNanos;
+            stats.add(copy);
+        }
+        return stats;
+    }
+
+    /**
+     * @return the slow statements still in the log, oldest first
+     */
+    public synchronized ArrayList<SlowStatement> getSlowStatements() {
+        ArrayList<SlowStatement> slow = new ArrayList<SlowStatement>(SLOW_LOG_SIZE);
+        for(int i = 0; i < SLOW_LOG_SIZE; i++) {
+            SlowStatement statement = slowLog[(slowLogNext + i) % SLOW_LOG_SIZE];
+            if(statement != null)
+                slow.add(statement);
+        }
+        return slow;
+    }
+
+    /**
+     * Write a report of the slowest templates and recent slow statements
+     * @param out
+     */
+    public void dump(Writer out) {
+        ArrayList<TemplateStats> stats;
+        ArrayList<SlowStatement> slow;
+        synchronized(this) {
+            stats = getTemplateStats();
+            slow = getSlowStatements();
+        }
+
+        Collections.sort(stats, new Comparator<TemplateStats>() {
+            public int compare(TemplateStats a, TemplateStats b) {
+                return a.totalNanos > b.totalNanos ? -1 : (a.totalNanos == b.totalNanos ? 0 : 1);
+            }
+        });
+
+        PrintWriter writer = new PrintWriter(out);
+        writer.println("=== query templates by total time (" + name + ")");
+        writer.println("calls\trows\ttotal ms\tmax ms\ttemplate");
+        for(TemplateStats item : stats) {
+            writer.printf("%d\t%d\t%d\t%d\t%s%n", item.calls, item.rows,
+                    item.totalNanos / 1000000L, item.maxNanos / 1000000L, item.template);
+        }
+
+        writer.println();
+        writer.println("=== recent slow statements");
+        for(SlowStatement statement : slow) {
+            writer.printf("%tF %<tT: %d ms, %d rows%n", statement.timestamp,
+                    statement.nanos / 1000000L, statement.rows);
+            writer.println(statement.sql);
+            if(statement.plan != null)
+                writer.println(statement.plan);
+            writer.println();
+        }
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter out = new StringWriter();
+        dump(out);
+        return out.toString();
+    }
+}
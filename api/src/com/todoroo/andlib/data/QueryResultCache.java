@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.todoroo.andlib.utility.DateUtilities;
+
+/**
+ * Small least-recently-used cache of query results, keyed by compiled SQL.
+ * Each entry remembers the generation of the tables it was read from; a
+ * lookup with a different generation is treated as a miss, so entries are
+ * invalidated implicitly by any write to a table they depend on. The
+ * current time is bound to the start of the minute, see
+ * {@link #bindNow(String, long)}, so queries built on it are cached for up
+ * to a minute. Other queries that read the current time are never cached.
+ * <p>
+ * Cached results are shared between callers and must not be modified.
+ */
+public class QueryResultCache {
+
+    /** maximum number of cached queries */
+    private static final int MAX_ENTRIES = 64;
+
+    /** lists and other collections larger than this are not cached */
+    private static final int MAX_COLLECTION_SIZE = 500;
+
+    /** sql for the current time in seconds, as written by Functions.now() */
+    private static final String NOW = "strftime('%s','now')"; //$NON-NLS-1$
+
+    private static class CacheEntry {
+        public final long generation;
+        public final Object result;
+
+        public CacheEntry(long generation, Object result) {
+            this.generation = generation;
+            this.result = result;
+        }
+    }
+
+    private final LinkedHashMap<String, CacheEntry> entries =
+        new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param sql compiled query
+     * @param generation current generation of the tables the query reads
+     * @return cached result, or null if absent or stale
+     */
+    public synchronized Object get(String sql, long generation) {
+        CacheEntry entry = entries.get(sql);
+        if(entry == null || entry.generation != generation) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    /**
+     * Store a query result
+     * @param sql compiled query
+     * @param generation table generation read before the query was run
+     * @param result immutable query result
+     */
+    public synchronized void put(String sql, long generation, Object result) {
+        if(result == null)
+            return;
+        if(result instanceof Collection<?> && ((Collection<?>) result).size() > MAX_COLLECTION_SIZE)
+            return;
+        entries.put(sql, new CacheEntry(generation, result));
+    }
+
+    /**
+     * Replaces sqlite's current time with the given time truncated to the
+     * minute. The bound time becomes part of the sql and so of the cache
+     * key: a query is run again at most once a minute, and a task whose
+     * time passed less than a minute ago may be reported late.
+     *
+     * @param sql compiled query
+     * @param now current time in milliseconds
+     * @return sql with the current time replaced by a constant
+     */
+    public static String bindNow(String sql, long now) {
+        if(!sql.contains(NOW))
+            return sql;
+        return sql.replace(NOW, Long.toString(now / DateUtilities.ONE_MINUTE * 60));
+    }
+
+    /**
+     * @param sql compiled query
+     * @return true if the query's result depends on the current time through
+     *         sqlite's 'now', so it can change without any table being
+     *         written and must not be cached
+     */
+    @SuppressWarnings("nls")
+    public static boolean isTimeDependent(String sql) {
+        return sql.toLowerCase().contains("'now'");
+    }
+
+    /**
+     * Remove all cached results
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    @SuppressWarnings("nls")
+    public synchronized String toString() {
+        return "QueryResultCache: " + entries.size() + " entries, " + hits +
+            " hits, " + misses + " misses";
+    }
+}
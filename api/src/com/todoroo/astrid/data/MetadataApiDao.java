@@ -8,6 +8,7 @@ package com.todoroo.astrid.data;
 import java.util.ArrayList;
 import java.util.HashSet;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
 
@@ -55,7 +56,7 @@ public class MetadataApiDao extends ContentResolverDao<Metadata> {
     /**
      * Synchronize metadata for given task id. Deletes rows in database that
      * are not identical to those in the metadata list, creates rows that
-     * have no match.
+     * have no match. All changes are applied in one transaction.
      *
      * @param taskId id of task to perform synchronization on
      * @param metadata list of new metadata items to save
@@ -70,6 +71,7 @@ public class MetadataApiDao extends ContentResolverDao<Metadata> {
             newMetadataValues.add(metadatum.getMergedValues());
         }
 
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
         Metadata item = new Metadata();
         TodorooCursor<Metadata> cursor = query(Query.select(Metadata.PROPERTIES).where(Criterion.and(MetadataCriteria.byTask(taskId),
                 metadataCriteria)));
@@ -88,7 +90,7 @@ public class MetadataApiDao extends ContentResolverDao<Metadata> {
                 }
 
                 // not matched. cut it
-                delete(id);
+                operations.add(deleteOperation(id));
             }
         } finally {
             cursor.close();
@@ -96,10 +98,13 @@ public class MetadataApiDao extends ContentResolverDao<Metadata> {
 
         // everything that remains shall be written
         for(ContentValues values : newMetadataValues) {
-            item.clear();
-            item.mergeWith(values);
-            save(item);
+            Metadata newItem = new Metadata();
+            newItem.mergeWith(values);
+            operations.add(saveOperation(newItem));
         }
+
+        if(!operations.isEmpty())
+            applyBatch(operations);
     }
 
 
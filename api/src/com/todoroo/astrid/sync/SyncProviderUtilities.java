@@ -61,6 +61,11 @@ abstract public class SyncProviderUtilities {
         return getPrefs().getString(getIdentifier() + PREF_TOKEN, null) != null;
     }
 
+    /** @return preference key of the authentication token */
+    public String getTokenKey() {
+        return getIdentifier() + PREF_TOKEN;
+    }
+
     /** authentication token, or null if doesn't exist */
     public String getToken() {
         return getPrefs().getString(getIdentifier() + PREF_TOKEN, null);
@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.timsu.astrid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.service.ContextManager;
+import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.actfm.sync.ActFmPreferenceService;
+import com.todoroo.astrid.actfm.sync.ActFmSyncService;
+import com.todoroo.astrid.actfm.sync.ActFmSyncV2Provider;
+import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.astrid.data.SyncFlags;
+import com.todoroo.astrid.data.TagData;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.service.TagDataService;
+import com.todoroo.astrid.service.TaskService;
+import com.todoroo.astrid.sync.SyncResultCallbackAdapter;
+
+/**
+ * Runs the work triggered by C2DM pushes on a single background worker.
+ * Web updates are queued and coalesced per task and tag id: a batch is
+ * fetched once no push has arrived for {@link #WINDOW} millis (or at the
+ * latest {@link #MAX_DELAY} after its first push), and a batch that is
+ * larger than {@link #FULL_SYNC_THRESHOLD} ids is replaced by a single
+ * delta sync. Ids that fail to fetch are also covered by a delta sync.
+ * <p>
+ * Pushes arrive in a BroadcastReceiver whose process may be killed or put
+ * to sleep once onReceive returns, so a partial wake lock is held while
+ * any work is pending on the worker.
+ */
+@SuppressWarnings("nls")
+public class C2DMDispatcher {
+
+    /** quiet period after the last push before a batch is fetched */
+    static final long WINDOW = 2000L;
+
+    /** longest a push waits for its batch to be fetched */
+    static final long MAX_DELAY = 10000L;
+
+    /** batches with more ids than this are fetched with one sync */
+    static final int FULL_SYNC_THRESHOLD = 10;
+
+    private static final long MIN_MILLIS_BETWEEN_FULL_SYNCS = DateUtilities.ONE_HOUR;
+
+    @Autowired TaskService taskService;
+    @Autowired TagDataService tagDataService;
+    @Autowired ActFmPreferenceService actFmPreferenceService;
+    @Autowired ActFmSyncService actFmSyncService;
+
+    private static C2DMDispatcher instance = null;
+
+    public static synchronized C2DMDispatcher getInstance() {
+        if(instance == null)
+            instance = new C2DMDispatcher(WINDOW, MAX_DELAY);
+        return instance;
+    }
+
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+
+    private final long window;
+    private final long maxDelay;
+    private final PowerManager.WakeLock wakeLock;
+
+    // --- pending batch, guarded by this
+
+    private final LinkedHashSet<String> pendingTasks = new LinkedHashSet<String>();
+    private final LinkedHashSet<String> pendingTags = new LinkedHashSet<String>();
+    private boolean flushScheduled = false;
+    private long firstQueued;
+    private long lastQueued;
+
+    private final Runnable flusher = new Runnable() {
+        public void run() {
+            long wait = flushIfDue();
+            if(wait > 0)
+                worker.schedule(this, wait, TimeUnit.MILLISECONDS);
+        }
+    };
+
+    private final SyncResultCallbackAdapter refreshOnlyCallback = new SyncResultCallbackAdapter() {
+        @Override
+        public void finished() {
+            ContextManager.getContext().sendBroadcast(new Intent(AstridApiConstants.BROADCAST_EVENT_REFRESH));
+        }
+    };
+
+    C2DMDispatcher(long window, long maxDelay) {
+        this.window = window;
+        this.maxDelay = maxDelay;
+        DependencyInjectionService.getInstance().inject(this);
+
+        PowerManager powerManager = (PowerManager) ContextManager.getContext().getSystemService(
+                Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "c2dm-dispatch");
+        wakeLock.setReferenceCounted(true);
+    }
+
+    /** @return current time, overridden by tests */
+    protected long now() {
+        return DateUtilities.now();
+    }
+
+    /**
+     * Stops the worker. Pending work is dropped.
+     */
+    synchronized void shutdown() {
+        worker.shutdownNow();
+        if(flushScheduled) {
+            flushScheduled = false;
+            wakeLock.release();
+        }
+    }
+
+    // --- queueing
+
+    /**
+     * Queues the fetch requested by a web update push
+     */
+    public void queueWebUpdate(Intent intent) {
+        if(intent.hasExtra("tag_id"))
+            queueTag(intent.getStringExtra("tag_id"));
+        else if(intent.hasExtra("task_id"))
+            queueTask(intent.getStringExtra("task_id"));
+        else
+            queue(null, null);
+    }
+
+    /**
+     * Queues a fetch of the task with the given remote id
+     */
+    public void queueTask(String remoteId) {
+        queue(pendingTasks, remoteId);
+    }
+
+    /**
+     * Queues a fetch of the tag with the given remote id
+     */
+    public void queueTag(String remoteId) {
+        queue(pendingTags, remoteId);
+    }
+
+    /**
+     * Runs the given work on the worker, ahead of any batch that is still
+     * waiting for its window to close
+     */
+    public void execute(final Runnable runnable) {
+        wakeLock.acquire();
+        worker.execute(new Runnable() {
+            public void run() {
+                try {
+                    runnable.run();
+                } finally {
+                    wakeLock.release();
+                }
+            }
+        });
+    }
+
+    private synchronized void queue(LinkedHashSet<String> pending, String remoteId) {
+        if(pending != null && remoteId != null)
+            pending.add(remoteId);
+        lastQueued = now();
+        if(!flushScheduled) {
+            flushScheduled = true;
+            firstQueued = lastQueued;
+            wakeLock.acquire();
+            worker.schedule(flusher, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Fetches the pending batch if its window has closed. Called on the
+     * worker.
+     *
+     * @return millis until the batch is due, or 0 if it was fetched or
+     *         nothing was pending
+     */
+    long flushIfDue() {
+        List<String> tasks, tags;
+        synchronized(this) {
+            if(!flushScheduled)
+                return 0;
+            long wait = Math.min(lastQueued + window, firstQueued + maxDelay) - now();
+            if(wait > 0)
+                return wait;
+            tasks = new ArrayList<String>(pendingTasks);
+            tags = new ArrayList<String>(pendingTags);
+            pendingTasks.clear();
+            pendingTags.clear();
+            flushScheduled = false;
+        }
+        try {
+            flush(tasks, tags);
+        } catch (RuntimeException e) {
+            Log.e("c2dm-dispatch", "flush", e);
+        } finally {
+            wakeLock.release();
+        }
+        return 0;
+    }
+
+    // --- fetching
+
+    /**
+     * Fetches a batch of coalesced updates. Called on the worker.
+     */
+    protected void flush(List<String> tasks, List<String> tags) {
+        if(!actFmPreferenceService.isLoggedIn())
+            return;
+
+        boolean fullSyncDue = DateUtilities.now() - actFmPreferenceService.getLastSyncDate() > MIN_MILLIS_BETWEEN_FULL_SYNCS;
+        if((fullSyncDue || tasks.size() + tags.size() > FULL_SYNC_THRESHOLD) && !actFmPreferenceService.isOngoing()) {
+            fullSync();
+            return;
+        }
+
+        // fetch every id even if some fail, the failed ones are caught up
+        // by a delta sync afterwards
+        boolean failed = false;
+        for(String remoteId : tags) {
+            try {
+                fetchTag(remoteId);
+            } catch (IOException e) {
+                Log.e("c2dm-dispatch", "tag-io-exception", e);
+                failed = true;
+            }
+        }
+        for(String remoteId : tasks) {
+            try {
+                fetchTask(remoteId);
+            } catch (IOException e) {
+                Log.e("c2dm-dispatch", "task-io-exception", e);
+                failed = true;
+            }
+        }
+
+        if(failed && !actFmPreferenceService.isOngoing()) {
+            fullSync();
+            return;
+        }
+
+        Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_EVENT_REFRESH);
+        ContextManager.getContext().sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+    }
+
+    /**
+     * Runs a delta sync of active tasks, which refreshes the ui when done
+     */
+    protected void fullSync() {
+        new ActFmSyncV2Provider().synchronizeActiveTasks(false, refreshOnlyCallback);
+    }
+
+    protected void fetchTag(String remoteId) throws IOException {
+        TodorooCursor<TagData> cursor = tagDataService.query(
+                Query.select(TagData.PROPERTIES).where(TagData.REMOTE_ID.eq(remoteId)));
+        try {
+            TagData tagData = new TagData();
+            if(cursor.getCount() == 0) {
+                tagData.setValue(TagData.REMOTE_ID, Long.parseLong(remoteId));
+                tagData.putTransitory(SyncFlags.ACTFM_SUPPRESS_SYNC, true);
+                tagDataService.save(tagData);
+            } else {
+                cursor.moveToNext();
+                tagData.readFromCursor(cursor);
+            }
+
+            actFmSyncService.fetchTag(tagData);
+        } catch (NumberFormatException e) {
+            // invalid tag id
+        } catch (JSONException e) {
+            Log.e("c2dm-tag-rx", "json-exception", e);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    protected void fetchTask(String remoteId) throws IOException {
+        TodorooCursor<Task> cursor = taskService.query(
+                Query.select(Task.PROPERTIES).where(Task.REMOTE_ID.eq(remoteId)));
+        try {
+            Task task = new Task();
+            if(cursor.getCount() == 0) {
+                task.setValue(Task.REMOTE_ID, Long.parseLong(remoteId));
+                task.putTransitory(SyncFlags.ACTFM_SUPPRESS_SYNC, true);
+                taskService.save(task);
+            } else {
+                cursor.moveToNext();
+                task.readFromCursor(cursor);
+            }
+
+            actFmSyncService.fetchTask(task);
+        } catch (NumberFormatException e) {
+            // invalid task id
+        } catch (JSONException e) {
+            Log.e("c2dm-task-rx", "json-exception", e);
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -34,7 +34,6 @@ import com.todoroo.andlib.utility.Preferences;
 import com.todoroo.astrid.actfm.TagViewFragment;
 import com.todoroo.astrid.actfm.sync.ActFmPreferenceService;
 import com.todoroo.astrid.actfm.sync.ActFmSyncService;
-import com.todoroo.astrid.actfm.sync.ActFmSyncV2Provider;
 import com.todoroo.astrid.activity.ShortcutActivity;
 import com.todoroo.astrid.activity.TaskListActivity;
 import com.todoroo.astrid.activity.TaskListFragment;
@@ -50,7 +49,6 @@ import com.todoroo.astrid.reminders.Notifications;
 import com.todoroo.astrid.service.AstridDependencyInjector;
 import com.todoroo.astrid.service.TagDataService;
 import com.todoroo.astrid.service.TaskService;
-import com.todoroo.astrid.sync.SyncResultCallbackAdapter;
 import com.todoroo.astrid.tags.TagFilterExposer;
 import com.todoroo.astrid.utility.Constants;
 
@@ -62,8 +60,6 @@ public class C2DMReceiver extends BroadcastReceiver {
     private static final String PREF_REGISTRATION = "c2dm_key";
     private static final String PREF_LAST_C2DM = "c2dm_last";
 
-    private static final long MIN_MILLIS_BETWEEN_FULL_SYNCS = DateUtilities.ONE_HOUR;
-
     @Autowired TaskService taskService;
     @Autowired TagDataService tagDataService;
     @Autowired UpdateDao updateDao;
@@ -74,13 +70,6 @@ public class C2DMReceiver extends BroadcastReceiver {
         AstridDependencyInjector.initialize();
     }
 
-    private final SyncResultCallbackAdapter refreshOnlyCallback = new SyncResultCallbackAdapter() {
-        @Override
-        public void finished() {
-            ContextManager.getContext().sendBroadcast(new Intent(AstridApiConstants.BROADCAST_EVENT_REFRESH));
-        }
-    };
-
     private static String getDeviceID() {
         String id = Secure.getString(ContextManager.getContext().getContentResolver(), Secure.ANDROID_ID);;
         if(AndroidUtilities.getSdkVersion() > 8) { //Gingerbread and above
@@ -108,84 +97,24 @@ public class C2DMReceiver extends BroadcastReceiver {
         if (intent.getAction().equals("com.google.android.c2dm.intent.REGISTRATION")) {
             handleRegistration(intent);
         } else if (intent.getAction().equals("com.google.android.c2dm.intent.RECEIVE")) {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    if (actFmPreferenceService.isLoggedIn()) {
-                        if(intent.hasExtra("web_update"))
-                            if (DateUtilities.now() - actFmPreferenceService.getLastSyncDate() > MIN_MILLIS_BETWEEN_FULL_SYNCS && !actFmPreferenceService.isOngoing())
-                                new ActFmSyncV2Provider().synchronizeActiveTasks(false, refreshOnlyCallback);
-                            else
-                                handleWebUpdate(intent);
-                        else
+            C2DMDispatcher dispatcher = C2DMDispatcher.getInstance();
+            if(intent.hasExtra("web_update")) {
+                dispatcher.queueWebUpdate(intent);
+            } else {
+                dispatcher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (actFmPreferenceService.isLoggedIn())
                             handleMessage(intent);
                     }
-                }
-            }).start();
-         }
-     }
-
-    // --- web update handling
-
-    /** Handle web task or list changed */
-    protected void handleWebUpdate(Intent intent) {
-        try {
-            if(intent.hasExtra("tag_id")) {
-                TodorooCursor<TagData> cursor = tagDataService.query(
-                        Query.select(TagData.PROPERTIES).where(TagData.REMOTE_ID.eq(
-                                intent.getStringExtra("tag_id"))));
-                try {
-                    TagData tagData = new TagData();
-                    if(cursor.getCount() == 0) {
-                        tagData.setValue(TagData.REMOTE_ID, Long.parseLong(intent.getStringExtra("tag_id")));
-                        tagData.putTransitory(SyncFlags.ACTFM_SUPPRESS_SYNC, true);
-                        tagDataService.save(tagData);
-                    } else {
-                        cursor.moveToNext();
-                        tagData.readFromCursor(cursor);
-                    }
-
-                    actFmSyncService.fetchTag(tagData);
-                } finally {
-                    cursor.close();
-                }
-            } else if(intent.hasExtra("task_id")) {
-                TodorooCursor<Task> cursor = taskService.query(
-                        Query.select(Task.PROPERTIES).where(Task.REMOTE_ID.eq(
-                                intent.getStringExtra("task_id"))));
-                try {
-                    final Task task = new Task();
-                    if(cursor.getCount() == 0) {
-                        task.setValue(Task.REMOTE_ID, Long.parseLong(intent.getStringExtra("task_id")));
-                        task.putTransitory(SyncFlags.ACTFM_SUPPRESS_SYNC, true);
-                        taskService.save(task);
-                    } else {
-                        cursor.moveToNext();
-                        task.readFromCursor(cursor);
-                    }
-
-                    actFmSyncService.fetchTask(task);
-                } catch(NumberFormatException e) {
-                    // invalid task id
-                } finally {
-                    cursor.close();
-                }
+                });
             }
-
-            Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_EVENT_REFRESH);
-            ContextManager.getContext().sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
-
-        } catch (IOException e) {
-            Log.e("c2dm-tag-rx", "io-exception", e);
-            return;
-        } catch (JSONException e) {
-            Log.e("c2dm-tag-rx", "json-exception", e);
         }
     }
 
     // --- message handling
 
-    /** Handle message. Run on separate thread. */
+    /** Handle message. Run on the dispatcher's worker. */
     private void handleMessage(Intent intent) {
         String message = intent.getStringExtra("alert");
         Context context = ContextManager.getContext();
@@ -213,17 +142,11 @@ public class C2DMReceiver extends BroadcastReceiver {
         final String token_id = intent.getStringExtra("tid");
         // unregister
         if (!actFmPreferenceService.isLoggedIn() || user_id != ActFmPreferenceService.userId()) {
-
-            new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        actFmSyncService.invoke("user_unset_c2dm", "tid", token_id, "oid", user_id);
-                    } catch (IOException e) {
-                        //
-                    }
-                }
-            }.start();
+            try {
+                actFmSyncService.invoke("user_unset_c2dm", "tid", token_id, "oid", user_id);
+            } catch (IOException e) {
+                //
+            }
             return;
         }
 
@@ -308,18 +231,7 @@ public class C2DMReceiver extends BroadcastReceiver {
                 task.putTransitory(SyncFlags.ACTFM_SUPPRESS_SYNC, true);
                 taskService.save(task);
 
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            actFmSyncService.fetchTask(task);
-                        } catch (IOException e) {
-                            Log.e("c2dm-task-rx", "io-exception", e);
-                        } catch (JSONException e) {
-                            Log.e("c2dm-task-rx", "json-exception", e);
-                        }
-                    }
-                }).start();
+                C2DMDispatcher.getInstance().queueTask(intent.getStringExtra("task_id"));
             } else {
                 cursor.moveToNext();
                 task.readFromCursor(cursor);
@@ -348,18 +260,7 @@ public class C2DMReceiver extends BroadcastReceiver {
                 tagData.putTransitory(SyncFlags.ACTFM_SUPPRESS_SYNC, true);
                 tagDataService.save(tagData);
 
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            actFmSyncService.fetchTag(tagData);
-                        } catch (IOException e) {
-                            Log.e("c2dm-tag-rx", "io-exception", e);
-                        } catch (JSONException e) {
-                            Log.e("c2dm-tag-rx", "json-exception", e);
-                        }
-                    }
-                }).start();
+                C2DMDispatcher.getInstance().queueTag(intent.getStringExtra("tag_id"));
             } else {
                 cursor.moveToNext();
                 tagData.readFromCursor(cursor);
@@ -14,7 +14,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -51,6 +50,7 @@ import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.andlib.utility.Preferences;
 import com.todoroo.astrid.billing.BillingConstants;
 import com.todoroo.astrid.dao.MetadataDao;
+import com.todoroo.astrid.dao.PendingPushDao;
 import com.todoroo.astrid.dao.TagDataDao;
 import com.todoroo.astrid.dao.TaskDao;
 import com.todoroo.astrid.dao.TaskDao.TaskCriteria;
@@ -58,6 +58,7 @@ import com.todoroo.astrid.dao.UpdateDao;
 import com.todoroo.astrid.dao.UserDao;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.MetadataApiDao.MetadataCriteria;
+import com.todoroo.astrid.data.PendingPush;
 import com.todoroo.astrid.data.RemoteModel;
 import com.todoroo.astrid.data.SyncFlags;
 import com.todoroo.astrid.data.TagData;
@@ -103,14 +104,14 @@ public final class ActFmSyncService {
     @Autowired TagDataDao tagDataDao;
     @Autowired UpdateDao updateDao;
     @Autowired UserDao userDao;
+    @Autowired PendingPushDao pendingPushDao;
     @Autowired MetadataDao metadataDao;
     @Autowired ABTestEventReportingService abTestEventReportingService;
 
     public static final long TIME_BETWEEN_TRIES = 5 * DateUtilities.ONE_MINUTE;
 
-    private static final int PUSH_TYPE_TASK = 0;
-    private static final int PUSH_TYPE_TAG = 1;
-    private static final int PUSH_TYPE_UPDATE = 2;
+    /** most failed pushes retried in one pass of the retry thread */
+    private static final int RETRY_BATCH_SIZE = 25;
 
     private String token;
 
@@ -118,17 +119,6 @@ public final class ActFmSyncService {
         DependencyInjectionService.getInstance().inject(this);
     }
 
-    private class FailedPush {
-        int pushType;
-        long itemId;
-
-        public FailedPush(int pushType, long itemId) {
-            this.pushType = pushType;
-            this.itemId = itemId;
-        }
-    }
-
-    private final List<FailedPush> failedPushes = Collections.synchronizedList(new LinkedList<FailedPush>());
     private Thread pushRetryThread = null;
     private Runnable pushRetryRunnable;
 
@@ -143,6 +133,10 @@ public final class ActFmSyncService {
         initializeRetryRunnable();
         initializeTagOrderRunnable();
 
+        // retry pushes that failed before the process was last stopped
+        if(pendingPushDao.getNextAttempt() > 0)
+            startRetryThread();
+
         taskDao.addListener(new ModelUpdateListener<Task>() {
             @Override
             public void onModelUpdated(final Task model) {
@@ -225,33 +219,41 @@ public final class ActFmSyncService {
         pushRetryRunnable = new Runnable() {
             public void run() {
                 while (true) {
-                    AndroidUtilities.sleepDeep(TIME_BETWEEN_TRIES);
-                    if(failedPushes.isEmpty()) {
-                        synchronized(ActFmSyncService.this) {
+                    long nextAttempt;
+                    synchronized(ActFmSyncService.this) {
+                        nextAttempt = pendingPushDao.getNextAttempt();
+                        if(nextAttempt == 0) {
                             pushRetryThread = null;
                             return;
                         }
                     }
-                    if(failedPushes.size() > 0) {
-                        // Copy into a second queue so we don't end up infinitely retrying in the same loop
-                        Queue<FailedPush> toTry = new LinkedList<FailedPush>();
-                        while (failedPushes.size() > 0) {
-                            toTry.add(failedPushes.remove(0));
-                        }
-                        while(!toTry.isEmpty() && !actFmPreferenceService.isOngoing()) {
-                            FailedPush pushOp = toTry.remove();
-                            switch(pushOp.pushType) {
-                            case PUSH_TYPE_TASK:
-                                pushTask(pushOp.itemId);
-                                break;
-                            case PUSH_TYPE_TAG:
-                                pushTag(pushOp.itemId);
-                                break;
-                            case PUSH_TYPE_UPDATE:
-                                pushUpdate(pushOp.itemId);
-                                break;
-                            }
+                    long now = DateUtilities.now();
+                    if(nextAttempt > now) {
+                        // wake up in time for pushes that fail in the meantime
+                        AndroidUtilities.sleepDeep(Math.min(nextAttempt - now, TIME_BETWEEN_TRIES));
+                        continue;
+                    }
+                    if(actFmPreferenceService.isOngoing() || !checkForToken()) {
+                        AndroidUtilities.sleepDeep(TIME_BETWEEN_TRIES);
+                        continue;
+                    }
+
+                    // pushes that fail again are rescheduled, so each pass makes progress
+                    long passStart = DateUtilities.now();
+                    for(PendingPush push : pendingPushDao.getDue(passStart, RETRY_BATCH_SIZE)) {
+                        long itemId = push.getValue(PendingPush.ITEM);
+                        switch(push.getValue(PendingPush.TYPE)) {
+                        case PendingPush.TYPE_TASK:
+                            pushTask(itemId);
+                            break;
+                        case PendingPush.TYPE_TAG:
+                            pushTag(itemId);
+                            break;
+                        case PendingPush.TYPE_UPDATE:
+                            pushUpdate(itemId);
+                            break;
                         }
+                        pendingPushDao.removeIfDue(push.getId(), passStart);
                     }
                 }
             }
@@ -293,16 +295,25 @@ public final class ActFmSyncService {
         };
     }
 
-    private void addFailedPush(FailedPush fp) {
-        failedPushes.add(fp);
-        synchronized(this) {
-            if(pushRetryThread == null) {
-                pushRetryThread = new Thread(pushRetryRunnable);
-                pushRetryThread.start();
-            }
+    private void addFailedPush(int type, long itemId) {
+        pendingPushDao.schedule(type, itemId, TIME_BETWEEN_TRIES);
+        startRetryThread();
+    }
+
+    private synchronized void startRetryThread() {
+        if(pushRetryThread == null) {
+            pushRetryThread = new Thread(pushRetryRunnable);
+            pushRetryThread.start();
         }
     }
 
+    /**
+     * Forget all pushes waiting for a retry, e.g. when the user logs out
+     */
+    public void clearFailedPushes() {
+        pendingPushDao.deleteWhere(Criterion.all);
+    }
+
     public void waitUntilEmpty() {
         waitUntilEmpty.block();
     }
@@ -357,7 +368,7 @@ public final class ActFmSyncService {
             updateDao.saveExisting(update);
         } catch (IOException e) {
             if (notPermanentError(e))
-                addFailedPush(new FailedPush(PUSH_TYPE_UPDATE, update.getId()));
+                addFailedPush(PendingPush.TYPE_UPDATE, update.getId());
             handleException("task-save", e);
         }
     }
@@ -530,7 +541,7 @@ public final class ActFmSyncService {
             handleException("task-save-json", e);
         } catch (IOException e) {
             if (notPermanentError(e)) {
-                addFailedPush(new FailedPush(PUSH_TYPE_TASK, task.getId()));
+                addFailedPush(PendingPush.TYPE_TASK, task.getId());
             } else {
                 handleException("task-save-io", e);
                 task.setValue(Task.LAST_SYNC, DateUtilities.now() + 1000L);
@@ -836,7 +847,7 @@ public final class ActFmSyncService {
                 handleException("refetch-error-tag", e);
             }
         } catch (IOException e) {
-            addFailedPush(new FailedPush(PUSH_TYPE_TAG, tagData.getId()));
+            addFailedPush(PendingPush.TYPE_TAG, tagData.getId());
             handleException("tag-save", e);
         }
     }
@@ -1452,6 +1463,7 @@ public final class ActFmSyncService {
             Task remote = new Task();
 
             ArrayList<Metadata> metadata = new ArrayList<Metadata>();
+            HashMap<Long, ArrayList<Metadata>> metadataByTask = new HashMap<Long, ArrayList<Metadata>>(list.length());
             HashSet<Long> ids = new HashSet<Long>(list.length());
 
             long timeDelta = serverTime == 0 ? 0 : DateUtilities.now() - serverTime * 1000;
@@ -1498,11 +1510,13 @@ public final class ActFmSyncService {
                 }
 
                 ids.add(remote.getId());
-                metadataService.synchronizeMetadata(remote.getId(), metadata, MetadataCriteria.withKey(TagService.KEY));
+                metadataByTask.put(remote.getId(), new ArrayList<Metadata>(metadata));
                 synchronizeAttachments(item, remote);
                 remote.clear();
             }
 
+            metadataService.synchronizeMetadata(metadataByTask, MetadataCriteria.withKey(TagService.KEY), null);
+
             if(deleteExtras) {
                 Long[] localIds = ids.toArray(new Long[ids.size()]);
                 deleteExtras(localIds);
@@ -146,6 +146,7 @@ public class ActFmSyncV2Provider extends SyncV2Provider {
     public void signOut() {
         actFmPreferenceService.setToken(null);
         actFmPreferenceService.clearLastSyncDate();
+        actFmSyncService.clearFailedPushes();
         ActFmPreferenceService.premiumLogout();
         C2DMReceiver.unregister();
     }
@@ -20,7 +20,6 @@ import android.widget.Toast;
 import com.timsu.astrid.R;
 import com.todoroo.aacenc.AACRecorder;
 import com.todoroo.aacenc.AACRecorder.AACRecorderCallbacks;
-import com.todoroo.aacenc.AACToM4A;
 import com.todoroo.andlib.utility.DialogUtilities;
 
 public class AACRecordingActivity extends Activity implements AACRecorderCallbacks {
@@ -89,7 +88,7 @@ public class AACRecordingActivity extends Activity implements AACRecorderCallbac
             AtomicReference<String> nameRef = new AtomicReference<String>();
             String outFile = FileUtilities.getNewAudioAttachmentPath(this, nameRef);
 
-            new AACToM4A().convert(this, tempFile, outFile);
+            recorder.writeM4A(this, outFile);
 
             Intent result = new Intent();
             result.putExtra(RESULT_OUTFILE, outFile);
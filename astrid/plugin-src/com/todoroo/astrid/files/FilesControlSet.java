@@ -35,6 +35,7 @@ import android.widget.Toast;
 import com.timsu.astrid.R;
 import com.todoroo.aacenc.RecognizerApi;
 import com.todoroo.aacenc.RecognizerApi.PlaybackExceptionHandler;
+import com.todoroo.andlib.data.AbstractModel;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.DependencyInjectionService;
@@ -61,6 +62,8 @@ public class FilesControlSet extends PopupControlSet {
     private ActFmSyncService actFmSyncService;
 
     private final ArrayList<Metadata> files = new ArrayList<Metadata>();
+    private ArrayList<Metadata> prefetchedFiles = null;
+    private long prefetchedTaskId = AbstractModel.NO_ID;
     private final LinearLayout fileDisplayList;
     private LinearLayout fileList;
     private final LayoutInflater inflater;
@@ -89,35 +92,82 @@ public class FilesControlSet extends PopupControlSet {
     public void readFromTask(Task task) {
         super.readFromTask(task);
 
-        refreshMetadata();
+        ArrayList<Metadata> loaded = null;
+        synchronized (this) {
+            if (prefetchedTaskId == task.getId())
+                loaded = prefetchedFiles;
+            prefetchedFiles = null;
+            prefetchedTaskId = AbstractModel.NO_ID;
+        }
+        if (loaded == null)
+            loaded = loadFiles(task.getId());
+        setFiles(loaded);
         refreshDisplayView();
     }
 
+    /**
+     * Loads and validates the task's attachments, which reads the database
+     * and checks each file on disk, so readFromTask can just bind them
+     */
+    @Override
+    public void prefetchFromTask(Task task) {
+        ArrayList<Metadata> loaded = loadFiles(task.getId());
+        synchronized (this) {
+            prefetchedFiles = loaded;
+            prefetchedTaskId = task.getId();
+        }
+    }
+
+    /**
+     * Reloads attachments after they changed. Ignores prefetched files,
+     * which may predate the change
+     */
     public void refreshMetadata() {
         if (model != null) {
-            TodorooCursor<Metadata> cursor = metadataService.query(
-                    Query.select(Metadata.PROPERTIES)
-                    .where(Criterion.and(MetadataCriteria.byTaskAndwithKey(model.getId(), FileMetadata.METADATA_KEY),
-                            FileMetadata.DELETION_DATE.eq(0))));
-            try {
-                files.clear();
-                for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-                    Metadata metadata = new Metadata();
-                    metadata.readFromCursor(cursor);
-                    files.add(metadata);
-                }
-            } finally {
-                cursor.close();
+            synchronized (this) {
+                prefetchedFiles = null;
+                prefetchedTaskId = AbstractModel.NO_ID;
+            }
+            setFiles(loadFiles(model.getId()));
+        }
+    }
+
+    private void setFiles(ArrayList<Metadata> loaded) {
+        files.clear();
+        files.addAll(loaded);
+        if (initialized)
+            afterInflate();
+    }
+
+    /**
+     * @return true if the task read last has any attachments
+     */
+    public boolean hasFiles() {
+        return !files.isEmpty();
+    }
+
+    private ArrayList<Metadata> loadFiles(long taskId) {
+        ArrayList<Metadata> result = new ArrayList<Metadata>();
+        TodorooCursor<Metadata> cursor = metadataService.query(
+                Query.select(Metadata.PROPERTIES)
+                .where(Criterion.and(MetadataCriteria.byTaskAndwithKey(taskId, FileMetadata.METADATA_KEY),
+                        FileMetadata.DELETION_DATE.eq(0))));
+        try {
+            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                Metadata metadata = new Metadata();
+                metadata.readFromCursor(cursor);
+                result.add(metadata);
             }
-            validateFiles();
-            if (initialized)
-                afterInflate();
+        } finally {
+            cursor.close();
         }
+        validateFiles(result);
+        return result;
     }
 
-    private void validateFiles() {
-        for (int i = 0; i < files.size(); i++) {
-            Metadata m = files.get(i);
+    private void validateFiles(ArrayList<Metadata> list) {
+        for (int i = 0; i < list.size(); i++) {
+            Metadata m = list.get(i);
             if (m.containsNonNullValue(FileMetadata.FILE_PATH)) {
                 File f = new File(m.getValue(FileMetadata.FILE_PATH));
                 if (!f.exists()) {
@@ -126,7 +176,7 @@ public class FilesControlSet extends PopupControlSet {
                         metadataService.save(m);
                     } else { // No local file and no url -- delete the metadata
                         metadataService.delete(m);
-                        files.remove(i);
+                        list.remove(i);
                         i--;
                     }
                 }
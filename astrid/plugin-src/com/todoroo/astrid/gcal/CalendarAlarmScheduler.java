@@ -1,6 +1,10 @@
 package com.todoroo.astrid.gcal;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import android.app.AlarmManager;
 import android.app.PendingIntent;
@@ -9,6 +13,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.timsu.astrid.R;
@@ -24,6 +30,28 @@ public class CalendarAlarmScheduler {
     public static final String URI_PREFIX = "cal-reminder";
     public static final String URI_PREFIX_POSTPONE = "cal-postpone";
 
+    /** how long before an event its reminder goes off */
+    private static final long REMINDER_LEAD = DateUtilities.ONE_MINUTE * 15;
+
+    /**
+     * Event alarms that are currently set, as id:start pairs, so that runs
+     * only touch the alarms of events that were added, moved or removed
+     */
+    private static final String PREF_SCHEDULED = "calendar_alarms_scheduled";
+
+    /**
+     * Wall clock time of the boot the scheduled alarms were set in. Alarms
+     * don't survive a reboot, so a different boot time means all are gone
+     */
+    private static final String PREF_BOOT = "calendar_alarms_boot";
+
+    /**
+     * How far the boot time may drift as the wall clock is corrected. A
+     * reboot moves it by at least the time the device was up and shutting
+     * down, and a larger clock change just sets all alarms again
+     */
+    private static final long BOOT_TOLERANCE = DateUtilities.ONE_MINUTE / 2;
+
     public static void scheduleAllCalendarAlarms(Context context) {
         if (!Preferences.getBoolean(R.string.p_calendar_reminders, true))
             return;
@@ -33,44 +61,46 @@ public class CalendarAlarmScheduler {
         long now = DateUtilities.now();
 
         AlarmManager am = (AlarmManager)context.getSystemService(Context.ALARM_SERVICE);
+
+        // alarms are gone after a reboot, in which case all are set again
+        long bootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        boolean alarmsKept = isSameBoot(Preferences.getLong(PREF_BOOT, 0), bootTime);
+        HashMap<Long, Long> scheduled = alarmsKept ? readScheduled() : new HashMap<Long, Long>();
+        Intent rescheduleAlarm = new Intent(CalendarStartupReceiver.BROADCAST_RESCHEDULE_CAL_ALARMS);
+
         Cursor events = cr.query(Calendars.getCalendarContentUri(Calendars.CALENDAR_CONTENT_EVENTS),
                 new String[] { Calendars.ID_COLUMN_NAME, Calendars.EVENTS_DTSTART_COL },
                 Calendars.EVENTS_DTSTART_COL + " > ? AND " + Calendars.EVENTS_DTSTART_COL + " < ?",
-                new String[] { Long.toString(now + DateUtilities.ONE_MINUTE * 15), Long.toString(now + DateUtilities.ONE_DAY) },
+                new String[] { Long.toString(now + REMINDER_LEAD), Long.toString(now + DateUtilities.ONE_DAY) },
                 null);
         try {
-            if (events != null && events.getCount() > 0) {
+            if (events != null) {
+                HashMap<Long, Long> current = new HashMap<Long, Long>();
                 int idIndex = events.getColumnIndex(Calendars.ID_COLUMN_NAME);
                 int dtstartIndex = events.getColumnIndexOrThrow(Calendars.EVENTS_DTSTART_COL);
 
-                for (events.moveToFirst(); !events.isAfterLast(); events.moveToNext()) {
-                    Intent eventAlarm = new Intent(context, CalendarAlarmReceiver.class);
-                    eventAlarm.setAction(CalendarAlarmReceiver.BROADCAST_CALENDAR_REMINDER);
-
-                    long start = events.getLong(dtstartIndex);
-                    long id = events.getLong(idIndex);
+                for (events.moveToFirst(); !events.isAfterLast(); events.moveToNext())
+                    current.put(events.getLong(idIndex), events.getLong(dtstartIndex));
 
-                    eventAlarm.setData(Uri.parse(URI_PREFIX + "://" + id));
-
-                    PendingIntent pendingIntent = PendingIntent.getBroadcast(context,
-                            CalendarAlarmReceiver.REQUEST_CODE_CAL_REMINDER, eventAlarm, 0);
-
-                    am.cancel(pendingIntent);
-
-                    long alarmTime = start - DateUtilities.ONE_MINUTE * 15;
-                    am.set(AlarmManager.RTC_WAKEUP, alarmTime, pendingIntent);
+                AlarmChanges changes = diff(scheduled, current, now);
+                for (Entry<Long, Long> entry : changes.set.entrySet()) {
+                    // setting an alarm replaces one with the same intent
+                    long alarmTime = entry.getValue() - REMINDER_LEAD;
+                    am.set(AlarmManager.RTC_WAKEUP, alarmTime, getEventIntent(context, entry.getKey()));
 
                     if (Constants.DEBUG)
                         Log.w(TAG, "Scheduling calendar alarm for " + new Date(alarmTime));
                 }
+                for (Long id : changes.cancel)
+                    am.cancel(getEventIntent(context, id));
 
+                writeScheduled(current);
+                Preferences.setLong(PREF_BOOT, bootTime);
             }
 
             // Schedule alarm to recheck and reschedule calendar alarms in 12 hours
-            Intent rescheduleAlarm = new Intent(CalendarStartupReceiver.BROADCAST_RESCHEDULE_CAL_ALARMS);
             PendingIntent pendingReschedule = PendingIntent.getBroadcast(context, 0,
                     rescheduleAlarm, 0);
-            am.cancel(pendingReschedule);
             am.set(AlarmManager.RTC, DateUtilities.now() + DateUtilities.ONE_HOUR * 12, pendingReschedule);
         } finally {
             if (events != null)
@@ -79,4 +109,78 @@ public class CalendarAlarmScheduler {
 
     }
 
+    /**
+     * Alarms to set, as event id and start, and alarms to cancel
+     */
+    static class AlarmChanges {
+        final HashMap<Long, Long> set = new HashMap<Long, Long>();
+        final ArrayList<Long> cancel = new ArrayList<Long>();
+    }
+
+    /**
+     * Compares the events alarms were set for with the events in the window
+     * now. Added and moved events need an alarm. Events that were deleted or
+     * moved out of the window need theirs cancelled, unless it has gone off
+     * already because the event starts soon.
+     *
+     * @param scheduled id and start of the events alarms were set for
+     * @param current id and start of the events in the window
+     */
+    static AlarmChanges diff(Map<Long, Long> scheduled, Map<Long, Long> current, long now) {
+        AlarmChanges changes = new AlarmChanges();
+        for (Entry<Long, Long> entry : current.entrySet()) {
+            Long previous = scheduled.get(entry.getKey());
+            if (previous == null || !previous.equals(entry.getValue()))
+                changes.set.put(entry.getKey(), entry.getValue());
+        }
+        for (Entry<Long, Long> entry : scheduled.entrySet()) {
+            if (!current.containsKey(entry.getKey()) && entry.getValue() - REMINDER_LEAD > now)
+                changes.cancel.add(entry.getKey());
+        }
+        return changes;
+    }
+
+    /**
+     * @return true if both boot times, wall clock time minus time since
+     *         boot, belong to the same boot
+     */
+    static boolean isSameBoot(long scheduledBoot, long bootTime) {
+        return scheduledBoot > 0 && Math.abs(bootTime - scheduledBoot) < BOOT_TOLERANCE;
+    }
+
+    private static PendingIntent getEventIntent(Context context, long id) {
+        Intent eventAlarm = new Intent(context, CalendarAlarmReceiver.class);
+        eventAlarm.setAction(CalendarAlarmReceiver.BROADCAST_CALENDAR_REMINDER);
+        eventAlarm.setData(Uri.parse(URI_PREFIX + "://" + id));
+        return PendingIntent.getBroadcast(context,
+                CalendarAlarmReceiver.REQUEST_CODE_CAL_REMINDER, eventAlarm, 0);
+    }
+
+    private static HashMap<Long, Long> readScheduled() {
+        HashMap<Long, Long> scheduled = new HashMap<Long, Long>();
+        String value = Preferences.getStringValue(PREF_SCHEDULED);
+        if (TextUtils.isEmpty(value))
+            return scheduled;
+        for (String pair : value.split(",")) {
+            int split = pair.indexOf(':');
+            try {
+                scheduled.put(Long.parseLong(pair.substring(0, split)),
+                        Long.parseLong(pair.substring(split + 1)));
+            } catch (RuntimeException e) {
+                // corrupt entry, its event will be scheduled again
+            }
+        }
+        return scheduled;
+    }
+
+    private static void writeScheduled(HashMap<Long, Long> scheduled) {
+        StringBuilder value = new StringBuilder();
+        for (Entry<Long, Long> entry : scheduled.entrySet()) {
+            if (value.length() > 0)
+                value.append(',');
+            value.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        Preferences.setString(PREF_SCHEDULED, value.toString());
+    }
+
 }
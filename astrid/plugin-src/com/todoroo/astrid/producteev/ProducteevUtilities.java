@@ -46,6 +46,9 @@ public class ProducteevUtilities extends SyncProviderUtilities {
 
     public static final String PREF_SERVER_LAST_SYNC = IDENTIFIER + "_last_server"; //$NON-NLS-1$
 
+    /** prefix of the per-dashboard server time up to which tasks were read */
+    public static final String PREF_SERVER_LAST_SYNC_DASHBOARD = IDENTIFIER + "_last_server_dash_"; //$NON-NLS-1$
+
     public static final String PREF_SERVER_LAST_NOTIFICATION = IDENTIFIER + "_last_notification"; //$NON-NLS-1$
 
     public static final String PREF_SERVER_LAST_ACTIVITY = IDENTIFIER + "_last_activity"; //$NON-NLS-1$
@@ -72,6 +75,18 @@ public class ProducteevUtilities extends SyncProviderUtilities {
             return (long) defaultDashboard;
     }
 
+    /**
+     * @return server time up to which the dashboard's tasks have been read,
+     *         null if they never were
+     */
+    public String getDashboardLastSync(long dashboard) {
+        return Preferences.getStringValue(PREF_SERVER_LAST_SYNC_DASHBOARD + dashboard);
+    }
+
+    public void setDashboardLastSync(long dashboard, String serverTime) {
+        Preferences.setString(PREF_SERVER_LAST_SYNC_DASHBOARD + dashboard, serverTime);
+    }
+
     private ProducteevUtilities() {
         // prevent instantiation
     }
@@ -20,6 +20,7 @@ import org.json.JSONObject;
 
 import android.text.TextUtils;
 
+import com.todoroo.andlib.service.RestClient;
 import com.todoroo.andlib.utility.Pair;
 
 @SuppressWarnings("nls")
@@ -33,7 +34,9 @@ public class ProducteevInvoker {
     /** saved credentials in case we need to re-log in */
     private String retryEmail;
     private String retryPassword;
-    private String token = null;
+    private volatile String token = null;
+
+    private final RestClient restClient;
 
     /**
      * Create new producteev service
@@ -41,8 +44,19 @@ public class ProducteevInvoker {
      * @param apiSecret
      */
     public ProducteevInvoker(String apiKey, String apiSecret) {
+        this(apiKey, apiSecret, new ProducteevRestClient());
+    }
+
+    /**
+     * Create new producteev service talking through the given client
+     * @param apiKey
+     * @param apiSecret
+     * @param restClient
+     */
+    public ProducteevInvoker(String apiKey, String apiSecret, RestClient restClient) {
         this.apiKey = apiKey;
         this.apiSecret = apiSecret;
+        this.restClient = restClient;
     }
 
     // --- authentication and time
@@ -538,8 +552,6 @@ public class ProducteevInvoker {
 
     // --- invocation
 
-    private final ProducteevRestClient restClient = new ProducteevRestClient();
-
     /**
      * Invokes authenticated method using HTTP GET. Will retry after re-authenticating if service exception encountered
      *
@@ -559,8 +571,7 @@ public class ProducteevInvoker {
             } catch (ApiSignatureException e) {
                 // clear cookies, get new token, retry
                 String oldToken = token;
-                restClient.reset();
-                authenticate(retryEmail, retryPassword);
+                reauthenticate(oldToken);
                 for(int i = 0; i < getParameters.length; i++)
                     if(oldToken.equals(getParameters[i])) {
                         getParameters[i] = getToken();
@@ -593,6 +604,18 @@ public class ProducteevInvoker {
         }
     }
 
+    /**
+     * Logs in again unless another thread already did so since the given
+     * token was found to be rejected
+     */
+    private synchronized void reauthenticate(String oldToken) throws IOException, ApiServiceException {
+        if(oldToken != null && !oldToken.equals(token))
+            return;
+        if(restClient instanceof ProducteevRestClient)
+            ProducteevRestClient.reset();
+        authenticate(retryEmail, retryPassword);
+    }
+
     /**
      * Invokes API method using HTTP GET
      *
@@ -16,7 +16,14 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -41,6 +48,9 @@ public class ProducteevRestClient implements RestClient {
 
     private static final int TIMEOUT_MILLIS = 30000;
 
+    /** number of requests that may be in flight at once */
+    private static final int MAX_CONNECTIONS = 4;
+
     private static HttpClient httpClient = null;
 
     private static String convertStreamToString(InputStream is) {
@@ -71,13 +81,22 @@ public class ProducteevRestClient implements RestClient {
         return sb.toString();
     }
 
-    private synchronized static void initializeHttpClient() {
+    /**
+     * @return the shared client, which may be used by several threads at once
+     */
+    private synchronized static HttpClient getHttpClient() {
         if (httpClient == null) {
             HttpParams params = new BasicHttpParams();
             HttpConnectionParams.setConnectionTimeout(params, TIMEOUT_MILLIS);
             HttpConnectionParams.setSoTimeout(params, TIMEOUT_MILLIS);
-            httpClient = new DefaultHttpClient(params);
+            ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS));
+            SchemeRegistry registry = new SchemeRegistry();
+            registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80)); //$NON-NLS-1$
+            registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443)); //$NON-NLS-1$
+            httpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
         }
+        return httpClient;
     }
 
     private String processHttpResponse(HttpResponse response) throws IOException, ApiServiceException {
@@ -128,15 +147,15 @@ public class ProducteevRestClient implements RestClient {
      * @return response, or null if there was no response
      * @throws IOException
      */
-    public synchronized String get(String url) throws IOException {
-        initializeHttpClient();
+    public String get(String url) throws IOException {
+        HttpClient client = getHttpClient();
 
         if(Constants.DEBUG)
             System.err.println("GET: " + url); //$NON-NLS-1$ // (debug)
 
         try {
             HttpGet httpGet = new HttpGet(url);
-            HttpResponse response = httpClient.execute(httpGet);
+            HttpResponse response = client.execute(httpGet);
 
             return processHttpResponse(response);
         } catch (IOException e) {
@@ -157,8 +176,8 @@ public class ProducteevRestClient implements RestClient {
      * @param headers
      * @throws IOException
      */
-    public synchronized String post(String url, HttpEntity data, Header... headers) throws IOException {
-        initializeHttpClient();
+    public String post(String url, HttpEntity data, Header... headers) throws IOException {
+        HttpClient client = getHttpClient();
 
         if(Constants.DEBUG)
             System.err.println("POST: " + url); //$NON-NLS-1$ // (debug)
@@ -166,7 +185,7 @@ public class ProducteevRestClient implements RestClient {
         try {
             HttpPost httpPost = new HttpPost(url);
             httpPost.setEntity(data);
-            HttpResponse response = httpClient.execute(httpPost);
+            HttpResponse response = client.execute(httpPost);
 
             return processHttpResponse(response);
         } catch (IOException e) {
@@ -181,7 +200,7 @@ public class ProducteevRestClient implements RestClient {
     /**
      * Destroy and re-create http client
      */
-    public void reset() {
+    public synchronized static void reset() {
         httpClient = null;
     }
 
@@ -9,6 +9,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -74,6 +78,12 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
     /** map of producteev dashboard id + label name  to id's */
     private final HashMap<String, Long> labelMap = new HashMap<String, Long>();
 
+    /** number of tasks pushed at once */
+    private static final int NUM_THREADS = 4;
+
+    /** dashboards read on the sync thread while tasks are being pushed */
+    private StoreObject[] dashboardSnapshot;
+
     static {
         AstridDependencyInjector.initialize();
     }
@@ -86,6 +96,15 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
         DependencyInjectionService.getInstance().inject(this);
     }
 
+    /**
+     * Synchronize through the given invoker, for tests
+     */
+    ProducteevSyncProvider(ProducteevInvoker invoker) {
+        this();
+        this.invoker = invoker;
+        this.dataService = ProducteevDataService.getInstance();
+    }
+
     // ----------------------------------------------------------------------
     // ------------------------------------------------------ utility methods
     // ----------------------------------------------------------------------
@@ -103,6 +122,8 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
         preferences.clearLastSyncDate();
 
         dataService = ProducteevDataService.getInstance();
+        for(StoreObject dashboard : dataService.getDashboards())
+            preferences.setDashboardLastSync(dashboard.getValue(ProducteevDashboard.REMOTE_ID), null);
         dataService.clearMetadata();
     }
 
@@ -191,20 +212,35 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
 
             String lastServerSync = Preferences.getStringValue(ProducteevUtilities.PREF_SERVER_LAST_SYNC);
 
+            // taken before reading, so that changes made while we sync are
+            // picked up next time
+            String serverTime = invoker.time();
+
+            // dashboards known before this sync that haven't got a mark of
+            // their own yet were last read at the time of the global mark
+            HashSet<Long> knownDashboards = new HashSet<Long>();
+            for(StoreObject dashboard : dataService.getDashboards())
+                knownDashboards.add(dashboard.getValue(ProducteevDashboard.REMOTE_ID));
+
             // read dashboards
             JSONArray dashboards = invoker.dashboardsShowList(lastServerSync);
             dataService.updateDashboards(dashboards);
 
-            // read labels and tasks for each dashboard
+            // read labels and tasks changed since each dashboard's mark
             ArrayList<ProducteevTaskContainer> remoteTasks = new ArrayList<ProducteevTaskContainer>();
+            ArrayList<Long> readDashboards = new ArrayList<Long>();
             for(StoreObject dashboard : dataService.getDashboards()) {
                 long dashboardId = dashboard.getValue(ProducteevDashboard.REMOTE_ID);
                 JSONArray labels = invoker.labelsShowList(dashboardId, null);
                 readLabels(labels);
 
+                String dashboardSync = preferences.getDashboardLastSync(dashboardId);
+                if(dashboardSync == null && knownDashboards.contains(dashboardId))
+                    dashboardSync = lastServerSync;
+
                 try {
                     // This invocation throws ApiServiceException for workspaces that need to be upgraded
-                    JSONArray tasks = invoker.tasksShowList(dashboardId, lastServerSync);
+                    JSONArray tasks = invoker.tasksShowList(dashboardId, dashboardSync);
                     for(int i = 0; i < tasks.length(); i++) {
                         ProducteevTaskContainer remote = parseRemoteTask(tasks.getJSONObject(i));
 
@@ -222,6 +258,7 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
 
                         remoteTasks.add(remote);
                     }
+                    readDashboards.add(dashboardId);
                 } catch (ApiServiceException ase) {
                     // catch it here, so that other dashboards can still be synchronized
                     handleException("pdv-sync", ase, true); //$NON-NLS-1$
@@ -238,7 +275,9 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
                 syncData.localUpdated.close();
             }
 
-            Preferences.setString(ProducteevUtilities.PREF_SERVER_LAST_SYNC, invoker.time());
+            Preferences.setString(ProducteevUtilities.PREF_SERVER_LAST_SYNC, serverTime);
+            for(Long dashboardId : readDashboards)
+                preferences.setDashboardLastSync(dashboardId, serverTime);
             preferences.recordSuccessfulSync();
 
             Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_EVENT_REFRESH);
@@ -365,7 +404,8 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
         return newRemoteTask;
     }
 
-    /** Create a task container for the given ProducteevTask
+    /** Create a task container for the given ProducteevTask. Does not
+     * touch the database, as pushes parse on worker threads
      * @throws JSONException */
     private ProducteevTaskContainer parseRemoteTask(JSONObject remoteTask) throws JSONException {
         Task task = new Task();
@@ -404,8 +444,7 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
         JSONArray notes = remoteTask.getJSONArray("notes");
         for(int i = notes.length() - 1; i >= 0; i--) {
             JSONObject note = notes.getJSONObject(i).getJSONObject("note");
-            PluginServices.getMetadataService().deleteWhere(Criterion.and(Metadata.KEY.eq(NoteMetadata.METADATA_KEY),
-                    NoteMetadata.EXT_ID.eq(note.getString("id_note"))));
+            container.replacedNotes.add(note.getString("id_note"));
             if(note.getLong("deleted") != 0)
                 continue;
 
@@ -417,7 +456,9 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
     }
 
     private String creatorName(ProducteevTaskContainer container, long creator) {
-        StoreObject[] dashboards = dataService.getDashboards();
+        StoreObject[] dashboards = dashboardSnapshot;
+        if(dashboards == null)
+            dashboards = dataService.getDashboards();
         for(int i = 0; i < dashboards.length; i++) {
             Long dashboard = container.pdvTask.getValue(ProducteevTask.DASHBOARD_ID);
             if(dashboard.equals(dashboards[i].getValue(ProducteevDashboard.REMOTE_ID))) {
@@ -440,6 +481,76 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
         }
     }
 
+    /**
+     * Field updates that have to be sent for a task
+     */
+    private static class ChangeSet {
+        boolean responsible;
+        boolean title;
+        boolean star;
+        boolean deadline;
+        boolean unsetRepeating;
+        boolean status;
+
+        /** whether the task repeats in Astrid and on Producteev */
+        boolean astridRepeating;
+        boolean pdvRepeating;
+
+        /** new labels, null if unchanged */
+        HashSet<String> labels;
+
+        /** note to add, null if none */
+        String note;
+
+        public boolean isEmpty() {
+            return !responsible && !title && !star && !deadline && !unsetRepeating &&
+                !status && labels == null && note == null;
+        }
+    }
+
+    /**
+     * Compare local and remote task to find the smallest set of calls that
+     * brings the remote task up to date
+     */
+    private ChangeSet computeChanges(ProducteevTaskContainer local, ProducteevTaskContainer remote) {
+        ChangeSet changes = new ChangeSet();
+
+        changes.responsible = remote != null && !local.pdvTask.getValue(ProducteevTask.RESPONSIBLE_ID).equals(
+                remote.pdvTask.getValue(ProducteevTask.RESPONSIBLE_ID));
+        changes.title = shouldTransmit(local, Task.TITLE, remote);
+        changes.star = shouldTransmit(local, Task.IMPORTANCE, remote);
+        changes.deadline = shouldTransmit(local, Task.DUE_DATE, remote);
+
+        changes.pdvRepeating = ((local.pdvTask.containsNonNullValue(ProducteevTask.REPEATING_SETTING) &&
+                local.pdvTask.getValue(ProducteevTask.REPEATING_SETTING).length()>0) ||
+                (remote != null && remote.pdvTask.containsNonNullValue(ProducteevTask.REPEATING_SETTING) &&
+                        remote.pdvTask.getValue(ProducteevTask.REPEATING_SETTING).length()>0));
+        changes.astridRepeating = local.task.containsNonNullValue(Task.RECURRENCE) &&
+            local.task.getValue(Task.RECURRENCE).length() > 0;
+        // Astrid-repeat overrides PDV-repeat
+        changes.unsetRepeating = changes.astridRepeating && changes.pdvRepeating;
+
+        changes.status = shouldTransmit(local, Task.COMPLETION_DATE, remote);
+
+        HashSet<String> localTags = new HashSet<String>();
+        HashSet<String> remoteTags = new HashSet<String>();
+        for(Metadata item : local.metadata)
+            if(TagService.KEY.equals(item.getValue(Metadata.KEY)))
+                localTags.add(item.getValue(TagService.TAG));
+        if(remote != null && remote.metadata != null) {
+            for(Metadata item : remote.metadata)
+                if(TagService.KEY.equals(item.getValue(Metadata.KEY)))
+                    remoteTags.add(item.getValue(TagService.TAG));
+        }
+        if(!localTags.equals(remoteTags))
+            changes.labels = localTags;
+
+        if(!TextUtils.isEmpty(local.task.getValue(Task.NOTES)))
+            changes.note = local.task.getValue(Task.NOTES);
+
+        return changes;
+    }
+
     /**
      * Send changes for the given Task across the wire. If a remoteTask is
      * supplied, we attempt to intelligently only transmit the values that
@@ -448,6 +559,7 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
     @Override
     protected ProducteevTaskContainer push(ProducteevTaskContainer local, ProducteevTaskContainer remote) throws IOException {
         boolean remerge = false;
+        boolean transmitted = false;
 
         long idTask = local.pdvTask.getValue(ProducteevTask.ID);
         long idDashboard = local.pdvTask.getValue(ProducteevTask.DASHBOARD_ID);
@@ -473,66 +585,64 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
                 transferIdentifiers(newRemote, remote);
                 remote = newRemote;
             }
+            transmitted = true;
         }
 
         // dashboard
         if(remote != null && idDashboard != remote.pdvTask.getValue(ProducteevTask.DASHBOARD_ID)) {
             invoker.tasksSetWorkspace(idTask, idDashboard);
             remote = pull(local);
+            transmitted = true;
         } else if(remote == null && idTask == TASK_ID_UNSYNCED) {
             // was un-synced, create remote
             remote = create(local);
+            transmitted = true;
+        }
+
+        ChangeSet changes = computeChanges(local, remote);
+        if(changes.isEmpty() && !transmitted) {
+            // remote is up to date, no need to read it again
+            if(remote != null)
+                remote.task.setId(local.task.getId());
+            return remote;
         }
 
         // responsible
-        if(remote != null && idResponsible !=
-                remote.pdvTask.getValue(ProducteevTask.RESPONSIBLE_ID)) {
+        if(changes.responsible)
             invoker.tasksSetResponsible(idTask, idResponsible);
-        }
 
         // core properties
-        if(shouldTransmit(local, Task.TITLE, remote))
+        if(changes.title)
             invoker.tasksSetTitle(idTask, local.task.getValue(Task.TITLE));
-        if(shouldTransmit(local, Task.IMPORTANCE, remote))
+        if(changes.star)
             invoker.tasksSetStar(idTask, createStars(local.task));
-        if(shouldTransmit(local, Task.DUE_DATE, remote)) {
+        if(changes.deadline) {
             if(local.task.hasDueDate())
                 invoker.tasksSetDeadline(idTask, createDeadline(local.task), local.task.hasDueTime() ? 0 : 1);
             else
                 invoker.tasksUnsetDeadline(idTask);
         }
 
-        boolean isPDVRepeating = ((local.pdvTask.containsNonNullValue(ProducteevTask.REPEATING_SETTING) &&
-                local.pdvTask.getValue(ProducteevTask.REPEATING_SETTING).length()>0) ||
-                (remote != null && remote.pdvTask.containsNonNullValue(ProducteevTask.REPEATING_SETTING) &&
-                        remote.pdvTask.getValue(ProducteevTask.REPEATING_SETTING).length()>0));
-
-        boolean isAstridRepeating = local.task.containsNonNullValue(Task.RECURRENCE) &&
-            local.task.getValue(Task.RECURRENCE).length() > 0;
-
-        if (isAstridRepeating && isPDVRepeating) {
-            // Astrid-repeat overrides PDV-repeat
+        if(changes.unsetRepeating)
             invoker.tasksUnsetRepeating(idTask);
-        }
 
-        if(shouldTransmit(local, Task.COMPLETION_DATE, remote)) {
+        if(changes.status) {
             invoker.tasksSetStatus(idTask, local.task.isCompleted() ? 2 : 1);
-            if (local.task.isCompleted() && !isAstridRepeating &&
-                    isPDVRepeating) {
+            if (local.task.isCompleted() && !changes.astridRepeating &&
+                    changes.pdvRepeating) {
                 local.task.setValue(Task.COMPLETION_DATE, 0L);
                 remerge = true;
             }
         }
 
-
         try {
             // tags
-            transmitTags(local, remote, idTask, idDashboard);
+            if(changes.labels != null)
+                transmitTags(changes.labels, idTask, idDashboard);
 
             // notes
-            if(!TextUtils.isEmpty(local.task.getValue(Task.NOTES))) {
-                String note = local.task.getValue(Task.NOTES);
-                JSONObject result = invoker.tasksNoteCreate(idTask, note);
+            if(changes.note != null) {
+                JSONObject result = invoker.tasksNoteCreate(idTask, changes.note);
                 local.metadata.add(ApiUtilities.createNoteMetadata(result.getJSONObject("note"), null));
                 local.task.setValue(Task.NOTES, "");
             }
@@ -559,30 +669,19 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
     /**
      * Transmit tags
      *
-     * @param local
-     * @param remote
+     * @param localTags
      * @param idTask
      * @param idDashboard
      * @throws ApiServiceException
      * @throws JSONException
      * @throws IOException
      */
-    private void transmitTags(ProducteevTaskContainer local,
-            ProducteevTaskContainer remote, long idTask, long idDashboard) throws ApiServiceException, JSONException, IOException {
-        HashSet<String> localTags = new HashSet<String>();
-        HashSet<String> remoteTags = new HashSet<String>();
-        for(Metadata item : local.metadata)
-            if(TagService.KEY.equals(item.getValue(Metadata.KEY)))
-                localTags.add(item.getValue(TagService.TAG));
-        if(remote != null && remote.metadata != null) {
-            for(Metadata item : remote.metadata)
-                if(TagService.KEY.equals(item.getValue(Metadata.KEY)))
-                    remoteTags.add(item.getValue(TagService.TAG));
-        }
-
-        if(!localTags.equals(remoteTags)) {
-            long[] labels = new long[localTags.size()];
-            int index = 0;
+    private void transmitTags(HashSet<String> localTags, long idTask, long idDashboard)
+            throws ApiServiceException, JSONException, IOException {
+        long[] labels = new long[localTags.size()];
+        int index = 0;
+        // labels may be created by several pushes at once
+        synchronized(labelMap) {
             for(String label : localTags) {
                 String pdvLabel = idDashboard + label;
                 final long id;
@@ -593,7 +692,84 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
                     id = labelMap.get(pdvLabel);
                 labels[index++] = id;
             }
-            invoker.tasksChangeLabel(idTask, labels);
+        }
+        invoker.tasksChangeLabel(idTask, labels);
+    }
+
+    /**
+     * Pushes locally updated tasks, several at a time. Tasks are read from
+     * the cursor and written back on the calling thread, in order. Pushes
+     * merging with the same remote task are run one after the other.
+     */
+    @Override
+    protected void sendLocallyUpdated(final SyncData<ProducteevTaskContainer> data) throws IOException {
+        int length = data.localUpdated.getCount();
+        ArrayList<ProducteevTaskContainer> locals = new ArrayList<ProducteevTaskContainer>(length);
+        ArrayList<Future<?>> pushes = new ArrayList<Future<?>>(length);
+        HashMap<Integer, Future<?>> remotePushes = new HashMap<Integer, Future<?>>();
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        dashboardSnapshot = dataService.getDashboards();
+        try {
+            for(int i = 0; i < length; i++) {
+                data.localUpdated.moveToNext();
+                final ProducteevTaskContainer local = read(data.localUpdated);
+                locals.add(local);
+                if(local.task == null) {
+                    pushes.add(null);
+                    continue;
+                }
+
+                final int remoteIndex;
+                synchronized(data.remoteUpdated) {
+                    remoteIndex = matchTask((ArrayList<ProducteevTaskContainer>)data.remoteUpdated, local);
+                }
+                if(remoteIndex != -1 && remotePushes.containsKey(remoteIndex))
+                    await(remotePushes.get(remoteIndex));
+                final ProducteevTaskContainer remote;
+                synchronized(data.remoteUpdated) {
+                    remote = remoteIndex == -1 ? null : data.remoteUpdated.get(remoteIndex);
+                }
+
+                Future<?> push = executor.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            ProducteevTaskContainer result = push(local, remote);
+                            if(remoteIndex != -1) {
+                                // re-read remote task after merge (with local's title)
+                                result.task.setId(local.task.getId());
+                                synchronized(data.remoteUpdated) {
+                                    data.remoteUpdated.set(remoteIndex, result);
+                                }
+                            }
+                        } catch (Exception e) {
+                            handleException("sync-local-updated", e, false); //$NON-NLS-1$
+                        }
+                    }
+                });
+                pushes.add(push);
+                if(remoteIndex != -1)
+                    remotePushes.put(remoteIndex, push);
+            }
+
+            for(int i = 0; i < length; i++) {
+                if(pushes.get(i) == null)
+                    continue;
+                await(pushes.get(i));
+                write(locals.get(i));
+            }
+        } finally {
+            executor.shutdownNow();
+            dashboardSnapshot = null;
+        }
+    }
+
+    private void await(Future<?> push) {
+        try {
+            push.get();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            handleException("sync-local-updated", e, false); //$NON-NLS-1$
         }
     }
 
@@ -616,6 +792,9 @@ public class ProducteevSyncProvider extends SyncProvider<ProducteevTaskContainer
         } else { // Set default reminders for remotely created tasks
             TaskDao.setDefaultReminders(task.task);
         }
+        for(String note : task.replacedNotes)
+            PluginServices.getMetadataService().deleteWhere(Criterion.and(Metadata.KEY.eq(NoteMetadata.METADATA_KEY),
+                    NoteMetadata.EXT_ID.eq(note)));
         dataService.saveTaskAndMetadata(task);
     }
 
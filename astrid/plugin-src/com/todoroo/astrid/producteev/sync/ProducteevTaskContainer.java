@@ -24,6 +24,9 @@ public class ProducteevTaskContainer extends SyncContainer {
 
     public Metadata pdvTask;
 
+    /** remote ids of notes to delete locally before this task is written */
+    public final ArrayList<String> replacedNotes = new ArrayList<String>();
+
     public ProducteevTaskContainer(Task task, ArrayList<Metadata> metadata, Metadata pdvTask) {
         this.task = task;
         this.metadata = metadata;
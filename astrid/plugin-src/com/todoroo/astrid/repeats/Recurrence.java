@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.repeats;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.ical.values.Frequency;
+import com.google.ical.values.RRule;
+import com.google.ical.values.WeekdayNum;
+
+/**
+ * A parsed repeat rule. Rules are parsed once and kept in a small cache
+ * keyed by their RRULE string, so completing or displaying many repeating
+ * tasks doesn't parse the same rules over and over. Rules that only use
+ * FREQ, INTERVAL, BYDAY and WKST, which covers everything Astrid creates,
+ * compute their next occurrence with calendar arithmetic instead of
+ * iterating occurrences.
+ */
+public final class Recurrence {
+
+    private static final int CACHE_SIZE = 64;
+
+    private static final Map<String, Recurrence> cache = new LinkedHashMap<String, Recurrence>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Recurrence> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @return the parsed rule, from the cache if it was parsed before
+     */
+    public static Recurrence parse(String rule) throws ParseException {
+        synchronized(cache) {
+            Recurrence recurrence = cache.get(rule);
+            if(recurrence != null)
+                return recurrence;
+        }
+        Recurrence recurrence = new Recurrence(new RRule(rule));
+        synchronized(cache) {
+            cache.put(rule, recurrence);
+        }
+        return recurrence;
+    }
+
+    /** how far ahead to look for a month or year that has the start day */
+    private static final int MAX_PERIODS = 48;
+
+    private final RRule rrule;
+    private final Frequency frequency;
+    private final int interval;
+    private final List<WeekdayNum> byDay;
+    private final int[] weekdays;
+    private final int weekStart;
+    private final boolean arithmetic;
+
+    private Recurrence(RRule rrule) {
+        this.rrule = rrule;
+        this.frequency = rrule.getFreq();
+        this.interval = Math.max(1, rrule.getInterval());
+        this.byDay = Collections.unmodifiableList(rrule.getByDay());
+        this.weekStart = rrule.getWkSt() == null ? Calendar.MONDAY : rrule.getWkSt().javaDayNum;
+
+        // byDay is only used by weekly repeats
+        if(frequency != Frequency.WEEKLY)
+            rrule.setByDay(Collections.<WeekdayNum>emptyList());
+
+        boolean ordinalDays = false;
+        weekdays = new int[rrule.getByDay().size()];
+        for(int i = 0; i < weekdays.length; i++) {
+            WeekdayNum day = rrule.getByDay().get(i);
+            weekdays[i] = day.wday.javaDayNum;
+            ordinalDays |= day.num != 0;
+        }
+        Arrays.sort(weekdays);
+
+        arithmetic = !ordinalDays && rrule.getCount() == 0 && rrule.getUntil() == null &&
+                rrule.getByMonth().length == 0 && rrule.getByMonthDay().length == 0 &&
+                rrule.getByWeekNo().length == 0 && rrule.getByYearDay().length == 0 &&
+                rrule.getBySetPos().length == 0 && rrule.getByHour().length == 0 &&
+                rrule.getByMinute().length == 0 && rrule.getBySecond().length == 0;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /** @return days of the rule as written, for display */
+    public List<WeekdayNum> getByDay() {
+        return byDay;
+    }
+
+    /** @return java day numbers of a weekly rule, in ascending order */
+    public int[] getWeekdays() {
+        return weekdays;
+    }
+
+    /**
+     * @return the rule for iterating occurrences, with days removed unless
+     *         it is weekly. Must not be modified.
+     */
+    public RRule getRRule() {
+        return rrule;
+    }
+
+    /**
+     * Computes the first occurrence on a day after the one of the given
+     * start, at the same time of day.
+     *
+     * @return the occurrence, or null if the rule needs to be iterated
+     */
+    public Date nextOccurrence(Date start) {
+        if(!arithmetic)
+            return null;
+
+        // step over days at noon, then restore the time of day, so that
+        // daylight saving changes don't move it
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        int hour = cal.get(Calendar.HOUR_OF_DAY);
+        int minute = cal.get(Calendar.MINUTE);
+        int second = cal.get(Calendar.SECOND);
+        cal.set(Calendar.HOUR_OF_DAY, 12);
+
+        Calendar next;
+        switch(frequency) {
+        case DAILY:
+            cal.add(Calendar.DATE, interval);
+            next = cal;
+            break;
+        case WEEKLY:
+            if(weekdays.length == 0) {
+                cal.add(Calendar.DATE, 7 * interval);
+                next = cal;
+            } else
+                next = nextWeekday(cal);
+            break;
+        case MONTHLY:
+            next = nextPeriod(cal, Calendar.MONTH);
+            break;
+        case YEARLY:
+            next = nextPeriod(cal, Calendar.YEAR);
+            break;
+        default:
+            return null;
+        }
+        if(next == null)
+            return null;
+
+        next.set(Calendar.HOUR_OF_DAY, hour);
+        next.set(Calendar.MINUTE, minute);
+        next.set(Calendar.SECOND, second);
+        return next.getTime();
+    }
+
+    /** next day that is one of the weekdays in every interval-th week */
+    private Calendar nextWeekday(Calendar cal) {
+        int week = 0;
+        for(int i = 0; i < 7 * (interval + 1); i++) {
+            cal.add(Calendar.DATE, 1);
+            int weekday = cal.get(Calendar.DAY_OF_WEEK);
+            if(weekday == weekStart)
+                week++;
+            if(week % interval == 0 && Arrays.binarySearch(weekdays, weekday) >= 0)
+                return cal;
+        }
+        return null;
+    }
+
+    /** next month or year that has the start day, skipping those that don't */
+    private Calendar nextPeriod(Calendar start, int field) {
+        int day = start.get(Calendar.DAY_OF_MONTH);
+        for(int i = 1; i <= MAX_PERIODS; i++) {
+            Calendar cal = (Calendar) start.clone();
+            cal.add(field, i * interval);
+            if(cal.get(Calendar.DAY_OF_MONTH) == day)
+                return cal;
+        }
+        return null;
+    }
+
+}
@@ -15,7 +15,6 @@ import android.content.Intent;
 import android.content.res.Resources;
 
 import com.google.ical.values.Frequency;
-import com.google.ical.values.RRule;
 import com.google.ical.values.WeekdayNum;
 import com.timsu.astrid.R;
 import com.todoroo.astrid.api.AstridApiConstants;
@@ -58,19 +57,19 @@ public class RepeatDetailExposer extends BroadcastReceiver {
 
         String recurrence = task.getValue(Task.RECURRENCE);
         if(recurrence != null && recurrence.length() > 0) {
-            RRule rrule;
+            Recurrence rule;
             try {
-                rrule = new RRule(recurrence);
+                rule = Recurrence.parse(recurrence);
             } catch (ParseException e) {
                 System.err.println(e.toString());
                 return null;
             }
 
-            String interval = getIntervalFor(r, rrule);
+            String interval = getIntervalFor(r, rule);
 
             interval = "<b>" + interval + "</b>";  //$NON-NLS-1$//$NON-NLS-2$
-            List<WeekdayNum> byDay = rrule.getByDay();
-            if(rrule.getFreq() == Frequency.WEEKLY || byDay.size() != 7) {
+            List<WeekdayNum> byDay = rule.getByDay();
+            if(rule.getFrequency() == Frequency.WEEKLY || byDay.size() != 7) {
                 if(byDay.size() > 0) {
                     StringBuilder byDayString = new StringBuilder();
                     DateFormatSymbols dfs = new DateFormatSymbols();
@@ -96,9 +95,9 @@ public class RepeatDetailExposer extends BroadcastReceiver {
         return null;
     }
 
-    private String getIntervalFor(Resources r, RRule rrule) {
+    private String getIntervalFor(Resources r, Recurrence rule) {
         int plural;
-        switch(rrule.getFreq()) {
+        switch(rule.getFrequency()) {
         case MINUTELY:
             plural = R.plurals.DUt_minutes; break;
         case HOURLY:
@@ -113,10 +112,10 @@ public class RepeatDetailExposer extends BroadcastReceiver {
             plural = R.plurals.DUt_years; break;
         default:
             // not designed to be used, only a fail-safe
-            return rrule.getInterval() + "-" + rrule.getFreq().name(); //$NON-NLS-1$
+            return rule.getInterval() + "-" + rule.getFrequency().name(); //$NON-NLS-1$
         }
 
-        return r.getQuantityString(plural, rrule.getInterval(), rrule.getInterval());
+        return r.getQuantityString(plural, rule.getInterval(), rule.getInterval());
     }
 
     public String getPluginIdentifier() {
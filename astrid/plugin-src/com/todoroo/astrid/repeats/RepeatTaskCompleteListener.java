@@ -7,10 +7,7 @@ package com.todoroo.astrid.repeats;
 
 import java.text.ParseException;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.List;
 import java.util.TimeZone;
 
 import android.content.BroadcastReceiver;
@@ -25,7 +22,6 @@ import com.google.ical.values.DateValue;
 import com.google.ical.values.DateValueImpl;
 import com.google.ical.values.Frequency;
 import com.google.ical.values.RRule;
-import com.google.ical.values.WeekdayNum;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
@@ -116,34 +112,41 @@ public class RepeatTaskCompleteListener extends BroadcastReceiver {
     /** Compute next due date */
     public static long computeNextDueDate(Task task, String recurrence) throws ParseException {
         boolean repeatAfterCompletion = task.getFlag(Task.FLAGS, Task.FLAG_REPEAT_AFTER_COMPLETION);
-        RRule rrule = initRRule(recurrence);
+        Recurrence rule = Recurrence.parse(recurrence);
+        Frequency frequency = rule.getFrequency();
 
-        // initialize startDateAsDV
-        Date original = setUpStartDate(task, repeatAfterCompletion, rrule.getFreq());
-        DateValue startDateAsDV = setUpStartDateAsDV(task, original);
+        Date original = setUpStartDate(task, repeatAfterCompletion, frequency);
 
-        if(rrule.getFreq() == Frequency.HOURLY || rrule.getFreq() == Frequency.MINUTELY)
-            return handleSubdayRepeat(original, rrule);
-        else if(rrule.getFreq() == Frequency.WEEKLY && rrule.getByDay().size() > 0 && repeatAfterCompletion)
-            return handleWeeklyRepeatAfterComplete(rrule, original, task.hasDueTime());
-        else
-            return invokeRecurrence(rrule, original, startDateAsDV);
+        if(frequency == Frequency.HOURLY || frequency == Frequency.MINUTELY)
+            return handleSubdayRepeat(original, frequency, rule.getInterval());
+        else if(frequency == Frequency.WEEKLY && rule.getWeekdays().length > 0 && repeatAfterCompletion)
+            return handleWeeklyRepeatAfterComplete(rule, original, task.hasDueTime());
+
+        Date next = rule.nextOccurrence(original);
+        if(next != null) {
+            if(task.hasDueTime())
+                return Task.createDueDate(Task.URGENCY_SPECIFIC_DAY_TIME, next.getTime());
+            else
+                return Task.createDueDate(Task.URGENCY_SPECIFIC_DAY, next.getTime());
+        }
+
+        // rules with counts, ordinal days or other parts need the iterator
+        DateValue startDateAsDV = setUpStartDateAsDV(task, original);
+        return invokeRecurrence(rule.getRRule(), original, startDateAsDV);
     }
 
-    private static long handleWeeklyRepeatAfterComplete(RRule rrule, Date original,
+    private static long handleWeeklyRepeatAfterComplete(Recurrence rule, Date original,
             boolean hasDueTime) {
-        List<WeekdayNum> byDay = rrule.getByDay();
         long newDate = original.getTime();
-        newDate += DateUtilities.ONE_WEEK * (rrule.getInterval() - 1);
+        newDate += DateUtilities.ONE_WEEK * (rule.getInterval() - 1);
         Calendar date = Calendar.getInstance();
         date.setTimeInMillis(newDate);
 
-        Collections.sort(byDay, weekdayCompare);
-        WeekdayNum next = findNextWeekday(byDay, date);
+        int next = findNextWeekday(rule.getWeekdays(), date);
 
         do {
             date.add(Calendar.DATE, 1);
-        } while (date.get(Calendar.DAY_OF_WEEK) != next.wday.javaDayNum);
+        } while (date.get(Calendar.DAY_OF_WEEK) != next);
 
         long time = date.getTimeInMillis();
         if(hasDueTime)
@@ -152,24 +155,13 @@ public class RepeatTaskCompleteListener extends BroadcastReceiver {
             return Task.createDueDate(Task.URGENCY_SPECIFIC_DAY, time);
     }
 
-    private static Comparator<WeekdayNum> weekdayCompare = new Comparator<WeekdayNum>() {
-        @Override
-        public int compare(WeekdayNum object1, WeekdayNum object2) {
-            return object1.wday.javaDayNum - object2.wday.javaDayNum;
-        }
-
-    };
-
-    private static WeekdayNum findNextWeekday(List<WeekdayNum> byDay,
-            Calendar date) {
-        WeekdayNum next = byDay.get(0);
-        for (int i = 0; i < byDay.size(); i++) {
-            WeekdayNum weekday = byDay.get(i);
-            if (weekday.wday.javaDayNum > date.get(Calendar.DAY_OF_WEEK)) {
-                return weekday;
+    private static int findNextWeekday(int[] weekdays, Calendar date) {
+        for (int i = 0; i < weekdays.length; i++) {
+            if (weekdays[i] > date.get(Calendar.DAY_OF_WEEK)) {
+                return weekdays[i];
             }
         }
-        return next;
+        return weekdays[0];
     }
 
     private static long invokeRecurrence(RRule rrule, Date original,
@@ -217,18 +209,6 @@ public class RepeatTaskCompleteListener extends BroadcastReceiver {
         return newDueDate;
     }
 
-    /** Initialize RRule instance */
-    private static RRule initRRule(String recurrence) throws ParseException {
-        RRule rrule = new RRule(recurrence);
-
-        // handle the iCalendar "byDay" field differently depending on if
-        // we are weekly or otherwise
-        if(rrule.getFreq() != Frequency.WEEKLY)
-            rrule.setByDay(Collections.EMPTY_LIST);
-
-        return rrule;
-    }
-
     /** Set up repeat start date
      * @param frequency */
     private static Date setUpStartDate(Task task, boolean repeatAfterCompletion, Frequency frequency) {
@@ -259,9 +239,9 @@ public class RepeatTaskCompleteListener extends BroadcastReceiver {
                     startDate.getMonth() + 1, startDate.getDate());
     }
 
-    private static long handleSubdayRepeat(Date startDate, RRule rrule) {
+    private static long handleSubdayRepeat(Date startDate, Frequency frequency, int interval) {
         long millis;
-        switch(rrule.getFreq()) {
+        switch(frequency) {
         case HOURLY:
             millis = DateUtilities.ONE_HOUR;
             break;
@@ -269,9 +249,9 @@ public class RepeatTaskCompleteListener extends BroadcastReceiver {
             millis = DateUtilities.ONE_MINUTE;
             break;
         default:
-            throw new RuntimeException("Error handing subday repeat: " + rrule.getFreq()); //$NON-NLS-1$
+            throw new RuntimeException("Error handing subday repeat: " + frequency); //$NON-NLS-1$
         }
-        long newDueDate = startDate.getTime() + millis * rrule.getInterval();
+        long newDueDate = startDate.getTime() + millis * interval;
         return Task.createDueDate(Task.URGENCY_SPECIFIC_DAY_TIME,
                 newDueDate);
     }
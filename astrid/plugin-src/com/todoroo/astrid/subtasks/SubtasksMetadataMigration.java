@@ -6,7 +6,7 @@ import android.util.Log;
 
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
-import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.sql.Criterion;
 import com.todoroo.andlib.sql.Functions;
 import com.todoroo.andlib.sql.Order;
 import com.todoroo.andlib.sql.Query;
@@ -16,12 +16,18 @@ import com.todoroo.astrid.actfm.sync.ActFmSyncService;
 import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.TagData;
+import com.todoroo.astrid.service.ChunkedMigration;
 import com.todoroo.astrid.service.MetadataService;
 import com.todoroo.astrid.service.TagDataService;
 import com.todoroo.astrid.subtasks.AstridOrderedListUpdater.Node;
 
+/**
+ * Moves subtasks metadata into the ordering of each list. Every list is
+ * migrated in its own transaction and the migration continues after the
+ * last migrated list if it was interrupted.
+ */
 @SuppressWarnings("deprecation") // Subtasks metadata is deprecated
-public class SubtasksMetadataMigration {
+public class SubtasksMetadataMigration extends ChunkedMigration {
 
     @Autowired
     private TagDataService tagDataService;
@@ -36,28 +42,60 @@ public class SubtasksMetadataMigration {
     private ActFmSyncService actFmSyncService;
 
     public SubtasksMetadataMigration() {
-        DependencyInjectionService.getInstance().inject(this);
+        super("subtasks_metadata"); //$NON-NLS-1$
     }
 
     public void performMigration() {
+        run(null);
+    }
+
+    @Override
+    protected int countRemaining(String lastTag) {
+        TodorooCursor<Metadata> tags = metadataService.query(Query.select(SubtasksMetadata.TAG)
+                .where(tagsAfter(lastTag)).groupBy(SubtasksMetadata.TAG));
+        try {
+            return tags.getCount();
+        } finally {
+            tags.close();
+        }
+    }
+
+    @Override
+    protected int migrateChunk(String lastTag) {
+        String tag;
+        TodorooCursor<Metadata> nextTag = metadataService.query(Query.select(SubtasksMetadata.TAG)
+                .where(tagsAfter(lastTag)).orderBy(Order.asc(SubtasksMetadata.TAG)).limit(1));
+        try {
+            if (!nextTag.moveToFirst())
+                return 0;
+            tag = nextTag.get(SubtasksMetadata.TAG);
+        } finally {
+            nextTag.close();
+        }
+
         TodorooCursor<Metadata> subtasksMetadata = metadataService.query(Query.select(Metadata.PROPERTIES)
-                .where(MetadataCriteria.withKey(SubtasksMetadata.METADATA_KEY))
-                .orderBy(Order.asc(SubtasksMetadata.TAG), Order.asc(Functions.cast(SubtasksMetadata.ORDER, "LONG")))); //$NON-NLS-1$
+                .where(Criterion.and(MetadataCriteria.withKey(SubtasksMetadata.METADATA_KEY),
+                        SubtasksMetadata.TAG.eq(tag)))
+                .orderBy(Order.asc(Functions.cast(SubtasksMetadata.ORDER, "LONG")))); //$NON-NLS-1$
         try {
-            Metadata m = new Metadata();
-            for (subtasksMetadata.moveToFirst(); !subtasksMetadata.isAfterLast(); subtasksMetadata.moveToNext()) {
-                m.readFromCursor(subtasksMetadata);
-                String tag = m.getValue(SubtasksMetadata.TAG);
-                processTag(tag, subtasksMetadata);
-            }
+            subtasksMetadata.moveToFirst();
+            processTag(tag, subtasksMetadata);
         } finally {
             subtasksMetadata.close();
         }
+        setCheckpoint(tag);
+        return 1;
+    }
+
+    private static Criterion tagsAfter(String lastTag) {
+        Criterion withKey = MetadataCriteria.withKey(SubtasksMetadata.METADATA_KEY);
+        if (lastTag == null)
+            return withKey;
+        return Criterion.and(withKey, SubtasksMetadata.TAG.gt(lastTag));
     }
 
     @SuppressWarnings("nls")
     private void processTag(String tag, TodorooCursor<Metadata> subtasksMetadata) {
-        Metadata item = new Metadata();
         TagData td = null;
         try {
             if (!SubtasksMetadata.LIST_ACTIVE_TASKS.equals(tag)) {
@@ -69,26 +107,19 @@ public class SubtasksMetadataMigration {
             Log.e("subtasks-migration", "Could not parse tag id from " + tag, e);
         }
 
-        if (td == null && !SubtasksMetadata.LIST_ACTIVE_TASKS.equals(tag)) {
-            for (; !subtasksMetadata.isAfterLast(); subtasksMetadata.moveToNext()) {
-                item.readFromCursor(subtasksMetadata);
-                if (!item.getValue(SubtasksMetadata.TAG).equals(tag))
-                    break;
+        if (td == null && !SubtasksMetadata.LIST_ACTIVE_TASKS.equals(tag))
+            return;
+
+        String newTree = buildTreeModelFromMetadata(tag, subtasksMetadata);
+        if (td != null) {
+            td.setValue(TagData.TAG_ORDERING, newTree);
+            tagDataService.save(td);
+            if (actFmPreferenceService.isLoggedIn()) {
+                actFmSyncService.pushTagOrderingOnSave(td.getId());
             }
         } else {
-            String newTree = buildTreeModelFromMetadata(tag, subtasksMetadata);
-            if (td != null) {
-                td.setValue(TagData.TAG_ORDERING, newTree);
-                tagDataService.save(td);
-                if (actFmPreferenceService.isLoggedIn()) {
-                    actFmSyncService.pushTagOrderingOnSave(td.getId());
-                }
-            } else {
-                Preferences.setString(SubtasksUpdater.ACTIVE_TASKS_ORDER, newTree);
-            }
+            Preferences.setString(SubtasksUpdater.ACTIVE_TASKS_ORDER, newTree);
         }
-
-        subtasksMetadata.moveToPrevious(); // Move back one to undo the last iteration of the for loop
     }
 
     private String buildTreeModelFromMetadata(String tag, TodorooCursor<Metadata> cursor) {
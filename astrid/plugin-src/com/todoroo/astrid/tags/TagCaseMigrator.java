@@ -16,6 +16,7 @@ import com.todoroo.andlib.sql.Criterion;
 import com.todoroo.andlib.sql.Join;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.andlib.utility.Preferences;
+import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.TagData;
 import com.todoroo.astrid.data.Task;
@@ -28,6 +29,7 @@ public class TagCaseMigrator {
     @Autowired TaskService taskService;
     @Autowired TagDataService tagDataService;
     @Autowired MetadataService metadataService;
+    @Autowired Database database;
 
     public static final String PREF_SHOW_MIGRATION_ALERT = "tag_case_migration_alert"; //$NON-NLS-1$
     private static final String PREF_CASE_MIGRATION_PERFORMED = "tag_case_migration"; //$NON-NLS-1$
@@ -57,10 +59,15 @@ public class TagCaseMigrator {
                 }
             }
 
-            for (String key : renameMap.keySet()) {
-                TagService.getInstance().renameCaseSensitive(key, renameMap.get(key));
-                updateTagData(key);
-            }
+            // renames can't be repeated, so they are committed all at once
+            database.runInTransaction(new Runnable() {
+                public void run() {
+                    for (String key : renameMap.keySet()) {
+                        TagService.getInstance().renameCaseSensitive(key, renameMap.get(key));
+                        updateTagData(key);
+                    }
+                }
+            });
 
             Preferences.setBoolean(PREF_CASE_MIGRATION_PERFORMED, true);
             Preferences.setBoolean(PREF_SHOW_MIGRATION_ALERT, shouldShowDialog);
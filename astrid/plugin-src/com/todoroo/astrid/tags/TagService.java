@@ -18,6 +18,7 @@ import android.text.TextUtils;
 import android.widget.Toast;
 
 import com.timsu.astrid.R;
+import com.todoroo.andlib.data.DatabaseDao.CursorReader;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.CountProperty;
 import com.todoroo.andlib.data.Property.LongProperty;
@@ -212,18 +213,21 @@ public final class TagService {
             join(Join.inner(Task.TABLE, Metadata.TASK.eq(Task.ID))).
             where(criterion).
             orderBy(order).groupBy(TAG);
-        TodorooCursor<Metadata> cursor = metadataDao.query(query);
-        try {
+        // cached array is shared, so hand out a copy
+        return metadataDao.queryCached(query, GROUPED_TAGS_READER).clone();
+    }
+
+    private static final CursorReader<Metadata, Tag[]> GROUPED_TAGS_READER = new CursorReader<Metadata, Tag[]>() {
+        @Override
+        public Tag[] read(TodorooCursor<Metadata> cursor) {
             Tag[] array = new Tag[cursor.getCount()];
             for (int i = 0; i < array.length; i++) {
                 cursor.moveToNext();
                 array[i] = new Tag(cursor.get(TAG), cursor.get(COUNT), cursor.get(REMOTE_ID));
             }
             return array;
-        } finally {
-            cursor.close();
         }
-    }
+    };
 
     public String[] getEmergentTags() {
         TodorooCursor<TagData> emergent = tagDataService.query(Query.select(TagData.NAME)
@@ -20,6 +20,7 @@
 package org.weloveastrid.rmilk.api;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.security.MessageDigest;
@@ -28,51 +29,52 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.weloveastrid.rmilk.api.data.RtmData;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import android.util.Log;
+import android.util.Xml;
 
 /**
  * Handles the details of invoking a method on the RTM REST API.
+ * <p>
+ * Responses are pull parsed straight off the connection into the data
+ * objects by a {@link ResponseParser}. Calls are rate limited by a token
+ * bucket shared by all invokers, so independent calls may be issued from
+ * several threads at once.
  *
  * @author Will Ross Jun 21, 2007
  */
 @SuppressWarnings("nls")
 public class Invoker {
 
-    private static final String SERVICE_UNAVAILABLE_CODE = "105";
+    private static final int SERVICE_UNAVAILABLE_CODE = 105;
 
     private static final String TAG = "rtm-invoker"; //$NON-NLS-1$
 
-  private static final DocumentBuilder builder;
-  static
-  {
-    // Done this way because the builder is marked "final"
-    DocumentBuilder aBuilder;
-    try
-    {
-      final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setNamespaceAware(false);
-      factory.setValidating(false);
-      aBuilder = factory.newDocumentBuilder();
-    }
-    catch (Exception exception)
-    {
-      Log.e(TAG, "Unable to construct a document builder", exception);
-      aBuilder = null;
-    }
-    builder = aBuilder;
+  /**
+   * Reads the data element of a successful response into a result
+   */
+  public interface ResponseParser<T> {
+    /**
+     * @param parser positioned on the start tag of the data element, the
+     *        first child of <code>rsp</code> that isn't a transaction
+     */
+    T parse(XmlPullParser parser) throws XmlPullParserException, IOException;
   }
 
   private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
@@ -81,7 +83,13 @@ public class Invoker {
 
   private static final long INVOCATION_INTERVAL = 400;
 
-  private long lastInvocation;
+  /** number of calls that may go out without waiting for the interval */
+  private static final int INVOCATION_BURST = 3;
+
+  private static final long RETRY_DELAY = 1500;
+
+  private static final RateLimiter rateLimiter = new RateLimiter(INVOCATION_BURST,
+          INVOCATION_INTERVAL);
 
   private final ApplicationInfo applicationInfo;
 
@@ -98,9 +106,12 @@ public class Invoker {
 
         this.serviceRelativeUri = serviceRelativeUri;
 
-        httpClient = new DefaultHttpClient();
+        HttpParams params = new BasicHttpParams();
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80)); //$NON-NLS-1$
+        ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(params, registry);
+        httpClient = new DefaultHttpClient(connectionManager, params);
 
-        lastInvocation = System.currentTimeMillis();
         this.applicationInfo = applicationInfo;
 
         try {
@@ -133,37 +144,38 @@ public class Invoker {
         return requestUri;
     }
 
-    /** Call invoke with a false repeat */
-    public Element invoke(Param... params) throws ServiceException {
-        return invoke(false, params);
+    /** Invoke a method whose response is of no interest */
+    public void invoke(Param... params) throws ServiceException {
+        invoke(false, null, params);
+    }
+
+    /** Invoke a method and parse its response */
+    public <T> T invoke(ResponseParser<T> parser, Param... params) throws ServiceException {
+        return invoke(false, parser, params);
     }
 
-  public Element invoke(boolean repeat, Param... params)
+  private <T> T invoke(boolean repeat, ResponseParser<T> parser, Param... params)
             throws ServiceException {
-        long timeSinceLastInvocation = System.currentTimeMillis() -
-            lastInvocation;
-        if (timeSinceLastInvocation < INVOCATION_INTERVAL) {
-            // In order not to invoke the RTM service too often
-            try {
-                Thread.sleep(INVOCATION_INTERVAL - timeSinceLastInvocation);
-            } catch (InterruptedException e) {
-                return null;
-            }
+        // In order not to invoke the RTM service too often
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceInternalException("Interrupted while waiting to invoke the RTM service", e);
         }
 
         // We compute the URI
         final StringBuffer requestUri = computeRequestUri(params);
-        HttpResponse response = null;
 
         final HttpGet request = new HttpGet("http://" //$NON-NLS-1$
             + ServiceImpl.SERVER_HOST_NAME + requestUri.toString());
         final String methodUri = request.getRequestLine().getUri();
 
-        Element result;
+        HttpEntity entity = null;
         try {
             Log.i(TAG, "Executing the method:" + methodUri); //$NON-NLS-1$
-            response = httpClient.execute(request);
-            lastInvocation = System.currentTimeMillis();
+            HttpResponse response = httpClient.execute(request);
+            entity = response.getEntity();
 
             final int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode != HttpStatus.SC_OK) {
@@ -171,100 +183,97 @@ public class Invoker {
 
                 // Tim: HTTP error. Let's wait a little bit
                 if (!repeat) {
-                    try {
-                        Thread.sleep(1500);
-                    } catch (InterruptedException e) {
-                        // ignore
-                    }
-                    response.getEntity().consumeContent();
-                    return invoke(true, params);
+                    rateLimiter.backOff(RETRY_DELAY);
+                    entity.consumeContent();
+                    entity = null;
+                    return invoke(true, parser, params);
                 }
 
                 throw new ServiceInternalException("method failed: "
                     + response.getStatusLine());
             }
 
-            final Document responseDoc = builder.parse(response.getEntity()
-                    .getContent());
-            final Element wrapperElt = responseDoc.getDocumentElement();
-            if (!wrapperElt.getNodeName().equals("rsp")) {
-                throw new ServiceInternalException(
-                        "unexpected response returned by RTM service: "
-                            + wrapperElt.getNodeName());
-            } else {
-                String stat = wrapperElt.getAttribute("stat");
-                if (stat.equals("fail")) {
-                    Node errElt = wrapperElt.getFirstChild();
-                    while (errElt != null
-                        && (errElt.getNodeType() != Node.ELEMENT_NODE || !errElt
-                                .getNodeName().equals("err"))) {
-                        errElt = errElt.getNextSibling();
-                    }
-                    if (errElt == null) {
-                        throw new ServiceInternalException(
-                                "unexpected response returned by RTM service: "
-                                    + wrapperElt.getNodeValue());
-                    } else {
-                        if (SERVICE_UNAVAILABLE_CODE.equals(((Element) errElt)
-                                        .getAttribute("code")) && !repeat) {
-                            try {
-                                Thread.sleep(1500);
-                            } catch (InterruptedException e) {
-                                // ignore
-                            }
-                            return invoke(true, params);
-                        }
-
-                        throw new ServiceException(Integer
-                                .parseInt(((Element) errElt)
-                                        .getAttribute("code")),
-                                ((Element) errElt).getAttribute("msg"));
-                    }
-                } else {
-                    Node dataElt = wrapperElt.getFirstChild();
-                    while (dataElt != null
-                        && (dataElt.getNodeType() != Node.ELEMENT_NODE || dataElt
-                                .getNodeName().equals("transaction") == true)) {
-                        try {
-                            Node nextSibling = dataElt.getNextSibling();
-                            if (nextSibling == null) {
-                                break;
-                            } else {
-                                dataElt = nextSibling;
-                            }
-                        } catch (IndexOutOfBoundsException exception) {
-                            // Some implementation may throw this exception,
-                            // instead of returning a null sibling
-                            break;
-                        }
-                    }
-                    if (dataElt == null) {
-                        throw new ServiceInternalException(
-                                "unexpected response returned by RTM service: "
-                                    + wrapperElt.getNodeValue());
-                    } else {
-                        result = (Element) dataElt;
-                    }
+            try {
+                return parseResponse(entity.getContent(), parser);
+            } catch (ServiceException e) {
+                if (e.getResponseCode() == SERVICE_UNAVAILABLE_CODE && !repeat) {
+                    rateLimiter.backOff(RETRY_DELAY);
+                    consumeQuietly(entity);
+                    entity = null;
+                    return invoke(true, parser, params);
                 }
+                throw e;
             }
+        } catch (ServiceException e) {
+            throw e;
         } catch (IOException e) {
             throw new ServiceInternalException("Error making connection: " +
                     e.getMessage(), e);
-        } catch (SAXException e) {
+        } catch (XmlPullParserException e) {
             // repeat call if possible.
-            if(!repeat)
-                return invoke(true, params);
-            else
+            if(!repeat) {
+                consumeQuietly(entity);
+                entity = null;
+                return invoke(true, parser, params);
+            } else
                 throw new ServiceInternalException("Error parsing response. " +
                 		"Please try sync again!", e);
         } finally {
+            consumeQuietly(entity);
             httpClient.getConnectionManager().closeExpiredConnections();
         }
+    }
 
-        return result;
+    /**
+     * Reads an RTM response.
+     *
+     * @param parser reads the data element, or null to ignore it
+     * @return what the parser read, or null if it is null
+     * @throws ServiceException with the error code of a failed response
+     */
+    static <T> T parseResponse(InputStream content, ResponseParser<T> parser)
+            throws XmlPullParserException, IOException {
+        XmlPullParser xpp = Xml.newPullParser();
+        xpp.setInput(content, null);
+        if (xpp.nextTag() != XmlPullParser.START_TAG || !xpp.getName().equals("rsp")) {
+            throw new ServiceInternalException(
+                    "unexpected response returned by RTM service: "
+                        + xpp.getName());
+        }
+
+        if (RtmData.attribute(xpp, "stat").equals("fail")) {
+            while (RtmData.nextChild(xpp, 1)) {
+                if (!xpp.getName().equals("err"))
+                    continue;
+                throw new ServiceException(Integer.parseInt(RtmData.attribute(xpp, "code")),
+                        RtmData.attribute(xpp, "msg"));
+            }
+            throw new ServiceInternalException(
+                    "unexpected response returned by RTM service: no error given");
+        }
+
+        if (parser == null)
+            return null;
+        while (RtmData.nextChild(xpp, 1)) {
+            if (!xpp.getName().equals("transaction"))
+                return parser.parse(xpp);
+        }
+        throw new ServiceInternalException(
+                "unexpected response returned by RTM service: no data given");
+    }
+
+    /** releases the connection of a response that was not read to the end */
+    private static void consumeQuietly(HttpEntity entity) {
+        if (entity == null)
+            return;
+        try {
+            entity.consumeContent();
+        } catch (IOException e) {
+            // connection is discarded
+        }
     }
 
-    final String calcApiSig(Param... params) throws ServiceInternalException {
+    final synchronized String calcApiSig(Param... params) throws ServiceInternalException {
         try {
             digest.reset();
             digest.update(applicationInfo.getSharedSecret().getBytes(ENCODING));
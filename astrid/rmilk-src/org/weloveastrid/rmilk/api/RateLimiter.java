@@ -0,0 +1,86 @@
+/*
+ * This file is part of the RememberTheMilk Java API.
+ *
+ * The RememberTheMilk Java API is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * The RememberTheMilk Java API is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.weloveastrid.rmilk.api;
+
+/**
+ * Token bucket limiting the rate of calls to the RTM service. Up to
+ * <code>capacity</code> calls may go out back to back, after that one call
+ * per <code>interval</code>. Calls are let through in the order they asked
+ * for a token, so several threads can share one limiter.
+ */
+public class RateLimiter {
+
+    private final int capacity;
+
+    private final long interval;
+
+    /**
+     * time at which the bucket will be full again if no more tokens are
+     * taken. A token is available as long as this is at most
+     * <code>(capacity - 1) * interval</code> in the future.
+     */
+    private long fullAt;
+
+    public RateLimiter(int capacity, long interval) {
+        this.capacity = capacity;
+        this.interval = interval;
+        this.fullAt = 0;
+    }
+
+    /**
+     * Takes a token, waiting until one is available. If interrupted while
+     * waiting, the token is given back.
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        synchronized(this) {
+            long now = now();
+            long start = Math.max(fullAt, now);
+            wait = start - (capacity - 1) * interval - now;
+            fullAt = start + interval;
+        }
+        if (wait > 0) {
+            try {
+                sleep(wait);
+            } catch (InterruptedException e) {
+                synchronized(this) {
+                    fullAt -= interval;
+                }
+                throw e;
+            }
+        }
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    protected void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    /**
+     * Delays every call that hasn't taken its token yet until at least
+     * <code>millis</code> from now, e.g. after the service reported that it
+     * is overloaded.
+     */
+    public synchronized void backOff(long millis) {
+        long now = now();
+        fullAt = Math.max(fullAt, now + millis + (capacity - 1) * interval);
+    }
+
+}
@@ -19,6 +19,7 @@
  */
 package org.weloveastrid.rmilk.api;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
@@ -26,7 +27,6 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import org.w3c.dom.Element;
 import org.weloveastrid.rmilk.api.data.RtmAuth;
 import org.weloveastrid.rmilk.api.data.RtmData;
 import org.weloveastrid.rmilk.api.data.RtmFrob;
@@ -40,6 +40,8 @@ import org.weloveastrid.rmilk.api.data.RtmTaskNote;
 import org.weloveastrid.rmilk.api.data.RtmTaskSeries;
 import org.weloveastrid.rmilk.api.data.RtmTasks;
 import org.weloveastrid.rmilk.api.data.RtmTimeline;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 
 /**
@@ -59,6 +61,67 @@ public class ServiceImpl
 
   public final static String REST_SERVICE_URL_POSTFIX = "/services/rest/"; //$NON-NLS-1$
 
+  private static final Invoker.ResponseParser<RtmAuth> AUTH_PARSER = new Invoker.ResponseParser<RtmAuth>() {
+    public RtmAuth parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+      return new RtmAuth(parser);
+    }
+  };
+
+  private static final Invoker.ResponseParser<RtmFrob> FROB_PARSER = new Invoker.ResponseParser<RtmFrob>() {
+    public RtmFrob parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+      return new RtmFrob(parser);
+    }
+  };
+
+  private static final Invoker.ResponseParser<RtmList> LIST_PARSER = new Invoker.ResponseParser<RtmList>() {
+    public RtmList parse(XmlPullParser parser) {
+      return new RtmList(parser);
+    }
+  };
+
+  private static final Invoker.ResponseParser<RtmLists> LISTS_PARSER = new Invoker.ResponseParser<RtmLists>() {
+    public RtmLists parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+      return new RtmLists(parser);
+    }
+  };
+
+  private static final Invoker.ResponseParser<RtmTaskList> TASK_LIST_PARSER = new Invoker.ResponseParser<RtmTaskList>() {
+    public RtmTaskList parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+      return new RtmTaskList(parser);
+    }
+  };
+
+  private static final Invoker.ResponseParser<RtmTasks> TASKS_PARSER = new Invoker.ResponseParser<RtmTasks>() {
+    public RtmTasks parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+      return new RtmTasks(parser);
+    }
+  };
+
+  private static final Invoker.ResponseParser<RtmTaskNote> NOTE_PARSER = new Invoker.ResponseParser<RtmTaskNote>() {
+    public RtmTaskNote parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+      return new RtmTaskNote(parser);
+    }
+  };
+
+  private static final Invoker.ResponseParser<RtmTimeline> TIMELINE_PARSER = new Invoker.ResponseParser<RtmTimeline>() {
+    public RtmTimeline parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+      return new RtmTimeline(parser);
+    }
+  };
+
+  private static final Invoker.ResponseParser<List<RtmLocation>> LOCATIONS_PARSER = new Invoker.ResponseParser<List<RtmLocation>>() {
+    public List<RtmLocation> parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+      List<RtmLocation> locations = new ArrayList<RtmLocation>();
+      int depth = parser.getDepth();
+      while (RtmData.nextChild(parser, depth))
+      {
+        if (parser.getName().equals("location"))
+          locations.add(new RtmLocation(parser));
+      }
+      return locations;
+    }
+  };
+
   private final ApplicationInfo applicationInfo;
 
   private final Invoker invoker;
@@ -154,22 +217,21 @@ public class ServiceImpl
   public RtmAuth auth_checkToken(String authToken)
       throws ServiceException
   {
-    Element response = invoker.invoke(new Param("method", "rtm.auth.checkToken"), new Param("auth_token", authToken),
+    return invoker.invoke(AUTH_PARSER, new Param("method", "rtm.auth.checkToken"), new Param("auth_token", authToken),
         new Param("api_key", applicationInfo.getApiKey()));
-    return new RtmAuth(response);
   }
 
   public RtmFrob auth_getFrob()
       throws ServiceException
   {
-    return new RtmFrob(invoker.invoke(new Param("method", "rtm.auth.getFrob"), new Param("api_key", applicationInfo.getApiKey())));
+    return invoker.invoke(FROB_PARSER, new Param("method", "rtm.auth.getFrob"), new Param("api_key", applicationInfo.getApiKey()));
   }
 
   public String auth_getToken(String frob)
       throws ServiceException
   {
-    Element response = invoker.invoke(new Param("method", "rtm.auth.getToken"), new Param("frob", frob), new Param("api_key", applicationInfo.getApiKey()));
-    return new RtmAuth(response).getToken();
+    RtmAuth response = invoker.invoke(AUTH_PARSER, new Param("method", "rtm.auth.getToken"), new Param("frob", frob), new Param("api_key", applicationInfo.getApiKey()));
+    return response.getToken();
   }
 
   public void contacts_add()
@@ -215,9 +277,8 @@ public class ServiceImpl
   public RtmList lists_add(String timelineId, String listName)
       throws ServiceException
   {
-    Element response = invoker.invoke(new Param("method", "rtm.lists.add"), new Param("auth_token", currentAuthToken),
+    return invoker.invoke(LIST_PARSER, new Param("method", "rtm.lists.add"), new Param("auth_token", currentAuthToken),
         new Param("api_key", applicationInfo.getApiKey()), new Param("name", listName), new Param("timeline", timelineId));
-    return new RtmList(response);
   }
 
   public void lists_archive()
@@ -235,9 +296,8 @@ public class ServiceImpl
   public RtmLists lists_getList()
       throws ServiceException
   {
-    Element response = invoker.invoke(new Param("method", "rtm.lists.getList"), new Param("auth_token", currentAuthToken),
+    return invoker.invoke(LISTS_PARSER, new Param("method", "rtm.lists.getList"), new Param("auth_token", currentAuthToken),
         new Param("api_key", applicationInfo.getApiKey()));
-    return new RtmLists(response);
   }
 
   public RtmList lists_getList(String listName)
@@ -262,9 +322,8 @@ public class ServiceImpl
   public RtmList lists_setName(String timelineId, String listId, String newName)
       throws ServiceException
   {
-    Element response = invoker.invoke(new Param("method", "rtm.lists.setName"), new Param("timeline", timelineId), new Param("list_id", listId),
+    return invoker.invoke(LIST_PARSER, new Param("method", "rtm.lists.setName"), new Param("timeline", timelineId), new Param("list_id", listId),
         new Param("name", newName), new Param("auth_token", currentAuthToken), new Param("api_key", applicationInfo.getApiKey()));
-    return new RtmList(response);
   }
 
   public void lists_unarchive()
@@ -298,15 +357,14 @@ public class ServiceImpl
   public RtmTaskSeries tasks_add(String timelineId, String listId, String name)
       throws ServiceException
   {
-    Element response;
+    RtmTaskList rtmTaskList;
     if(listId != null)
-        response = invoker.invoke(new Param("method", "rtm.tasks.add"), new Param("timeline", timelineId), new Param("list_id", listId),
+        rtmTaskList = invoker.invoke(TASK_LIST_PARSER, new Param("method", "rtm.tasks.add"), new Param("timeline", timelineId), new Param("list_id", listId),
                 new Param("name", name), new Param("auth_token", currentAuthToken), new Param("api_key", applicationInfo.getApiKey()));
     else
-        response = invoker.invoke(new Param("method", "rtm.tasks.add"), new Param("timeline", timelineId),
+        rtmTaskList = invoker.invoke(TASK_LIST_PARSER, new Param("method", "rtm.tasks.add"), new Param("timeline", timelineId),
                 new Param("name", name), new Param("auth_token", currentAuthToken), new Param("api_key", applicationInfo.getApiKey()));
 
-    RtmTaskList rtmTaskList = new RtmTaskList(response);
     if (rtmTaskList.getSeries().size() == 1)
     {
       return rtmTaskList.getSeries().get(0);
@@ -358,7 +416,7 @@ public class ServiceImpl
     }
     params.add(new Param("auth_token", currentAuthToken));
     params.add(new Param("api_key", applicationInfo.getApiKey()));
-    return new RtmTasks(invoker.invoke(params.toArray(new Param[params.size()])));
+    return invoker.invoke(TASKS_PARSER, params.toArray(new Param[params.size()]));
   }
 
   public RtmTaskSeries tasks_getTask(String taskName)
@@ -375,7 +433,7 @@ public class ServiceImpl
     params.add(new Param("auth_token", currentAuthToken));
     params.add(new Param("api_key", applicationInfo.getApiKey()));
     params.add(new Param("filter", "name:\"" + taskName+"\""));
-    RtmTasks rtmTasks = new RtmTasks(invoker.invoke(params.toArray(new Param[params.size()])));
+    RtmTasks rtmTasks = invoker.invoke(TASKS_PARSER, params.toArray(new Param[params.size()]));
     return findTask(taskSeriesId, rtmTasks);
   }
 
@@ -411,10 +469,9 @@ public class ServiceImpl
   {
       if(fromListId.equals(toListId))
           return null;
-    Element elt = invoker.invoke(new Param("method", "rtm.tasks.moveTo"), new Param("timeline", timelineId), new Param("from_list_id", fromListId),
+    RtmTaskList rtmTaskList = invoker.invoke(TASK_LIST_PARSER, new Param("method", "rtm.tasks.moveTo"), new Param("timeline", timelineId), new Param("from_list_id", fromListId),
         new Param("to_list_id", toListId), new Param("taskseries_id", taskSeriesId), new Param("task_id", taskId), new Param("auth_token", currentAuthToken),
         new Param("api_key", applicationInfo.getApiKey()));
-    RtmTaskList rtmTaskList = new RtmTaskList(elt);
     return findTask(taskSeriesId, taskId, rtmTaskList);
   }
 
@@ -522,10 +579,9 @@ public class ServiceImpl
   public RtmTaskNote tasks_notes_add(String timelineId, String listId, String taskSeriesId, String taskId, String title, String text)
       throws ServiceException
   {
-    Element elt = invoker.invoke(new Param("method", "rtm.tasks.notes.add"), new Param("timeline", timelineId), new Param("list_id", listId),
+    return invoker.invoke(NOTE_PARSER, new Param("method", "rtm.tasks.notes.add"), new Param("timeline", timelineId), new Param("list_id", listId),
         new Param("taskseries_id", taskSeriesId), new Param("task_id", taskId), new Param("note_title", title), new Param("note_text", text),
         new Param("auth_token", currentAuthToken), new Param("api_key", applicationInfo.getApiKey()));
-    return new RtmTaskNote(elt);
   }
 
   public void tasks_notes_delete(String timelineId, String noteId)
@@ -538,29 +594,26 @@ public class ServiceImpl
   public RtmTaskNote tasks_notes_edit(String timelineId, String noteId, String title, String text)
       throws ServiceException
   {
-    Element elt = invoker.invoke(new Param("method", "rtm.tasks.notes.edit"), new Param("timeline", timelineId), new Param("note_id", noteId),
+    return invoker.invoke(NOTE_PARSER, new Param("method", "rtm.tasks.notes.edit"), new Param("timeline", timelineId), new Param("note_id", noteId),
         new Param("note_title", title), new Param("note_text", text), new Param("auth_token", currentAuthToken),
         new Param("api_key", applicationInfo.getApiKey()));
-    return new RtmTaskNote(elt);
   }
 
   public RtmTaskSeries tasks_setLocation(String timelineId, String listId, String taskSeriesId, String taskId, String locationId)
       throws ServiceException
   {
-    Element response = invoker.invoke(new Param("method", "rtm.tasks.setLocation"), new Param("timeline", timelineId), new Param("list_id", listId),
+    RtmTaskList rtmTaskList = invoker.invoke(TASK_LIST_PARSER, new Param("method", "rtm.tasks.setLocation"), new Param("timeline", timelineId), new Param("list_id", listId),
         new Param("taskseries_id", taskSeriesId), new Param("task_id", taskId), new Param("location_id", locationId),
         new Param("auth_token", currentAuthToken), new Param("api_key", applicationInfo.getApiKey()));
-    RtmTaskList rtmTaskList = new RtmTaskList(response);
     return findTask(taskSeriesId, taskId, rtmTaskList);
   }
 
   public RtmTaskSeries tasks_setURL(String timelineId, String listId, String taskSeriesId, String taskId, String url)
       throws ServiceException
   {
-    Element response = invoker.invoke(new Param("method", "rtm.tasks.setURL"), new Param("timeline", timelineId), new Param("list_id", listId),
+    RtmTaskList rtmTaskList = invoker.invoke(TASK_LIST_PARSER, new Param("method", "rtm.tasks.setURL"), new Param("timeline", timelineId), new Param("list_id", listId),
         new Param("taskseries_id", taskSeriesId), new Param("task_id", taskId), new Param("url", url), new Param("auth_token", currentAuthToken),
         new Param("api_key", applicationInfo.getApiKey()));
-    RtmTaskList rtmTaskList = new RtmTaskList(response);
     return findTask(taskSeriesId, taskId, rtmTaskList);
   }
 
@@ -587,8 +640,8 @@ public class ServiceImpl
   public String timelines_create()
       throws ServiceException
   {
-    return new RtmTimeline(invoker.invoke(new Param("method", "rtm.timelines.create"), new Param("auth_token", currentAuthToken),
-        new Param("api_key", applicationInfo.getApiKey()))).getId();
+    return invoker.invoke(TIMELINE_PARSER, new Param("method", "rtm.timelines.create"), new Param("auth_token", currentAuthToken),
+        new Param("api_key", applicationInfo.getApiKey())).getId();
   }
 
   public void timezones_getList()
@@ -604,14 +657,8 @@ public class ServiceImpl
   public List<RtmLocation> locations_getList()
       throws ServiceException
   {
-    Element result = invoker.invoke(new Param("method", "rtm.locations.getList"), new Param("auth_token", currentAuthToken),
+    return invoker.invoke(LOCATIONS_PARSER, new Param("method", "rtm.locations.getList"), new Param("auth_token", currentAuthToken),
         new Param("api_key", applicationInfo.getApiKey()));
-    List<RtmLocation> locations = new ArrayList<RtmLocation>();
-    for (Element child : RtmData.children(result, "location"))
-    {
-      locations.add(new RtmLocation(child));
-    }
-    return locations;
   }
 
 }
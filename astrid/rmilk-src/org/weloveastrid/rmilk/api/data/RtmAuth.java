@@ -19,7 +19,10 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
-import org.w3c.dom.Element;
+import java.io.IOException;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * 
@@ -44,12 +47,25 @@ public class RtmAuth extends RtmData {
     this.user = user;
   }
 
-  public RtmAuth(Element elt) {
-    if (!elt.getNodeName().equals("auth")) { throw new IllegalArgumentException("Element " + elt.getNodeName() + " does not represent an Auth object."); }
-
-    this.token = text(child(elt, "token"));
-    this.perms = Enum.valueOf(Perms.class, text(child(elt, "perms")));
-    this.user = new RtmUser(child(elt, "user"));
+  public RtmAuth(XmlPullParser parser) throws XmlPullParserException, IOException {
+    require(parser, "auth");
+    String authToken = null;
+    Perms authPerms = null;
+    RtmUser authUser = null;
+    int depth = parser.getDepth();
+    while (nextChild(parser, depth)) {
+      String name = parser.getName();
+      if (name.equals("token")) {
+        authToken = text(parser);
+      } else if (name.equals("perms")) {
+        authPerms = Enum.valueOf(Perms.class, text(parser));
+      } else if (name.equals("user")) {
+        authUser = new RtmUser(parser);
+      }
+    }
+    this.token = authToken;
+    this.perms = authPerms;
+    this.user = authUser;
   }
 
   public String getToken() {
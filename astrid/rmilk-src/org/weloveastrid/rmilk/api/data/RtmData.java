@@ -19,17 +19,15 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.TimeZone;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  *
@@ -46,60 +44,74 @@ public abstract class RtmData
   }
 
   /**
-   * The method is not optimized at most, but circumvents a bug in Android runtime.
+   * Moves the parser to the next child element of the element at the given
+   * depth. Anything the caller did not read of the previous child,
+   * including its descendants, is skipped.
+   *
+   * @return false once the end tag of the element has been reached
    */
-  public static Element child(Element elt, String nodeName)
+  public static boolean nextChild(XmlPullParser parser, int depth)
+      throws XmlPullParserException, IOException
   {
-    NodeList childNodes = elt.getChildNodes();
-    for (int index = 0; index < childNodes.getLength(); index++)
+    int event;
+    while ((event = parser.next()) != XmlPullParser.END_DOCUMENT)
     {
-      Node child = childNodes.item(index);
-      if (child.getNodeType() == Node.ELEMENT_NODE && child.getNodeName().equals(nodeName))
+      if (event == XmlPullParser.END_TAG && parser.getDepth() <= depth)
       {
-        return (Element) child;
+        return false;
+      }
+      if (event == XmlPullParser.START_TAG && parser.getDepth() == depth + 1)
+      {
+        return true;
       }
     }
-    return null;
+    return false;
   }
 
   /**
-   * The method is not optimized at most, but circumvents a bug in Android runtime.
+   * @return the attribute value, or an empty string if the current element
+   *         doesn't have it
    */
-  public static List<Element> children(Element elt, String nodeName)
+  public static String attribute(XmlPullParser parser, String name)
   {
-    List<Element> result = new ArrayList<Element>();
-    NodeList childNodes = elt.getChildNodes();
-    for (int index = 0; index < childNodes.getLength(); index++)
-    {
-      Node child = childNodes.item(index);
-      if (child.getNodeType() == Node.ELEMENT_NODE && child.getNodeName().equals(nodeName))
-      {
-        result.add((Element) child);
-      }
-    }
-    return result;
+    String value = parser.getAttributeValue(null, name);
+    return value == null ? "" : value;
   }
 
-  protected String text(Element elt)
+  /**
+   * Reads the text content of the current element, up to its end tag.
+   */
+  public static String text(XmlPullParser parser)
+      throws XmlPullParserException, IOException
   {
     StringBuilder result = new StringBuilder();
-    Node child = elt.getFirstChild();
-    while (child != null)
+    int depth = parser.getDepth();
+    int event;
+    while ((event = parser.next()) != XmlPullParser.END_DOCUMENT)
     {
-      switch (child.getNodeType())
+      if (event == XmlPullParser.END_TAG && parser.getDepth() == depth)
       {
-      case Node.TEXT_NODE:
-      case Node.CDATA_SECTION_NODE:
-        result.append(child.getNodeValue());
-        break;
-      default:
         break;
       }
-      child = child.getNextSibling();
+      if (event == XmlPullParser.TEXT && parser.getDepth() == depth)
+      {
+        result.append(parser.getText());
+      }
     }
     return result.toString();
   }
 
+  /**
+   * Throws if the parser is not on the start tag of the given element.
+   */
+  protected static void require(XmlPullParser parser, String name)
+  {
+    if (!name.equals(parser.getName()))
+    {
+      throw new IllegalArgumentException("Element " + parser.getName() + " does not represent a " + name + " object.");
+    }
+  }
+
   public synchronized static Date parseDate(String s)
   {
     try
@@ -19,7 +19,10 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
-import org.w3c.dom.Element;
+import java.io.IOException;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * 
@@ -33,8 +36,8 @@ public class RtmFrob extends RtmData {
     this.value = value;
   }
 
-  public RtmFrob(Element elt) {
-    this.value = text(elt);
+  public RtmFrob(XmlPullParser parser) throws XmlPullParserException, IOException {
+    this.value = text(parser);
   }
 
   public String getValue() {
@@ -19,7 +19,7 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlPullParser;
 
 @SuppressWarnings("nls")
 public class RtmList extends RtmData {
@@ -38,12 +38,12 @@ public class RtmList extends RtmData {
     this.position = position;
   }
 
-  public RtmList(Element elt) {
-    id = elt.getAttribute("id");
-    name = elt.getAttribute("name");
-    smart = elt.getAttribute("smart").equals("1");
-    archived = elt.getAttribute("archived").equals("1");
-    position = Integer.parseInt(elt.getAttribute("position"));
+  public RtmList(XmlPullParser parser) {
+    id = attribute(parser, "id");
+    name = attribute(parser, "name");
+    smart = attribute(parser, "smart").equals("1");
+    archived = attribute(parser, "archived").equals("1");
+    position = Integer.parseInt(attribute(parser, "position"));
   }
 
   public String getId() {
@@ -19,11 +19,13 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 @SuppressWarnings("nls")
 public class RtmLists extends RtmData {
@@ -34,11 +36,14 @@ public class RtmLists extends RtmData {
     this.lists = new HashMap<String, RtmList>();
   }
 
-  public RtmLists(Element elt) {
+  public RtmLists(XmlPullParser parser) throws XmlPullParserException, IOException {
     this.lists = new HashMap<String, RtmList>();
-    for (Element listElt : children(elt, "list")) {
-      RtmList list = new RtmList(listElt);
-      lists.put(list.getId(), list);
+    int depth = parser.getDepth();
+    while (nextChild(parser, depth)) {
+      if (parser.getName().equals("list")) {
+        RtmList list = new RtmList(parser);
+        lists.put(list.getId(), list);
+      }
     }
   }
 
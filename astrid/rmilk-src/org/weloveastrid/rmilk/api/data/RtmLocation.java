@@ -19,7 +19,7 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlPullParser;
 
 /**
  * Represents a location.
@@ -46,15 +46,15 @@ public class RtmLocation
 
   public int zoom;
 
-  public RtmLocation(Element element)
+  public RtmLocation(XmlPullParser parser)
   {
-    id = element.getAttribute("id");
-    name = element.getAttribute("name");
-    longitude = Float.parseFloat(element.getAttribute("longitude"));
-    latitude = Float.parseFloat(element.getAttribute("latitude"));
-    address = element.getAttribute("address");
-    zoom = Integer.parseInt(element.getAttribute("zoom"));
-    viewable = element.getAttribute("viewable").equals("1") ? true : false;
+    id = attribute(parser, "id");
+    name = attribute(parser, "name");
+    longitude = Float.parseFloat(attribute(parser, "longitude"));
+    latitude = Float.parseFloat(attribute(parser, "latitude"));
+    address = attribute(parser, "address");
+    zoom = Integer.parseInt(attribute(parser, "zoom"));
+    viewable = attribute(parser, "viewable").equals("1") ? true : false;
   }
 
 }
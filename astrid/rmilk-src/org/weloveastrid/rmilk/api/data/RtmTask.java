@@ -21,7 +21,7 @@ package org.weloveastrid.rmilk.api.data;
 
 import java.util.Date;
 
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlPullParser;
 
 import android.util.Log;
 
@@ -95,19 +95,19 @@ public class RtmTask
     this.estimate = estimate;
   }
 
-  public RtmTask(Element elt)
+  public RtmTask(XmlPullParser parser)
   {
-    id = elt.getAttribute("id");
-    String dueStr = elt.getAttribute("due");
+    id = attribute(parser, "id");
+    String dueStr = attribute(parser, "due");
     due = (dueStr == null || dueStr.length() == 0) ? null : parseDate(dueStr);
-    hasDueTime = Integer.parseInt(elt.getAttribute("has_due_time")) != 0;
-    String addedStr = elt.getAttribute("added");
+    hasDueTime = Integer.parseInt(attribute(parser, "has_due_time")) != 0;
+    String addedStr = attribute(parser, "added");
     added = (addedStr == null || addedStr.length() == 0) ? null : parseDate(addedStr);
-    String completedStr = elt.getAttribute("completed");
+    String completedStr = attribute(parser, "completed");
     completed = (completedStr == null || completedStr.length() == 0) ? null : parseDate(completedStr);
-    String deletedStr = elt.getAttribute("deleted");
+    String deletedStr = attribute(parser, "deleted");
     deleted = (deletedStr == null || deletedStr.length() == 0) ? null : parseDate(deletedStr);
-    String priorityStr = elt.getAttribute("priority");
+    String priorityStr = attribute(parser, "priority");
     if (priorityStr.length() > 0)
     {
       switch (priorityStr.charAt(0))
@@ -134,15 +134,16 @@ public class RtmTask
     {
       priority = Priority.None;
     }
-    if (elt.hasAttribute("postponed") == true && elt.getAttribute("postponed").length() > 0)
+    String postponedStr = attribute(parser, "postponed");
+    if (postponedStr.length() > 0)
     {
-      postponed = Integer.parseInt(elt.getAttribute("postponed"));
+      postponed = Integer.parseInt(postponedStr);
     }
     else
     {
       postponed = 0;
     }
-    estimate = elt.getAttribute("estimate");
+    estimate = attribute(parser, "estimate");
   }
 
   public String getId()
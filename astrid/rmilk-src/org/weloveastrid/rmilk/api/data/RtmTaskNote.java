@@ -19,13 +19,11 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
+import java.io.IOException;
 import java.util.Date;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.EntityReference;
-import org.w3c.dom.Text;
-
-import android.util.Log;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * Represents a single task note.
@@ -48,34 +46,17 @@ public class RtmTaskNote
 
   private String text;
 
-  public RtmTaskNote(Element element)
+  public RtmTaskNote(XmlPullParser parser)
+      throws XmlPullParserException, IOException
   {
-    id = element.getAttribute("id");
-    created = parseDate(element.getAttribute("created"));
-    modified = parseDate(element.getAttribute("modified"));
-    title = element.getAttribute("title");
-
-    // The note text itself might be split across multiple children of the
-    // note element, so get all of the children.
-    for (int i=0; i < element.getChildNodes().getLength(); i++) {
-        Object innerNote = element.getChildNodes().item(i);
-
-        if(innerNote instanceof EntityReference) // this node is empty
-            continue;
-
-        if(!(innerNote instanceof Text)) {
-            Log.w("rtm-note", "Expected text type, got " + innerNote.getClass());
-            continue;
-        }
-
-    	Text innerText = (Text) innerNote;
-
-    	if (text == null)
-    	    text = innerText.getData();
-    	else
-    	    text = text.concat(innerText.getData());
-
-    }
+    id = attribute(parser, "id");
+    created = parseDate(attribute(parser, "created"));
+    modified = parseDate(attribute(parser, "modified"));
+    title = attribute(parser, "title");
+    // The note text itself might be split across several text events,
+    // which are joined here
+    String noteText = text(parser);
+    text = noteText.length() == 0 ? null : noteText;
   }
 
   public String getId()
@@ -19,11 +19,12 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.LinkedList;
-import java.util.List;
 
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  *
@@ -72,46 +73,50 @@ public class RtmTaskSeries extends RtmData {
         hasRecurrence = false;
     }
 
-    public RtmTaskSeries(RtmTaskList list, Element elt) {
+    public RtmTaskSeries(RtmTaskList list, XmlPullParser parser)
+            throws XmlPullParserException, IOException {
         this.list = list;
-        id = elt.getAttribute("id");
-        created = parseDate(elt.getAttribute("created"));
-        modified = parseDate(elt.getAttribute("modified"));
-        name = elt.getAttribute("name");
-        source = elt.getAttribute("source");
-        List<Element> children = children(elt, "task");
-        if (children.size() > 1) {
-            // assume it's a repeating task - pick the child with nearest
-            // but not expired due date
-            RtmTask selectedTask = new RtmTask(children.get(0));
-            for(Element element : children) {
-                RtmTask childTask = new RtmTask(element);
-                if(childTask.getCompleted() == null) {
+        id = attribute(parser, "id");
+        created = parseDate(attribute(parser, "created"));
+        modified = parseDate(attribute(parser, "modified"));
+        name = attribute(parser, "name");
+        source = attribute(parser, "source");
+        locationId = attribute(parser, "location_id");
+        url = attribute(parser, "url");
+
+        RtmTask selectedTask = null;
+        RtmTaskNotes seriesNotes = null;
+        LinkedList<String> seriesTags = null;
+        boolean recurrence = false;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String childName = parser.getName();
+            if (childName.equals("task")) {
+                // for repeating tasks, pick the first child that is not
+                // completed, falling back to the first one
+                RtmTask childTask = new RtmTask(parser);
+                if (selectedTask == null || (selectedTask.getCompleted() != null &&
+                        childTask.getCompleted() == null))
                     selectedTask = childTask;
-                    break;
+            } else if (childName.equals("notes")) {
+                seriesNotes = new RtmTaskNotes(parser);
+            } else if (childName.equals("rrule")) {
+                recurrence = true;
+            } else if (childName.equals("tags")) {
+                int tagsDepth = parser.getDepth();
+                while (nextChild(parser, tagsDepth)) {
+                    if (parser.getName().equals("tag")) {
+                        if (seriesTags == null)
+                            seriesTags = new LinkedList<String>();
+                        seriesTags.add(text(parser));
+                    }
                 }
             }
-            task = selectedTask;
-        } else {
-            task = new RtmTask(child(elt, "task"));
-        }
-        notes = new RtmTaskNotes(child(elt, "notes"));
-        locationId = elt.getAttribute("location_id");
-        url = elt.getAttribute("url");
-        hasRecurrence = children(elt, "rrule").size() > 0;
-
-        Element elementTags = child(elt, "tags");
-        if (elementTags.getChildNodes().getLength() > 0) {
-            List<Element> elementTagList = children(elementTags, "tag");
-            tags = new LinkedList<String>();
-            for (Element elementTag : elementTagList) {
-                String tag = text(elementTag);
-                if (tag != null)
-                    tags.add(tag);
-            }
-        } else {
-            tags = null;
         }
+        task = selectedTask;
+        notes = seriesNotes == null ? new RtmTaskNotes() : seriesNotes;
+        tags = seriesTags;
+        hasRecurrence = recurrence;
     }
 
     public String getId() {
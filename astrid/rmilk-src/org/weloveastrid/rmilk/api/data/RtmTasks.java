@@ -19,11 +19,13 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * 
@@ -38,10 +40,13 @@ public class RtmTasks extends RtmData {
     this.lists = new ArrayList<RtmTaskList>();
   }
 
-  public RtmTasks(Element elt) {
+  public RtmTasks(XmlPullParser parser) throws XmlPullParserException, IOException {
     this.lists = new ArrayList<RtmTaskList>();
-    for (Element listElt : children(elt, "list")) {
-      lists.add(new RtmTaskList(listElt));
+    int depth = parser.getDepth();
+    while (nextChild(parser, depth)) {
+      if (parser.getName().equals("list")) {
+        lists.add(new RtmTaskList(parser));
+      }
     }
   }
 
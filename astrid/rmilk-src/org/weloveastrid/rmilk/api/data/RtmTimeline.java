@@ -19,7 +19,10 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
-import org.w3c.dom.Element;
+import java.io.IOException;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 public class RtmTimeline extends RtmData {
 
@@ -29,8 +32,8 @@ public class RtmTimeline extends RtmData {
     this.id = id;
   }
 
-  public RtmTimeline(Element elt) {
-    id = text(elt);
+  public RtmTimeline(XmlPullParser parser) throws XmlPullParserException, IOException {
+    id = text(parser);
   }
 
   public String getId() {
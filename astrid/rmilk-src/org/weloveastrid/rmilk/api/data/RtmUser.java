@@ -19,7 +19,7 @@
  */
 package org.weloveastrid.rmilk.api.data;
 
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlPullParser;
 
 /**
  * 
@@ -40,12 +40,11 @@ public class RtmUser extends RtmData {
     this.fullname = fullname;
   }
 
-  public RtmUser(Element elt) {
-    if (!elt.getNodeName().equals("user")) { throw new IllegalArgumentException("Element " + elt.getNodeName() + " does not represent a User object."); }
-
-    this.id = elt.getAttribute("id");
-    this.username = elt.getAttribute("username");
-    this.fullname = elt.getAttribute("fullname");
+  public RtmUser(XmlPullParser parser) {
+    require(parser, "user");
+    this.id = attribute(parser, "id");
+    this.username = attribute(parser, "username");
+    this.fullname = attribute(parser, "fullname");
   }
 
   public String getId() {
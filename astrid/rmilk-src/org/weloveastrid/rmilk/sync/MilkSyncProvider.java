@@ -11,6 +11,11 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.weloveastrid.rmilk.MilkBackgroundService;
 import org.weloveastrid.rmilk.MilkDependencyInjector;
@@ -59,6 +64,9 @@ import com.todoroo.astrid.sync.SyncProviderUtilities;
 
 public class MilkSyncProvider extends SyncProvider<MilkTaskContainer> {
 
+    /** number of calls to RTM that may be in flight at once */
+    private static final int NUM_THREADS = 3;
+
     private ServiceImpl rtmService = null;
     private String timeline = null;
 
@@ -214,27 +222,39 @@ public class MilkSyncProvider extends SyncProvider<MilkTaskContainer> {
     // ----------------------------------------------------------------------
 
     protected void performSync() {
+        // the invoker's rate limiter spaces out the calls, so independent
+        // ones are issued from several threads instead of one by one
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
         try {
-            // get RTM timeline
-            timeline = rtmService.timelines_create();
+            final Date lastSyncDate = new Date(MilkUtilities.INSTANCE.getLastSyncDate());
+            final String filter;
+            if(lastSyncDate.getTime() == 0)
+                filter = "status:incomplete"; //$NON-NLS-1$ // 1st time sync: get unfinished tasks
+            else
+                filter = null;
+
+            // get RTM timeline, RTM lists and try the quick synchronization
+            Future<String> timelineFuture = executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return rtmService.timelines_create();
+                }
+            });
+            Future<RtmLists> listsFuture = executor.submit(new Callable<RtmLists>() {
+                public RtmLists call() throws Exception {
+                    return rtmService.lists_getList();
+                }
+            });
+            Future<RtmTasks> quickSyncFuture = submitGetList(executor, null, filter, lastSyncDate);
 
-            // load RTM lists
-            RtmLists lists = rtmService.lists_getList();
+            timeline = await(timelineFuture);
+            RtmLists lists = await(listsFuture);
             milkListService.setLists(lists);
 
             // read all tasks
             ArrayList<MilkTaskContainer> remoteChanges = new ArrayList<MilkTaskContainer>();
-            Date lastSyncDate = new Date(MilkUtilities.INSTANCE.getLastSyncDate());
             boolean shouldSyncIndividualLists = false;
-            String filter = null;
-            if(lastSyncDate.getTime() == 0)
-                filter = "status:incomplete"; //$NON-NLS-1$ // 1st time sync: get unfinished tasks
-
-            // try the quick synchronization
             try {
-                Thread.sleep(1000); // throttle
-                RtmTasks tasks = rtmService.tasks_getList(null, filter, lastSyncDate);
-                addTasksToList(tasks, remoteChanges);
+                addTasksToList(await(quickSyncFuture), remoteChanges);
             } catch (Exception e) {
                 handleException("rtm-quick-sync", e, false); //$NON-NLS-1$
                 remoteChanges.clear();
@@ -242,14 +262,15 @@ public class MilkSyncProvider extends SyncProvider<MilkTaskContainer> {
             }
 
             if(shouldSyncIndividualLists) {
+                ArrayList<Future<RtmTasks>> listFutures = new ArrayList<Future<RtmTasks>>();
                 for(RtmList list : lists.getLists().values()) {
                     if(list.isSmart())
                         continue;
+                    listFutures.add(submitGetList(executor, list.getId(), filter, lastSyncDate));
+                }
+                for(Future<RtmTasks> listFuture : listFutures) {
                     try {
-                        Thread.sleep(1500);
-                        RtmTasks tasks = rtmService.tasks_getList(list.getId(),
-                                filter, lastSyncDate);
-                        addTasksToList(tasks, remoteChanges);
+                        addTasksToList(await(listFuture), remoteChanges);
                     } catch (Exception e) {
                         handleException("rtm-indiv-sync", e, true); //$NON-NLS-1$
                         continue;
@@ -273,6 +294,28 @@ public class MilkSyncProvider extends SyncProvider<MilkTaskContainer> {
         	// occurs when application was closed
         } catch (Exception e) {
             handleException("rtm-sync", e, true); //$NON-NLS-1$
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<RtmTasks> submitGetList(ExecutorService executor, final String listId,
+            final String filter, final Date lastSyncDate) {
+        return executor.submit(new Callable<RtmTasks>() {
+            public RtmTasks call() throws Exception {
+                return rtmService.tasks_getList(listId, filter, lastSyncDate);
+            }
+        });
+    }
+
+    /** waits for the result of a call, rethrowing what the call threw */
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
         }
     }
 
@@ -5,6 +5,9 @@
  */
 package com.todoroo.astrid.activity;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -32,6 +35,7 @@ import android.preference.PreferenceGroup;
 import android.preference.PreferenceManager;
 import android.preference.PreferenceScreen;
 import android.text.TextUtils;
+import android.util.Log;
 import android.widget.Toast;
 
 import com.crittercism.app.Crittercism;
@@ -48,6 +52,7 @@ import com.todoroo.astrid.actfm.ActFmLoginActivity;
 import com.todoroo.astrid.actfm.ActFmPreferences;
 import com.todoroo.astrid.actfm.sync.ActFmPreferenceService;
 import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.astrid.backup.BackupConstants;
 import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.files.FileExplore;
@@ -472,6 +477,33 @@ public class EditPreferences extends TodorooPreferenceActivity {
         });
         group.addPreference(preference);
 
+        CheckBoxPreference checkbox = new CheckBoxPreference(this);
+        checkbox.setKey(Database.PREF_PROFILE_QUERIES);
+        checkbox.setTitle("Profile database queries");
+        checkbox.setOnPreferenceChangeListener(new OnPreferenceChangeListener() {
+            public boolean onPreferenceChange(Preference p, Object newValue) {
+                database.getProfiler().setEnabled((Boolean) newValue);
+                return true;
+            }
+        });
+        group.addPreference(checkbox);
+
+        preference = new Preference(this);
+        preference.setTitle("Dump query profile");
+        preference.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+            public boolean onPreferenceClick(Preference p) {
+                dumpQueryProfile();
+                return false;
+            }
+        });
+        group.addPreference(preference);
+
+        checkbox = new CheckBoxPreference(this);
+        checkbox.setKey(Database.PREF_WRITE_AHEAD_LOGGING);
+        checkbox.setTitle("Write-ahead logging");
+        checkbox.setSummary("Takes effect when the database is next opened");
+        group.addPreference(checkbox);
+
         preference = new Preference(this);
         preference.setTitle("Make lots of contacts");
         preference.setOnPreferenceClickListener(new OnPreferenceClickListener() {
@@ -484,6 +516,31 @@ public class EditPreferences extends TodorooPreferenceActivity {
         group.addPreference(preference);
     }
 
+    /**
+     * Write query profiler report to the sd card, or show it if there is none
+     */
+    @SuppressWarnings("nls")
+    private void dumpQueryProfile() {
+        String report = database.getProfiler().toString() + "\n" + database.getLockWaitStats();
+        File directory = BackupConstants.defaultExportDirectory();
+        if(directory != null && (directory.exists() || directory.mkdirs())) {
+            File file = new File(directory, "query-profile.txt");
+            try {
+                FileWriter writer = new FileWriter(file);
+                try {
+                    writer.write(report);
+                } finally {
+                    writer.close();
+                }
+                DialogUtilities.okDialog(this, file.getAbsolutePath(), null);
+                return;
+            } catch (IOException e) {
+                Log.e("query-profile", "Error writing profile", e);
+            }
+        }
+        DialogUtilities.okDialog(this, report, null);
+    }
+
     @Override
     public void updatePreferences(final Preference preference, Object value) {
         final Resources r = getResources();
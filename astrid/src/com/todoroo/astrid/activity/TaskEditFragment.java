@@ -10,6 +10,7 @@ import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicReference;
@@ -244,6 +245,18 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
 
     private final List<TaskEditControlSet> controls = Collections.synchronizedList(new ArrayList<TaskEditControlSet>());
 
+    /** control sets whose display view sits inside another control set's */
+    private final HashMap<TaskEditControlSet, TaskEditControlSet[]> nestedControls = new HashMap<TaskEditControlSet, TaskEditControlSet[]>();
+
+    /** control sets in the more section, read in the background after the rest */
+    private final HashSet<TaskEditControlSet> deferredControls = new HashSet<TaskEditControlSet>();
+
+    /** control sets in the hidden section, which are never read or written */
+    private final HashSet<TaskEditControlSet> hiddenControls = new HashSet<TaskEditControlSet>();
+
+    /** control sets that have been read from the current model */
+    private final HashSet<TaskEditControlSet> loadedControls = new HashSet<TaskEditControlSet>();
+
     // --- other instance variables
 
     /** true if editing started with a new task */
@@ -541,6 +554,7 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
         repeatControls.addListener(editTitle);
         controls.add(deadlineControl);
         controls.add(gcalControl);
+        nestedControls.put(deadlineControl, new TaskEditControlSet[] { repeatControls, gcalControl });
 
         ImportanceControlSet importanceControl = new ImportanceControlSet(
                 getActivity(), R.layout.control_set_importance);
@@ -570,6 +584,7 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
                 R.string.hide_until_prompt);
         controls.add(hideUntilControls);
         reminderControl.addViewToBody(hideUntilControls.getDisplayView());
+        nestedControls.put(reminderControl, new TaskEditControlSet[] { hideUntilControls });
 
         // TODO: Fix the fact that hideUntil doesn't update accordingly with date changes when lazy loaded. Until then, don't lazy load.
         hideUntilControls.getView();
@@ -663,6 +678,9 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
 
         moreSectionHasControls = false;
 
+        HashSet<TaskEditControlSet> basicSet = new HashSet<TaskEditControlSet>();
+        HashSet<TaskEditControlSet> moreSet = new HashSet<TaskEditControlSet>();
+
         Class<?> openControl = (Class<?>) getActivity().getIntent().getSerializableExtra(TOKEN_OPEN_CONTROL);
 
         for (int i = 0; i < itemOrder.length; i++) {
@@ -693,15 +711,71 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
                     section.addView(controlSet);
                     if (section == moreControls)
                         moreSectionHasControls = true;
+                    if (curr != null)
+                        (section == moreControls ? moreSet : basicSet).add(curr);
                 }
 
                 if (curr != null && curr.getClass().equals(openControl) && curr instanceof PopupControlSet) {
+                    basicSet.add(curr);
                     ((PopupControlSet) curr).getDisplayView().performClick();
                 }
             }
         }
 
         getActivity().getIntent().removeExtra(TOKEN_OPEN_CONTROL);
+
+        sortControlsBySection(basicSet, moreSet);
+    }
+
+    /**
+     * Decide when each mapped control set gets read: with the task if it is
+     * in the basic section, in the background if it is in the more section,
+     * or never if it is hidden. Tags and people are always read with the task,
+     * since the people control set and saving depend on them.
+     */
+    private void sortControlsBySection(HashSet<TaskEditControlSet> basicSet,
+            HashSet<TaskEditControlSet> moreSet) {
+        synchronized (controls) {
+            deferredControls.clear();
+            hiddenControls.clear();
+            for (TaskEditControlSet controlSet : controlSetMap.values()) {
+                if (controlSet == tagsControlSet || controlSet == peopleControlSet ||
+                        basicSet.contains(controlSet))
+                    continue;
+                HashSet<TaskEditControlSet> target = moreSet.contains(controlSet) ?
+                        deferredControls : hiddenControls;
+                target.add(controlSet);
+                TaskEditControlSet[] nested = nestedControls.get(controlSet);
+                if (nested != null)
+                    Collections.addAll(target, nested);
+            }
+        }
+    }
+
+    /**
+     * Read the more section's control sets, if that hasn't happened yet for
+     * the current task. Usually called once the {@link DeferredControlLoader}
+     * has prefetched their data. Also called when the more section comes into
+     * view and before saving, so control sets are never read after the user
+     * edited them or skipped when saving; any not prefetched yet then load on
+     * the UI thread.
+     */
+    private void loadDeferredControls() {
+        if (model == null)
+            return;
+        synchronized (controls) {
+            for (TaskEditControlSet controlSet : controls) {
+                if (deferredControls.contains(controlSet) && !loadedControls.contains(controlSet))
+                    readControlSet(controlSet);
+            }
+        }
+    }
+
+    private void readControlSet(TaskEditControlSet controlSet) {
+        controlSet.readFromTask(model);
+        loadedControls.add(controlSet);
+        if (controlSet == filesControlSet && !filesControlSet.hasFiles())
+            filesControlSet.getDisplayView().setVisibility(View.GONE);
     }
 
     private void removeTeaSeparator(View view) {
@@ -775,6 +849,43 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
         }
     }
 
+    /**
+     * Prefetch data for the more section's control sets in the background,
+     * then read them on the UI thread
+     */
+    private class DeferredControlLoader extends Thread {
+
+        private final Task task;
+        private final TaskEditControlSet[] pending;
+
+        public DeferredControlLoader(Task task, TaskEditControlSet[] pending) {
+            this.task = task;
+            this.pending = pending;
+        }
+
+        @Override
+        public void run() {
+            for (TaskEditControlSet controlSet : pending) {
+                try {
+                    controlSet.prefetchFromTask(task);
+                } catch (Exception e) {
+                    Log.e("astrid-error", "prefetch-control-set", e); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+            }
+
+            Activity activity = getActivity();
+            if (activity == null)
+                return;
+
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    if (model == task)
+                        loadDeferredControls();
+                }
+            });
+        }
+    }
+
     /*
      * ======================================================================
      * =============================================== model reading / saving
@@ -871,14 +982,18 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
     public void populateFields(Intent intent) {
         loadItem(intent);
 
+        TaskEditControlSet[] pending;
         synchronized (controls) {
-            if (!FileMetadata.taskHasAttachments(model.getId())) {
-                filesControlSet.getDisplayView().setVisibility(View.GONE);
+            loadedControls.clear();
+            for (TaskEditControlSet controlSet : controls) {
+                if (!deferredControls.contains(controlSet) && !hiddenControls.contains(controlSet))
+                    readControlSet(controlSet);
             }
-            for (TaskEditControlSet controlSet : controls)
-                controlSet.readFromTask(model);
+            pending = deferredControls.toArray(new TaskEditControlSet[deferredControls.size()]);
         }
 
+        if (pending.length > 0)
+            new DeferredControlLoader(model, pending).start();
     }
 
     /** Populate UI component values from the model */
@@ -899,7 +1014,10 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
 
         StringBuilder toast = new StringBuilder();
         synchronized (controls) {
+            loadDeferredControls();
             for (TaskEditControlSet controlSet : controls) {
+                if (!loadedControls.contains(controlSet)) // Never read, nothing to write
+                    continue;
                 if (controlSet instanceof PopupControlSet) { // Save open control set
                     PopupControlSet popup = (PopupControlSet) controlSet;
                     Dialog d = popup.getDialog();
@@ -1444,11 +1562,15 @@ ViewPager.OnPageChangeListener, EditNoteActivity.UpdatesChangedListener {
     @Override
     public void onPageScrolled(int position, float positionOffset,
             int positionOffsetPixels) {
-        return;
+        if (positionOffsetPixels != 0 || getTabForPosition(position) == TAB_VIEW_MORE)
+            loadDeferredControls();
     }
 
     @Override
     public void onPageSelected(final int position) {
+        if (getTabForPosition(position) == TAB_VIEW_MORE)
+            loadDeferredControls();
+
         final Runnable onPageSelected = new Runnable() {
             @Override
             public void run() {
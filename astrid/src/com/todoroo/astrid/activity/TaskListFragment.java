@@ -93,6 +93,7 @@ import com.todoroo.astrid.reminders.ReminderDebugContextActions;
 import com.todoroo.astrid.service.AddOnService;
 import com.todoroo.astrid.service.AstridDependencyInjector;
 import com.todoroo.astrid.service.MetadataService;
+import com.todoroo.astrid.service.StartupService;
 import com.todoroo.astrid.service.StatisticsConstants;
 import com.todoroo.astrid.service.StatisticsService;
 import com.todoroo.astrid.service.TagDataService;
@@ -920,6 +921,13 @@ public class TaskListFragment extends ListFragment implements OnScrollListener,
         registerForContextMenu(getListView());
 
         loadTaskListContent(true);
+
+        // deferred startup work may begin once the list has been drawn
+        getListView().post(new Runnable() {
+            public void run() {
+                StartupService.onListRendered();
+            }
+        });
     }
 
     public Property<?>[] taskProperties() {
@@ -6,7 +6,6 @@
 package com.todoroo.astrid.adapter;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -20,7 +19,6 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.Color;
 import android.os.Bundle;
@@ -40,13 +38,11 @@ import android.widget.TextView;
 
 import com.timsu.astrid.R;
 import com.todoroo.andlib.service.Autowired;
-import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
 import com.todoroo.astrid.activity.AstridActivity;
 import com.todoroo.astrid.activity.FilterListFragment;
 import com.todoroo.astrid.activity.TaskListFragment;
 import com.todoroo.astrid.api.AstridApiConstants;
-import com.todoroo.astrid.api.AstridFilterExposer;
 import com.todoroo.astrid.api.Filter;
 import com.todoroo.astrid.api.FilterCategory;
 import com.todoroo.astrid.api.FilterCategoryWithNewButton;
@@ -86,8 +82,9 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
 
     /** receiver for new filters */
     protected final FilterReceiver filterReceiver = new FilterReceiver();
-    private final BladeFilterReceiver bladeFilterReceiver = new BladeFilterReceiver();
-    private boolean shouldUseBladeFilter = true;
+
+    /** cached filters of Astrid's own exposers */
+    private final FilterRegistry filterRegistry = FilterRegistry.getInstance();
 
     /** row layout to inflate */
     private final int layout;
@@ -168,11 +165,10 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
                         }
                     }
 
-                    if (size < 0) {
+                    // filters may be cached by the registry, so the count is
+                    // kept here instead of being appended to the title
+                    if (size < 0)
                         size = taskService.countTasks(filter);
-                        filter.listingTitle = filter.listingTitle + (" (" + //$NON-NLS-1$
-                                size + ")"); //$NON-NLS-1$
-                    }
 
                     filterCounts.put(filter, size);
                     activity.runOnUiThread(new Runnable() {
@@ -371,7 +367,6 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
                 extras.setClassLoader(FilterListHeader.class.getClassLoader());
                 final Parcelable[] filters = extras.getParcelableArray(AstridApiConstants.EXTRAS_RESPONSE);
                 populateFiltersToAdapter(filters);
-                shouldUseBladeFilter = getCount() == 0;
             } catch (Exception e) {
                 Log.e("receive-filter-" +  //$NON-NLS-1$
                         intent.getStringExtra(AstridApiConstants.EXTRAS_ADDON),
@@ -405,50 +400,6 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
         }
     }
 
-    /**
-     * Receiver which gets called after the FilterReceiver
-     * and checks if the filters are populated.
-     * If they aren't (e.g. due to the bug in the ZTE Blade's Parcelable-system throwing a
-     * ClassNotFoundExeption), the filters are fetched manually.
-     *
-     * @author Arne Jans <arne@astrid.com>
-     *
-     */
-    public class BladeFilterReceiver extends FilterReceiver {
-        private final List<ResolveInfo> filterExposerList;
-
-        public BladeFilterReceiver() {
-            // query astrids AndroidManifest.xml for all registered default-receivers to expose filters
-            PackageManager pm = ContextManager.getContext().getPackageManager();
-            filterExposerList = pm.queryBroadcastReceivers(
-                    new Intent(AstridApiConstants.BROADCAST_REQUEST_FILTERS),
-                    PackageManager.MATCH_DEFAULT_ONLY);
-        }
-
-        @SuppressWarnings("nls")
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (shouldUseBladeFilter && getCount() == 0 && filterExposerList != null && filterExposerList.size()>0) {
-                try {
-                    for (ResolveInfo filterExposerInfo : filterExposerList) {
-                        Log.d("BladeFilterReceiver", filterExposerInfo.toString());
-                        String className = filterExposerInfo.activityInfo.name;
-                        AstridFilterExposer filterExposer = null;
-                            filterExposer = (AstridFilterExposer) Class.forName(className, true, FilterAdapter.class.getClassLoader()).newInstance();
-
-                        if (filterExposer != null) {
-                            populateFiltersToAdapter(filterExposer.getFilters());
-                        }
-                    }
-                } catch (Exception e) {
-                    Log.e("receive-bladefilter-" +  //$NON-NLS-1$
-                            intent.getStringExtra(AstridApiConstants.EXTRAS_ADDON),
-                            e.toString(), e);
-                }
-            }
-        }
-    }
-
     @Override
     public void notifyDataSetChanged() {
         super.notifyDataSetChanged();
@@ -457,21 +408,22 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
     }
 
     /**
-     * Broadcast a request for lists. The request is sent to every
-     * application registered to listen for this broadcast. Each application
-     * can then add lists to this activity
+     * Load lists. Astrid's own lists come from the {@link FilterRegistry},
+     * other applications are asked for theirs by broadcast and can then
+     * add lists to this activity
      */
     public void getLists() {
-        Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_REQUEST_FILTERS);
-//        activity.sendOrderedBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
-        // the bladeFilterReceiver will be called after the usual FilterReceiver has finished (to handle the empty list)
-        activity.sendOrderedBroadcast(broadcastIntent,
-                AstridApiConstants.PERMISSION_READ,
-                bladeFilterReceiver,
-                null,
-                Activity.RESULT_OK,
-                null,
-                null);
+        filterRegistry.load(activity, new FilterRegistry.FilterCallback() {
+            public void onFilters(FilterListItem[] filters) {
+                filterReceiver.populateFiltersToAdapter(filters);
+            }
+        });
+
+        for(ResolveInfo exposer : filterRegistry.getExternalExposers()) {
+            Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_REQUEST_FILTERS);
+            broadcastIntent.setClassName(exposer.activityInfo.packageName, exposer.activityInfo.name);
+            activity.sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+        }
     }
 
     /**
@@ -479,11 +431,7 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
      */
     public void registerRecevier() {
         IntentFilter regularFilter = new IntentFilter(AstridApiConstants.BROADCAST_SEND_FILTERS);
-        regularFilter.setPriority(2);
         activity.registerReceiver(filterReceiver, regularFilter);
-        IntentFilter bladeFilter = new IntentFilter(AstridApiConstants.BROADCAST_SEND_FILTERS);
-        bladeFilter.setPriority(1);
-        activity.registerReceiver(bladeFilterReceiver, bladeFilter);
         getLists();
     }
 
@@ -492,7 +440,6 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
      */
     public void unregisterRecevier() {
         activity.unregisterReceiver(filterReceiver);
-        activity.unregisterReceiver(bladeFilterReceiver);
     }
 
     /**
@@ -551,7 +498,7 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
 
             String title;
             int listingTitleSplit = filter.listingTitle.lastIndexOf(' ');
-            if (listingTitleSplit > 0) {
+            if (listingTitleSplit > 0 && countPattern.matcher(filter.listingTitle).matches()) {
                 title = filter.listingTitle.substring(0, listingTitleSplit);
             } else {
                 title = filter.listingTitle;
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.adapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.weloveastrid.rmilk.MilkFilterExposer;
+import org.weloveastrid.rmilk.MilkUtilities;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.util.Log;
+
+import com.todoroo.andlib.data.Table;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.service.ContextManager;
+import com.todoroo.andlib.service.DependencyInjectionService;
+import com.timsu.astrid.R;
+import com.todoroo.andlib.utility.Preferences;
+import com.todoroo.astrid.actfm.sync.ActFmPreferenceService;
+import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.astrid.api.AstridFilterExposer;
+import com.todoroo.astrid.api.FilterListItem;
+import com.todoroo.astrid.core.CoreFilterExposer;
+import com.todoroo.astrid.core.CustomFilterExposer;
+import com.todoroo.astrid.dao.Database;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.StoreObject;
+import com.todoroo.astrid.data.TagData;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.gtasks.GtasksFilterExposer;
+import com.todoroo.astrid.gtasks.GtasksPreferenceService;
+import com.todoroo.astrid.producteev.ProducteevFilterExposer;
+import com.todoroo.astrid.producteev.ProducteevUtilities;
+import com.todoroo.astrid.tags.TagFilterExposer;
+import com.todoroo.astrid.timers.TimerFilterExposer;
+import com.todoroo.astrid.utility.Constants;
+
+/**
+ * Keeps the last filters of each of Astrid's own filter exposers, stamped
+ * with the generation of the tables the exposer reads. Exposers are only
+ * asked again when one of those tables, a preference the exposer reads or
+ * the locale has changed since, so the filter list is usually built
+ * straight from the cache. Exposers of other applications are not cached,
+ * they still answer {@link AstridApiConstants#BROADCAST_REQUEST_FILTERS}.
+ */
+@SuppressWarnings("nls")
+public class FilterRegistry {
+
+    /**
+     * Receives the filters of each exposer, in exposer priority order
+     */
+    public interface FilterCallback {
+        public void onFilters(FilterListItem[] filters);
+    }
+
+    /**
+     * Tables each exposer builds its filters from. Exposers not listed here
+     * depend on every table.
+     */
+    private static final HashMap<String, Table[]> DEPENDENCIES = new HashMap<String, Table[]>();
+    static {
+        DEPENDENCIES.put(CoreFilterExposer.class.getName(), new Table[0]);
+        DEPENDENCIES.put(CustomFilterExposer.class.getName(), new Table[] { StoreObject.TABLE });
+        DEPENDENCIES.put(TagFilterExposer.class.getName(), new Table[] { Task.TABLE, Metadata.TABLE, TagData.TABLE });
+        DEPENDENCIES.put(GtasksFilterExposer.class.getName(), new Table[] { StoreObject.TABLE });
+        DEPENDENCIES.put(TimerFilterExposer.class.getName(), new Table[] { Task.TABLE });
+        DEPENDENCIES.put(ProducteevFilterExposer.class.getName(), new Table[] { StoreObject.TABLE });
+        DEPENDENCIES.put(MilkFilterExposer.class.getName(), new Table[] { StoreObject.TABLE });
+    }
+
+    private static FilterRegistry instance = null;
+
+    public static synchronized FilterRegistry getInstance() {
+        if(instance == null)
+            instance = new FilterRegistry(ContextManager.getContext());
+        return instance;
+    }
+
+    @Autowired Database database;
+
+    @Autowired GtasksPreferenceService gtasksPreferenceService;
+
+    /**
+     * Preferences each exposer builds its filters from. Exposers not listed
+     * here depend on every preference.
+     */
+    private final HashMap<String, String[]> settingDependencies = new HashMap<String, String[]>();
+
+    private final ArrayList<Exposer> exposers = new ArrayList<Exposer>();
+
+    private final ArrayList<ResolveInfo> externalExposers = new ArrayList<ResolveInfo>();
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    /** registered listeners are only weakly referenced, so keep it here */
+    private final OnSharedPreferenceChangeListener preferenceListener = new OnSharedPreferenceChangeListener() {
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            onPreferenceChanged(key);
+        }
+    };
+
+    /**
+     * One of Astrid's filter exposers and its last filters
+     */
+    private class Exposer {
+        final String className;
+        final String tables;
+        final HashSet<String> preferences;
+        /** bumped whenever one of the preferences changes */
+        final AtomicLong settingsVersion = new AtomicLong();
+        AstridFilterExposer exposer;
+
+        // guarded by FilterRegistry.this
+        FilterListItem[] filters;
+        long generation = -1;
+        long settings = -1;
+        Locale locale;
+
+        Exposer(String className) {
+            this.className = className;
+            Table[] dependencies = DEPENDENCIES.get(className);
+            if(dependencies == null)
+                dependencies = Database.TABLES;
+            StringBuilder names = new StringBuilder();
+            for(Table table : dependencies)
+                names.append(table.name).append(' ');
+            this.tables = names.toString();
+            String[] keys = settingDependencies.get(className);
+            this.preferences = keys == null ? null : new HashSet<String>(Arrays.asList(keys));
+        }
+
+        boolean dependsOn(String preference) {
+            return preferences == null || preferences.contains(preference);
+        }
+
+        long currentGeneration() {
+            return tables.length() == 0 ? 0 : database.getGeneration(tables);
+        }
+
+        /** called with the registry lock held */
+        boolean isFresh() {
+            return generation >= 0 && generation == currentGeneration() &&
+                settings == settingsVersion.get() && Locale.getDefault().equals(locale);
+        }
+
+        /** called on the worker */
+        void refresh() {
+            long newGeneration = currentGeneration();
+            long newSettings = settingsVersion.get();
+            Locale newLocale = Locale.getDefault();
+            try {
+                if(exposer == null)
+                    exposer = (AstridFilterExposer) Class.forName(className, true,
+                            FilterRegistry.class.getClassLoader()).newInstance();
+                FilterListItem[] newFilters = exposer.getFilters();
+                synchronized(FilterRegistry.this) {
+                    filters = newFilters;
+                    generation = newGeneration;
+                    settings = newSettings;
+                    locale = newLocale;
+                }
+            } catch (Exception e) {
+                Log.e("filter-registry", "Error reading filters of " + className, e);
+            }
+        }
+    }
+
+    FilterRegistry(Context context) {
+        DependencyInjectionService.getInstance().inject(this);
+
+        String gtasksToken = gtasksPreferenceService.getTokenKey();
+        settingDependencies.put(CoreFilterExposer.class.getName(), new String[0]);
+        settingDependencies.put(CustomFilterExposer.class.getName(), new String[] {
+                context.getString(R.string.p_use_filters),
+                context.getString(R.string.p_show_today_filter),
+                context.getString(R.string.p_show_recently_modified_filter),
+                context.getString(R.string.p_show_ive_assigned_filter),
+                ActFmPreferenceService.PREF_USER_ID });
+        settingDependencies.put(TagFilterExposer.class.getName(), new String[] {
+                context.getString(R.string.p_show_not_in_list_filter), gtasksToken });
+        settingDependencies.put(GtasksFilterExposer.class.getName(), new String[] { gtasksToken });
+        settingDependencies.put(TimerFilterExposer.class.getName(), new String[0]);
+        settingDependencies.put(ProducteevFilterExposer.class.getName(), new String[] {
+                ProducteevUtilities.INSTANCE.getTokenKey(), ProducteevUtilities.PREF_USER_ID });
+        settingDependencies.put(MilkFilterExposer.class.getName(), new String[] {
+                MilkUtilities.INSTANCE.getTokenKey() });
+
+        // same receivers that would get the filter request broadcast
+        PackageManager pm = context.getPackageManager();
+        List<ResolveInfo> receivers = pm.queryBroadcastReceivers(
+                new Intent(AstridApiConstants.BROADCAST_REQUEST_FILTERS),
+                PackageManager.MATCH_DEFAULT_ONLY);
+        if(receivers != null) {
+            for(ResolveInfo receiver : receivers) {
+                if(isCacheable(receiver))
+                    exposers.add(new Exposer(receiver.activityInfo.name));
+                else
+                    externalExposers.add(receiver);
+            }
+        }
+
+        Preferences.getPrefs(context).registerOnSharedPreferenceChangeListener(preferenceListener);
+    }
+
+    private static boolean isCacheable(ResolveInfo receiver) {
+        if(!Constants.PACKAGE.equals(receiver.activityInfo.packageName))
+            return false;
+        try {
+            return AstridFilterExposer.class.isAssignableFrom(Class.forName(receiver.activityInfo.name,
+                    false, FilterRegistry.class.getClassLoader()));
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hands the filters of all cached exposers to the callback. If none of
+     * them are stale this happens right away, otherwise stale exposers are
+     * asked again on a background thread and the callback is run on the
+     * activity's UI thread.
+     */
+    public void load(final Activity activity, final FilterCallback callback) {
+        ArrayList<FilterListItem[]> cached = getIfFresh();
+        if(cached != null) {
+            deliver(cached, callback);
+            return;
+        }
+
+        worker.execute(new Runnable() {
+            public void run() {
+                refreshStale();
+                final ArrayList<FilterListItem[]> filters = getAll();
+                activity.runOnUiThread(new Runnable() {
+                    public void run() {
+                        deliver(filters, callback);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return exposers of other applications, which have to be asked for
+     *         their filters by broadcast
+     */
+    public List<ResolveInfo> getExternalExposers() {
+        return externalExposers;
+    }
+
+    /**
+     * Forget all cached filters, e.g. after a change that is not recorded
+     * in the database or preferences
+     */
+    public void invalidate() {
+        for(Exposer exposer : exposers)
+            exposer.settingsVersion.incrementAndGet();
+    }
+
+    /**
+     * Forget the filters of exposers that read the given preference. Other
+     * preferences, such as sync marks, are written often and don't affect
+     * any filters.
+     */
+    void onPreferenceChanged(String key) {
+        for(Exposer exposer : exposers)
+            if(exposer.dependsOn(key))
+                exposer.settingsVersion.incrementAndGet();
+    }
+
+    /** ask stale exposers for their filters, on the calling thread */
+    void refreshStale() {
+        for(Exposer exposer : exposers) {
+            synchronized(this) {
+                if(exposer.isFresh())
+                    continue;
+            }
+            exposer.refresh();
+        }
+    }
+
+    /**
+     * @return true if the given exposer's cached filters are current, for
+     *         tests
+     */
+    synchronized boolean isFresh(String className) {
+        for(Exposer exposer : exposers)
+            if(exposer.className.equals(className))
+                return exposer.isFresh();
+        throw new IllegalArgumentException(className);
+    }
+
+    /** @return filters of all exposers, null if one of them is stale */
+    private synchronized ArrayList<FilterListItem[]> getIfFresh() {
+        for(Exposer exposer : exposers)
+            if(!exposer.isFresh())
+                return null;
+        return getAll();
+    }
+
+    private synchronized ArrayList<FilterListItem[]> getAll() {
+        ArrayList<FilterListItem[]> result = new ArrayList<FilterListItem[]>(exposers.size());
+        for(Exposer exposer : exposers)
+            if(exposer.filters != null)
+                result.add(exposer.filters);
+        return result;
+    }
+
+    private static void deliver(ArrayList<FilterListItem[]> filters, FilterCallback callback) {
+        for(FilterListItem[] items : filters)
+            callback.onFilters(items);
+    }
+
+}
@@ -5,6 +5,7 @@
  */
 package com.todoroo.astrid.adapter;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -57,6 +58,7 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import com.timsu.astrid.R;
+import com.todoroo.andlib.data.DatabaseDao.CursorReader;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
@@ -74,7 +76,6 @@ import com.todoroo.andlib.utility.Pair;
 import com.todoroo.andlib.utility.Preferences;
 import com.todoroo.astrid.activity.TaskListFragment;
 import com.todoroo.astrid.api.AstridApiConstants;
-import com.todoroo.astrid.api.PermaSql;
 import com.todoroo.astrid.api.TaskAction;
 import com.todoroo.astrid.api.TaskDecoration;
 import com.todoroo.astrid.api.TaskDecorationExposer;
@@ -741,40 +742,45 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
         private final LongProperty fileIdProperty = new LongProperty(Metadata.TABLE.as(METADATA_JOIN),
                 Metadata.ID.name).as(FILE_COLUMN);
 
+        /** reads the tasks that can have actions and whether they have attachments */
+        private final CursorReader<Task, List<Pair<Task, Boolean>>> actionTasksReader =
+            new CursorReader<Task, List<Pair<Task, Boolean>>>() {
+            @Override
+            public List<Pair<Task, Boolean>> read(TodorooCursor<Task> cursor) {
+                List<Pair<Task, Boolean>> result = new ArrayList<Pair<Task, Boolean>>(cursor.getCount());
+                for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                    Task task = new Task(cursor);
+                    if(task.isCompleted() || !task.isEditable())
+                        continue;
+                    result.add(Pair.create(task, cursor.get(fileIdProperty) > 0));
+                }
+                return Collections.unmodifiableList(result);
+            }
+        };
+
         @Override
         public void run() {
             AndroidUtilities.sleepDeep(500L);
-            String groupedQuery = query.get();
-
-            groupedQuery = PermaSql.replacePlaceholders(groupedQuery);
 
+            // rows are cached until tasks or metadata change, actions are
+            // not as they also depend on preferences and installed apps
             Query q = Query.select(Task.ID, Task.TITLE, Task.NOTES, Task.COMPLETION_DATE, Task.FLAGS, Task.USER_ID,
                     fileIdProperty)
                     .join(Join.left(Metadata.TABLE.as(METADATA_JOIN),
                             Criterion.and(Field.field(METADATA_JOIN + "." + Metadata.KEY.name).eq(FileMetadata.METADATA_KEY),
-                                    Task.ID.eq(Field.field(METADATA_JOIN + "." + Metadata.TASK.name))))).withQueryTemplate(groupedQuery);
-            final TodorooCursor<Task> fetchCursor = taskService.query(q);
-
-            try {
-                Task task = new Task();
-                LinkActionExposer linkActionExposer = new LinkActionExposer();
-
-                for(fetchCursor.moveToFirst(); !fetchCursor.isAfterLast(); fetchCursor.moveToNext()) {
-                    task.clear();
-                    task.readFromCursor(fetchCursor);
-                    if(task.isCompleted() || !task.isEditable())
-                        continue;
-
-                    boolean hasAttachments = (fetchCursor.get(fileIdProperty) > 0);
-                    List<TaskAction> actions = linkActionExposer.
-                            getActionsForTask(ContextManager.getContext(), task, hasAttachments);
-                    if (actions.size() > 0)
-                        taskActionLoader.put(task.getId(), actions.get(0));
-                    else
-                        taskActionLoader.remove(task.getId());
-                }
-            } finally {
-                fetchCursor.close();
+                                    Task.ID.eq(Field.field(METADATA_JOIN + "." + Metadata.TASK.name)))));
+            List<Pair<Task, Boolean>> tasks = taskService.fetchFilteredCached(q, query.get(),
+                    actionTasksReader);
+
+            LinkActionExposer linkActionExposer = new LinkActionExposer();
+            for(Pair<Task, Boolean> row : tasks) {
+                Task task = row.getLeft();
+                List<TaskAction> actions = linkActionExposer.
+                        getActionsForTask(ContextManager.getContext(), task, row.getRight());
+                if (actions.size() > 0)
+                    taskActionLoader.put(task.getId(), actions.get(0));
+                else
+                    taskActionLoader.remove(task.getId());
             }
             final Activity activity = fragment.getActivity();
             if (activity != null) {
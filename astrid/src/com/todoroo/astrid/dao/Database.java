@@ -14,8 +14,10 @@ import com.todoroo.andlib.data.AbstractModel;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Table;
 import com.todoroo.andlib.service.ContextManager;
+import com.todoroo.andlib.utility.Preferences;
 import com.todoroo.astrid.data.ABTestEvent;
 import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.PendingPush;
 import com.todoroo.astrid.data.StoreObject;
 import com.todoroo.astrid.data.TagData;
 import com.todoroo.astrid.data.Task;
@@ -40,13 +42,24 @@ public class Database extends AbstractDatabase {
      * Database version number. This variable must be updated when database
      * tables are updated, as it determines whether a database needs updating.
      */
-    public static final int VERSION = 28;
+    public static final int VERSION = 29;
 
     /**
      * Database name (must be unique)
      */
     private static final String NAME = "database";
 
+    /**
+     * Preference key to opt in to write-ahead logging with concurrent
+     * read connections
+     */
+    public static final String PREF_WRITE_AHEAD_LOGGING = "db_write_ahead_logging";
+
+    /**
+     * Preference key to turn on the query profiler
+     */
+    public static final String PREF_PROFILE_QUERIES = "db_profile_queries";
+
     /**
      * List of table/ If you're adding a new table, add it to this list and
      * also make sure that our SQLite helper does the right thing.
@@ -59,6 +72,7 @@ public class Database extends AbstractDatabase {
         Update.TABLE,
         User.TABLE,
         ABTestEvent.TABLE,
+        PendingPush.TABLE,
     };
 
     // --- listeners
@@ -92,6 +106,16 @@ public class Database extends AbstractDatabase {
         return TABLES;
     }
 
+    @Override
+    protected boolean shouldUseWriteAheadLogging() {
+        return Preferences.getBoolean(PREF_WRITE_AHEAD_LOGGING, false);
+    }
+
+    @Override
+    protected boolean shouldProfileQueries() {
+        return Preferences.getBoolean(PREF_PROFILE_QUERIES, false);
+    }
+
     /**
      * Create indices
      */
@@ -155,6 +179,14 @@ public class Database extends AbstractDatabase {
         append(')');
         database.execSQL(sql.toString());
         sql.setLength(0);
+
+        sql.append("CREATE UNIQUE INDEX IF NOT EXISTS pp_item ON ").
+        append(PendingPush.TABLE).append('(').
+        append(PendingPush.TYPE.name).append(',').
+        append(PendingPush.ITEM.name).
+        append(')');
+        database.execSQL(sql.toString());
+        sql.setLength(0);
     }
 
     @Override
@@ -351,6 +383,12 @@ public class Database extends AbstractDatabase {
         } catch (SQLiteException e) {
             Log.e("astrid", "db-upgrade-" + oldVersion + "-" + newVersion, e);
         }
+        case 28: try {
+            database.execSQL(createTableSql(visitor, PendingPush.TABLE.name, PendingPush.PROPERTIES));
+            onCreateTables();
+        } catch (SQLiteException e) {
+            Log.e("astrid", "db-upgrade-" + oldVersion + "-" + newVersion, e);
+        }
 
         return true;
         }
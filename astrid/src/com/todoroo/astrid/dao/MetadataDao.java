@@ -73,15 +73,24 @@ public class MetadataDao extends DatabaseDao<Metadata> {
             item.setValue(Metadata.CREATION_DATE, DateUtilities.now());
 
         boolean state = super.persist(item);
+        if (state)
+            reportFirstList(item);
+        Astrid2TaskProvider.notifyDatabaseModification();
+        return state;
+    }
+
+    /**
+     * Report the user's first list, if the given metadata was just saved
+     * and is a tag. Called by persist, and by bulk writers that bypass it
+     */
+    public void reportFirstList(Metadata item) {
         if(Preferences.getBoolean(AstridPreferences.P_FIRST_LIST, true)) {
-            if (state && item.containsNonNullValue(Metadata.KEY) &&
+            if (item.containsNonNullValue(Metadata.KEY) &&
                     item.getValue(Metadata.KEY).equals(TagService.KEY)) {
                 StatisticsService.reportEvent(StatisticsConstants.USER_FIRST_LIST);
                 Preferences.setBoolean(AstridPreferences.P_FIRST_LIST, false);
             }
         }
-        Astrid2TaskProvider.notifyDatabaseModification();
-        return state;
     }
 
     /**
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.todoroo.andlib.data.DatabaseDao;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Order;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.data.PendingPush;
+
+/**
+ * Data access for the outbox of failed pushes. Failures of the same item
+ * are coalesced into one entry, which is retried with exponential backoff.
+ */
+public class PendingPushDao extends DatabaseDao<PendingPush> {
+
+    /** longest wait between two tries of the same push */
+    public static final long MAX_BACKOFF = 6 * DateUtilities.ONE_HOUR;
+
+    @Autowired Database database;
+
+    @edu.umd.cs.findbugs.annotations.SuppressWarnings(value="UR_UNINIT_READ")
+    public PendingPushDao() {
+        super(PendingPush.class);
+        DependencyInjectionService.getInstance().inject(this);
+        setDatabase(database);
+    }
+
+    /**
+     * Records a failed push. If the item is already waiting for a retry
+     * that is not due yet, nothing changes. Otherwise its next try is
+     * scheduled <code>retryDelay</code> after the first failure, doubling
+     * with every failure after that.
+     *
+     * @param type one of the PendingPush type constants
+     * @param item local id of the item
+     * @param retryDelay delay after the first failure
+     */
+    public void schedule(final int type, final long item, final long retryDelay) {
+        runInTransaction(new Runnable() {
+            public void run() {
+                long now = DateUtilities.now();
+                PendingPush push = null;
+                TodorooCursor<PendingPush> cursor = query(Query.select(PendingPush.PROPERTIES).where(
+                        Criterion.and(PendingPush.TYPE.eq(type), PendingPush.ITEM.eq(item))));
+                try {
+                    if(cursor.moveToFirst())
+                        push = new PendingPush(cursor);
+                } finally {
+                    cursor.close();
+                }
+
+                if(push == null) {
+                    push = new PendingPush();
+                    push.setValue(PendingPush.TYPE, type);
+                    push.setValue(PendingPush.ITEM, item);
+                } else if(push.getValue(PendingPush.NEXT_ATTEMPT) > now) {
+                    return;
+                }
+
+                int attempts = push.getValue(PendingPush.ATTEMPTS) + 1;
+                long backoff = retryDelay << Math.min(attempts - 1, 16);
+                push.setValue(PendingPush.ATTEMPTS, attempts);
+                push.setValue(PendingPush.NEXT_ATTEMPT, now + Math.min(backoff, MAX_BACKOFF));
+                persist(push);
+            }
+        });
+    }
+
+    /**
+     * @return up to <code>limit</code> pushes due at the given time, oldest
+     *         first
+     */
+    public List<PendingPush> getDue(long time, int limit) {
+        ArrayList<PendingPush> result = new ArrayList<PendingPush>();
+        TodorooCursor<PendingPush> cursor = query(Query.select(PendingPush.PROPERTIES).where(
+                PendingPush.NEXT_ATTEMPT.lte(time)).orderBy(Order.asc(PendingPush.NEXT_ATTEMPT)).limit(limit));
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+                result.add(new PendingPush(cursor));
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * @return time of the earliest retry, 0 if the outbox is empty
+     */
+    public long getNextAttempt() {
+        TodorooCursor<PendingPush> cursor = query(Query.select(PendingPush.NEXT_ATTEMPT).
+                orderBy(Order.asc(PendingPush.NEXT_ATTEMPT)).limit(1));
+        try {
+            if(!cursor.moveToFirst())
+                return 0;
+            return Math.max(1, cursor.get(PendingPush.NEXT_ATTEMPT));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes a push after it was retried, unless it failed again while
+     * being retried and has been rescheduled past the given time
+     */
+    public void removeIfDue(long id, long time) {
+        deleteWhere(Criterion.and(PendingPush.ID.eq(id), PendingPush.NEXT_ATTEMPT.lte(time)));
+    }
+
+}
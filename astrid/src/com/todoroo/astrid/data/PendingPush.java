@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.data;
+
+import android.content.ContentValues;
+
+import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.Property.IntegerProperty;
+import com.todoroo.andlib.data.Property.LongProperty;
+import com.todoroo.andlib.data.Table;
+import com.todoroo.andlib.data.TodorooCursor;
+
+/**
+ * Model for a push to Astrid.com that failed and is waiting to be retried.
+ * There is at most one per item.
+ */
+@SuppressWarnings("nls")
+public class PendingPush extends AbstractModel {
+
+    /** push of a task */
+    public static final int TYPE_TASK = 0;
+
+    /** push of a tag */
+    public static final int TYPE_TAG = 1;
+
+    /** push of an update (comment) */
+    public static final int TYPE_UPDATE = 2;
+
+    // --- table
+
+    /** table for this model */
+    public static final Table TABLE = new Table("pendingpush", PendingPush.class);
+
+    // --- properties
+
+    /** ID */
+    public static final LongProperty ID = new LongProperty(
+            TABLE, ID_PROPERTY_NAME);
+
+    /** What is pushed, one of the TYPE constants */
+    public static final IntegerProperty TYPE = new IntegerProperty(
+            TABLE, "type");
+
+    /** Local id of the task, tag or update */
+    public static final LongProperty ITEM = new LongProperty(
+            TABLE, "item");
+
+    /** Number of times the push has failed */
+    public static final IntegerProperty ATTEMPTS = new IntegerProperty(
+            TABLE, "attempts");
+
+    /** Time of the next try */
+    public static final LongProperty NEXT_ATTEMPT = new LongProperty(
+            TABLE, "nextAttempt");
+
+    /** List of all properties for this model */
+    public static final Property<?>[] PROPERTIES = generateProperties(PendingPush.class);
+
+    private static final ContentValues defaultValues = new ContentValues();
+
+    static {
+        // initialize with default values
+        defaultValues.put(ATTEMPTS.name, 0);
+        defaultValues.put(NEXT_ATTEMPT.name, 0);
+    }
+
+    @Override
+    public ContentValues getDefaultValues() {
+        return defaultValues;
+    }
+
+    // --- data access boilerplate
+
+    public PendingPush() {
+        super();
+    }
+
+    public PendingPush(TodorooCursor<PendingPush> cursor) {
+        this();
+        readPropertiesFromCursor(cursor);
+    }
+
+    public void readFromCursor(TodorooCursor<PendingPush> cursor) {
+        super.readPropertiesFromCursor(cursor);
+    }
+
+    @Override
+    public long getId() {
+        return getIdHelper(ID);
+    }
+
+    // --- parcelable helpers
+
+    public static final Creator<PendingPush> CREATOR = new ModelCreator<PendingPush>(PendingPush.class);
+
+    @Override
+    protected Creator<? extends AbstractModel> getCreator() {
+        return CREATOR;
+    }
+
+}
@@ -7,16 +7,16 @@ package com.todoroo.astrid.helper;
 
 import java.util.Date;
 
-import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.DependencyInjectionService;
 import com.todoroo.andlib.sql.Criterion;
 import com.todoroo.andlib.sql.Functions;
-import com.todoroo.andlib.sql.Query;
 import com.todoroo.andlib.utility.Preferences;
 import com.todoroo.astrid.dao.TaskDao;
 import com.todoroo.astrid.data.SyncFlags;
 import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.service.ChunkedMigration.ProgressListener;
+import com.todoroo.astrid.service.RowMigration;
 
 public class DueDateTimeMigrator {
 
@@ -34,57 +34,61 @@ public class DueDateTimeMigrator {
         public void adjust(Date date);
     }
 
-    public void migrateDueTimes() {
+    /**
+     * Migrates due times in two resumable phases. Tasks with a due time are
+     * moved to HH:MM:01 first, so the tasks without one can't be mistaken
+     * for them once they have been moved to 12:00:00.
+     *
+     * @param listener receives the progress of each phase, may be null
+     */
+    public void migrateDueTimes(ProgressListener listener) {
         if (!Preferences.getBoolean(PREF_MIGRATED_DUE_TIMES, false)) {
-            // Get tasks with due time (i.e. due date != 23:59:59)
-            TodorooCursor<Task> tasksWithDueTime = taskDao.query(Query.select(Task.ID, Task.DUE_DATE, Task.MODIFICATION_DATE).where(
-                    Criterion.and(Task.DUE_DATE.gt(0),
-                            Functions.strftime(Task.DUE_DATE, STRFTIME_FORMAT).neq(LEGACY_NO_TIME_STRING))));
-            try {
-
-                // Get tasks with no due time (i.e. due date = 23:59:59)
-                TodorooCursor<Task> tasksWithoutDueTime = taskDao.query(Query.select(Task.ID, Task.DUE_DATE, Task.MODIFICATION_DATE).where(
-                        Criterion.and(Task.DUE_DATE.gt(0),
-                                Functions.strftime(Task.DUE_DATE, STRFTIME_FORMAT).eq(LEGACY_NO_TIME_STRING))));
-
-                tasksWithoutDueTime.getCount();
-                tasksWithDueTime.getCount();
-
-                try {
-                    // Set tasks without time to 12:00:00
-                    processCursor(tasksWithoutDueTime, new TaskDateAdjuster() {
-                        @Override
-                        public void adjust(Date date) {
-                            date.setHours(12);
-                            date.setMinutes(0);
-                            date.setSeconds(0);
-                        }
-                    });
-
-                } finally {
-                    tasksWithoutDueTime.close();
+            // Set tasks with time (i.e. due date != 23:59:59) to have time HH:MM:01
+            new DueDatePhase("due_times_with_time", //$NON-NLS-1$
+                    Functions.strftime(Task.DUE_DATE, STRFTIME_FORMAT).neq(LEGACY_NO_TIME_STRING),
+                    new TaskDateAdjuster() {
+                @Override
+                public void adjust(Date date) {
+                    date.setSeconds(1);
                 }
-
-                // Set tasks with time to have time HH:MM:01
-                processCursor(tasksWithDueTime, new TaskDateAdjuster() {
-                    @Override
-                    public void adjust(Date date) {
-                        date.setSeconds(1);
-                    }
-                });
-
-            } finally {
-                tasksWithDueTime.close();
-            }
+            }).run(listener);
+
+            // Set tasks without time (i.e. due date = 23:59:59) to 12:00:00
+            new DueDatePhase("due_times_without_time", //$NON-NLS-1$
+                    Functions.strftime(Task.DUE_DATE, STRFTIME_FORMAT).eq(LEGACY_NO_TIME_STRING),
+                    new TaskDateAdjuster() {
+                @Override
+                public void adjust(Date date) {
+                    date.setHours(12);
+                    date.setMinutes(0);
+                    date.setSeconds(0);
+                }
+            }).run(listener);
 
             Preferences.setBoolean(PREF_MIGRATED_DUE_TIMES, true);
         }
     }
 
-    private void processCursor(TodorooCursor<Task> cursor, TaskDateAdjuster adjuster) {
-        Task curr = new Task();
-        for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-            curr.readFromCursor(cursor);
+    public void migrateDueTimes() {
+        migrateDueTimes(null);
+    }
+
+    private class DueDatePhase extends RowMigration<Task> {
+        private final TaskDateAdjuster adjuster;
+
+        public DueDatePhase(String name, Criterion criterion, TaskDateAdjuster adjuster) {
+            super(name, taskDao, Criterion.and(Task.DUE_DATE.gt(0), criterion),
+                    Task.ID, Task.DUE_DATE, Task.MODIFICATION_DATE);
+            this.adjuster = adjuster;
+        }
+
+        @Override
+        protected Task createModel() {
+            return new Task();
+        }
+
+        @Override
+        protected void migrate(Task curr) {
             long time = curr.getValue(Task.DUE_DATE) / 1000L * 1000L;
             Date date = new Date(time);
             adjuster.adjust(date);
@@ -65,6 +65,15 @@ public abstract class TaskEditControlSet {
     }
 
 
+    /**
+     * Called off the UI thread ahead of a deferred readFromTask, so that
+     * control sets can load what they need from the database before it is
+     * bound to their views. Must not touch views. Default does nothing
+     */
+    public void prefetchFromTask(@SuppressWarnings("unused") Task task) {
+        // subclasses can override
+    }
+
     /**
      * Called once to setup the ui with data from the task
      */
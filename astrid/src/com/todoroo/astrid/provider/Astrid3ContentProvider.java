@@ -5,14 +5,19 @@
  */
 package com.todoroo.astrid.provider;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map.Entry;
 import java.util.Set;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -87,6 +92,9 @@ public class Astrid3ContentProvider extends ContentProvider {
 
     private static AbstractDatabase databaseOverride;
 
+    /** uris changed by the batch running on the current thread, null outside of batches */
+    private final ThreadLocal<LinkedHashSet<Uri>> batchChanges = new ThreadLocal<LinkedHashSet<Uri>>();
+
     // --- instance variables
 
 
@@ -288,7 +296,7 @@ public class Astrid3ContentProvider extends ContentProvider {
                 throw new SQLException("Could not insert row into database (constraint failed?)");
 
             Uri newUri = ContentUris.withAppendedId(uri, helper.model.getId());
-            getContext().getContentResolver().notifyChange(newUri, null);
+            notifyChange(newUri, uri);
             return newUri;
         }
 
@@ -345,7 +353,7 @@ public class Astrid3ContentProvider extends ContentProvider {
                 helper.model.clear();
             }
 
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri, uri);
             return cursor.getCount();
         } finally {
             cursor.close();
@@ -373,6 +381,93 @@ public class Astrid3ContentProvider extends ContentProvider {
         }
     }
 
+    /* ======================================================================
+     * ============================================================ batch ===
+     * ====================================================================== */
+
+    /**
+     * Insert all rows in one transaction. Observers are notified once for
+     * the given uri instead of once per row.
+     */
+    @Override
+    public int bulkInsert(final Uri uri, final ContentValues[] values) {
+        runBatch(new Runnable() {
+            public void run() {
+                for(ContentValues row : values)
+                    insert(uri, row);
+            }
+        });
+        return values.length;
+    }
+
+    /**
+     * Apply all operations in one transaction. If one fails, none are
+     * applied. Observers are notified once per uri after the transaction.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        try {
+            runBatch(new Runnable() {
+                public void run() {
+                    try {
+                        for(int i = 0; i < results.length; i++)
+                            results[i] = operations.get(i).apply(Astrid3ContentProvider.this, results, i);
+                    } catch (OperationApplicationException e) {
+                        throw new BatchFailedException(e);
+                    }
+                }
+            });
+        } catch (BatchFailedException e) {
+            throw (OperationApplicationException) e.getCause();
+        }
+        return results;
+    }
+
+    /** carries a checked exception out of a transaction runnable */
+    private static class BatchFailedException extends RuntimeException {
+        private static final long serialVersionUID = -2386212402466011624L;
+
+        public BatchFailedException(OperationApplicationException cause) {
+            super(cause);
+        }
+    }
+
+    private void runBatch(Runnable batch) {
+        if(batchChanges.get() != null) {
+            batch.run();
+            return;
+        }
+
+        LinkedHashSet<Uri> changes = new LinkedHashSet<Uri>();
+        batchChanges.set(changes);
+        try {
+            getDatabase().runInTransaction(batch);
+        } finally {
+            batchChanges.set(null);
+        }
+
+        ContentResolver cr = getContext().getContentResolver();
+        for(Uri uri : changes)
+            cr.notifyChange(uri, null);
+    }
+
+    /**
+     * Notify observers of a change, or remember it until the end of the
+     * running batch
+     *
+     * @param uri changed uri
+     * @param batchUri uri to notify instead if a batch is running
+     */
+    private void notifyChange(Uri uri, Uri batchUri) {
+        LinkedHashSet<Uri> changes = batchChanges.get();
+        if(changes != null)
+            changes.add(batchUri);
+        else
+            getContext().getContentResolver().notifyChange(uri, null);
+    }
+
     /* ======================================================================
      * ============================================================ query ===
      * ====================================================================== */
@@ -408,7 +503,7 @@ public class Astrid3ContentProvider extends ContentProvider {
             throw new IllegalArgumentException("Unknown URI " + uri + " (" + uriMatcher.match(uri) + ")");
         }
 
-        Cursor cursor = builder.query(getDatabase().getDatabase(), projection, selection, selectionArgs, groupBy, null, sortOrder);
+        Cursor cursor = builder.query(getDatabase().getDatabaseForQuery(), projection, selection, selectionArgs, groupBy, null, sortOrder);
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
     }
@@ -17,6 +17,7 @@ import com.todoroo.astrid.actfm.sync.ActFmSyncService;
 import com.todoroo.astrid.dao.ABTestEventDao;
 import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.dao.MetadataDao;
+import com.todoroo.astrid.dao.PendingPushDao;
 import com.todoroo.astrid.dao.StoreObjectDao;
 import com.todoroo.astrid.dao.TagDataDao;
 import com.todoroo.astrid.dao.TaskDao;
@@ -72,6 +73,7 @@ public class AstridDependencyInjector extends AbstractDependencyInjector {
         injectables.put("storeObjectDao", StoreObjectDao.class);
         injectables.put("updateDao", UpdateDao.class);
         injectables.put("userDao", UserDao.class);
+        injectables.put("pendingPushDao", PendingPushDao.class);
 
         // com.todoroo.astrid.service
         injectables.put("taskService", TaskService.class);
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.utility.Preferences;
+import com.todoroo.astrid.dao.Database;
+
+/**
+ * A data migration that is performed in chunks, each in its own
+ * transaction. The checkpoint of every committed chunk is saved in the
+ * preferences, so a migration that was interrupted, e.g. because the
+ * process was killed, continues after the last committed chunk the next
+ * time it is run instead of starting over.
+ */
+@SuppressWarnings("nls")
+public abstract class ChunkedMigration {
+
+    /**
+     * Receives the progress of a migration after each chunk
+     */
+    public interface ProgressListener {
+        /**
+         * @param done units migrated so far
+         * @param total units that were left when the migration was started
+         */
+        public void onProgress(int done, int total);
+    }
+
+    private static final String PREF_PREFIX = "migration_";
+
+    @Autowired protected Database database;
+
+    private final String name;
+
+    /** checkpoint set by the chunk that is being migrated */
+    private String nextCheckpoint;
+
+    /**
+     * @param name unique name of the migration, used for its preferences
+     */
+    protected ChunkedMigration(String name) {
+        this.name = name;
+        DependencyInjectionService.getInstance().inject(this);
+    }
+
+    /**
+     * @param checkpoint checkpoint of the last committed chunk, null if none
+     * @return number of units left to migrate, used to report progress
+     */
+    protected abstract int countRemaining(String checkpoint);
+
+    /**
+     * Migrates the chunk after the given checkpoint and records its own
+     * checkpoint with {@link #setCheckpoint(String)}. Called inside a
+     * transaction. The chunk may be migrated again if the process dies
+     * between committing it and saving its checkpoint, so this has to be
+     * safe to repeat.
+     *
+     * @param checkpoint checkpoint of the last committed chunk, null if none
+     * @return number of units migrated, 0 if there was nothing left
+     */
+    protected abstract int migrateChunk(String checkpoint);
+
+    protected void setCheckpoint(String checkpoint) {
+        nextCheckpoint = checkpoint;
+    }
+
+    /** @return true if this migration has run to completion */
+    public boolean isDone() {
+        return Preferences.getBoolean(PREF_PREFIX + name + "_done", false);
+    }
+
+    /**
+     * Forgets the progress of this migration, so it starts over when it is
+     * run the next time
+     */
+    public void reset() {
+        Preferences.clear(PREF_PREFIX + name + "_done");
+        Preferences.clear(PREF_PREFIX + name + "_checkpoint");
+    }
+
+    /**
+     * Runs the migration, continuing after the last committed chunk if it
+     * was interrupted before. Does nothing if it has already completed.
+     *
+     * @param listener receives progress after each chunk, may be null
+     */
+    public void run(ProgressListener listener) {
+        if(isDone())
+            return;
+
+        final String checkpointKey = PREF_PREFIX + name + "_checkpoint";
+        String checkpoint = Preferences.getStringValue(checkpointKey);
+        int total = countRemaining(checkpoint);
+        int done = 0;
+        while(true) {
+            final String previous = checkpoint;
+            final int[] migrated = new int[1];
+            nextCheckpoint = null;
+            database.runInTransaction(new Runnable() {
+                public void run() {
+                    migrated[0] = migrateChunk(previous);
+                }
+            });
+            if(migrated[0] == 0)
+                break;
+
+            checkpoint = nextCheckpoint;
+            Preferences.setString(checkpointKey, checkpoint);
+            done += migrated[0];
+            if(listener != null)
+                listener.onProgress(Math.min(done, total), total);
+        }
+
+        Preferences.setBoolean(PREF_PREFIX + name + "_done", true);
+        Preferences.clear(checkpointKey);
+    }
+
+}
@@ -6,8 +6,11 @@
 package com.todoroo.astrid.service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import android.content.ContentValues;
 
@@ -21,6 +24,7 @@ import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.astrid.dao.MetadataDao;
 import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
 import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.provider.Astrid2TaskProvider;
 
 /**
  * Service layer for {@link Metadata}-centered activities.
@@ -34,6 +38,9 @@ public class MetadataService {
         public void beforeDeleteMetadata(Metadata m);
     }
 
+    /** maximum number of ids in a single IN clause for bulk operations */
+    private static final int BULK_CHUNK_SIZE = 500;
+
     @Autowired
     private MetadataDao metadataDao;
 
@@ -107,62 +114,121 @@ public class MetadataService {
      */
     public boolean synchronizeMetadata(long taskId, ArrayList<Metadata> metadata,
             Criterion metadataCriterion, SynchronizeMetadataCallback callback) {
-        boolean dirty = false;
-        HashSet<ContentValues> newMetadataValues = new HashSet<ContentValues>();
-        for(Metadata metadatum : metadata) {
-            metadatum.setValue(Metadata.TASK, taskId);
-            metadatum.clearValue(Metadata.CREATION_DATE);
-            metadatum.clearValue(Metadata.ID);
-
-            ContentValues values = metadatum.getMergedValues();
-            for(Entry<String, Object> entry : values.valueSet()) {
-                if(entry.getKey().startsWith("value")) //$NON-NLS-1$
-                    values.put(entry.getKey(), entry.getValue().toString());
+        HashMap<Long, ArrayList<Metadata>> metadataByTask = new HashMap<Long, ArrayList<Metadata>>(1);
+        metadataByTask.put(taskId, metadata);
+        return !synchronizeMetadata(metadataByTask, metadataCriterion, callback).isEmpty();
+    }
+
+    /**
+     * Synchronize metadata for many tasks at once. Existing rows for all
+     * tasks are read with a single query per batch of task ids, compared
+     * against the incoming values, and the resulting deletes and inserts
+     * are written in one transaction.
+     *
+     * @param metadataByTask map of task id to the complete desired metadata
+     *        for that task. Tasks mapped to an empty list will have all
+     *        metadata matching the criterion removed
+     * @param metadataCriterion criterion restricting which existing metadata
+     *        is considered (e.g. by key)
+     * @param callback invoked before each metadata row is deleted, may be null
+     * @return ids of tasks whose metadata changed
+     */
+    public Set<Long> synchronizeMetadata(final Map<Long, ArrayList<Metadata>> metadataByTask,
+            final Criterion metadataCriterion, final SynchronizeMetadataCallback callback) {
+        final HashSet<Long> changedTasks = new HashSet<Long>();
+        if(metadataByTask.isEmpty())
+            return changedTasks;
+
+        final HashMap<Long, HashSet<ContentValues>> newMetadataValues =
+            new HashMap<Long, HashSet<ContentValues>>(metadataByTask.size());
+        for(Entry<Long, ArrayList<Metadata>> taskEntry : metadataByTask.entrySet()) {
+            long taskId = taskEntry.getKey();
+            HashSet<ContentValues> taskValues = new HashSet<ContentValues>();
+            for(Metadata metadatum : taskEntry.getValue()) {
+                metadatum.setValue(Metadata.TASK, taskId);
+                metadatum.clearValue(Metadata.CREATION_DATE);
+                metadatum.clearValue(Metadata.ID);
+
+                ContentValues values = metadatum.getMergedValues();
+                for(Entry<String, Object> entry : values.valueSet()) {
+                    if(entry.getKey().startsWith("value")) //$NON-NLS-1$
+                        values.put(entry.getKey(), entry.getValue().toString());
+                }
+                taskValues.add(values);
             }
-            newMetadataValues.add(values);
+            newMetadataValues.put(taskId, taskValues);
         }
 
-        Metadata item = new Metadata();
-        TodorooCursor<Metadata> cursor = metadataDao.query(Query.select(Metadata.PROPERTIES).where(Criterion.and(MetadataCriteria.byTask(taskId),
-                metadataCriterion)));
-        try {
-            // try to find matches within our metadata list
-            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-                item.readFromCursor(cursor);
-                long id = item.getId();
+        metadataDao.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                Long[] taskIds = metadataByTask.keySet().toArray(new Long[metadataByTask.size()]);
+                ArrayList<Long> deletedIds = new ArrayList<Long>();
+                Metadata item = new Metadata();
 
-                // clear item id when matching with incoming values
-                item.clearValue(Metadata.ID);
-                item.clearValue(Metadata.CREATION_DATE);
-                ContentValues itemMergedValues = item.getMergedValues();
+                for(int start = 0; start < taskIds.length; start += BULK_CHUNK_SIZE) {
+                    Long[] chunk = chunk(taskIds, start);
+                    TodorooCursor<Metadata> cursor = metadataDao.query(Query.select(Metadata.PROPERTIES).where(
+                            Criterion.and(Metadata.TASK.in(chunk), metadataCriterion)));
+                    try {
+                        // try to find matches within our metadata lists
+                        for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                            item.readFromCursor(cursor);
+                            long id = item.getId();
+                            long taskId = item.getValue(Metadata.TASK);
 
-                if(newMetadataValues.contains(itemMergedValues)) {
-                    newMetadataValues.remove(itemMergedValues);
-                    continue;
+                            // clear item id when matching with incoming values
+                            item.clearValue(Metadata.ID);
+                            item.clearValue(Metadata.CREATION_DATE);
+                            ContentValues itemMergedValues = item.getMergedValues();
+
+                            HashSet<ContentValues> taskValues = newMetadataValues.get(taskId);
+                            if(taskValues != null && taskValues.remove(itemMergedValues))
+                                continue;
+
+                            // not matched. cut it
+                            if (callback != null) {
+                                item.setId(id);
+                                callback.beforeDeleteMetadata(item);
+                            }
+                            deletedIds.add(id);
+                            changedTasks.add(taskId);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
                 }
 
-                // not matched. cut it
-                if (callback != null) {
-                    item.setId(id);
-                    callback.beforeDeleteMetadata(item);
+                Long[] deleted = deletedIds.toArray(new Long[deletedIds.size()]);
+                for(int start = 0; start < deleted.length; start += BULK_CHUNK_SIZE)
+                    metadataDao.deleteWhere(Metadata.ID.in(chunk(deleted, start)));
+
+                // everything that remains shall be written
+                long now = DateUtilities.now();
+                for(Entry<Long, HashSet<ContentValues>> taskEntry : newMetadataValues.entrySet()) {
+                    for(ContentValues values : taskEntry.getValue()) {
+                        item.clear();
+                        item.setValue(Metadata.CREATION_DATE, now);
+                        item.mergeWith(values);
+                        if(metadataDao.createNew(item))
+                            metadataDao.reportFirstList(item);
+                        changedTasks.add(taskEntry.getKey());
+                    }
                 }
-                metadataDao.delete(id);
-                dirty = true;
             }
-        } finally {
-            cursor.close();
-        }
+        });
 
-        // everything that remains shall be written
-        for(ContentValues values : newMetadataValues) {
-            item.clear();
-            item.setValue(Metadata.CREATION_DATE, DateUtilities.now());
-            item.mergeWith(values);
-            metadataDao.persist(item);
-            dirty = true;
-        }
+        if(!changedTasks.isEmpty())
+            Astrid2TaskProvider.notifyDatabaseModification();
+        return changedTasks;
+    }
 
-        return dirty;
+    /** @return sub-array of at most {@link #BULK_CHUNK_SIZE} items */
+    private static Long[] chunk(Long[] ids, int start) {
+        int length = Math.min(BULK_CHUNK_SIZE, ids.length - start);
+        Long[] result = new Long[length];
+        System.arraycopy(ids, start, result, 0, length);
+        return result;
     }
 
     public boolean synchronizeMetadata(long taskId, ArrayList<Metadata> metadata,
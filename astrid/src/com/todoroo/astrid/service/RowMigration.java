@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.DatabaseDao;
+import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Order;
+import com.todoroo.andlib.sql.Query;
+
+/**
+ * A {@link ChunkedMigration} that migrates the rows of one table matching a
+ * criterion, {@link #CHUNK_SIZE} rows at a time in order of their id. The
+ * id of the last row of a chunk is its checkpoint, so rows that stop
+ * matching the criterion once migrated are fine.
+ */
+public abstract class RowMigration<TYPE extends AbstractModel> extends ChunkedMigration {
+
+    public static final int CHUNK_SIZE = 250;
+
+    private final DatabaseDao<TYPE> dao;
+    private final Criterion criterion;
+    private final Property<?>[] properties;
+
+    /**
+     * @param name unique name of the migration
+     * @param dao dao of the table to migrate
+     * @param criterion rows to migrate
+     * @param properties properties to read, must include the id
+     */
+    protected RowMigration(String name, DatabaseDao<TYPE> dao, Criterion criterion,
+            Property<?>... properties) {
+        super(name);
+        this.dao = dao;
+        this.criterion = criterion;
+        this.properties = properties;
+    }
+
+    /** @return an empty model to read rows into */
+    protected abstract TYPE createModel();
+
+    /**
+     * Migrates one row. Called inside the transaction of its chunk.
+     */
+    protected abstract void migrate(TYPE model);
+
+    @Override
+    protected int countRemaining(String checkpoint) {
+        TodorooCursor<TYPE> cursor = dao.query(Query.select(AbstractModel.ID_PROPERTY).where(
+                rowsAfter(checkpoint)));
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected int migrateChunk(String checkpoint) {
+        TodorooCursor<TYPE> cursor = dao.query(Query.select(properties).where(
+                rowsAfter(checkpoint)).orderBy(Order.asc(AbstractModel.ID_PROPERTY)).limit(CHUNK_SIZE));
+        try {
+            TYPE model = createModel();
+            long lastId = 0;
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                model.clear();
+                model.readFromCursor(cursor);
+                lastId = model.getId();
+                migrate(model);
+            }
+            setCheckpoint(Long.toString(lastId));
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Criterion rowsAfter(String checkpoint) {
+        if(checkpoint == null)
+            return criterion;
+        return Criterion.and(criterion, AbstractModel.ID_PROPERTY.gt(Long.parseLong(checkpoint)));
+    }
+
+}
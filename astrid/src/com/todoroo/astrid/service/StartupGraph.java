@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Runs a set of startup steps in dependency order. Steps that are ready are
+ * run on a small pool, those on the longest remaining chain of work first,
+ * or posted to the UI thread if they need it. Deferred steps are held
+ * back until {@link #releaseDeferred()} is called, e.g. once the first
+ * task list is on screen. The time each step waited and ran is recorded
+ * for {@link #getReport()}.
+ */
+@SuppressWarnings("nls")
+public class StartupGraph {
+
+    /** step must run on the UI thread */
+    public static final int UI_THREAD = 1 << 0;
+
+    /** step waits until deferred steps are released */
+    public static final int DEFERRED = 1 << 1;
+
+    /**
+     * A unit of startup work
+     */
+    public static abstract class Step {
+        final String name;
+        final int cost;
+        final int flags;
+        final String[] dependencies;
+
+        final ArrayList<Step> dependents = new ArrayList<Step>();
+        int waitingFor;
+        int rank = -1;
+        long readyAt, startedAt, finishedAt;
+        boolean failed;
+
+        /**
+         * @param name unique name, used by other steps to depend on this one
+         * @param cost rough estimate of the work, used to find the critical path
+         * @param flags {@link StartupGraph#UI_THREAD}, {@link StartupGraph#DEFERRED}
+         * @param dependencies names of the steps that must finish first
+         */
+        public Step(String name, int cost, int flags, String... dependencies) {
+            this.name = name;
+            this.cost = cost;
+            this.flags = flags;
+            this.dependencies = dependencies;
+        }
+
+        public abstract void run();
+
+        boolean is(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private static final Comparator<Step> CRITICAL_PATH_FIRST = new Comparator<Step>() {
+        public int compare(Step lhs, Step rhs) {
+            return rhs.rank - lhs.rank;
+        }
+    };
+
+    private final LinkedHashMap<String, Step> steps = new LinkedHashMap<String, Step>();
+
+    private final PriorityQueue<Step> ready = new PriorityQueue<Step>(11, CRITICAL_PATH_FIRST);
+
+    private final ArrayList<Step> held = new ArrayList<Step>();
+
+    private final Runnable runNext = new Runnable() {
+        public void run() {
+            Step step;
+            synchronized(StartupGraph.this) {
+                step = ready.poll();
+            }
+            if(step != null)
+                execute(step);
+        }
+    };
+
+    private ExecutorService pool;
+    private Handler uiHandler;
+    private boolean deferredReleased = false;
+    private int remaining;
+    private long startTime;
+    private Runnable onFinished;
+
+    /**
+     * Adds a step. Steps must be added before the graph is started.
+     */
+    public synchronized StartupGraph add(Step step) {
+        if(steps.containsKey(step.name))
+            throw new IllegalArgumentException("duplicate step " + step.name);
+        steps.put(step.name, step);
+        return this;
+    }
+
+    /**
+     * Sets work to post to the UI thread once all steps have run
+     */
+    public synchronized void setOnFinished(Runnable onFinished) {
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * Starts running the steps with no dependencies
+     *
+     * @param threads size of the pool for background steps
+     */
+    public synchronized void start(int threads) {
+        for(Step step : steps.values()) {
+            step.waitingFor = step.dependencies.length;
+            for(String name : step.dependencies) {
+                Step dependency = steps.get(name);
+                if(dependency == null)
+                    throw new IllegalStateException(step.name + " depends on unknown step " + name);
+                dependency.dependents.add(step);
+            }
+        }
+        HashSet<Step> visiting = new HashSet<Step>();
+        for(Step step : steps.values())
+            rank(step, visiting);
+
+        pool = Executors.newFixedThreadPool(threads);
+        uiHandler = new Handler(Looper.getMainLooper());
+        remaining = steps.size();
+        startTime = System.currentTimeMillis();
+        for(Step step : steps.values())
+            if(step.waitingFor == 0)
+                schedule(step);
+        if(remaining == 0)
+            finish();
+    }
+
+    /**
+     * Lets deferred steps run once their dependencies are done
+     */
+    public synchronized void releaseDeferred() {
+        if(deferredReleased)
+            return;
+        deferredReleased = true;
+        for(Step step : held)
+            schedule(step);
+        held.clear();
+    }
+
+    /**
+     * Waits until all steps have run
+     *
+     * @return false if the graph didn't finish in time
+     */
+    public synchronized boolean await(long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        while(remaining > 0) {
+            long wait = end - System.currentTimeMillis();
+            if(wait <= 0)
+                return false;
+            wait(wait);
+        }
+        return true;
+    }
+
+    /**
+     * @return one line per finished step with the time it waited after its
+     * dependencies were done and the time it ran, in order of completion
+     */
+    public synchronized String getReport() {
+        ArrayList<Step> finished = new ArrayList<Step>();
+        for(Step step : steps.values())
+            if(step.finishedAt > 0)
+                finished.add(step);
+        Collections.sort(finished, new Comparator<Step>() {
+            public int compare(Step lhs, Step rhs) {
+                return lhs.finishedAt < rhs.finishedAt ? -1 : (lhs.finishedAt == rhs.finishedAt ? 0 : 1);
+            }
+        });
+
+        StringBuilder report = new StringBuilder();
+        for(Step step : finished) {
+            report.append(step.name).append(": at ").append(step.startedAt - startTime).
+                append("ms, waited ").append(step.startedAt - step.readyAt).
+                append("ms, ran ").append(step.finishedAt - step.startedAt).append("ms");
+            if(step.is(UI_THREAD))
+                report.append(" [ui]");
+            if(step.is(DEFERRED))
+                report.append(" [deferred]");
+            if(step.failed)
+                report.append(" [failed]");
+            report.append('\n');
+        }
+        return report.toString();
+    }
+
+    // --- implementation
+
+    /** @return cost of the step plus the most expensive chain after it */
+    private int rank(Step step, HashSet<Step> visiting) {
+        if(step.rank >= 0)
+            return step.rank;
+        if(!visiting.add(step))
+            throw new IllegalStateException("dependency cycle at " + step.name);
+        int longest = 0;
+        for(Step dependent : step.dependents)
+            longest = Math.max(longest, rank(dependent, visiting));
+        visiting.remove(step);
+        step.rank = step.cost + longest;
+        return step.rank;
+    }
+
+    /** called with the lock held once all dependencies are done */
+    private void schedule(final Step step) {
+        if(step.is(DEFERRED) && !deferredReleased) {
+            held.add(step);
+            return;
+        }
+        step.readyAt = System.currentTimeMillis();
+        if(step.is(UI_THREAD)) {
+            uiHandler.post(new Runnable() {
+                public void run() {
+                    execute(step);
+                }
+            });
+        } else {
+            ready.add(step);
+            pool.execute(runNext);
+        }
+    }
+
+    private void execute(Step step) {
+        step.startedAt = System.currentTimeMillis();
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            step.failed = true;
+            Log.e("astrid-startup", "step " + step.name, e);
+        }
+
+        synchronized(this) {
+            step.finishedAt = System.currentTimeMillis();
+            for(Step dependent : step.dependents)
+                if(--dependent.waitingFor == 0)
+                    schedule(dependent);
+            if(--remaining == 0)
+                finish();
+        }
+    }
+
+    private void finish() {
+        pool.shutdown();
+        notifyAll();
+        Log.i("astrid-startup", "startup steps done in " + (System.currentTimeMillis() - startTime) +
+                "ms\n" + getReport());
+        if(onFinished != null)
+            uiHandler.post(onFinished);
+    }
+
+}
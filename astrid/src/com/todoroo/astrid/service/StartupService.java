@@ -6,6 +6,7 @@
 package com.todoroo.astrid.service;
 
 import java.io.File;
+import java.lang.ref.WeakReference;
 import java.util.List;
 
 import org.weloveastrid.rmilk.MilkUtilities;
@@ -23,6 +24,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.database.sqlite.SQLiteException;
 import android.media.AudioManager;
+import android.os.Handler;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -49,7 +51,7 @@ import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.Task;
-import com.todoroo.astrid.gcal.CalendarStartupReceiver;
+import com.todoroo.astrid.gcal.CalendarAlarmScheduler;
 import com.todoroo.astrid.gtasks.GtasksMetadata;
 import com.todoroo.astrid.gtasks.GtasksPreferenceService;
 import com.todoroo.astrid.gtasks.sync.GtasksSyncService;
@@ -109,6 +111,21 @@ public class StartupService {
 
     @Autowired ABTestInvoker abTestInvoker;
 
+    /** size of the pool running background startup steps */
+    private static final int STARTUP_THREADS = 2;
+
+    /** deferred startup steps run after this long even if no list is shown */
+    private static final long DEFERRED_STEP_TIMEOUT = 5000L;
+
+    /** startup steps are dropped after this long even if some never ran */
+    private static final long STARTUP_GRAPH_TIMEOUT = 60000L;
+
+    /** startup steps of the running application, until they are done */
+    private static StartupGraph startupGraph = null;
+
+    /** per step timing of the last startup, once its steps are done */
+    private static String startupReport = null;
+
     /**
      * bit to prevent multiple initializations
      */
@@ -193,6 +210,8 @@ public class StartupService {
             }
             AstridPreferences.setCurrentVersion(version);
             AstridPreferences.setCurrentVersionName(versionName);
+        } else {
+            upgradeService.resumePendingUpgrade(context);
         }
 
         upgradeService.performSecondaryUpgrade(context);
@@ -205,8 +224,93 @@ public class StartupService {
 
         abTestInvoker.reportAcquisition();
 
-        // perform startup activities in a background thread
-        new Thread(new Runnable() {
+        AstridPreferences.resetPreferencesFromAbTests(latestSetVersion);
+        AstridPreferences.setPreferenceDefaults();
+
+        // perform remaining startup activities off the critical path
+        final StartupGraph graph = createStartupGraph(context, latestSetVersion);
+        Runnable releaseGraph = new Runnable() {
+            public void run() {
+                releaseStartupGraph(graph);
+            }
+        };
+        graph.setOnFinished(releaseGraph);
+        startupGraph = graph;
+        graph.start(STARTUP_THREADS);
+        Handler handler = new Handler();
+        handler.postDelayed(new Runnable() {
+            public void run() {
+                onListRendered();
+            }
+        }, DEFERRED_STEP_TIMEOUT);
+        handler.postDelayed(releaseGraph, STARTUP_GRAPH_TIMEOUT);
+
+        hasStartedUp = true;
+    }
+
+    /**
+     * Called once the first task list is on screen, lets deferred startup
+     * work begin
+     */
+    public synchronized static void onListRendered() {
+        if(startupGraph != null)
+            startupGraph.releaseDeferred();
+    }
+
+    /**
+     * @return per step timing of the last startup, null if there was none
+     */
+    public synchronized static String getStartupReport() {
+        return startupGraph == null ? startupReport : startupGraph.getReport();
+    }
+
+    /**
+     * Drops the startup graph once it finished or timed out, keeping only
+     * its report, so its steps can be collected
+     */
+    private synchronized static void releaseStartupGraph(StartupGraph graph) {
+        if(startupGraph != graph)
+            return;
+        startupReport = graph.getReport();
+        startupGraph = null;
+    }
+
+    @SuppressWarnings("nls")
+    private StartupGraph createStartupGraph(Activity activity, final int latestSetVersion) {
+        StartupGraph graph = new StartupGraph();
+
+        // steps may run after the activity is gone, so they only hold on
+        // to the application context and a weak reference to the activity
+        final Context context = activity.getApplicationContext();
+        final WeakReference<Activity> activityRef = new WeakReference<Activity>(activity);
+
+        // if sync ongoing flag was set, clear it
+        graph.add(new StartupGraph.Step("stop-ongoing", 1, 0) {
+            @Override
+            public void run() {
+                ProducteevUtilities.INSTANCE.stopOngoing();
+                MilkUtilities.INSTANCE.stopOngoing();
+                gtasksPreferenceService.stopOngoing();
+                actFmPreferenceService.stopOngoing();
+                OpencrxCoreUtils.INSTANCE.stopOngoing();
+            }
+        });
+        graph.add(new StartupGraph.Step("actfm-sync", 5, 0, "stop-ongoing") {
+            @Override
+            public void run() {
+                actFmSyncService.initialize();
+            }
+        });
+        graph.add(new StartupGraph.Step("gtasks-sync", 5, 0, "stop-ongoing") {
+            @Override
+            public void run() {
+                gtasksSyncService.initialize();
+            }
+        });
+
+        // everything else waits until the list is up
+        graph.add(new StartupGraph.Step("widget-alarm", 1, StartupGraph.DEFERRED) {
+            @Override
             public void run() {
                 // start widget updating alarm
                 AlarmManager am = (AlarmManager)context.getSystemService(Context.ALARM_SERVICE);
@@ -215,42 +319,70 @@ public class StartupService {
                         0, intent, PendingIntent.FLAG_CANCEL_CURRENT);
                 am.setInexactRepeating(AlarmManager.RTC, 0,
                         Constants.WIDGET_UPDATE_INTERVAL, pendingIntent);
-
+            }
+        });
+        graph.add(new StartupGraph.Step("reengagement", 1, StartupGraph.DEFERRED) {
+            @Override
+            public void run() {
                 ReengagementService.scheduleReengagementAlarm(context);
+            }
+        });
+        graph.add(new StartupGraph.Step("cleanup", 20, StartupGraph.DEFERRED) {
+            @Override
+            public void run() {
                 taskService.cleanup();
-
-                // if sync ongoing flag was set, clear it
-                ProducteevUtilities.INSTANCE.stopOngoing();
-                MilkUtilities.INSTANCE.stopOngoing();
-                gtasksPreferenceService.stopOngoing();
-                actFmPreferenceService.stopOngoing();
-                OpencrxCoreUtils.INSTANCE.stopOngoing();
-
-                // perform initialization
+            }
+        });
+        graph.add(new StartupGraph.Step("reminders", 20, StartupGraph.DEFERRED, "cleanup") {
+            @Override
+            public void run() {
                 ReminderStartupReceiver.startReminderSchedulingService(context);
+            }
+        });
+        graph.add(new StartupGraph.Step("backup", 1, StartupGraph.DEFERRED) {
+            @Override
+            public void run() {
                 BackupService.scheduleService(context);
-                actFmSyncService.initialize();
-
-                gtasksSyncService.initialize();
-
-                // get and display update messages
-                if (finalLatestVersion != 0)
-                    new UpdateMessageService(context).processUpdates();
-
+            }
+        });
+        graph.add(new StartupGraph.Step("calendar-alarms", 10, StartupGraph.DEFERRED) {
+            @Override
+            public void run() {
+                if(Preferences.getBoolean(R.string.p_calendar_reminders, true))
+                    CalendarAlarmScheduler.scheduleAllCalendarAlarms(context);
+            }
+        });
+        // get and display update messages
+        if(latestSetVersion != 0) {
+            graph.add(new StartupGraph.Step("update-messages", 10, StartupGraph.DEFERRED) {
+                @Override
+                public void run() {
+                    Activity current = activityRef.get();
+                    if(current != null)
+                        new UpdateMessageService(current).processUpdates();
+                }
+            });
+        }
+        graph.add(new StartupGraph.Step("usage-statistics", 5, StartupGraph.DEFERRED, "cleanup") {
+            @Override
+            public void run() {
                 checkForSubtasksUse();
                 checkForSwipeListsUse();
             }
-        }).start();
-
-        AstridPreferences.resetPreferencesFromAbTests(latestSetVersion);
-        AstridPreferences.setPreferenceDefaults();
-        CalendarStartupReceiver.scheduleCalendarAlarms(context, false); // This needs to be after set preference defaults for the purposes of ab testing
-
+        });
         // check for task killers
-        if(!Constants.OEM)
-            showTaskKillerHelp(context);
+        if(!Constants.OEM) {
+            graph.add(new StartupGraph.Step("task-killer-help", 5, StartupGraph.UI_THREAD | StartupGraph.DEFERRED) {
+                @Override
+                public void run() {
+                    Activity current = activityRef.get();
+                    if(current != null && !current.isFinishing())
+                        showTaskKillerHelp(current);
+                }
+            });
+        }
 
-        hasStartedUp = true;
+        return graph;
     }
 
     /**
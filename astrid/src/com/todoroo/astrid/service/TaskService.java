@@ -14,6 +14,7 @@ import org.weloveastrid.rmilk.data.MilkTaskFields;
 import android.content.ContentValues;
 
 import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.DatabaseDao.CursorReader;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.DependencyInjectionService;
@@ -315,6 +316,40 @@ public class TaskService {
         return taskDao.query(Query.select(properties).withQueryTemplate(sql));
     }
 
+    /**
+     * Fetch tasks matching a query template and convert them with the given
+     * reader. The result is shared with other callers of the same query
+     * until one of the tables it reads is modified, or for at most a minute
+     * if it depends on sqlite's current time. Queries with placeholders
+     * are run every time.
+     *
+     * @param queryTemplate query template, placeholders are replaced
+     * @param reader converts the cursor into an immutable result
+     * @param properties columns to read
+     * @return result of reader
+     */
+    public <RESULT> RESULT fetchFilteredCached(String queryTemplate,
+            CursorReader<Task, RESULT> reader, Property<?>... properties) {
+        return fetchFilteredCached(Query.select(properties), queryTemplate, reader);
+    }
+
+    /**
+     * As {@link #fetchFilteredCached(String, CursorReader, Property...)},
+     * for queries that also join other tables
+     *
+     * @param query query with columns and joins, the template is set on it
+     */
+    public <RESULT> RESULT fetchFilteredCached(Query query, String queryTemplate,
+            CursorReader<Task, RESULT> reader) {
+        String sql = PermaSql.replacePlaceholders(queryTemplate);
+        query.withQueryTemplate(sql);
+        // replaced placeholders bake the current time into the sql, so it
+        // would never be looked up again
+        if(!sql.equals(queryTemplate))
+            return taskDao.queryAndRead(query, reader);
+        return taskDao.queryCached(query, reader);
+    }
+
     public boolean getUserActivationStatus() {
         if (Preferences.getBoolean(PREF_USER_ACTVATED, false))
             return true;
@@ -419,15 +454,16 @@ public class TaskService {
 
     /** count tasks in a given filter */
     public int countTasks(Filter filter) {
-        String queryTemplate = PermaSql.replacePlaceholders(filter.getSqlQuery());
-        TodorooCursor<Task> cursor = query(Query.select(Task.ID).withQueryTemplate(
-                queryTemplate));
-        try {
+        return fetchFilteredCached(filter.getSqlQuery(), COUNT_READER, Task.ID);
+    }
+
+    /** reads the number of rows in a cursor */
+    private static final CursorReader<Task, Integer> COUNT_READER = new CursorReader<Task, Integer>() {
+        @Override
+        public Integer read(TodorooCursor<Task> cursor) {
             return cursor.getCount();
-        } finally {
-            cursor.close();
         }
-    }
+    };
 
     /**
      * Delete all tasks matching a given criterion
@@ -41,6 +41,7 @@ import com.todoroo.astrid.gtasks.GtasksPreferenceService;
 import com.todoroo.astrid.helper.DueDateTimeMigrator;
 import com.todoroo.astrid.notes.NoteMetadata;
 import com.todoroo.astrid.producteev.sync.ProducteevDataService;
+import com.todoroo.astrid.service.ChunkedMigration.ProgressListener;
 import com.todoroo.astrid.service.abtesting.ABChooser;
 import com.todoroo.astrid.subtasks.SubtasksMetadataMigration;
 import com.todoroo.astrid.tags.TagCaseMigrator;
@@ -132,6 +133,9 @@ public final class UpgradeService {
     public static final int V3_0_0 = 136;
     public static final int V2_14_4 = 135;
 
+    /** version an upgrade was started from, until its migrations are done */
+    private static final String PREF_PENDING_UPGRADE = "upgrade_pending_from"; //$NON-NLS-1$
+
     @Autowired Database database;
 
     @Autowired TaskService taskService;
@@ -182,11 +186,36 @@ public final class UpgradeService {
 
         Preferences.setInt(AstridPreferences.P_UPGRADE_FROM, from);
 
-        if(from < maxWithUpgrade) {
-            Intent upgrade = new Intent(context, UpgradeActivity.class);
-            upgrade.putExtra(UpgradeActivity.TOKEN_FROM_VERSION, from);
-            context.startActivityForResult(upgrade, 0);
-        }
+        // migrations of an earlier upgrade may not have finished
+        int migrateFrom = from;
+        int pending = Preferences.getInt(PREF_PENDING_UPGRADE, 0);
+        if(pending > 0)
+            migrateFrom = Math.min(from, pending);
+
+        if(migrateFrom < maxWithUpgrade)
+            startUpgradeActivity(context, migrateFrom);
+    }
+
+    /**
+     * Restarts the migrations of an upgrade that was interrupted, e.g.
+     * because the process was killed. Migrations continue where they
+     * stopped.
+     *
+     * @return true if there was an interrupted upgrade
+     */
+    public boolean resumePendingUpgrade(Activity context) {
+        int from = Preferences.getInt(PREF_PENDING_UPGRADE, 0);
+        if(from <= 0)
+            return false;
+        startUpgradeActivity(context, from);
+        return true;
+    }
+
+    private void startUpgradeActivity(Activity context, int from) {
+        Preferences.setInt(PREF_PENDING_UPGRADE, from);
+        Intent upgrade = new Intent(context, UpgradeActivity.class);
+        upgrade.putExtra(UpgradeActivity.TOKEN_FROM_VERSION, from);
+        context.startActivityForResult(upgrade, 0);
     }
 
     public static class UpgradeActivity extends Activity {
@@ -198,6 +227,17 @@ public final class UpgradeService {
         private int from;
         private boolean finished = false;
 
+        private final ProgressListener progressListener = new ProgressListener() {
+            public void onProgress(final int done, final int total) {
+                runOnUiThread(new Runnable() {
+                    public void run() {
+                        if(dialog != null && total > 0)
+                            dialog.setMessage(getString(R.string.DLG_upgrading_progress, 100 * done / total));
+                    }
+                });
+            }
+        };
+
         @Override
         protected void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
@@ -223,12 +263,14 @@ public final class UpgradeService {
                                 taskService.clearDetails(Task.NOTES.neq("")); //$NON-NLS-1$
 
                             if (from < V4_0_6)
-                                new DueDateTimeMigrator().migrateDueTimes();
+                                new DueDateTimeMigrator().migrateDueTimes(progressListener);
 
                             if (from < V4_4_2)
-                                new SubtasksMetadataMigration().performMigration();
+                                new SubtasksMetadataMigration().run(progressListener);
 
                         } finally {
+                            // a failed migration is not retried, only one that was killed
+                            Preferences.clear(PREF_PENDING_UPGRADE);
                             finished = true;
                             DialogUtilities.dismissDialog(UpgradeActivity.this, dialog);
                             sendBroadcast(new Intent(AstridApiConstants.BROADCAST_EVENT_REFRESH));
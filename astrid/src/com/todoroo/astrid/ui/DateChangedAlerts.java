@@ -25,7 +25,6 @@ import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.TextView;
 
 import com.google.ical.values.Frequency;
-import com.google.ical.values.RRule;
 import com.timsu.astrid.R;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.utility.AndroidUtilities;
@@ -34,6 +33,7 @@ import com.todoroo.andlib.utility.Preferences;
 import com.todoroo.astrid.activity.AstridActivity;
 import com.todoroo.astrid.core.PluginServices;
 import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.repeats.Recurrence;
 import com.todoroo.astrid.repeats.RepeatTaskCompleteListener;
 import com.todoroo.astrid.ui.DateAndTimeDialog.DateAndTimeDialogListener;
 import com.todoroo.astrid.utility.Flags;
@@ -309,12 +309,12 @@ public class DateChangedAlerts {
     @SuppressWarnings("nls")
     private static String getRecurrenceString(Context context, Task task) {
         try {
-            RRule rrule = new RRule(task.getValue(Task.RECURRENCE));
+            Recurrence rule = Recurrence.parse(task.getValue(Task.RECURRENCE));
 
             String[] dateAbbrev = context.getResources().getStringArray(
                     R.array.repeat_interval);
             String frequency = "";
-            Frequency freq = rrule.getFreq();
+            Frequency freq = rule.getFrequency();
             switch(freq) {
             case DAILY:
                 frequency = dateAbbrev[0].toLowerCase();
@@ -336,7 +336,7 @@ public class DateChangedAlerts {
             }
 
             if (!TextUtils.isEmpty(frequency)) {
-                String date = String.format("%s %s", rrule.getInterval(), frequency); //$NON-NLS-1$
+                String date = String.format("%s %s", rule.getInterval(), frequency); //$NON-NLS-1$
                 return String.format(context.getString(R.string.repeat_detail_duedate),
                         date).toLowerCase(); // Every freq int
             }
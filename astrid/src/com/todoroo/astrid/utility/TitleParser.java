@@ -22,18 +22,86 @@ import com.mdimension.jchronic.Chronic;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.tags.TagService;
 
+/**
+ * Parses quick-add markup (dates, times, repeats, importance and tags) out
+ * of task titles. All patterns are compiled once. The title is scanned
+ * once up front and each helper only runs the patterns whose keywords or
+ * characters occur in it, so plain titles skip almost all matching.
+ */
 @SuppressWarnings("nls")
 public class TitleParser {
 
     public static boolean parse(Task task, ArrayList<String> tags) {
         boolean markup = false;
-        markup = repeatHelper(task) || markup;
-        listHelper(task,tags); // Don't need to know if tags affected things since we don't show alerts for them
-        markup = dayHelper(task) || markup;
-        markup = priorityHelper(task) || markup;
+        Scan scan = new Scan(task.getValue(Task.TITLE));
+        markup = repeatHelper(task, scan) || markup;
+        listHelper(task, tags, scan); // Don't need to know if tags affected things since we don't show alerts for them
+        scan = scan.rescan(task.getValue(Task.TITLE));
+        markup = dayHelper(task, scan) || markup;
+        scan = scan.rescan(task.getValue(Task.TITLE));
+        markup = priorityHelper(task, scan) || markup;
         return markup;
     }
 
+    /**
+     * The words and marker characters of a title, used to skip patterns
+     * that can't match it
+     */
+    private static final class Scan {
+        final String text;
+        final HashSet<String> words = new HashSet<String>();
+        boolean digit, dateSeparator, tagMarker, bang;
+
+        Scan(String text) {
+            this.text = text;
+            StringBuilder word = new StringBuilder();
+            for(int i = 0; i <= text.length(); i++) {
+                char c = i < text.length() ? text.charAt(i) : ' ';
+                if(Character.isLetter(c)) {
+                    word.append(Character.toLowerCase(c));
+                    continue;
+                }
+                if(word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+                if(c >= '0' && c <= '9')
+                    digit = true;
+                else if(c == '/' || c == '-')
+                    dateSeparator = true;
+                else if(c == '#' || c == '@')
+                    tagMarker = true;
+                else if(c == '!')
+                    bang = true;
+            }
+        }
+
+        /** @return this scan if the text is unchanged, else a new one */
+        Scan rescan(String newText) {
+            return text.equals(newText) ? this : new Scan(newText);
+        }
+
+        boolean hasWord(String target) {
+            return words.contains(target);
+        }
+
+        boolean hasWordStartingWith(String prefix) {
+            if(words.contains(prefix))
+                return true;
+            for(String word : words)
+                if(word.startsWith(prefix))
+                    return true;
+            return false;
+        }
+
+        boolean contains(String target) {
+            for(int i = 0; i + target.length() <= text.length(); i++)
+                if(text.regionMatches(true, i, target, 0, target.length()))
+                    return true;
+            return false;
+        }
+    }
+
     public static String trimParenthesis(String pattern){
         if (pattern.charAt(0) == '#' || pattern.charAt(0) == '@') {
             pattern = pattern.substring(1);
@@ -44,17 +112,26 @@ public class TitleParser {
         }
         return pattern;
     }
+    private static final Pattern TAG_PATTERN = Pattern.compile("(\\s|^)#(\\(.*\\)|[^\\s]+)");
+    private static final Pattern CONTEXT_PATTERN = Pattern.compile("(\\s|^)@(\\(.*\\)|[^\\s]+)");
+
     public static boolean listHelper(Task task, ArrayList<String> tags) {
+        return listHelper(task, tags, new Scan(task.getValue(Task.TITLE)));
+    }
+
+    private static boolean listHelper(Task task, ArrayList<String> tags, Scan scan) {
         String inputText = task.getValue(Task.TITLE);
-        Pattern tagPattern = Pattern.compile("(\\s|^)#(\\(.*\\)|[^\\s]+)");
-        Pattern contextPattern = Pattern.compile("(\\s|^)@(\\(.*\\)|[^\\s]+)");
         boolean result = false;
+        if(!scan.tagMarker) {
+            task.setValue(Task.TITLE, inputText.trim());
+            return result;
+        }
 
         Set<String> addedTags = new HashSet<String>();
         TagService tagService = TagService.getInstance();
 
         while(true) {
-            Matcher m = tagPattern.matcher(inputText);
+            Matcher m = TAG_PATTERN.matcher(inputText);
             if(m.find()) {
                 result = true;
                 String tag = TitleParser.trimParenthesis(m.group(2));
@@ -63,7 +140,7 @@ public class TitleParser {
                     tags.add(tagWithCase);
                 addedTags.add(tagWithCase);
             } else {
-                m = contextPattern.matcher(inputText);
+                m = CONTEXT_PATTERN.matcher(inputText);
                 if(m.find()) {
                     result = true;
                     String tag = TitleParser.trimParenthesis(m.group(2));
@@ -95,21 +172,27 @@ public class TitleParser {
         return priority;
     }
 
+    private static final Pattern[] IMPORTANCE_PATTERNS = {
+            Pattern.compile("()((^|[^\\w!])!+|(^|[^\\w!])!\\d)($|[^\\w!])"),
+            Pattern.compile("()(?i)((\\s?bang){1,})$"),
+            Pattern.compile("(?i)(\\spriority\\s?(\\d)$)"),
+            Pattern.compile("(?i)(\\sbang\\s?(\\d)$)"),
+            Pattern.compile("(?i)()(\\shigh(est)?|\\slow(est)?|\\stop|\\sleast) ?priority$")
+    };
+
+    /** text each of the importance patterns needs */
+    private static final String[] IMPORTANCE_KEYS = { "!", "bang", "priority", "bang", "priority" };
+
     //priorityHelper parses the string and sets the Task's importance
-    private static boolean priorityHelper(Task task) {
+    private static boolean priorityHelper(Task task, Scan scan) {
         String inputText = task.getValue(Task.TITLE);
-        String[] importanceStrings = {
-                "()((^|[^\\w!])!+|(^|[^\\w!])!\\d)($|[^\\w!])",
-                "()(?i)((\\s?bang){1,})$",
-                "(?i)(\\spriority\\s?(\\d)$)",
-                "(?i)(\\sbang\\s?(\\d)$)",
-                "(?i)()(\\shigh(est)?|\\slow(est)?|\\stop|\\sleast) ?priority$"
-        };
         boolean result = false;
-        for (String importanceString:importanceStrings){
-            Pattern importancePattern = Pattern.compile(importanceString);
+        for (int i = 0; i < IMPORTANCE_PATTERNS.length; i++){
+            // removing markup never adds a key, so checking the original title is enough
+            if (i == 0 ? !scan.bang : !scan.contains(IMPORTANCE_KEYS[i]))
+                continue;
             while (true){
-                Matcher m = importancePattern.matcher(inputText);
+                Matcher m = IMPORTANCE_PATTERNS[i].matcher(inputText);
                 if(m.find()) {
                     result = true;
                     task.setValue(Task.IMPORTANCE, strToPriority(m.group(2).trim()));
@@ -154,60 +237,103 @@ public class TitleParser {
         return s;
     }
 
+    private static final String[] DAY_WORDS = {
+            "today", "tomorrow", "mon", "tue", "wed", "thu", "fri", "sat", "sun"
+    };
+
+    private static final Pattern[] DAY_PATTERNS = {
+            Pattern.compile("(?i)(\\(|\\b)today(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)tomorrow(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)mon(day(\\)|\\b)|(\\)|\\.))"),
+            Pattern.compile("(?i)(\\(|\\b)tue(sday(\\)|\\b)|(\\)|\\.))"),
+            Pattern.compile("(?i)(\\(|\\b)wed(nesday(\\)|\\b)|(\\)|\\.))"),
+            Pattern.compile("(?i)(\\(|\\b)thu(rsday(\\)|\\b)|(\\)|\\.))"),
+            Pattern.compile("(?i)(\\(|\\b)fri(day(\\)|\\b)|(\\)|\\.))"),
+            Pattern.compile("(?i)(\\(|\\b)sat(urday(\\)|\\b)|(\\)|\\.))"),
+            Pattern.compile("(?i)(\\(|\\b)sun(day(\\)|\\b)|(\\)|\\.))")
+    };
+
+    private static final String[] MONTH_WORDS = {
+            "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"
+    };
+
+    // m.group(2) = "month"
+    //m.group(5) = "day"
+    private static final Pattern[] MONTH_PATTERNS = {
+            Pattern.compile("(?i)(\\(|\\b)(jan(\\.|uary))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(feb(\\.|ruary))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(mar(\\.|ch))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(apr(\\.|il))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(may())(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(jun(\\.|e))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(jul(\\.|y))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(aug(\\.|ust))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(sep(\\.|tember))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(oct(\\.|ober))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(nov(\\.|ember))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"),
+            Pattern.compile("(?i)(\\(|\\b)(dec(\\.|ember))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)")
+    };
+
+    // for dates in the format MM/DD
+    private static final Pattern NUMERIC_DATE_PATTERN = Pattern.compile(
+            "(?i)(\\(|\\b)(1[0-2]|0?[1-9])(\\/|-)(3[0-1]|[0-2]?[0-9])(\\/|-)?(\\d{4}|\\d{2})?(\\)|\\b)");
+
+    private static final String[] DAY_TIME_WORDS = {
+            "breakfast", "lunch", "supper", "dinner", "brunch", "morning",
+            "afternoon", "evening", "night", "midnight", "noon"
+    };
+
+    private static final int[] DAY_TIME_HOURS = { 8, 12, 18, 18, 10, 8, 15, 19, 19, 0, 12 };
+
+    private static final Pattern[] DAY_TIME_PATTERNS = new Pattern[DAY_TIME_WORDS.length];
+    static {
+        for (int i = 0; i < DAY_TIME_WORDS.length; i++)
+            DAY_TIME_PATTERNS[i] = Pattern.compile("(?i)\\b" + DAY_TIME_WORDS[i] + "\\b");
+    }
+
+    //m.group(2) holds the hour
+    //m.group(3) holds the minutes
+    //m.group(4) holds am/pm
+    private static final Pattern[] TIME_PATTERNS = {
+            //[time] am/pm
+            Pattern.compile("(?i)(\\b)([01]?\\d):?([0-5]\\d)? ?([ap]\\.?m?\\.?)\\b"),
+            //army time
+            Pattern.compile("(?i)\\b(([0-2]?[0-9]):([0-5][0-9]))(\\b)"),
+            //[int] o'clock
+            Pattern.compile("(?i)\\b(([01]?\\d)() ?o'? ?clock) ?([ap]\\.?m\\.?)?\\b"),
+            //at [int]
+            Pattern.compile("(?i)(\\bat) ([01]?\\d)()($|\\D($|\\D))")
+    };
+
     //---------------------DATE--------------------------
     //Handles setting the task's date.
     //Day of week (e.g. Monday, Tuesday,..) is overridden by a set date (e.g. October 23 2013).
     //Vague times (e.g. breakfast, night) are overridden by a set time (9 am, at 10, 17:00)
-    private static boolean dayHelper(Task task ) {
+    private static boolean dayHelper(Task task, Scan scan) {
         if (task.containsNonNullValue(Task.DUE_DATE))
             return false;
         String inputText = task.getValue(Task.TITLE);
         Calendar cal = null;
         Boolean containsSpecificTime = false;
-        String[] daysOfWeek = {
-                "(?i)(\\(|\\b)today(\\)|\\b)",
-                "(?i)(\\(|\\b)tomorrow(\\)|\\b)",
-                "(?i)(\\(|\\b)mon(day(\\)|\\b)|(\\)|\\.))",
-                "(?i)(\\(|\\b)tue(sday(\\)|\\b)|(\\)|\\.))",
-                "(?i)(\\(|\\b)wed(nesday(\\)|\\b)|(\\)|\\.))",
-                "(?i)(\\(|\\b)thu(rsday(\\)|\\b)|(\\)|\\.))",
-                "(?i)(\\(|\\b)fri(day(\\)|\\b)|(\\)|\\.))",
-                "(?i)(\\(|\\b)sat(urday(\\)|\\b)|(\\)|\\.))",
-                "(?i)(\\(|\\b)sun(day(\\)|\\b)|(\\)|\\.))"
-        };
 
-        for (String date : daysOfWeek){
-            Pattern pattern = Pattern.compile(date);
-            Matcher m = pattern.matcher(inputText);
+        for (int i = 0; i < DAY_PATTERNS.length; i++){
+            if (!scan.hasWordStartingWith(DAY_WORDS[i]))
+                continue;
+            Matcher m = DAY_PATTERNS[i].matcher(inputText);
             if (m.find()) {
                 String toParse = stripParens(m.group(0));
                 Calendar dayCal = AstridChronic.parse(toParse).getBeginCalendar();
                 cal = dayCal;
                 inputText = removeIfParenthetical(m, inputText);
+                scan = scan.rescan(inputText);
                 //then put it into task
             }
         }
 
-        String[] dates = {
-                "(?i)(\\(|\\b)(jan(\\.|uary))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(feb(\\.|ruary))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(mar(\\.|ch))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(apr(\\.|il))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(may())(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(jun(\\.|e))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(jul(\\.|y))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(aug(\\.|ust))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(sep(\\.|tember))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(oct(\\.|ober))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(nov(\\.|ember))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)",
-                "(?i)(\\(|\\b)(dec(\\.|ember))(\\s(3[0-1]|[0-2]?[0-9])),?( (\\d{4}|\\d{2}))?(\\)|\\b)"
-        };
-
-        // m.group(2) = "month"
-        //m.group(5) = "day"
-        for (String date: dates) {
-            Pattern pattern = Pattern.compile(date);
-            Matcher m = pattern.matcher(inputText);
+        for (int i = 0; scan.digit && i < MONTH_PATTERNS.length; i++) {
+            if (!scan.hasWordStartingWith(MONTH_WORDS[i]))
+                continue;
+            Matcher m = MONTH_PATTERNS[i].matcher(inputText);
 
             if (m.find()){
                 Calendar dateCal = Chronic.parse(m.group(2)).getBeginCalendar();
@@ -228,13 +354,12 @@ public class TitleParser {
                     cal.set(Calendar.YEAR, dateCal.get(Calendar.YEAR));
                 }
                 inputText = removeIfParenthetical(m, inputText);
+                scan = scan.rescan(inputText);
             }
         }
 
-        // for dates in the format MM/DD
-        Pattern p = Pattern.compile("(?i)(\\(|\\b)(1[0-2]|0?[1-9])(\\/|-)(3[0-1]|[0-2]?[0-9])(\\/|-)?(\\d{4}|\\d{2})?(\\)|\\b)");
-        Matcher match = p.matcher(inputText);
-        if (match.find()){
+        Matcher match = scan.digit && scan.dateSeparator ? NUMERIC_DATE_PATTERN.matcher(inputText) : null;
+        if (match != null && match.find()){
             Calendar dCal = Calendar.getInstance();
             setCalendarToDefaultTime(dCal);
             dCal.set(Calendar.MONTH, Integer.parseInt(match.group(2).trim()) - 1);
@@ -254,28 +379,16 @@ public class TitleParser {
                 cal.set(Calendar.YEAR, dCal.get(Calendar.YEAR));
             }
             inputText = removeIfParenthetical(match, inputText);
+            scan = scan.rescan(inputText);
         }
 
-        HashMap<String, Integer> dayTimes = new HashMap<String, Integer>();
-        dayTimes.put("(?i)\\bbreakfast\\b", 8);
-        dayTimes.put("(?i)\\blunch\\b", 12);
-        dayTimes.put("(?i)\\bsupper\\b", 18);
-        dayTimes.put("(?i)\\bdinner\\b", 18);
-        dayTimes.put("(?i)\\bbrunch\\b", 10);
-        dayTimes.put("(?i)\\bmorning\\b", 8);
-        dayTimes.put("(?i)\\bafternoon\\b", 15);
-        dayTimes.put("(?i)\\bevening\\b", 19);
-        dayTimes.put("(?i)\\bnight\\b", 19);
-        dayTimes.put("(?i)\\bmidnight\\b", 0);
-        dayTimes.put("(?i)\\bnoon\\b", 12);
-
-        Set<String> keys = dayTimes.keySet();
-        for (String dayTime : keys) {
-            Pattern pattern = Pattern.compile(dayTime);
-            Matcher m = pattern.matcher(inputText);
+        for (int i = 0; i < DAY_TIME_PATTERNS.length; i++) {
+            if (!scan.hasWord(DAY_TIME_WORDS[i]))
+                continue;
+            Matcher m = DAY_TIME_PATTERNS[i].matcher(inputText);
             if (m.find()) {
                 containsSpecificTime = true;
-                int timeHour = dayTimes.get(dayTime);
+                int timeHour = DAY_TIME_HOURS[i];
                 Calendar dayTimesCal = Calendar.getInstance();
                 setCalendarToDefaultTime(dayTimesCal);
                 dayTimesCal.set(Calendar.HOUR, timeHour);
@@ -288,24 +401,8 @@ public class TitleParser {
             }
         }
 
-        String[] times = {
-                //[time] am/pm
-                "(?i)(\\b)([01]?\\d):?([0-5]\\d)? ?([ap]\\.?m?\\.?)\\b",
-                //army time
-                "(?i)\\b(([0-2]?[0-9]):([0-5][0-9]))(\\b)",
-                //[int] o'clock
-                "(?i)\\b(([01]?\\d)() ?o'? ?clock) ?([ap]\\.?m\\.?)?\\b",
-                //at [int]
-                "(?i)(\\bat) ([01]?\\d)()($|\\D($|\\D))"
-
-                //m.group(2) holds the hour
-                //m.group(3) holds the minutes
-                //m.group(4) holds am/pm
-        };
-
-        for (String time : times){
-            Pattern pattern = Pattern.compile(time);
-            Matcher m = pattern.matcher(inputText);
+        for (int i = 0; scan.digit && i < TIME_PATTERNS.length; i++){
+            Matcher m = TIME_PATTERNS[i].matcher(inputText);
             if (m.find()) {
                 containsSpecificTime = true;
                 Calendar today = Calendar.getInstance();
@@ -360,51 +457,65 @@ public class TitleParser {
     }
     //---------------------DATE--------------------------
 
+    /** repeats with an interval, e.g. "every other week", in the order they are tried */
+    private static final Pattern[] REPEAT_PATTERNS = {
+            Pattern.compile("(?i)\\bevery ?\\w{0,6} days?\\b"),
+            Pattern.compile("(?i)\\bevery ?\\w{0,6} ?nights?\\b"),
+            Pattern.compile("(?i)\\bevery ?\\w{0,6} ?mornings?\\b"),
+            Pattern.compile("(?i)\\bevery ?\\w{0,6} ?evenings?\\b"),
+            Pattern.compile("(?i)\\bevery ?\\w{0,6} ?afternoons?\\b"),
+            Pattern.compile("(?i)\\bevery \\w{0,6} ?weeks?\\b"),
+            Pattern.compile("(?i)\\bevery \\w{0,6} ?(mon|tues|wednes|thurs|fri|satur|sun)days?\\b"),
+            Pattern.compile("(?i)\\bevery \\w{0,6} ?months?\\b"),
+            Pattern.compile("(?i)\\bevery \\w{0,6} ?years?\\b")
+    };
+
+    private static final Frequency[] REPEAT_FREQUENCIES = {
+            Frequency.DAILY, Frequency.DAILY, Frequency.DAILY, Frequency.DAILY, Frequency.DAILY,
+            Frequency.WEEKLY, Frequency.WEEKLY, Frequency.MONTHLY, Frequency.YEARLY
+    };
+
+    //pre-determined intervals of 1
+    private static final String[] REPEAT_ONE_WORDS = {
+            "daily", "everyday", "weekly", "monthly", "yearly"
+    };
+
+    private static final Frequency[] REPEAT_ONE_FREQUENCIES = {
+            Frequency.DAILY, Frequency.DAILY, Frequency.WEEKLY, Frequency.MONTHLY, Frequency.YEARLY
+    };
+
+    private static final Pattern[] REPEAT_ONE_PATTERNS = new Pattern[REPEAT_ONE_WORDS.length];
+    static {
+        for (int i = 0; i < REPEAT_ONE_WORDS.length; i++)
+            REPEAT_ONE_PATTERNS[i] = Pattern.compile("(?i)\\b" + REPEAT_ONE_WORDS[i] + "\\b");
+    }
+
     //Parses through the text and sets the frequency of the task.
-    private static boolean repeatHelper(Task task) {
+    private static boolean repeatHelper(Task task, Scan scan) {
         if (task.containsNonNullValue(Task.RECURRENCE))
             return false;
         String inputText = task.getValue(Task.TITLE);
-        HashMap<String, Frequency> repeatTimes = new HashMap<String, Frequency>();
-        repeatTimes.put("(?i)\\bevery ?\\w{0,6} days?\\b" , Frequency.DAILY);
-        repeatTimes.put("(?i)\\bevery ?\\w{0,6} ?nights?\\b" , Frequency.DAILY);
-        repeatTimes.put("(?i)\\bevery ?\\w{0,6} ?mornings?\\b" , Frequency.DAILY);
-        repeatTimes.put("(?i)\\bevery ?\\w{0,6} ?evenings?\\b" , Frequency.DAILY);
-        repeatTimes.put("(?i)\\bevery ?\\w{0,6} ?afternoons?\\b" , Frequency.DAILY);
-        repeatTimes.put("(?i)\\bevery \\w{0,6} ?weeks?\\b", Frequency.WEEKLY);
-        repeatTimes.put("(?i)\\bevery \\w{0,6} ?(mon|tues|wednes|thurs|fri|satur|sun)days?\\b", Frequency.WEEKLY);
-        repeatTimes.put("(?i)\\bevery \\w{0,6} ?months?\\b", Frequency.MONTHLY);
-        repeatTimes.put("(?i)\\bevery \\w{0,6} ?years?\\b", Frequency.YEARLY);
-
-        HashMap<String, Frequency> repeatTimesIntervalOne = new HashMap<String, Frequency>();
-        //pre-determined intervals of 1
-        repeatTimesIntervalOne.put( "(?i)\\bdaily\\b" , Frequency.DAILY);
-        repeatTimesIntervalOne.put( "(?i)\\beveryday\\b" , Frequency.DAILY);
-        repeatTimesIntervalOne.put( "(?i)\\bweekly\\b" , Frequency.WEEKLY);
-        repeatTimesIntervalOne.put( "(?i)\\bmonthly\\b" ,Frequency.MONTHLY);
-        repeatTimesIntervalOne.put( "(?i)\\byearly\\b" , Frequency.YEARLY);
-
-        Set<String> keys = repeatTimes.keySet();
-        for (String repeatTime : keys){
-            Pattern pattern = Pattern.compile(repeatTime);
-            Matcher m = pattern.matcher(inputText);
-            if (m.find()){
-                Frequency rtime = repeatTimes.get(repeatTime);
-                RRule rrule = new RRule();
-                rrule.setFreq(rtime);
-                rrule.setInterval(findInterval(inputText));
-                task.setValue(Task.RECURRENCE, rrule.toIcal());
-                return true;
+
+        if (scan.hasWordStartingWith("every")) {
+            for (int i = 0; i < REPEAT_PATTERNS.length; i++){
+                Matcher m = REPEAT_PATTERNS[i].matcher(inputText);
+                if (m.find()){
+                    RRule rrule = new RRule();
+                    rrule.setFreq(REPEAT_FREQUENCIES[i]);
+                    rrule.setInterval(findInterval(inputText));
+                    task.setValue(Task.RECURRENCE, rrule.toIcal());
+                    return true;
+                }
             }
         }
 
-        for (String repeatTimeIntervalOne:repeatTimesIntervalOne.keySet()){
-            Pattern pattern = Pattern.compile(repeatTimeIntervalOne);
-            Matcher m = pattern.matcher(inputText);
+        for (int i = 0; i < REPEAT_ONE_PATTERNS.length; i++){
+            if (!scan.hasWord(REPEAT_ONE_WORDS[i]))
+                continue;
+            Matcher m = REPEAT_ONE_PATTERNS[i].matcher(inputText);
             if (m.find()) {
-                Frequency rtime = repeatTimesIntervalOne.get(repeatTimeIntervalOne);
                 RRule rrule = new RRule();
-                rrule.setFreq(rtime);
+                rrule.setFreq(REPEAT_ONE_FREQUENCIES[i]);
                 rrule.setInterval(1);
                 String thing = rrule.toIcal();
                 task.setValue(Task.RECURRENCE, thing);
@@ -414,26 +525,29 @@ public class TitleParser {
         return false;
     }
 
-    //helper method for repeatHelper.
-    private static int findInterval(String inputText) {
-        HashMap<String,Integer> wordsToNum = new HashMap<String, Integer>();
+    private static final HashMap<String,Integer> WORDS_TO_NUM = new HashMap<String, Integer>();
+    static {
         String[] words = new String[] {
                 "one", "two", "three", "four", "five", "six",
                 "seven", "eight", "nine", "ten", "eleven", "twelve"
         };
         for(int i = 0; i < words.length; i++) {
-            wordsToNum.put(words[i], i+1);
-            wordsToNum.put(Integer.toString(i + 1), i + 1);
+            WORDS_TO_NUM.put(words[i], i+1);
+            WORDS_TO_NUM.put(Integer.toString(i + 1), i + 1);
         }
-        wordsToNum.put("other" , 2);
+        WORDS_TO_NUM.put("other" , 2);
+    }
+
+    private static final Pattern INTERVAL_PATTERN = Pattern.compile("(?i)\\bevery (\\w*)\\b");
 
-        Pattern pattern = Pattern.compile("(?i)\\bevery (\\w*)\\b");
+    //helper method for repeatHelper.
+    private static int findInterval(String inputText) {
         int interval = 1;
-        Matcher m = pattern.matcher(inputText);
+        Matcher m = INTERVAL_PATTERN.matcher(inputText);
         if (m.find() && m.group(1)!=null){
             String intervalStr = m.group(1);
-            if (wordsToNum.containsKey(intervalStr))
-                interval = wordsToNum.get(intervalStr);
+            if (WORDS_TO_NUM.containsKey(intervalStr))
+                interval = WORDS_TO_NUM.get(intervalStr);
             else {
                 try {
                     interval = Integer.parseInt(intervalStr);
@@ -5,6 +5,12 @@
  */
 package com.todoroo.astrid.widget;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 import android.app.PendingIntent;
 import android.app.Service;
 import android.appwidget.AppWidgetManager;
@@ -70,6 +76,10 @@ public class TasksWidget extends AppWidgetProvider {
             ContextManager.setContext(context);
             super.onUpdate(context, appWidgetManager, appWidgetIds);
 
+            // the system asked for these to be redrawn, so don't skip them
+            for(int id : appWidgetIds)
+                WidgetRenderCache.invalidate(id);
+
             // Start in service to prevent Application Not Responding timeout
             updateWidgets(context);
         } catch (Exception e) {
@@ -77,6 +87,13 @@ public class TasksWidget extends AppWidgetProvider {
         }
     }
 
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        super.onDeleted(context, appWidgetIds);
+        for(int id : appWidgetIds)
+            WidgetRenderCache.invalidate(id);
+    }
+
     /**
      * Update all widgets
      * @param id
@@ -143,17 +160,22 @@ public class TasksWidget extends AppWidgetProvider {
                 int[] ids;
                 try {
                     ids = manager.getAppWidgetIds(thisWidget);
+                    // widgets showing the same list share one query
+                    Map<String, List<Task>> tasksByQuery = new HashMap<String, List<Task>>();
                     for(int id : ids) {
-                        RemoteViews updateViews = buildUpdate(this, id);
-                        manager.updateAppWidget(id, updateViews);
+                        RemoteViews updateViews = buildUpdate(this, id, tasksByQuery);
+                        if(updateViews != null)
+                            manager.updateAppWidget(id, updateViews);
                     }
                 } catch (RuntimeException e) {
                     // "System server dead" was sometimes thrown here by the OS. Abort if that happens
                 }
             } else {
                 int id = extrasId;
-                RemoteViews updateViews = buildUpdate(this, id);
-                manager.updateAppWidget(id, updateViews);
+                WidgetRenderCache.invalidate(id);
+                RemoteViews updateViews = buildUpdate(this, id, new HashMap<String, List<Task>>());
+                if(updateViews != null)
+                    manager.updateAppWidget(id, updateViews);
             }
 
             stopSelf();
@@ -164,63 +186,93 @@ public class TasksWidget extends AppWidgetProvider {
             return null;
         }
 
+        /** limit of a filter query, which is replaced with the widget's own */
+        private static final Pattern LIMIT = Pattern.compile("LIMIT \\d+"); //$NON-NLS-1$
+
+        /**
+         * @param tasksByQuery tasks read so far in this update, by query.
+         *        Widgets with the same query reuse them
+         * @return views for the widget, or null if it would look the same
+         *         as when it was last rendered
+         */
         @SuppressWarnings("nls")
-        public RemoteViews buildUpdate(Context context, int widgetId) {
+        public RemoteViews buildUpdate(Context context, int widgetId, Map<String, List<Task>> tasksByQuery) {
             DependencyInjectionService.getInstance().inject(this);
 
-            RemoteViews views = getThemedRemoteViews(context);
-
             int numberOfTasks = getNumberOfTasks();
 
-            TodorooCursor<Task> cursor = null;
             Filter filter = null;
+            String key = null;
+            String[] titles = null;
+            int[] colors = null;
             try {
                 filter = getFilter(widgetId);
                 if (SubtasksHelper.isTagFilter(filter))
                     ((FilterWithCustomIntent) filter).customTaskList = new ComponentName(context, TagViewFragment.class); // In case legacy widget was created with subtasks fragment
-                views.setTextViewText(R.id.widget_title, filter.title);
-                views.removeAllViews(R.id.taskbody);
 
                 SharedPreferences publicPrefs = AstridPreferences.getPublicPrefs(this);
                 int flags = publicPrefs.getInt(SortHelper.PREF_SORT_FLAGS, 0);
                 int sort = publicPrefs.getInt(SortHelper.PREF_SORT_SORT, 0);
-                String query = SortHelper.adjustQueryForFlagsAndSort(
-                        filter.getSqlQuery(), flags, sort).replaceAll("LIMIT \\d+", "") + " LIMIT " + numberOfTasks;
+                String query = LIMIT.matcher(SortHelper.adjustQueryForFlagsAndSort(
+                        filter.getSqlQuery(), flags, sort)).replaceAll("") + " LIMIT " + numberOfTasks;
 
                 String tagName = Preferences.getStringValue(WidgetConfigActivity.PREF_TITLE + widgetId);
                 query = SubtasksHelper.applySubtasksToWidgetFilter(filter, query, tagName, numberOfTasks);
 
-                database.openForReading();
-                cursor = taskService.fetchFiltered(query, null, Task.ID, Task.TITLE, Task.DUE_DATE, Task.COMPLETION_DATE);
-                Task task = new Task();
-                int i = 0;
-                for (i = 0; i < cursor.getCount() && i < numberOfTasks; i++) {
-                    cursor.moveToPosition(i);
-                    task.readFromCursor(cursor);
-
-                    String textContent = "";
-                    Resources r = context.getResources();
-                    int textColor = r
-                            .getColor(isDarkTheme() ? R.color.widget_text_color_dark : R.color.widget_text_color_light);
-                    if (isLegacyTheme())
-                        textColor = r.getColor(android.R.color.white);
-
-                    textContent = task.getValue(Task.TITLE);
+                List<Task> tasks = tasksByQuery.get(query);
+                if(tasks == null) {
+                    database.openForReading();
+                    tasks = readTasks(query);
+                    tasksByQuery.put(query, tasks);
+                }
 
+                Resources r = context.getResources();
+                int textColor = r
+                        .getColor(isDarkTheme() ? R.color.widget_text_color_dark : R.color.widget_text_color_light);
+                if (isLegacyTheme())
+                    textColor = r.getColor(android.R.color.white);
+
+                int count = Math.min(tasks.size(), numberOfTasks);
+                titles = new String[count];
+                colors = new int[count];
+                for (int i = 0; i < count; i++) {
+                    Task task = tasks.get(i);
+                    titles[i] = task.getValue(Task.TITLE);
                     if(task.isCompleted())
-                        textColor = r.getColor(R.color.task_list_done);
+                        colors[i] = r.getColor(R.color.task_list_done);
                     else if(task.hasDueDate() && task.isOverdue())
-                        textColor = r.getColor(R.color.task_list_overdue);
+                        colors[i] = r.getColor(R.color.task_list_overdue);
+                    else
+                        colors[i] = textColor;
+                }
+
+                key = getRenderKey(context, widgetId, filter, query);
+                if(WidgetRenderCache.isCurrent(widgetId, key, titles, colors))
+                    return null;
+            } catch (Exception e) {
+                // can happen if database is not ready
+                Log.e("WIDGET-UPDATE", "Error updating widget", e);
+                key = null;
+                titles = null;
+            }
 
+            RemoteViews views = getThemedRemoteViews(context);
+            if(filter != null)
+                views.setTextViewText(R.id.widget_title, filter.title);
+            views.removeAllViews(R.id.taskbody);
+
+            if(titles != null) {
+                int i;
+                for (i = 0; i < titles.length; i++) {
                     RemoteViews row = new RemoteViews(Constants.PACKAGE, R.layout.widget_row);
 
-                    row.setTextViewText(R.id.text, textContent);
-                    row.setTextColor(R.id.text, textColor);
+                    row.setTextViewText(R.id.text, titles[i]);
+                    row.setTextColor(R.id.text, colors[i]);
 
                     views.addView(R.id.taskbody, row);
 
                     RemoteViews separator = new RemoteViews(Constants.PACKAGE, R.layout.widget_separator);
-                    boolean isLastRow = (i == cursor.getCount() - 1) || (i == numberOfTasks - 1);
+                    boolean isLastRow = (i == titles.length - 1);
                     if (!isLastRow)
                         views.addView(R.id.taskbody, separator);
                 }
@@ -229,13 +281,6 @@ public class TasksWidget extends AppWidgetProvider {
                     row.setViewVisibility(R.id.text, View.INVISIBLE);
                     views.addView(R.id.taskbody, row);
                 }
-
-            } catch (Exception e) {
-                // can happen if database is not ready
-                Log.e("WIDGET-UPDATE", "Error updating widget", e);
-            } finally {
-                if(cursor != null)
-                    cursor.close();
             }
 
             Intent listIntent = new Intent(context, TaskListActivity.class);
@@ -301,9 +346,42 @@ public class TasksWidget extends AppWidgetProvider {
                 views.setOnClickPendingIntent(R.id.widget_title, pEditIntent);
             }
 
+            if(key != null)
+                WidgetRenderCache.put(widgetId, key, titles, colors);
             return views;
         }
 
+        private List<Task> readTasks(String query) {
+            TodorooCursor<Task> cursor = taskService.fetchFiltered(query, null,
+                    Task.ID, Task.TITLE, Task.DUE_DATE, Task.COMPLETION_DATE);
+            try {
+                ArrayList<Task> tasks = new ArrayList<Task>(cursor.getCount());
+                for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+                    tasks.add(new Task(cursor));
+                return tasks;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * @return everything besides the rows that goes into the widget's
+         *         views, including new task values as of now
+         */
+        @SuppressWarnings("nls")
+        private String getRenderKey(Context context, int widgetId, Filter filter, String query) {
+            StringBuilder key = new StringBuilder(query);
+            key.append('|').append(filter.title);
+            key.append('|').append(ThemeService.getWidgetTheme());
+            key.append('|').append(AstridPreferences.useTabletLayout(context));
+            if(filter.valuesForNewTasks != null)
+                key.append('|').append(PermaSql.replacePlaceholders(
+                        AndroidUtilities.contentValuesToSerializedString(filter.valuesForNewTasks)));
+            key.append('|').append(Preferences.getStringValue(WidgetConfigActivity.PREF_CUSTOM_INTENT + widgetId));
+            key.append('|').append(Preferences.getStringValue(WidgetConfigActivity.PREF_CUSTOM_EXTRAS + widgetId));
+            return key.toString();
+        }
+
         private boolean isDarkTheme() {
             int theme = ThemeService.getWidgetTheme();
             return (theme == R.style.Theme || theme == R.style.Theme_Transparent);
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.widget;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Remembers what each widget was last rendered with, so that an update
+ * whose rows come out the same as last time can be skipped instead of
+ * rebuilding and pushing all of its views.
+ * <p>
+ * A rendering is identified by a key built from everything else that goes
+ * into the widget (its query, title, theme and intents) and by the title
+ * and color of each row.
+ */
+class WidgetRenderCache {
+
+    private static class Rendering {
+        private final String key;
+        private final String[] titles;
+        private final int[] colors;
+
+        public Rendering(String key, String[] titles, int[] colors) {
+            this.key = key;
+            this.titles = titles;
+            this.colors = colors;
+        }
+
+        public boolean matches(String otherKey, String[] otherTitles, int[] otherColors) {
+            return key.equals(otherKey) && Arrays.equals(titles, otherTitles) &&
+                Arrays.equals(colors, otherColors);
+        }
+    }
+
+    private static final HashMap<Integer, Rendering> renderings = new HashMap<Integer, Rendering>();
+
+    /**
+     * @return true if the widget was last rendered with the same key and rows
+     */
+    public static synchronized boolean isCurrent(int widgetId, String key, String[] titles, int[] colors) {
+        Rendering rendering = renderings.get(widgetId);
+        return rendering != null && rendering.matches(key, titles, colors);
+    }
+
+    /**
+     * Record what a widget has been rendered with
+     */
+    public static synchronized void put(int widgetId, String key, String[] titles, int[] colors) {
+        renderings.put(widgetId, new Rendering(key, titles, colors));
+    }
+
+    /**
+     * Forget a widget's rendering, so its next update rebuilds it
+     */
+    public static synchronized void invalidate(int widgetId) {
+        renderings.remove(widgetId);
+    }
+
+}
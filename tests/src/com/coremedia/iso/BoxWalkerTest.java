@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.coremedia.iso;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import android.test.AndroidTestCase;
+
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.FreeBox;
+import com.coremedia.iso.boxes.FreeSpaceBox;
+import com.coremedia.iso.boxes.UnknownBox;
+
+/**
+ * Checks which box headers the walker reports and where it stops, for
+ * nested containers, damaged files and visitors that stop early
+ */
+@SuppressWarnings("nls")
+public class BoxWalkerTest extends AndroidTestCase {
+
+    private File file;
+    private RandomAccessFile raf;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("walker", ".mp4");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (raf != null)
+            raf.close();
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testDescendsIntoNestedContainers() throws Exception {
+        byte[] moov = box("moov",
+                box("mvhd", new byte[12]),
+                box("trak",
+                        box("tkhd", new byte[4]),
+                        box("mdia", box("mdhd", new byte[2]))),
+                box("udta"));
+        FileChannel channel = write(box("ftyp", new byte[8]), moov, box("mdat", new byte[100]));
+
+        RecordingVisitor visitor = new RecordingVisitor() {
+            @Override
+            BoxWalker.Action action(String path, String type) {
+                return BoxWalker.CONTAINERS.contains(type) ? BoxWalker.Action.DESCEND : BoxWalker.Action.SKIP;
+            }
+        };
+        new BoxWalker(channel, parser()).walk(visitor);
+
+        assertEquals("[ftyp@0+16, moov@16+74, moov/mvhd@24+20, moov/trak@44+38, "
+                + "moov/trak/tkhd@52+12, moov/trak/mdia@64+18, moov/trak/mdia/mdhd@72+10, "
+                + "moov/udta@82+8, mdat@90+108]", visitor.headers.toString());
+    }
+
+    public void testSkipDoesNotDescend() throws Exception {
+        FileChannel channel = write(box("moov", box("trak", box("tkhd"))), box("free"));
+
+        RecordingVisitor visitor = new RecordingVisitor();
+        new BoxWalker(channel, parser()).walk(visitor);
+
+        assertEquals("[moov@0+24, free@24+8]", visitor.headers.toString());
+    }
+
+    public void testParsedBoxesSeeTheirContainer() throws Exception {
+        FileChannel channel = write(box("free", new byte[3]),
+                box("moov", box("trak", box("free", new byte[5]))));
+
+        RecordingVisitor visitor = new RecordingVisitor() {
+            @Override
+            BoxWalker.Action action(String path, String type) {
+                if ("free".equals(type))
+                    return BoxWalker.Action.PARSE;
+                return BoxWalker.Action.DESCEND;
+            }
+        };
+        new BoxWalker(channel, parser()).walk(visitor);
+
+        assertEquals(2, visitor.boxes.size());
+        assertTrue(visitor.boxes.get(0) instanceof FreeBox);
+        assertEquals(11, visitor.boxes.get(0).getSize());
+        assertEquals("moov/trak", visitor.boxPaths.get(1));
+        assertTrue(visitor.boxes.get(1) instanceof FreeSpaceBox);
+        assertEquals("trak", visitor.boxes.get(1).getParent().getType());
+        assertEquals("moov", visitor.boxes.get(1).getParent().getParent().getType());
+    }
+
+    public void testStopInsideContainerEndsWalk() throws Exception {
+        FileChannel channel = write(box("moov", box("mvhd"), box("trak", box("tkhd"), box("mdia")), box("udta")),
+                box("mdat"));
+
+        RecordingVisitor visitor = new RecordingVisitor() {
+            @Override
+            BoxWalker.Action action(String path, String type) {
+                if ("tkhd".equals(type))
+                    return BoxWalker.Action.STOP;
+                return BoxWalker.Action.DESCEND;
+            }
+        };
+        BoxWalker walker = new BoxWalker(channel, parser());
+        walker.walk(visitor);
+        assertEquals("[moov@0+48, moov/mvhd@8+8, moov/trak@16+24, moov/trak/tkhd@24+8]",
+                visitor.headers.toString());
+
+        // a stopped walker can walk again
+        visitor.headers.clear();
+        walker.walk(visitor);
+        assertEquals(4, visitor.headers.size());
+    }
+
+    public void testVisitBoxCanStopWalk() throws Exception {
+        FileChannel channel = write(box("free"), box("free"), box("free"));
+
+        RecordingVisitor visitor = new RecordingVisitor() {
+            @Override
+            BoxWalker.Action action(String path, String type) {
+                return BoxWalker.Action.PARSE;
+            }
+
+            @Override
+            public boolean visitBox(String path, Box box) {
+                super.visitBox(path, box);
+                return boxes.size() < 2;
+            }
+        };
+        new BoxWalker(channel, parser()).walk(visitor);
+
+        assertEquals(2, visitor.headers.size());
+        assertEquals(2, visitor.boxes.size());
+    }
+
+    public void testTruncatedHeaderIsIgnored() throws Exception {
+        FileChannel channel = write(box("free"), new byte[] { 0, 0, 0, 8, 'f' });
+
+        RecordingVisitor visitor = new RecordingVisitor();
+        new BoxWalker(channel, parser()).walk(visitor);
+
+        assertEquals("[free@0+8]", visitor.headers.toString());
+    }
+
+    public void testTruncatedContainerIsClippedToFile() throws Exception {
+        byte[] moov = box("moov", box("mvhd", new byte[8]), box("trak", box("tkhd", new byte[8])));
+        byte[] truncated = new byte[moov.length - 2];
+        System.arraycopy(moov, 0, truncated, 0, truncated.length);
+        FileChannel channel = write(truncated);
+
+        RecordingVisitor visitor = new RecordingVisitor() {
+            @Override
+            BoxWalker.Action action(String path, String type) {
+                return BoxWalker.CONTAINERS.contains(type) ? BoxWalker.Action.DESCEND : BoxWalker.Action.SKIP;
+            }
+        };
+        new BoxWalker(channel, parser()).walk(visitor);
+
+        // sizes are reported as declared, headers past the end are not
+        assertEquals("[moov@0+48, moov/mvhd@8+16, moov/trak@24+24, moov/trak/tkhd@32+16]",
+                visitor.headers.toString());
+
+        byte[] cut = new byte[moov.length - 16];
+        System.arraycopy(moov, 0, cut, 0, cut.length);
+        channel = write(cut);
+        visitor.headers.clear();
+        new BoxWalker(channel, parser()).walk(visitor);
+        assertEquals("[moov@0+48, moov/mvhd@8+16, moov/trak@24+24]", visitor.headers.toString());
+    }
+
+    public void testImplausibleSizeStopsWalk() throws Exception {
+        byte[] broken = box("free");
+        broken[3] = 4;
+        FileChannel channel = write(box("ftyp"), broken, box("mdat"));
+
+        RecordingVisitor visitor = new RecordingVisitor();
+        new BoxWalker(channel, parser()).walk(visitor);
+
+        assertEquals("[ftyp@0+8]", visitor.headers.toString());
+
+        // a user box needs room for its extended type
+        byte[] uuid = box("uuid", new byte[8]);
+        channel = write(uuid, box("mdat"));
+        visitor.headers.clear();
+        new BoxWalker(channel, parser()).walk(visitor);
+        assertEquals("[]", visitor.headers.toString());
+    }
+
+    public void testLargeAndOpenEndedSizes() throws Exception {
+        ByteBuffer large = ByteBuffer.allocate(24);
+        large.putInt(1).put(IsoFile.fourCCtoBytes("mdat")).putLong(24);
+        byte[] open = box("free", new byte[4]);
+        open[3] = 0;
+        FileChannel channel = write(large.array(), open, new byte[6]);
+
+        RecordingVisitor visitor = new RecordingVisitor();
+        new BoxWalker(channel, parser()).walk(visitor);
+
+        assertEquals("[mdat@0+24, free@24+18]", visitor.headers.toString());
+    }
+
+    // --- helpers
+
+    private FileChannel write(byte[]... parts) throws IOException {
+        if (raf != null)
+            raf.close();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (byte[] part : parts)
+                out.write(part);
+        } finally {
+            out.close();
+        }
+        raf = new RandomAccessFile(file, "r");
+        return raf.getChannel();
+    }
+
+    /** a box of the given type whose content is the given parts */
+    private static byte[] box(String type, byte[]... content) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (byte[] part : content)
+            baos.write(part, 0, part.length);
+        ByteBuffer box = ByteBuffer.allocate(8 + baos.size());
+        box.putInt(box.capacity()).put(IsoFile.fourCCtoBytes(type)).put(baos.toByteArray());
+        return box.array();
+    }
+
+    /** a small mapping, so tests don't depend on the packaged resource */
+    private static BoxParser parser() {
+        Properties mapping = new Properties();
+        mapping.setProperty("free", FreeBox.class.getName() + "()");
+        mapping.setProperty("trak-free", FreeSpaceBox.class.getName() + "()");
+        mapping.setProperty("default", UnknownBox.class.getName() + "(type)");
+        return new PropertyBoxParserImpl(mapping);
+    }
+
+    /** records headers as path/type@offset+size, skipping every box by default */
+    private static class RecordingVisitor implements BoxWalker.Visitor {
+        final List<String> headers = new ArrayList<String>();
+        final List<Box> boxes = new ArrayList<Box>();
+        final List<String> boxPaths = new ArrayList<String>();
+
+        BoxWalker.Action action(@SuppressWarnings("unused") String path,
+                @SuppressWarnings("unused") String type) {
+            return BoxWalker.Action.SKIP;
+        }
+
+        public BoxWalker.Action visitHeader(String path, String type, long offset, long size) {
+            headers.add((path.length() == 0 ? "" : path + "/") + type + "@" + offset + "+" + size);
+            return action(path, type);
+        }
+
+        public boolean visitBox(String path, Box box) {
+            boxes.add(box);
+            boxPaths.add(path);
+            return true;
+        }
+    }
+
+}
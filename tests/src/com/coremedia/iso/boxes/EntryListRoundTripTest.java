@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.coremedia.iso.boxes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+import com.coremedia.iso.boxes.fragment.SampleFlags;
+import com.coremedia.iso.boxes.fragment.TrackRunBox;
+import com.googlecode.mp4parser.AbstractBox;
+
+/**
+ * Checks that the array backed entry lists of the sample table boxes
+ * survive a write and parse unchanged, and that their entry views write
+ * through to the list
+ */
+@SuppressWarnings("nls")
+public class EntryListRoundTripTest extends AndroidTestCase {
+
+    // --- stts
+
+    public void testTimeToSampleRoundTrip() throws Exception {
+        TimeToSampleBox box = new TimeToSampleBox();
+        TimeToSampleBox.EntryList entries = new TimeToSampleBox.EntryList();
+        entries.add(3, 1024);
+        entries.add(1, 0xFFFFFFFFL);
+        entries.add(0xFFFFFFFFL, 1);
+        box.setEntries(entries);
+
+        TimeToSampleBox parsed = new TimeToSampleBox();
+        byte[] bytes = serialize(box);
+        parsed._parseDetails(content(bytes));
+
+        TimeToSampleBox.EntryList result = (TimeToSampleBox.EntryList) parsed.getEntries();
+        assertEquals(3, result.size());
+        assertEquals(3, result.getCount(0));
+        assertEquals(1024, result.getDelta(0));
+        assertEquals(0xFFFFFFFFL, result.getDelta(1));
+        assertEquals(0xFFFFFFFFL, result.getCount(2));
+        assertEquals(1, result.getDelta(2));
+        assertTrue(Arrays.equals(bytes, serialize(parsed)));
+    }
+
+    public void testTimeToSampleCopiesOtherLists() throws Exception {
+        List<TimeToSampleBox.Entry> plain = new ArrayList<TimeToSampleBox.Entry>();
+        plain.add(new TimeToSampleBox.Entry(2, 10));
+        plain.add(new TimeToSampleBox.Entry(5, 20));
+        TimeToSampleBox box = new TimeToSampleBox();
+        box.setEntries(plain);
+
+        TimeToSampleBox parsed = new TimeToSampleBox();
+        parsed._parseDetails(content(serialize(box)));
+        assertEquals(2, parsed.getEntries().size());
+        assertEquals(5, parsed.getEntries().get(1).getCount());
+        assertEquals(20, parsed.getEntries().get(1).getDelta());
+    }
+
+    public void testTimeToSampleAddSamplesMerges() {
+        TimeToSampleBox.EntryList entries = new TimeToSampleBox.EntryList();
+        entries.addSample(10);
+        entries.addSample(10);
+        entries.addSamples(0, 30);
+        entries.addSamples(3, 10);
+        entries.addSample(20);
+        entries.addSamples(2, 20);
+        entries.addSample(10);
+
+        assertEquals(3, entries.size());
+        assertEquals(5, entries.getCount(0));
+        assertEquals(3, entries.getCount(1));
+        assertEquals(20, entries.getDelta(1));
+        assertEquals(1, entries.getCount(2));
+        assertEquals(9, entries.getSampleCount());
+        assertTrue(Arrays.equals(new long[] { 10, 10, 10, 10, 10, 20, 20, 20, 10 },
+                TimeToSampleBox.blowupTimeToSamples(entries)));
+    }
+
+    public void testTimeToSampleViewWritesThrough() {
+        TimeToSampleBox.EntryList entries = new TimeToSampleBox.EntryList();
+        entries.add(1, 10);
+        entries.add(2, 20);
+
+        TimeToSampleBox.Entry view = entries.get(1);
+        view.setCount(7);
+        view.setDelta(70);
+        assertEquals(7, entries.getCount(1));
+        assertEquals(70, entries.getDelta(1));
+
+        entries.add(0, new TimeToSampleBox.Entry(4, 40));
+        assertEquals(40, entries.getDelta(0));
+        assertEquals(10, entries.getDelta(1));
+        TimeToSampleBox.Entry removed = entries.remove(1);
+        assertEquals(10, removed.getDelta());
+        assertEquals(2, entries.size());
+        assertEquals(11, entries.getSampleCount());
+    }
+
+    // --- ctts
+
+    public void testCompositionTimeRoundTrip() throws Exception {
+        CompositionTimeToSample box = new CompositionTimeToSample();
+        CompositionTimeToSample.EntryList entries = new CompositionTimeToSample.EntryList();
+        entries.add(1, 2048);
+        entries.add(2, -1024);
+        entries.add(Integer.MAX_VALUE, 0);
+        box.setEntries(entries);
+
+        CompositionTimeToSample parsed = new CompositionTimeToSample();
+        byte[] bytes = serialize(box);
+        parsed._parseDetails(content(bytes));
+
+        CompositionTimeToSample.EntryList result = (CompositionTimeToSample.EntryList) parsed.getEntries();
+        assertEquals(3, result.size());
+        assertEquals(2048, result.getOffset(0));
+        assertEquals(2, result.getCount(1));
+        assertEquals(-1024, result.getOffset(1));
+        assertEquals(Integer.MAX_VALUE, result.getCount(2));
+        assertTrue(Arrays.equals(bytes, serialize(parsed)));
+    }
+
+    public void testCompositionTimeAddSamplesMerges() {
+        CompositionTimeToSample.EntryList entries = new CompositionTimeToSample.EntryList();
+        entries.addSamples(2, 5);
+        entries.addSamples(0, 9);
+        entries.addSamples(1, 5);
+        entries.addSamples(1, -5);
+
+        assertEquals(2, entries.size());
+        assertEquals(3, entries.getCount(0));
+        assertTrue(Arrays.equals(new int[] { 5, 5, 5, -5 },
+                CompositionTimeToSample.blowupCompositionTimes(entries)));
+
+        entries.get(1).setOffset(6);
+        assertEquals(6, entries.getOffset(1));
+    }
+
+    // --- sdtp
+
+    public void testSampleDependencyRoundTrip() throws Exception {
+        SampleDependencyTypeBox box = new SampleDependencyTypeBox();
+        SampleDependencyTypeBox.EntryList entries = new SampleDependencyTypeBox.EntryList();
+        for (int value = 0; value < 256; value += 17) {
+            entries.addValue(value);
+        }
+        box.setEntries(entries);
+
+        SampleDependencyTypeBox parsed = new SampleDependencyTypeBox();
+        byte[] bytes = serialize(box);
+        parsed._parseDetails(content(bytes));
+
+        SampleDependencyTypeBox.EntryList result = (SampleDependencyTypeBox.EntryList) parsed.getEntries();
+        assertEquals(entries.size(), result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(i * 17, result.getValue(i));
+        }
+        assertTrue(Arrays.equals(bytes, serialize(parsed)));
+    }
+
+    public void testSampleDependencyViewWritesThrough() {
+        SampleDependencyTypeBox.EntryList entries = new SampleDependencyTypeBox.EntryList();
+        entries.addValue(0);
+        entries.addValue(0);
+
+        SampleDependencyTypeBox.Entry view = entries.get(1);
+        view.setSampleDependsOn(2);
+        view.setSampleIsDependentOn(1);
+        view.setSampleHasRedundancy(3);
+        assertEquals(0x27, entries.getValue(1));
+        assertEquals(2, entries.get(1).getSampleDependsOn());
+        assertEquals(0, entries.getValue(0));
+
+        entries.set(0, new SampleDependencyTypeBox.Entry(0xff));
+        assertEquals(0xff, entries.getValue(0));
+    }
+
+    // --- trun
+
+    public void testTrackRunRoundTripWithAllFields() throws Exception {
+        TrackRunBox box = new TrackRunBox();
+        box.setDataOffsetPresent(true);
+        box.setSampleDurationPresent(true);
+        box.setSampleSizePresent(true);
+        box.setSampleFlagsPresent(true);
+        box.setSampleCompositionTimeOffsetPresent(true);
+        box.setDataOffset(1234);
+        TrackRunBox.EntryList entries = new TrackRunBox.EntryList();
+        entries.add(1024, 300, new SampleFlags(0x02000000), 0);
+        entries.add(0xFFFFFFFFL, 0xFFFFFFFFL, new SampleFlags(0x01010000), -512);
+        entries.add(1024, 17, new SampleFlags(0), Integer.MAX_VALUE);
+        box.setEntries(entries);
+
+        TrackRunBox parsed = new TrackRunBox();
+        byte[] bytes = serialize(box);
+        parsed._parseDetails(content(bytes));
+
+        assertEquals(1234, parsed.getDataOffset());
+        assertEquals(3, parsed.getSampleCount());
+        TrackRunBox.EntryList result = (TrackRunBox.EntryList) parsed.getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.getSampleDuration(i), result.getSampleDuration(i));
+            assertEquals(entries.getSampleSize(i), result.getSampleSize(i));
+            assertTrue(result.hasSampleFlags(i));
+            assertEquals(entries.getSampleFlagsValue(i), result.getSampleFlagsValue(i));
+            assertEquals(entries.get(i).getSampleFlags(), result.get(i).getSampleFlags());
+            assertEquals(entries.getSampleCompositionTimeOffset(i), result.getSampleCompositionTimeOffset(i));
+        }
+        assertTrue(Arrays.equals(bytes, serialize(parsed)));
+    }
+
+    public void testTrackRunRoundTripWithoutSampleFlags() throws Exception {
+        TrackRunBox box = new TrackRunBox();
+        box.setSampleDurationPresent(true);
+        box.setSampleSizePresent(true);
+        box.setFirstSampleFlags(new SampleFlags(0x02000000));
+        TrackRunBox.EntryList entries = new TrackRunBox.EntryList();
+        entries.add(1024, 300, null, 0);
+        entries.add(2048, 400, null, 0);
+        box.setEntries(entries);
+
+        TrackRunBox parsed = new TrackRunBox();
+        byte[] bytes = serialize(box);
+        parsed._parseDetails(content(bytes));
+
+        assertEquals(new SampleFlags(0x02000000), parsed.getFirstSampleFlags());
+        TrackRunBox.EntryList result = (TrackRunBox.EntryList) parsed.getEntries();
+        assertEquals(2, result.size());
+        assertFalse(result.hasSampleFlags(1));
+        assertNull(result.get(1).getSampleFlags());
+        assertEquals(2048, result.getSampleDuration(1));
+        assertEquals(400, result.getSampleSize(1));
+        assertTrue(Arrays.equals(new long[] { 1024, 2048 }, parsed.getSampleDurations()));
+        assertTrue(Arrays.equals(bytes, serialize(parsed)));
+    }
+
+    public void testTrackRunMissingFlagsAreNotWritten() throws Exception {
+        TrackRunBox box = new TrackRunBox();
+        box.setSampleFlagsPresent(true);
+        TrackRunBox.EntryList entries = new TrackRunBox.EntryList();
+        entries.add(1024, 300, null, 0);
+        box.setEntries(entries);
+        try {
+            serialize(box);
+            fail("expected missing sample flags to be reported");
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    public void testTrackRunViewWritesThrough() {
+        TrackRunBox.EntryList entries = new TrackRunBox.EntryList();
+        entries.add(1024, 300, null, 0);
+
+        TrackRunBox.Entry view = entries.get(0);
+        view.setSampleSize(301);
+        view.setSampleFlags(new SampleFlags(0x00010000));
+        view.setSampleCompositionTimeOffset(-1);
+        assertEquals(301, entries.getSampleSize(0));
+        assertTrue(entries.hasSampleFlags(0));
+        assertEquals(0x00010000, entries.getSampleFlagsValue(0));
+        assertEquals(-1, entries.getSampleCompositionTimeOffset(0));
+
+        view.setSampleFlags(null);
+        assertFalse(entries.hasSampleFlags(0));
+    }
+
+    public void testTrackRunViewIsInvalidatedByInsertAndRemove() {
+        TrackRunBox.EntryList entries = new TrackRunBox.EntryList();
+        entries.add(1024, 300, null, 0);
+        entries.add(1024, 301, null, 0);
+
+        TrackRunBox.Entry view = entries.get(1);
+        entries.set(0, new TrackRunBox.Entry(512, 200, null, 0));
+        assertEquals(301, view.getSampleSize());
+
+        entries.add(0, new TrackRunBox.Entry(512, 100, null, 0));
+        try {
+            view.setSampleSize(302);
+            fail("view was used after an insert");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        assertEquals(301, entries.getSampleSize(2));
+
+        view = entries.get(2);
+        entries.remove(0);
+        try {
+            view.getSampleSize();
+            fail("view was used after a remove");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+
+    public void testTimeToSampleViewIsInvalidatedByInsert() {
+        TimeToSampleBox.EntryList entries = new TimeToSampleBox.EntryList();
+        entries.add(10, 1024);
+
+        TimeToSampleBox.Entry view = entries.get(0);
+        // extending the last entry isn't an insert
+        entries.addSample(1024);
+        assertEquals(11, view.getCount());
+
+        entries.addSample(512);
+        try {
+            view.getCount();
+            fail("view was used after an insert");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+
+    // --- helpers
+
+    /** the box content that follows the size and type header */
+    private static ByteBuffer content(byte[] bytes) {
+        assertEquals(bytes.length, ByteBuffer.wrap(bytes).getInt());
+        return ByteBuffer.wrap(bytes, 8, bytes.length - 8).slice();
+    }
+
+    private static byte[] serialize(AbstractBox box) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        box.getBox(Channels.newChannel(baos));
+        return baos.toByteArray();
+    }
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.googlecode.mp4parser.authoring.builder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+import com.coremedia.iso.boxes.AbstractMediaHeaderBox;
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.CompositionTimeToSample;
+import com.coremedia.iso.boxes.SampleDependencyTypeBox;
+import com.coremedia.iso.boxes.SampleDescriptionBox;
+import com.coremedia.iso.boxes.SoundMediaHeaderBox;
+import com.coremedia.iso.boxes.SubSampleInformationBox;
+import com.coremedia.iso.boxes.TimeToSampleBox;
+import com.coremedia.iso.boxes.fragment.MovieFragmentBox;
+import com.coremedia.iso.boxes.fragment.MovieFragmentHeaderBox;
+import com.coremedia.iso.boxes.fragment.SampleFlags;
+import com.coremedia.iso.boxes.fragment.TrackRunBox;
+import com.googlecode.mp4parser.authoring.AbstractTrack;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.TrackMetaData;
+
+/**
+ * Builds the fragments of a small audio and video movie and checks the
+ * order of the boxes and each sample's trun entry
+ */
+@SuppressWarnings("nls")
+public class FragmentedMp4BuilderTest extends AndroidTestCase {
+
+    private static final SampleDescriptionBox DESCRIPTION = new SampleDescriptionBox();
+
+    private Movie movie;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        movie = new Movie();
+        // six video samples in two fragments, sync samples open each one
+        movie.addTrack(new StubTrack("vide", 1, new long[] { 2, 100, 3, 200, 1, 300 },
+                new long[] { 1, 4 }, new long[] { 1, 4 }, 10));
+        // eight audio samples in a single fragment
+        movie.addTrack(new StubTrack("soun", 2, new long[] { 8, 1024 }, null, new long[] { 1 }, 0));
+    }
+
+    public void testFragmentOrder() {
+        List<Box> boxes = new Builder().createMoofMdat(movie);
+
+        // the audio track has no second fragment, which must not break
+        // sorting the tracks of that fragment by size
+        assertEquals(6, boxes.size());
+        assertMoof(boxes.get(0), 1, 2);
+        assertEquals(8 + 8, boxes.get(1).getSize());
+        assertMoof(boxes.get(2), 2, 1);
+        assertEquals(8 + 11 + 12 + 13, boxes.get(3).getSize());
+        assertMoof(boxes.get(4), 3, 1);
+        assertEquals(8 + 14 + 15 + 16, boxes.get(5).getSize());
+        for (int i = 1; i < boxes.size(); i += 2)
+            assertEquals("mdat", boxes.get(i).getType());
+    }
+
+    public void testTrunDurationsAndSizes() {
+        List<Box> boxes = new Builder().createMoofMdat(movie);
+
+        // each sample has its own duration, not the next one's
+        assertTrun(boxes.get(2), new long[] { 100, 100, 200 }, new long[] { 11, 12, 13 });
+        assertTrun(boxes.get(4), new long[] { 200, 200, 300 }, new long[] { 14, 15, 16 });
+        long[] audio = new long[8];
+        long[] audioSizes = new long[8];
+        for (int i = 0; i < 8; i++) {
+            audio[i] = 1024;
+            audioSizes[i] = 1;
+        }
+        assertTrun(boxes.get(0), audio, audioSizes);
+        assertFalse(trun(boxes.get(0)).isSampleFlagsPresent());
+    }
+
+    public void testTrunFlags() {
+        List<Box> boxes = new Builder().createMoofMdat(movie);
+
+        // flags come from the sample's own sdtp entry, counted from the
+        // start of the track rather than of the fragment
+        for (int fragment = 0; fragment < 2; fragment++) {
+            TrackRunBox trun = trun(boxes.get(2 + 2 * fragment));
+            assertTrue(trun.isSampleFlagsPresent());
+            for (int i = 0; i < 3; i++) {
+                int sample = 1 + 3 * fragment + i;
+                SampleFlags flags = trun.getEntries().get(i).getSampleFlags();
+                String message = "sample " + sample;
+                boolean sync = i == 0;
+                assertEquals(message, !sync, flags.isSampleIsDifferenceSample());
+                assertEquals(message, sync ? 2 : 1, flags.getSampleDependsOn());
+                assertEquals(message, sample >> 2 & 3, flags.getSampleIsDependedOn());
+                assertEquals(message, sample & 3, flags.getSampleHasRedundancy());
+            }
+        }
+    }
+
+    public void testBuilderCanBeReused() {
+        Builder builder = new Builder();
+        Movie audio = new Movie();
+        audio.addTrack(new StubTrack("soun", 1, new long[] { 3, 512 }, null, new long[] { 1 }, 0));
+
+        List<Box> first = builder.createMoofMdat(movie);
+        List<Box> second = builder.createMoofMdat(audio);
+        assertEquals(2, second.size());
+        assertTrun(second.get(0), new long[] { 512, 512, 512 }, new long[] { 1, 1, 1 });
+        assertEquals(8 + 11 + 12 + 13, first.get(3).getSize());
+    }
+
+    // --- helpers
+
+    private static void assertMoof(Box box, int sequenceNumber, long trackId) {
+        assertEquals("moof", box.getType());
+        MovieFragmentBox moof = (MovieFragmentBox) box;
+        assertEquals(sequenceNumber, moof.getBoxes(MovieFragmentHeaderBox.class).get(0).getSequenceNumber());
+        assertEquals(1, moof.getTrackNumbers().length);
+        assertEquals(trackId, moof.getTrackNumbers()[0]);
+    }
+
+    private static void assertTrun(Box moof, long[] durations, long[] sizes) {
+        List<TrackRunBox.Entry> entries = trun(moof).getEntries();
+        assertEquals(durations.length, entries.size());
+        for (int i = 0; i < durations.length; i++) {
+            assertEquals("entry " + i, durations[i], entries.get(i).getSampleDuration());
+            assertEquals("entry " + i, sizes[i], entries.get(i).getSampleSize());
+        }
+    }
+
+    private static TrackRunBox trun(Box moof) {
+        List<TrackRunBox> truns = ((MovieFragmentBox) moof).getTrackRunBoxes();
+        assertEquals(1, truns.size());
+        return truns.get(0);
+    }
+
+    /** exposes the fragments and takes their boundaries from the tracks */
+    private static class Builder extends FragmentedMp4Builder {
+        public Builder() {
+            setIntersectionFinder(new FragmentIntersectionFinder() {
+                public long[] sampleNumbers(Track track, Movie movie) {
+                    return ((StubTrack) track).fragments;
+                }
+            });
+        }
+
+        @Override
+        public List<Box> createMoofMdat(Movie movie) {
+            return super.createMoofMdat(movie);
+        }
+    }
+
+    /**
+     * Track from count, delta pairs. With a sizeBase, sample n is
+     * <code>sizeBase + n</code> bytes long and has an sdtp entry of n.
+     * Without one, samples are one byte long and there is no sdtp
+     */
+    private static class StubTrack extends AbstractTrack {
+        final long[] fragments;
+        private final String handler;
+        private final long[] syncSamples;
+        private final TrackMetaData trackMetaData = new TrackMetaData();
+        private final TimeToSampleBox.EntryList stts = new TimeToSampleBox.EntryList();
+        private final SampleDependencyTypeBox.EntryList sdtp = new SampleDependencyTypeBox.EntryList();
+        private final List<ByteBuffer> samples = new ArrayList<ByteBuffer>();
+
+        StubTrack(String handler, long trackId, long[] decodingRuns, long[] syncSamples,
+                long[] fragments, int sizeBase) {
+            this.handler = handler;
+            this.syncSamples = syncSamples;
+            this.fragments = fragments;
+            trackMetaData.setTrackId(trackId);
+            trackMetaData.setTimescale(1000);
+            for (int i = 0; i < decodingRuns.length; i += 2)
+                stts.add(decodingRuns[i], decodingRuns[i + 1]);
+            for (int n = 1; n <= stts.getSampleCount(); n++) {
+                samples.add(ByteBuffer.allocate(sizeBase + (sizeBase == 0 ? 1 : n)));
+                if (sizeBase != 0)
+                    sdtp.addValue(n);
+            }
+        }
+
+        public List<ByteBuffer> getSamples() {
+            return samples;
+        }
+
+        public SampleDescriptionBox getSampleDescriptionBox() {
+            return DESCRIPTION;
+        }
+
+        public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
+            return stts;
+        }
+
+        public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
+            return null;
+        }
+
+        public long[] getSyncSamples() {
+            return syncSamples;
+        }
+
+        public List<SampleDependencyTypeBox.Entry> getSampleDependencies() {
+            return sdtp.isEmpty() ? null : sdtp;
+        }
+
+        public TrackMetaData getTrackMetaData() {
+            return trackMetaData;
+        }
+
+        public String getHandler() {
+            return handler;
+        }
+
+        public AbstractMediaHeaderBox getMediaHeaderBox() {
+            return new SoundMediaHeaderBox();
+        }
+
+        public SubSampleInformationBox getSubsampleInformationBox() {
+            return null;
+        }
+    }
+
+}
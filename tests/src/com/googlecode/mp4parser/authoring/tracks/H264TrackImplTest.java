@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.googlecode.mp4parser.authoring.tracks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+
+import com.googlecode.mp4parser.h264.model.PictureParameterSet;
+import com.googlecode.mp4parser.h264.model.SeqParameterSet;
+import com.googlecode.mp4parser.h264.write.CAVLCWriter;
+
+/**
+ * Parses synthetic Annex B streams from a file channel and from a stream
+ * and checks both give the same samples, with NAL units and start codes
+ * placed on and around the edges of the channel reader's window
+ */
+@SuppressWarnings("nls")
+public class H264TrackImplTest extends AndroidTestCase {
+
+    private static final int WINDOW = 64 * 1024;
+
+    private static final byte[] START_CODE = new byte[] { 0, 0, 0, 1 };
+
+    /** user data SEI, which the track skips */
+    private static final byte[] SEI = new byte[] { 0x06, 0x05, 0x01, 0x7f, (byte) 0x80 };
+
+    private final Random random = new Random(42);
+
+    private ByteArrayOutputStream stream;
+
+    /** NAL units of each sample, without start codes */
+    private List<List<byte[]>> expected;
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("track", ".h264");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testSmallStream() throws IOException {
+        begin();
+        for (int i = 0; i < 10; i++)
+            slice(i, 50 + i * 10);
+        assertTrack(10);
+    }
+
+    public void testStartCodeAroundWindowEdge() throws IOException {
+        // the start code after the slice begins 4 bytes before the end of
+        // the first window, straddles it, or begins right on it
+        for (int shift = 0; shift <= 4; shift++) {
+            begin();
+            slice(0, 1000);
+            slice(1, WINDOW - 4 + shift - length() - 2 * START_CODE.length - SEI.length);
+            assertEquals(WINDOW - 4 + shift, length());
+            for (int i = 2; i < 6; i++)
+                slice(i, 300);
+            assertTrack(6);
+        }
+    }
+
+    public void testNalLargerThanWindow() throws IOException {
+        begin();
+        slice(0, 100);
+        slice(1, WINDOW * 2 + 17);
+        slice(2, WINDOW);
+        slice(3, 5);
+        assertTrack(4);
+    }
+
+    public void testManyWindows() throws IOException {
+        begin();
+        for (int i = 0; i < 60; i++)
+            slice(i, 1 + random.nextInt(WINDOW / 4));
+        assertTrue(length() > 4 * WINDOW);
+        assertTrack(60);
+    }
+
+    // --- helpers
+
+    /** starts a stream with its parameter sets */
+    private void begin() throws IOException {
+        stream = new ByteArrayOutputStream();
+        expected = new ArrayList<List<byte[]>>();
+
+        SeqParameterSet sps = new SeqParameterSet();
+        sps.profile_idc = 66;
+        sps.level_idc = 30;
+        sps.frame_mbs_only_flag = true;
+        sps.pic_order_cnt_type = 0;
+        sps.log2_max_frame_num_minus4 = 0;
+        sps.log2_max_pic_order_cnt_lsb_minus4 = 2;
+        sps.pic_width_in_mbs_minus1 = 19;
+        sps.pic_height_in_map_units_minus1 = 14;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x67);
+        sps.write(out);
+        nal(out.toByteArray());
+
+        out = new ByteArrayOutputStream();
+        out.write(0x68);
+        new PictureParameterSet().write(out);
+        nal(out.toByteArray());
+    }
+
+    /**
+     * Adds a sample of an SEI and a slice padded to the given size. The
+     * first slice is an IDR picture.
+     */
+    private void slice(int frame, int size) throws IOException {
+        nal(SEI);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(frame == 0 ? 0x65 : 0x41);
+        CAVLCWriter writer = new CAVLCWriter(out);
+        writer.writeUE(0);
+        writer.writeUE(frame == 0 ? 7 : 5);
+        writer.writeUE(0);
+        writer.writeU(frame & 15, 4);
+        if (frame == 0) {
+            writer.writeUE(0);
+            writer.writeU(frame & 63, 6);
+        }
+        writer.writeTrailingBits();
+        // padding without zeros can't contain a start code
+        while (out.size() < size)
+            out.write(1 + random.nextInt(255));
+        byte[] slice = out.toByteArray();
+        nal(slice);
+
+        List<byte[]> sample = new ArrayList<byte[]>();
+        sample.add(SEI);
+        sample.add(slice);
+        expected.add(sample);
+    }
+
+    private void nal(byte[] data) throws IOException {
+        stream.write(START_CODE);
+        stream.write(data);
+    }
+
+    private int length() {
+        return stream.size();
+    }
+
+    /**
+     * Ends the stream, parses it both ways and compares the samples with
+     * the expected ones
+     */
+    private void assertTrack(int sampleCount) throws IOException {
+        // the last NAL unit is only handled once the next start code is seen
+        nal(new byte[] { 0x0a });
+        nal(new byte[] { 0x0b });
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(stream.toByteArray());
+        out.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileInputStream in = new FileInputStream(file);
+        try {
+            H264TrackImpl mapped = new H264TrackImpl(raf.getChannel());
+            H264TrackImpl streamed = new H264TrackImpl(in);
+            assertEquals(sampleCount, expected.size());
+            assertEquals(sampleCount, mapped.getSamples().size());
+            assertEquals(sampleCount, streamed.getSamples().size());
+            assertEquals(320, mapped.getTrackMetaData().getWidth(), 0);
+            assertEquals(240, mapped.getTrackMetaData().getHeight(), 0);
+            assertTrue(Arrays.equals(new long[] { 1 }, mapped.getSyncSamples()));
+
+            // out of order, to read the file from all over
+            for (int i = sampleCount - 1; i >= 0; i -= 2)
+                assertSample(i, mapped.getSamples().get(i));
+            for (int i = 0; i < sampleCount; i++) {
+                assertSample(i, mapped.getSamples().get(i));
+                assertSample(i, streamed.getSamples().get(i));
+            }
+        } finally {
+            in.close();
+            raf.close();
+        }
+    }
+
+    private void assertSample(int index, ByteBuffer sample) {
+        ByteBuffer actual = sample.duplicate();
+        for (byte[] nal : expected.get(index)) {
+            assertEquals("sample " + index, nal.length, actual.getInt());
+            byte[] data = new byte[nal.length];
+            actual.get(data);
+            assertTrue("sample " + index, Arrays.equals(nal, data));
+        }
+        assertFalse("sample " + index, actual.hasRemaining());
+    }
+
+}
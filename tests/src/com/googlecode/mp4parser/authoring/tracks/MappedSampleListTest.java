@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.googlecode.mp4parser.authoring.tracks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Reads samples back from a file in random order and across the regions
+ * the file is mapped in
+ */
+@SuppressWarnings("nls")
+public class MappedSampleListTest extends AndroidTestCase {
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("samples", ".bin");
+        raf = new RandomAccessFile(file, "rw");
+        byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++)
+            data[i] = content(i);
+        raf.write(data);
+        channel = raf.getChannel();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        raf.close();
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testRandomAccess() {
+        MappedSampleList samples = new MappedSampleList(channel, false);
+        int[] sizes = new int[] { 10, 1, 300, 45, 1000, 7 };
+        long offset = 0;
+        for (int size : sizes) {
+            samples.add(offset, size);
+            offset += size;
+        }
+
+        int[] order = new int[] { 4, 0, 5, 2, 2, 1, 3, 0 };
+        for (int index : order) {
+            long start = 0;
+            for (int i = 0; i < index; i++)
+                start += sizes[i];
+            assertContent(samples.get(index), start, sizes[index]);
+            assertTrue(samples.isContiguous(index));
+            assertEquals(start, samples.getSampleOffset(index));
+            assertEquals(sizes[index], samples.getSampleSize(index));
+        }
+    }
+
+    public void testRangesAreJoined() {
+        MappedSampleList samples = new MappedSampleList(channel, false);
+        samples.addRange(100, 10);
+        samples.addRange(50, 5);
+        samples.endSample();
+        samples.add(200, 3);
+
+        assertFalse(samples.isContiguous(0));
+        assertEquals(15, samples.getSampleSize(0));
+        ByteBuffer sample = samples.get(0);
+        assertContent(sample, 100, 10);
+        assertContent(sample, 50, 5);
+        assertContent(samples.get(1), 200, 3);
+    }
+
+    public void testLengthPrefixedRanges() {
+        MappedSampleList samples = new MappedSampleList(channel, true);
+        samples.addRange(10, 20);
+        samples.addRange(30, 6);
+        samples.endSample();
+
+        assertFalse(samples.isContiguous(0));
+        assertEquals(4 + 20 + 4 + 6, samples.getSampleSize(0));
+        ByteBuffer sample = samples.get(0);
+        assertEquals(20, sample.getInt());
+        assertContent(sample, 10, 20);
+        assertEquals(6, sample.getInt());
+        assertContent(sample, 30, 6);
+        assertFalse(sample.hasRemaining());
+    }
+
+    public void testSubList() {
+        MappedSampleList samples = new MappedSampleList(channel, false);
+        for (int i = 0; i < 10; i++)
+            samples.add(i * 100, 50 + i);
+
+        MappedSampleList sub = samples.subList(3, 8).subList(1, 4);
+        assertEquals(3, sub.size());
+        assertContent(sub.get(2), 600, 56);
+        assertContent(sub.get(0), 400, 54);
+        assertEquals(500, sub.getSampleOffset(1));
+        try {
+            sub.get(3);
+            fail("read past the end of the sub list");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            sub.add(0, 1);
+            fail("added to a sub list");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testTransferToWritesWhatGetReturns() throws IOException {
+        for (boolean lengthPrefixed : new boolean[] { false, true }) {
+            MappedSampleList samples = new MappedSampleList(channel, lengthPrefixed);
+            // adjacent ranges, a gap, a range that goes backwards
+            samples.add(0, 100);
+            samples.add(100, 20);
+            samples.addRange(500, 30);
+            samples.addRange(130, 10);
+            samples.endSample();
+            samples.add(2000, 1);
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (ByteBuffer sample : samples)
+                expected.write(toArray(sample));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long written = samples.transferTo(Channels.newChannel(out));
+            assertEquals(expected.size(), written);
+            assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+            out.reset();
+            samples.subList(2, 4).transferTo(Channels.newChannel(out));
+            ByteArrayOutputStream tail = new ByteArrayOutputStream();
+            tail.write(toArray(samples.get(2)));
+            tail.write(toArray(samples.get(3)));
+            assertTrue(Arrays.equals(tail.toByteArray(), out.toByteArray()));
+        }
+    }
+
+    public void testSegmentBoundary() throws IOException {
+        // the file is sparse except around the end of the first segment
+        long start = SEGMENT_SIZE - 2048;
+        byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++)
+            data[i] = content(start + i);
+        raf.seek(start);
+        raf.write(data);
+
+        MappedSampleList samples = new MappedSampleList(channel, false);
+        samples.add(SEGMENT_SIZE - 100, 100);
+        samples.add(SEGMENT_SIZE, 100);
+        samples.add(SEGMENT_SIZE - 50, 150);
+        samples.add(SEGMENT_SIZE - 1, 2);
+        samples.add(10, 20);
+        samples.add(start + data.length - 5, 5);
+
+        int[] order = new int[] { 2, 0, 5, 3, 1, 4, 2 };
+        for (int index : order) {
+            long offset = samples.getSampleOffset(index);
+            assertContent(samples.get(index), offset, samples.getSampleSize(index));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        samples.subList(1, 3).transferTo(Channels.newChannel(out));
+        ByteBuffer transferred = ByteBuffer.wrap(out.toByteArray());
+        assertContent(transferred, SEGMENT_SIZE, 100);
+        assertContent(transferred, SEGMENT_SIZE - 50, 150);
+    }
+
+    // --- helpers
+
+    /** the byte at the given position of the test file */
+    private static byte content(long position) {
+        return (byte) (position * 31 + (position >> 8));
+    }
+
+    /** reads size bytes from the buffer and checks they match the file at offset */
+    private static void assertContent(ByteBuffer buffer, long offset, int size) {
+        assertTrue("only " + buffer.remaining() + " bytes left", buffer.remaining() >= size);
+        for (int i = 0; i < size; i++)
+            assertEquals("byte " + (offset + i), content(offset + i), buffer.get());
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+}
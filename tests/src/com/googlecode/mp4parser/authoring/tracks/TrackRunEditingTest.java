@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.googlecode.mp4parser.authoring.tracks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+
+import com.coremedia.iso.boxes.AbstractMediaHeaderBox;
+import com.coremedia.iso.boxes.CompositionTimeToSample;
+import com.coremedia.iso.boxes.SampleDependencyTypeBox;
+import com.coremedia.iso.boxes.SampleDescriptionBox;
+import com.coremedia.iso.boxes.SoundMediaHeaderBox;
+import com.coremedia.iso.boxes.SubSampleInformationBox;
+import com.coremedia.iso.boxes.TimeToSampleBox;
+import com.googlecode.mp4parser.authoring.AbstractTrack;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.TrackMetaData;
+
+/**
+ * Checks that cropping and appending tracks keeps the per sample timing
+ * of the original tracks while working on the run length entries
+ */
+@SuppressWarnings("nls")
+public class TrackRunEditingTest extends AndroidTestCase {
+
+    private static final SampleDescriptionBox DESCRIPTION = new SampleDescriptionBox();
+
+    public void testCropInsideOneRun() {
+        StubTrack track = new StubTrack(new long[] { 10, 1024 }, new int[] { 10, 0 });
+        CroppedTrack cropped = new CroppedTrack(track, 2, 7);
+
+        TimeToSampleBox.EntryList stts = (TimeToSampleBox.EntryList) cropped.getDecodingTimeEntries();
+        assertEquals(1, stts.size());
+        assertEquals(5, stts.getCount(0));
+        assertEquals(1024, stts.getDelta(0));
+        CompositionTimeToSample.EntryList ctts = (CompositionTimeToSample.EntryList) cropped.getCompositionTimeEntries();
+        assertEquals(1, ctts.size());
+        assertEquals(5, ctts.getCount(0));
+    }
+
+    public void testCropOnRunBoundaries() {
+        StubTrack track = new StubTrack(new long[] { 3, 10, 4, 20, 5, 30 },
+                new int[] { 3, 1, 4, 2, 5, 3 });
+
+        assertCropMatches(track, 3, 7);
+        assertCropMatches(track, 0, 3);
+        assertCropMatches(track, 7, 12);
+        assertCropMatches(track, 0, 12);
+        TimeToSampleBox.EntryList stts = (TimeToSampleBox.EntryList)
+                new CroppedTrack(track, 3, 7).getDecodingTimeEntries();
+        assertEquals(1, stts.size());
+        assertEquals(20, stts.getDelta(0));
+    }
+
+    public void testCropAcrossRuns() {
+        StubTrack track = new StubTrack(new long[] { 3, 10, 4, 20, 5, 30 },
+                new int[] { 2, 1, 6, 2, 4, -3 });
+
+        assertCropMatches(track, 1, 11);
+        assertCropMatches(track, 2, 4);
+        assertCropMatches(track, 6, 8);
+        TimeToSampleBox.EntryList stts = (TimeToSampleBox.EntryList)
+                new CroppedTrack(track, 1, 11).getDecodingTimeEntries();
+        assertEquals(3, stts.size());
+        assertEquals(2, stts.getCount(0));
+        assertEquals(4, stts.getCount(2));
+    }
+
+    public void testCropRandomRanges() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            StubTrack track = randomTrack(random);
+            int samples = track.getSamples().size();
+            for (int i = 0; i < 50; i++) {
+                int from = random.nextInt(samples);
+                int to = from + 1 + random.nextInt(samples - from);
+                assertCropMatches(track, from, to);
+            }
+        }
+    }
+
+    public void testCropWithoutCompositionTimes() {
+        StubTrack track = new StubTrack(new long[] { 5, 10 }, null);
+        CroppedTrack cropped = new CroppedTrack(track, 1, 3);
+        assertNull(cropped.getCompositionTimeEntries());
+        assertEquals(2, ((TimeToSampleBox.EntryList) cropped.getDecodingTimeEntries()).getSampleCount());
+    }
+
+    public void testAppendMergesRunsAtJunction() throws Exception {
+        StubTrack first = new StubTrack(new long[] { 3, 10, 2, 20 }, new int[] { 5, 7 });
+        StubTrack second = new StubTrack(new long[] { 4, 20, 1, 30 }, new int[] { 1, 7, 4, 0 });
+        AppendTrack appended = new AppendTrack(first, second);
+
+        TimeToSampleBox.EntryList stts = (TimeToSampleBox.EntryList) appended.getDecodingTimeEntries();
+        assertEquals(3, stts.size());
+        assertEquals(6, stts.getCount(1));
+        assertEquals(20, stts.getDelta(1));
+        CompositionTimeToSample.EntryList ctts = (CompositionTimeToSample.EntryList) appended.getCompositionTimeEntries();
+        assertEquals(2, ctts.size());
+        assertEquals(6, ctts.getCount(0));
+        assertAppendMatches(appended, first, second);
+    }
+
+    public void testAppendCroppedPieces() throws Exception {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            StubTrack track = randomTrack(random);
+            int samples = track.getSamples().size();
+            int split = 1 + random.nextInt(samples - 1);
+            Track head = new CroppedTrack(track, 0, split);
+            Track tail = new CroppedTrack(track, split, samples);
+            AppendTrack appended = new AppendTrack(head, tail);
+
+            assertTrue(Arrays.equals(
+                    TimeToSampleBox.blowupTimeToSamples(track.getDecodingTimeEntries()),
+                    TimeToSampleBox.blowupTimeToSamples(appended.getDecodingTimeEntries())));
+            assertTrue(Arrays.equals(
+                    CompositionTimeToSample.blowupCompositionTimes(track.getCompositionTimeEntries()),
+                    CompositionTimeToSample.blowupCompositionTimes(appended.getCompositionTimeEntries())));
+            assertEquals(track.getDecodingTimeEntries().size(), appended.getDecodingTimeEntries().size());
+            assertEquals(track.getSampleDependencies().size(), appended.getSampleDependencies().size());
+        }
+    }
+
+    // --- helpers
+
+    /** the cropped runs must expand to the same per sample values */
+    private static void assertCropMatches(StubTrack track, int from, int to) {
+        CroppedTrack cropped = new CroppedTrack(track, from, to);
+        String range = "[" + from + ", " + to + ")";
+
+        long[] deltas = TimeToSampleBox.blowupTimeToSamples(track.getDecodingTimeEntries());
+        long[] croppedDeltas = TimeToSampleBox.blowupTimeToSamples(cropped.getDecodingTimeEntries());
+        assertEquals(range, to - from, croppedDeltas.length);
+        for (int i = from; i < to; i++)
+            assertEquals(range, deltas[i], croppedDeltas[i - from]);
+
+        if (track.getCompositionTimeEntries() != null) {
+            int[] offsets = CompositionTimeToSample.blowupCompositionTimes(track.getCompositionTimeEntries());
+            int[] croppedOffsets = CompositionTimeToSample.blowupCompositionTimes(cropped.getCompositionTimeEntries());
+            assertEquals(range, to - from, croppedOffsets.length);
+            for (int i = from; i < to; i++)
+                assertEquals(range, offsets[i], croppedOffsets[i - from]);
+            assertNoEmptyOrRepeatedRuns(range, (CompositionTimeToSample.EntryList) cropped.getCompositionTimeEntries());
+        }
+        assertNoEmptyOrRepeatedRuns(range, (TimeToSampleBox.EntryList) cropped.getDecodingTimeEntries());
+
+        List<SampleDependencyTypeBox.Entry> dependencies = cropped.getSampleDependencies();
+        assertEquals(range, to - from, dependencies.size());
+        for (int i = 0; i < dependencies.size(); i++) {
+            assertEquals(range, (from + i) & 0xff, dependencies.get(i).getValue());
+        }
+    }
+
+    private static void assertAppendMatches(AppendTrack appended, Track... tracks) {
+        List<Long> deltas = new ArrayList<Long>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        for (Track track : tracks) {
+            for (long delta : TimeToSampleBox.blowupTimeToSamples(track.getDecodingTimeEntries()))
+                deltas.add(delta);
+            for (int offset : CompositionTimeToSample.blowupCompositionTimes(track.getCompositionTimeEntries()))
+                offsets.add(offset);
+        }
+        long[] appendedDeltas = TimeToSampleBox.blowupTimeToSamples(appended.getDecodingTimeEntries());
+        int[] appendedOffsets = CompositionTimeToSample.blowupCompositionTimes(appended.getCompositionTimeEntries());
+        assertEquals(deltas.size(), appendedDeltas.length);
+        assertEquals(offsets.size(), appendedOffsets.length);
+        for (int i = 0; i < appendedDeltas.length; i++) {
+            assertEquals(deltas.get(i).longValue(), appendedDeltas[i]);
+            assertEquals(offsets.get(i).intValue(), appendedOffsets[i]);
+        }
+        assertEquals(deltas.size(), appended.getSampleDependencies().size());
+    }
+
+    private static void assertNoEmptyOrRepeatedRuns(String range, TimeToSampleBox.EntryList entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            assertTrue(range, entries.getCount(i) > 0);
+            if (i > 0)
+                assertTrue(range, entries.getDelta(i) != entries.getDelta(i - 1));
+        }
+    }
+
+    private static void assertNoEmptyOrRepeatedRuns(String range, CompositionTimeToSample.EntryList entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            assertTrue(range, entries.getCount(i) > 0);
+            if (i > 0)
+                assertTrue(range, entries.getOffset(i) != entries.getOffset(i - 1));
+        }
+    }
+
+    /** random runs with distinct neighbouring values */
+    private static StubTrack randomTrack(Random random) {
+        int runs = 1 + random.nextInt(8);
+        long[] stts = new long[runs * 2];
+        for (int i = 0; i < runs; i++) {
+            stts[2 * i] = 1 + random.nextInt(6);
+            stts[2 * i + 1] = 10 * (i + 1);
+        }
+        long samples = 0;
+        for (int i = 0; i < runs; i++)
+            samples += stts[2 * i];
+
+        List<Integer> ctts = new ArrayList<Integer>();
+        for (int left = (int) samples, run = 0; left > 0; run++) {
+            int count = Math.min(left, 1 + random.nextInt(4));
+            ctts.add(count);
+            ctts.add(run % 2 == 0 ? 1024 * (run + 1) : -512 * run);
+            left -= count;
+        }
+        int[] cttsArray = new int[ctts.size()];
+        for (int i = 0; i < cttsArray.length; i++)
+            cttsArray[i] = ctts.get(i);
+        return new StubTrack(stts, cttsArray);
+    }
+
+    /** a track built from count, value pairs with one byte samples */
+    private static class StubTrack extends AbstractTrack {
+        private final TimeToSampleBox.EntryList stts = new TimeToSampleBox.EntryList();
+        private final CompositionTimeToSample.EntryList ctts;
+        private final SampleDependencyTypeBox.EntryList sdtp = new SampleDependencyTypeBox.EntryList();
+        private final List<ByteBuffer> samples = new ArrayList<ByteBuffer>();
+
+        StubTrack(long[] decodingRuns, int[] compositionRuns) {
+            for (int i = 0; i < decodingRuns.length; i += 2)
+                stts.add(decodingRuns[i], decodingRuns[i + 1]);
+            if (compositionRuns != null) {
+                ctts = new CompositionTimeToSample.EntryList();
+                for (int i = 0; i < compositionRuns.length; i += 2)
+                    ctts.add(compositionRuns[i], compositionRuns[i + 1]);
+            } else {
+                ctts = null;
+            }
+            for (int i = 0; i < stts.getSampleCount(); i++) {
+                samples.add(ByteBuffer.wrap(new byte[] { (byte) i }));
+                sdtp.addValue(i & 0xff);
+            }
+        }
+
+        public List<ByteBuffer> getSamples() {
+            return samples;
+        }
+
+        public SampleDescriptionBox getSampleDescriptionBox() {
+            return DESCRIPTION;
+        }
+
+        public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
+            return stts;
+        }
+
+        public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
+            return ctts;
+        }
+
+        public long[] getSyncSamples() {
+            return null;
+        }
+
+        public List<SampleDependencyTypeBox.Entry> getSampleDependencies() {
+            return sdtp;
+        }
+
+        public TrackMetaData getTrackMetaData() {
+            return new TrackMetaData();
+        }
+
+        public String getHandler() {
+            return "soun";
+        }
+
+        public AbstractMediaHeaderBox getMediaHeaderBox() {
+            return new SoundMediaHeaderBox();
+        }
+
+        public SubSampleInformationBox getSubsampleInformationBox() {
+            return null;
+        }
+    }
+
+}
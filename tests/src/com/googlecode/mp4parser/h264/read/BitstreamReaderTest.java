@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.googlecode.mp4parser.h264.read;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Checks the cached bit reader against a bit at a time reading of the
+ * same bytes, from arrays and from streams that return short reads
+ */
+@SuppressWarnings("nls")
+public class BitstreamReaderTest extends AndroidTestCase {
+
+    public void testReadNBit() throws Exception {
+        BitstreamReader reader = new BitstreamReader(bytes(0xA5, 0x0F, 0xF0, 0x81));
+        assertEquals(0, reader.readNBit(0));
+        assertEquals(1, reader.read1Bit());
+        assertEquals(0x2, reader.readNBit(3));
+        assertEquals(0x50, reader.readNBit(8));
+        assertEquals(0xFF, reader.readNBit(8));
+        assertEquals(0, reader.readNBit(4));
+        assertEquals(0x81, reader.readNBit(8));
+        assertEquals(-1, reader.read1Bit());
+    }
+
+    public void testReadNBitWide() throws Exception {
+        byte[] data = new byte[10];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (0x11 * (i + 1));
+        BitstreamReader reader = new BitstreamReader(data);
+        assertEquals(0x1, reader.readNBit(4));
+        assertEquals(0x1223344556677889L, reader.readNBit(64));
+        assertEquals(0x9AAL, reader.readNBit(12));
+
+        try {
+            reader.readNBit(65);
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testArrayRange() throws Exception {
+        BitstreamReader reader = new BitstreamReader(bytes(0xFF, 0x12, 0x34, 0xFF), 1, 2);
+        assertEquals(0x1234, reader.readNBit(16));
+        assertEquals(-1, reader.read1Bit());
+    }
+
+    public void testLeadingZerosAndExpGolomb() throws Exception {
+        int[] values = new int[] { 0, 1, 2, 3, 7, 8, 254, 255, 65535, 1 << 20, Integer.MAX_VALUE / 2 };
+        BitWriter writer = new BitWriter();
+        for (int value : values) {
+            writer.writeUE(value);
+            writer.writeSE(-value);
+        }
+        writer.writeBits(1, 1);
+
+        CAVLCReader reader = new CAVLCReader(writer.toByteArray());
+        for (int value : values) {
+            assertEquals(value, reader.readUE("ue"));
+            assertEquals(-value, reader.readSE("se"));
+        }
+        assertEquals(1, reader.read1Bit());
+    }
+
+    public void testLongRunOfLeadingZeros() throws Exception {
+        // 70 zeros span more than one refill of the cache
+        BitWriter writer = new BitWriter();
+        writer.writeBits(0, 35);
+        writer.writeBits(0, 35);
+        writer.writeBits(0x5, 3);
+        BitstreamReader reader = new BitstreamReader(writer.toByteArray());
+        assertEquals(70, reader.readLeadingZeros());
+        assertEquals(0, reader.read1Bit());
+        assertEquals(1, reader.read1Bit());
+    }
+
+    public void testLeadingZerosAtEndOfInput() throws Exception {
+        BitstreamReader reader = new BitstreamReader(bytes(0x00, 0x00));
+        reader.readNBit(3);
+        assertEquals(13, reader.readLeadingZeros());
+        assertEquals(-1, reader.read1Bit());
+    }
+
+    public void testMoreRBSPData() throws Exception {
+        // payload 1010 0101 1, then the stop bit and alignment zeros
+        BitstreamReader reader = new BitstreamReader(bytes(0xA5, 0xC0));
+        assertTrue(reader.moreRBSPData());
+        reader.readNBit(8);
+        assertTrue(reader.moreRBSPData());
+        assertEquals(1, reader.read1Bit());
+        assertFalse(reader.moreRBSPData());
+
+        // stop bit alone in the last byte
+        reader = new BitstreamReader(bytes(0x12, 0x80));
+        reader.readNBit(8);
+        assertFalse(reader.moreRBSPData());
+
+        // data after what looks like a stop bit
+        reader = new BitstreamReader(bytes(0x80, 0x01));
+        assertTrue(reader.moreRBSPData());
+
+        assertFalse(new BitstreamReader(new byte[0]).moreRBSPData());
+    }
+
+    public void testPeakNextBits() throws Exception {
+        BitstreamReader reader = new BitstreamReader(bytes(0xB6, 0x40));
+        assertEquals(0x5, reader.peakNextBits(3));
+        assertEquals(0x5, reader.peakNextBits(3));
+        reader.readNBit(6);
+        // crosses into the next byte without consuming it
+        assertEquals(0x9, reader.peakNextBits(4));
+        assertEquals(0x2, reader.readNBit(2));
+        assertEquals(0x40, reader.readNBit(8));
+        assertEquals(-1, reader.peakNextBits(1));
+
+        try {
+            reader.peakNextBits(9);
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testPeakPastEndReadsOnes() throws Exception {
+        BitstreamReader reader = new BitstreamReader(bytes(0x00));
+        reader.readNBit(6);
+        assertEquals(0x7, reader.peakNextBits(5));
+    }
+
+    public void testEndOfInput() throws Exception {
+        BitstreamReader reader = new BitstreamReader(bytes(0x3C));
+        assertEquals(-1, reader.readNBit(16));
+        assertEquals(-1, reader.read1Bit());
+        assertEquals(-1, reader.readByte());
+
+        reader = new BitstreamReader(bytes(0xFF, 0x42));
+        reader.readNBit(3);
+        assertFalse(reader.isByteAligned());
+        assertEquals(3, reader.getCurBit());
+        assertEquals(0x1F, reader.readRemainingByte());
+        assertTrue(reader.isByteAligned());
+        assertEquals(0x42, reader.readByte());
+        assertEquals(-1, reader.readByte());
+    }
+
+    public void testReadByteSkipsRestOfByte() throws Exception {
+        BitstreamReader reader = new BitstreamReader(bytes(0xFF, 0x42, 0x43));
+        reader.read1Bit();
+        assertEquals(0x42, reader.readByte());
+        assertEquals(0x43, reader.readByte());
+    }
+
+    public void testMatchesBitAtATimeReading() throws Exception {
+        Random random = new Random(17);
+        for (int run = 0; run < 50; run++) {
+            byte[] data = new byte[1 + random.nextInt(600)];
+            random.nextBytes(data);
+            long seed = random.nextLong();
+
+            compare(data, new BitstreamReader(data), new Random(seed));
+            compare(data, new BitstreamReader(new ShortReadStream(data, random.nextInt(4) + 1)),
+                    new Random(seed));
+        }
+    }
+
+    /** runs random reads on the reader and checks them against the data */
+    private void compare(byte[] data, BitstreamReader reader, Random ops) throws IOException {
+        ReferenceReader expected = new ReferenceReader(data);
+        while (expected.remaining() > 0) {
+            String where = "at bit " + expected.position;
+            switch (ops.nextInt(5)) {
+            case 0:
+                assertEquals(where, expected.read(1), reader.read1Bit());
+                break;
+            case 1: {
+                int n = Math.min(expected.remaining(), ops.nextInt(65));
+                assertEquals(where, expected.read(n), reader.readNBit(n));
+                break;
+            }
+            case 2: {
+                int zeros = expected.leadingZeros();
+                if (zeros < 0)
+                    return;
+                assertEquals(where, zeros, reader.readLeadingZeros());
+                break;
+            }
+            case 3: {
+                int n = 1 + ops.nextInt(8);
+                if (n > expected.remaining())
+                    break;
+                assertEquals(where, expected.peek(n), reader.peakNextBits(n));
+                break;
+            }
+            default:
+                assertEquals(where, expected.position % 8 == 0, reader.isByteAligned());
+                assertEquals(where, expected.position % 8, reader.getCurBit());
+            }
+        }
+        assertEquals(-1, reader.read1Bit());
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            result[i] = (byte) values[i];
+        return result;
+    }
+
+    /** reads one bit at a time */
+    private static class ReferenceReader {
+        private final byte[] data;
+        int position = 0;
+
+        public ReferenceReader(byte[] data) {
+            this.data = data;
+        }
+
+        int remaining() {
+            return data.length * 8 - position;
+        }
+
+        int bit(int index) {
+            return (data[index >> 3] >> (7 - (index & 7))) & 1;
+        }
+
+        long read(int n) {
+            long result = peekLong(n);
+            position += n;
+            return result;
+        }
+
+        int peek(int n) {
+            return (int) peekLong(n);
+        }
+
+        long peekLong(int n) {
+            long result = 0;
+            for (int i = 0; i < n; i++)
+                result = (result << 1) | bit(position + i);
+            return result;
+        }
+
+        /** @return zeros before the next one bit, consuming both, or -1 if there is no one bit */
+        int leadingZeros() {
+            int count = 0;
+            while (position + count < data.length * 8) {
+                if (bit(position + count) == 1) {
+                    position += count + 1;
+                    return count;
+                }
+                count++;
+            }
+            return -1;
+        }
+    }
+
+    /** writes bits most significant first */
+    private static class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current = 0;
+        private int bits = 0;
+
+        void writeBits(long value, int n) {
+            for (int i = n - 1; i >= 0; i--) {
+                current = (current << 1) | (int) ((value >>> i) & 1);
+                if (++bits == 8) {
+                    out.write(current);
+                    current = 0;
+                    bits = 0;
+                }
+            }
+        }
+
+        void writeUE(int value) {
+            long code = value + 1L;
+            int length = 64 - Long.numberOfLeadingZeros(code);
+            writeBits(0, length - 1);
+            writeBits(code, length);
+        }
+
+        void writeSE(int value) {
+            writeUE(value <= 0 ? -2 * value : 2 * value - 1);
+        }
+
+        byte[] toByteArray() {
+            if (bits > 0)
+                writeBits(0, 8 - bits);
+            return out.toByteArray();
+        }
+    }
+
+    /** returns at most a few bytes per read */
+    private static class ShortReadStream extends InputStream {
+        private final ByteArrayInputStream in;
+        private final int maxRead;
+
+        public ShortReadStream(byte[] data, int maxRead) {
+            this.in = new ByteArrayInputStream(data);
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, Math.min(len, maxRead));
+        }
+    }
+}
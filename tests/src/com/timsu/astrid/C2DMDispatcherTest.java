@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.timsu.astrid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.astrid.actfm.sync.ActFmPreferenceService;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+/**
+ * Checks that the C2DM dispatcher coalesces bursts of pushes and how it
+ * fetches a batch. The dispatcher's clock is driven by the test and its
+ * window is far longer than the test runs, so batches are only fetched
+ * when the test asks for them.
+ */
+@SuppressWarnings("nls")
+public class C2DMDispatcherTest extends DatabaseTestCase {
+
+    private static final long WINDOW = 1000000L;
+
+    @Autowired ActFmPreferenceService actFmPreferenceService;
+
+    private RecordingDispatcher dispatcher;
+    private FetchingDispatcher fetching;
+    private String token;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dispatcher = new RecordingDispatcher(WINDOW, 5 * WINDOW);
+        token = actFmPreferenceService.getToken();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        dispatcher.shutdown();
+        if(fetching != null)
+            fetching.shutdown();
+        actFmPreferenceService.setToken(token);
+        super.tearDown();
+    }
+
+    public void testBurstIsFetchedOnce() throws Exception {
+        dispatcher.queueTask("1");
+        dispatcher.queueTask("2");
+        dispatcher.queueTask("1");
+        dispatcher.queueTag("7");
+        dispatcher.queueTag("7");
+
+        dispatcher.time += WINDOW;
+        assertEquals(0, dispatcher.flushIfDue());
+
+        assertEquals(1, dispatcher.batches.size());
+        assertEquals("[1, 2]", dispatcher.batches.get(0).get(0).toString());
+        assertEquals("[7]", dispatcher.batches.get(0).get(1).toString());
+    }
+
+    public void testBatchWaitsForQuietWindow() throws Exception {
+        for(int i = 0; i < 4; i++) {
+            dispatcher.queueTask("1");
+            dispatcher.time += WINDOW / 2;
+        }
+        assertEquals(WINDOW / 2, dispatcher.flushIfDue());
+        assertEquals(0, dispatcher.batches.size());
+
+        dispatcher.time += WINDOW / 2;
+        assertEquals(0, dispatcher.flushIfDue());
+        assertEquals(1, dispatcher.batches.size());
+    }
+
+    public void testSteadyPushesAreFetchedAfterMaxDelay() throws Exception {
+        for(int i = 0; i < 10; i++) {
+            dispatcher.queueTask(Integer.toString(i));
+            dispatcher.time += WINDOW / 2;
+            assertEquals(0, dispatcher.batches.size());
+            dispatcher.flushIfDue();
+        }
+        assertEquals(1, dispatcher.batches.size());
+        assertEquals(10, dispatcher.batches.get(0).get(0).size());
+    }
+
+    public void testPushesAfterFlushStartNewBatch() throws Exception {
+        dispatcher.queueTask("1");
+        dispatcher.time += WINDOW;
+        dispatcher.flushIfDue();
+        assertEquals(0, dispatcher.flushIfDue());
+
+        dispatcher.queueTask("1");
+        dispatcher.time += WINDOW;
+        dispatcher.flushIfDue();
+
+        assertEquals(2, dispatcher.batches.size());
+    }
+
+    public void testSmallBatchIsFetchedById() throws Exception {
+        newFetchingDispatcher();
+        fetching.flush(list("1", "2"), list("7"));
+
+        assertEquals("[tag 7, task 1, task 2]", fetching.fetched.toString());
+        assertEquals(0, fetching.fullSyncs);
+    }
+
+    public void testLargeBatchEscalatesToFullSync() throws Exception {
+        newFetchingDispatcher();
+        List<String> tasks = new ArrayList<String>();
+        for(int i = 0; i <= C2DMDispatcher.FULL_SYNC_THRESHOLD; i++)
+            tasks.add(Integer.toString(i));
+        fetching.flush(tasks, list());
+
+        assertEquals(0, fetching.fetched.size());
+        assertEquals(1, fetching.fullSyncs);
+    }
+
+    public void testFailedFetchDoesNotDropBatch() throws Exception {
+        newFetchingDispatcher();
+        fetching.failing = "1";
+        fetching.flush(list("1", "2", "3"), list());
+
+        assertEquals("[task 1, task 2, task 3]", fetching.fetched.toString());
+        assertEquals(1, fetching.fullSyncs);
+    }
+
+    public void testLoggedOutFetchesNothing() throws Exception {
+        newFetchingDispatcher();
+        actFmPreferenceService.setToken(null);
+        fetching.flush(list("1"), list("7"));
+
+        assertEquals(0, fetching.fetched.size());
+        assertEquals(0, fetching.fullSyncs);
+    }
+
+    private void newFetchingDispatcher() {
+        actFmPreferenceService.setToken("token");
+        actFmPreferenceService.recordSuccessfulSync();
+        actFmPreferenceService.stopOngoing();
+        fetching = new FetchingDispatcher(WINDOW, 5 * WINDOW);
+    }
+
+    private static List<String> list(String... ids) {
+        List<String> result = new ArrayList<String>();
+        Collections.addAll(result, ids);
+        return result;
+    }
+
+    /** records batches instead of fetching them */
+    private static class RecordingDispatcher extends C2DMDispatcher {
+        final List<List<List<String>>> batches = Collections.synchronizedList(
+                new ArrayList<List<List<String>>>());
+        long time = 1000L;
+
+        public RecordingDispatcher(long window, long maxDelay) {
+            super(window, maxDelay);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+
+        @Override
+        protected void flush(List<String> tasks, List<String> tags) {
+            List<List<String>> batch = new ArrayList<List<String>>();
+            batch.add(tasks);
+            batch.add(tags);
+            batches.add(batch);
+        }
+    }
+
+    /** runs the real flush, recording fetches and syncs */
+    private static class FetchingDispatcher extends C2DMDispatcher {
+        final List<String> fetched = new ArrayList<String>();
+        int fullSyncs = 0;
+        String failing = null;
+
+        public FetchingDispatcher(long window, long maxDelay) {
+            super(window, maxDelay);
+        }
+
+        @Override
+        protected void fullSync() {
+            fullSyncs++;
+        }
+
+        @Override
+        protected void fetchTag(String remoteId) throws IOException {
+            fetched.add("tag " + remoteId);
+            if(remoteId.equals(failing))
+                throw new IOException("failed");
+        }
+
+        @Override
+        protected void fetchTask(String remoteId) throws IOException {
+            fetched.add("task " + remoteId);
+            if(remoteId.equals(failing))
+                throw new IOException("failed");
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.aacenc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.test.AndroidTestCase;
+
+import com.googlecode.mp4parser.authoring.tracks.AACTrackImpl;
+
+/**
+ * Runs the recording pipeline with a stub encoder that writes one ADTS
+ * frame of known size per PCM frame.
+ */
+@SuppressWarnings("nls")
+public class AACEncodingPipelineTest extends AndroidTestCase {
+
+    private static final int FRAME_BYTES = AACEncodingPipeline.FRAME_SAMPLES * 2;
+
+    private File tempFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tempFile = File.createTempFile("pipeline", ".aac");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        tempFile.delete();
+        super.tearDown();
+    }
+
+    public void testRingBufferWrapsAround() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(10);
+        byte[] frame = new byte[4];
+        for(int round = 0; round < 5; round++) {
+            write(ring, new byte[] { (byte) round, 1, 2 });
+            write(ring, new byte[] { 3 });
+            assertEquals(4, ring.read(frame));
+            assertEquals(round, frame[0]);
+            assertEquals(3, frame[3]);
+        }
+        assertEquals(0, ring.available());
+    }
+
+    public void testRingBufferReturnsRestAfterClose() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        write(ring, new byte[] { 1, 2, 3 });
+        ring.close();
+        assertEquals(0, ring.awaitWritable());
+        assertEquals(3, ring.read(new byte[4]));
+        assertEquals(0, ring.read(new byte[4]));
+    }
+
+    public void testEncodesWhileCapturing() throws Exception {
+        StubEncoder encoder = new StubEncoder();
+        AACEncodingPipeline pipeline = new AACEncodingPipeline(encoder, 64000, 1, 8000, 3);
+        pipeline.start(tempFile.getPath());
+
+        // capture ten and a half frames in odd sized chunks
+        byte[] pcm = new byte[FRAME_BYTES * 21 / 2];
+        for(int i = 0; i < pcm.length; i++)
+            pcm[i] = (byte) (i % 127 + 1);
+        PcmRingBuffer ring = pipeline.getRingBuffer();
+        int offset = 0;
+        while(offset < pcm.length) {
+            int count = Math.min(Math.min(ring.awaitWritable(), 333), pcm.length - offset);
+            System.arraycopy(pcm, offset, ring.array(), ring.getWriteOffset(), count);
+            ring.commit(count);
+            offset += count;
+        }
+        pipeline.close();
+
+        AACTrackImpl track = pipeline.getTrack();
+        try {
+            assertTrue(encoder.uninitialized);
+            assertEquals(11, encoder.frames.size());
+            for(byte[] frame : encoder.frames)
+                assertEquals(FRAME_BYTES, frame.length);
+            // the last frame is padded with silence
+            assertEquals(0, encoder.frames.get(10)[FRAME_BYTES - 1]);
+
+            List<ByteBuffer> samples = track.getSamples();
+            assertEquals(11, samples.size());
+            for(int i = 0; i < samples.size(); i++) {
+                ByteBuffer sample = samples.get(i);
+                assertEquals(StubEncoder.payloadSize(i), sample.remaining());
+                assertEquals((byte) i, sample.get(0));
+            }
+            assertEquals(11, track.getDecodingTimeEntries().get(0).getCount());
+            assertEquals(8000, track.getTrackMetaData().getTimescale());
+        } finally {
+            pipeline.release();
+        }
+    }
+
+    public void testWritesM4A() throws Exception {
+        AACEncodingPipeline pipeline = new AACEncodingPipeline(new StubEncoder(), 64000, 1, 8000, 3);
+        pipeline.start(tempFile.getPath());
+        PcmRingBuffer ring = pipeline.getRingBuffer();
+        for(int i = 0; i < 4; i++)
+            ring.commit(Math.min(ring.awaitWritable(), FRAME_BYTES));
+        pipeline.close();
+
+        File outFile = File.createTempFile("pipeline", ".m4a");
+        try {
+            new AACToM4A().convert(getContext(), pipeline.getTrack(), outFile.getPath());
+            long payload = 0;
+            for(int i = 0; i < 4; i++)
+                payload += StubEncoder.payloadSize(i);
+            assertTrue(outFile.length() > payload);
+        } finally {
+            pipeline.release();
+            outFile.delete();
+        }
+    }
+
+    public void testCallbackCanGetTrack() throws Exception {
+        final AACEncodingPipeline pipeline = new AACEncodingPipeline(new StubEncoder(), 64000, 1, 8000, 3);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        pipeline.setCallback(new AACEncodingPipeline.Callback() {
+            public void encodingFinished() {
+                // what AACRecorder's listener does through writeM4A
+                try {
+                    result.set(pipeline.getTrack());
+                } catch (Exception e) {
+                    result.set(e);
+                }
+                finished.countDown();
+            }
+        });
+        pipeline.start(tempFile.getPath());
+        PcmRingBuffer ring = pipeline.getRingBuffer();
+        for(int i = 0; i < 2; i++)
+            ring.commit(Math.min(ring.awaitWritable(), FRAME_BYTES));
+        pipeline.close();
+
+        try {
+            assertTrue("callback blocked", finished.await(10, TimeUnit.SECONDS));
+            assertTrue(String.valueOf(result.get()), result.get() instanceof AACTrackImpl);
+            assertEquals(2, ((AACTrackImpl) result.get()).getSamples().size());
+            assertSame(result.get(), pipeline.getTrack());
+        } finally {
+            pipeline.release();
+        }
+    }
+
+    private static void write(PcmRingBuffer ring, byte[] data) throws InterruptedException {
+        int offset = 0;
+        while(offset < data.length) {
+            int count = Math.min(ring.awaitWritable(), data.length - offset);
+            System.arraycopy(data, offset, ring.array(), ring.getWriteOffset(), count);
+            ring.commit(count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Writes an ADTS frame for 8 kHz mono per PCM frame. Each payload
+     * starts with the frame number.
+     */
+    private static class StubEncoder implements AudioEncoder {
+        final List<byte[]> frames = new ArrayList<byte[]>();
+        boolean uninitialized;
+        private FileOutputStream out;
+
+        static int payloadSize(int frame) {
+            return 20 + frame * 13 % 50;
+        }
+
+        public void init(int bitrate, int channels, int sampleRate, int bitsPerSample, String outputFile) {
+            try {
+                out = new FileOutputStream(outputFile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public void encode(byte[] inputArray) {
+            int index = frames.size();
+            frames.add(inputArray.clone());
+            int frameSize = 7 + payloadSize(index);
+            byte[] adts = new byte[frameSize];
+            adts[0] = (byte) 0xff;
+            adts[1] = (byte) 0xf1; // MPEG-4, no CRC
+            adts[2] = (byte) (1 << 6 | 0xb << 2); // AAC LC, 8000 Hz
+            adts[3] = (byte) (1 << 6 | frameSize >> 11); // mono
+            adts[4] = (byte) (frameSize >> 3);
+            adts[5] = (byte) ((frameSize & 7) << 5 | 0x1f);
+            adts[6] = (byte) 0xfc;
+            adts[7] = (byte) index;
+            try {
+                out.write(adts);
+                out.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public void uninit() {
+            uninitialized = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.ArrayList;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.todoroo.andlib.data.QueryProfiler.SlowStatement;
+import com.todoroo.andlib.data.QueryProfiler.TemplateStats;
+
+@SuppressWarnings("nls")
+public class QueryProfilerTest extends AndroidTestCase {
+
+    /** start time that makes a statement count as slow */
+    private static final long SLOW = 100 * 1000000L;
+
+    private QueryProfiler profiler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        profiler = new QueryProfiler("test");
+        profiler.setEnabled(true);
+    }
+
+    public void testTemplates() {
+        assertEquals("SELECT * FROM tasks WHERE _id = ?",
+                QueryProfiler.toTemplate("SELECT * FROM tasks WHERE _id = 12"));
+        assertEquals("SELECT * FROM tasks WHERE title = ? AND importance > ?",
+                QueryProfiler.toTemplate("SELECT * FROM tasks WHERE title = 'it''s 5' AND importance > -1.5"));
+        assertEquals("SELECT * FROM t1 WHERE _id IN (?...)",
+                QueryProfiler.toTemplate("SELECT * FROM t1 WHERE _id IN (1, 2,3)"));
+    }
+
+    public void testStatsAreAggregatedPerTemplate() {
+        long now = System.nanoTime();
+        profiler.record(null, "SELECT * FROM tasks WHERE _id = 1", null, now, 1);
+        profiler.record(null, "SELECT * FROM tasks WHERE _id = 2", null, now, 0);
+        profiler.record(null, "SELECT * FROM tasks WHERE _id = 3", null, now - SLOW, 1);
+        profiler.record(null, "DELETE FROM tasks WHERE _id IN (4, 5)", null, now, 2);
+        profiler.record(null, "DELETE FROM tasks WHERE _id IN (6)", null, now, -1);
+
+        ArrayList<TemplateStats> stats = profiler.getTemplateStats();
+        assertEquals(2, stats.size());
+        TemplateStats select = find(stats, "SELECT * FROM tasks WHERE _id = ?");
+        assertEquals(3, select.calls);
+        assertEquals(2, select.rows);
+        assertTrue(select.maxNanos >= SLOW);
+        assertTrue(select.totalNanos >= select.maxNanos);
+        TemplateStats delete = find(stats, "DELETE FROM tasks WHERE _id IN (?...)");
+        assertEquals(2, delete.calls);
+        assertEquals(2, delete.rows);
+        assertTrue(delete.maxNanos < SLOW);
+
+        assertEquals(1, profiler.getSlowStatements().size());
+    }
+
+    public void testDisabledRecordsNothing() {
+        profiler.setEnabled(false);
+        profiler.record(null, "SELECT 1", null, System.nanoTime() - SLOW, 1);
+        assertTrue(profiler.getTemplateStats().isEmpty());
+        assertTrue(profiler.getSlowStatements().isEmpty());
+    }
+
+    public void testSlowLogWrapsAround() {
+        for(int i = 0; i < 40; i++)
+            profiler.record(null, "SELECT * FROM tasks WHERE _id = " + i, null,
+                    System.nanoTime() - SLOW, 1);
+
+        // the oldest statements have been overwritten
+        ArrayList<SlowStatement> slow = profiler.getSlowStatements();
+        assertEquals(32, slow.size());
+        for(int i = 0; i < slow.size(); i++)
+            assertEquals("SELECT * FROM tasks WHERE _id = " + (i + 8), slow.get(i).sql);
+        assertEquals(40, profiler.getTemplateStats().get(0).calls);
+
+        profiler.reset();
+        assertTrue(profiler.getSlowStatements().isEmpty());
+        profiler.record(null, "SELECT 1", null, System.nanoTime() - SLOW, 1);
+        assertEquals(1, profiler.getSlowStatements().size());
+    }
+
+    public void testSlowStatementIsExplained() throws Exception {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE tasks (_id INTEGER PRIMARY KEY, title TEXT)");
+            profiler.record(db, "DELETE FROM tasks WHERE title = 'a'",
+                    "SELECT * FROM tasks WHERE title = 'a'", System.nanoTime() - SLOW, 0);
+            profiler.record(db, "SELECT * FROM tasks WHERE _id = 1",
+                    "SELECT * FROM tasks WHERE _id = 1", System.nanoTime(), 0);
+            profiler.record(db, "PRAGMA user_version", null, System.nanoTime() - SLOW, 0);
+
+            ArrayList<SlowStatement> slow = profiler.getSlowStatements();
+            assertEquals(2, slow.size());
+            SlowStatement delete = slow.get(0);
+            // explained on a background thread
+            for(int i = 0; i < 50 && delete.plan == null; i++)
+                Thread.sleep(100);
+            assertNotNull(delete.plan);
+            assertTrue(delete.plan, delete.plan.contains("tasks"));
+            assertFalse(delete.plan, delete.plan.startsWith("explain failed"));
+            assertTrue(profiler.toString().contains(delete.plan));
+
+            Thread.sleep(200);
+            assertNull(slow.get(1).plan);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static TemplateStats find(ArrayList<TemplateStats> stats, String template) {
+        for(TemplateStats item : stats)
+            if(item.template.equals(template))
+                return item;
+        fail("no stats for " + template);
+        return null;
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.adapter;
+
+import java.util.Locale;
+
+import com.timsu.astrid.R;
+import com.todoroo.astrid.core.CoreFilterExposer;
+import com.todoroo.astrid.core.CustomFilterExposer;
+import com.todoroo.astrid.core.PluginServices;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.producteev.ProducteevFilterExposer;
+import com.todoroo.astrid.producteev.ProducteevUtilities;
+import com.todoroo.astrid.tags.TagFilterExposer;
+import com.todoroo.astrid.test.DatabaseTestCase;
+import com.todoroo.astrid.timers.TimerFilterExposer;
+
+/**
+ * Checks when the filter registry asks its exposers again
+ */
+@SuppressWarnings("nls")
+public class FilterRegistryTest extends DatabaseTestCase {
+
+    private static final String CORE = CoreFilterExposer.class.getName();
+    private static final String CUSTOM = CustomFilterExposer.class.getName();
+    private static final String TAGS = TagFilterExposer.class.getName();
+    private static final String TIMERS = TimerFilterExposer.class.getName();
+    private static final String PRODUCTEEV = ProducteevFilterExposer.class.getName();
+
+    private FilterRegistry registry;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        registry = new FilterRegistry(getContext());
+        registry.refreshStale();
+    }
+
+    public void testFreshAfterRefresh() {
+        assertTrue(registry.isFresh(CORE));
+        assertTrue(registry.isFresh(CUSTOM));
+        assertTrue(registry.isFresh(TAGS));
+        assertTrue(registry.isFresh(TIMERS));
+    }
+
+    public void testTableChangeStalesExposersReadingIt() {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "milk");
+        PluginServices.getTaskService().save(task);
+
+        assertFalse(registry.isFresh(TIMERS));
+        assertFalse(registry.isFresh(TAGS));
+        assertTrue(registry.isFresh(CORE));
+        assertTrue(registry.isFresh(CUSTOM));
+
+        registry.refreshStale();
+        assertTrue(registry.isFresh(TIMERS));
+        assertTrue(registry.isFresh(TAGS));
+    }
+
+    public void testPreferenceStalesExposersReadingIt() {
+        registry.onPreferenceChanged(getContext().getString(R.string.p_show_today_filter));
+        assertFalse(registry.isFresh(CUSTOM));
+        assertTrue(registry.isFresh(TAGS));
+
+        registry.onPreferenceChanged(ProducteevUtilities.INSTANCE.getTokenKey());
+        assertFalse(registry.isFresh(PRODUCTEEV));
+        assertTrue(registry.isFresh(CORE));
+    }
+
+    public void testUnrelatedPreferencesKeepFilters() {
+        registry.onPreferenceChanged(ProducteevUtilities.PREF_SERVER_LAST_SYNC);
+        registry.onPreferenceChanged(ProducteevUtilities.PREF_SERVER_LAST_SYNC_DASHBOARD + 1);
+        registry.onPreferenceChanged("calendar_alarms_scheduled");
+
+        assertTrue(registry.isFresh(CORE));
+        assertTrue(registry.isFresh(CUSTOM));
+        assertTrue(registry.isFresh(TAGS));
+        assertTrue(registry.isFresh(PRODUCTEEV));
+    }
+
+    public void testInvalidateStalesAll() {
+        registry.invalidate();
+
+        assertFalse(registry.isFresh(CORE));
+        assertFalse(registry.isFresh(CUSTOM));
+        assertFalse(registry.isFresh(TIMERS));
+    }
+
+    public void testLocaleChangeStalesAll() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMAN.equals(locale) ? Locale.FRENCH : Locale.GERMAN);
+            assertFalse(registry.isFresh(CORE));
+            assertFalse(registry.isFresh(CUSTOM));
+
+            registry.refreshStale();
+            assertTrue(registry.isFresh(CORE));
+        } finally {
+            Locale.setDefault(locale);
+        }
+        assertFalse(registry.isFresh(CORE));
+    }
+
+}
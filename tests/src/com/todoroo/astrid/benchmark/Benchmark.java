@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import android.os.Build;
+import android.util.Log;
+
+import com.todoroo.andlib.service.ContextManager;
+
+/**
+ * Minimal micro-benchmark harness for hot paths. Each workload is prepared
+ * once per dataset size, run a few times to warm up the JIT, then timed
+ * over several iterations. The median time per item is logged under the
+ * "benchmark" tag and appended to <code>benchmarks.tsv</code> in the app's
+ * files directory, so runs on the same device can be compared.
+ * <p>
+ * Benchmarks are instrumentation tests named *Benchmark and marked with
+ * {@link BenchmarkTest}, which keeps them out of the normal test run. Run
+ * them with <code>-e benchmarks true</code>, or one at a time with the test
+ * runner's <code>-e class</code> option.
+ */
+@SuppressWarnings("nls")
+public class Benchmark {
+
+    /** dataset sizes, in number of tasks */
+    public static final int[] SIZES = new int[] { 1000, 10000, 100000 };
+
+    private static final int WARMUP_ITERATIONS = 2;
+
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static final String RESULT_FILE = "benchmarks.tsv";
+
+    /**
+     * A unit of work to measure
+     */
+    public static abstract class Workload {
+        /** build the dataset. not timed */
+        public abstract void setUp(int size) throws Exception;
+
+        /** process the whole dataset once */
+        public abstract void run() throws Exception;
+
+        /** release the dataset */
+        public void tearDown() {
+            // override if necessary
+        }
+    }
+
+    /**
+     * Measure a workload at each of the given sizes
+     * @param name benchmark name
+     * @param sizes dataset sizes
+     * @param workload work to measure
+     * @return median nanoseconds per item for each size
+     */
+    public static double[] run(String name, int[] sizes, Workload workload) throws Exception {
+        double[] results = new double[sizes.length];
+        for(int i = 0; i < sizes.length; i++) {
+            int size = sizes[i];
+            workload.setUp(size);
+            try {
+                for(int j = 0; j < WARMUP_ITERATIONS; j++)
+                    workload.run();
+
+                long[] times = new long[MEASURED_ITERATIONS];
+                for(int j = 0; j < MEASURED_ITERATIONS; j++) {
+                    long start = System.nanoTime();
+                    workload.run();
+                    times[j] = System.nanoTime() - start;
+                }
+                Arrays.sort(times);
+                results[i] = times[MEASURED_ITERATIONS / 2] / (double) size;
+                report(name, size, results[i], times[0] / (double) size);
+            } finally {
+                workload.tearDown();
+            }
+        }
+        return results;
+    }
+
+    /** @see #run(String, int[], Workload) */
+    public static double[] run(String name, Workload workload) throws Exception {
+        return run(name, SIZES, workload);
+    }
+
+    private static void report(String name, int size, double median, double min) {
+        String line = String.format("%s\t%d\t%.1f\t%.1f\t%s", name, size, median, min, Build.MODEL);
+        Log.i("benchmark", line);
+
+        File file = new File(ContextManager.getContext().getFilesDir(), RESULT_FILE);
+        try {
+            FileWriter writer = new FileWriter(file, true);
+            try {
+                writer.write(line);
+                writer.write('\n');
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            Log.e("benchmark", "Unable to write results", e);
+        }
+    }
+
+}
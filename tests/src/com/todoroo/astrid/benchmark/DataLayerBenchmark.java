@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.benchmark;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+
+import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Join;
+import com.todoroo.andlib.sql.Order;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.test.TodorooTestCase;
+import com.todoroo.astrid.benchmark.Benchmark.Workload;
+import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
+import com.todoroo.astrid.dao.TaskDao.TaskCriteria;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+
+/**
+ * Benchmarks for the andlib query DSL, models and cursors
+ */
+@BenchmarkTest
+@SuppressWarnings("nls")
+public class DataLayerBenchmark extends TodorooTestCase {
+
+    /** Query and criterion construction followed by toString */
+    public void testQueryToString() throws Exception {
+        Benchmark.run("query-tostring", new Workload() {
+            private int size;
+            public int sink;
+
+            @Override
+            public void setUp(int newSize) {
+                this.size = newSize;
+            }
+
+            @Override
+            public void run() {
+                for(int i = 0; i < size; i++) {
+                    Query query = Query.select(Task.PROPERTIES).join(Join.left(Metadata.TABLE,
+                            Criterion.and(MetadataCriteria.withKey("tags-tag"), Metadata.TASK.eq(Task.ID)))).
+                            where(Criterion.and(TaskCriteria.activeAndVisible(),
+                                    Criterion.or(Task.TITLE.like("%" + i + "%"), Task.ID.eq(i)))).
+                            orderBy(Order.asc(Task.DUE_DATE)).limit(100);
+                    sink += query.toString().length();
+                }
+            }
+        });
+    }
+
+    /** AbstractModel setValue / getValue / merge / clone */
+    public void testModelOperations() throws Exception {
+        Benchmark.run("model-get-set-merge-clone", new Workload() {
+            private Task[] tasks;
+            private ContentValues values;
+            public long sink;
+
+            @Override
+            public void setUp(int size) {
+                tasks = new Task[size];
+                for(int i = 0; i < size; i++) {
+                    tasks[i] = new Task();
+                    tasks[i].setId(i + 1);
+                    tasks[i].setValue(Task.TITLE, "task " + i);
+                }
+                values = new ContentValues();
+                values.put(Task.IMPORTANCE.name, Task.IMPORTANCE_MUST_DO);
+                values.put(Task.NOTES.name, "notes");
+            }
+
+            @Override
+            public void run() {
+                for(Task task : tasks) {
+                    task.setValue(Task.DUE_DATE, sink);
+                    sink += task.getValue(Task.DUE_DATE) + task.getValue(Task.TITLE).length();
+                    task.mergeWith(values);
+                    Task clone = (Task) task.clone();
+                    sink += clone.getValue(Task.IMPORTANCE);
+                }
+            }
+
+            @Override
+            public void tearDown() {
+                tasks = null;
+            }
+        });
+    }
+
+    /** TodorooCursor property reads over an in-memory cursor */
+    public void testCursorReads() throws Exception {
+        final Property<?>[] properties = new Property<?>[] { Task.ID, Task.TITLE,
+                Task.IMPORTANCE, Task.DUE_DATE, Task.COMPLETION_DATE, Task.FLAGS };
+        Benchmark.run("cursor-read", new Workload() {
+            private TodorooCursor<Task> cursor;
+            public long sink;
+
+            @Override
+            public void setUp(int size) {
+                String[] columns = new String[properties.length];
+                for(int i = 0; i < properties.length; i++)
+                    columns[i] = properties[i].name;
+                MatrixCursor matrix = new MatrixCursor(columns, size);
+                for(int i = 0; i < size; i++)
+                    matrix.addRow(new Object[] { (long) i, "task " + i, i % 4, (long) i * 1000, 0L, 0 });
+                cursor = new TodorooCursor<Task>(matrix, properties);
+            }
+
+            @Override
+            public void run() {
+                Task task = new Task();
+                for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                    sink += cursor.get(Task.ID) + cursor.get(Task.DUE_DATE) + cursor.get(Task.IMPORTANCE);
+                    task.readFromCursor(cursor);
+                    sink += task.getValue(Task.TITLE).length();
+                }
+            }
+
+            @Override
+            public void tearDown() {
+                cursor.close();
+            }
+        });
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+import com.coremedia.iso.boxes.AbstractMediaHeaderBox;
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.CompositionTimeToSample;
+import com.coremedia.iso.boxes.SampleDependencyTypeBox;
+import com.coremedia.iso.boxes.SampleDescriptionBox;
+import com.coremedia.iso.boxes.SoundMediaHeaderBox;
+import com.coremedia.iso.boxes.SubSampleInformationBox;
+import com.coremedia.iso.boxes.TimeToSampleBox;
+import com.coremedia.iso.boxes.VideoMediaHeaderBox;
+import com.googlecode.mp4parser.authoring.AbstractTrack;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.TrackMetaData;
+import com.googlecode.mp4parser.authoring.builder.FragmentIntersectionFinder;
+import com.googlecode.mp4parser.authoring.builder.FragmentedMp4Builder;
+import com.todoroo.astrid.benchmark.Benchmark.Workload;
+
+/**
+ * Benchmarks fragment planning of the fragmented MP4 builder on synthetic
+ * audio and video tracks. Sizes are minutes of media. Results are for the
+ * device the instrumentation runs on.
+ * <p>
+ * Builders older than FragmentPlan can't serve as a baseline: their
+ * fragment comparator indexes past the end of the audio track's
+ * boundaries on these movies and throws.
+ */
+@BenchmarkTest
+@SuppressWarnings("nls")
+public class FragmentedMp4Benchmark extends AndroidTestCase {
+
+    private static final int[] MINUTES = new int[] { 10, 60 };
+
+    /** moof and mdat boxes for a movie with one video and one audio track */
+    public void testCreateMoofMdat() throws Exception {
+        Benchmark.run("fragmented-mp4-moof-mdat", MINUTES, new Workload() {
+            private Movie movie;
+            public long sink;
+
+            @Override
+            public void setUp(int minutes) {
+                movie = new Movie();
+                movie.addTrack(new SyntheticTrack("vide", 90000, 3600, minutes * 60 * 25, 50));
+                movie.addTrack(new SyntheticTrack("soun", 44100, 1024, minutes * 60 * 44100 / 1024, 0));
+            }
+
+            @Override
+            public void run() {
+                for(Box box : new PlanningBuilder().createMoofMdat(movie))
+                    sink += box.getSize();
+            }
+
+            @Override
+            public void tearDown() {
+                movie = null;
+            }
+        });
+    }
+
+    /** exposes fragment planning and cuts fragments every two seconds */
+    private static class PlanningBuilder extends FragmentedMp4Builder {
+        public PlanningBuilder() {
+            setIntersectionFinder(new FragmentIntersectionFinder() {
+                public long[] sampleNumbers(Track track, Movie movie) {
+                    TimeToSampleBox.Entry entry = track.getDecodingTimeEntries().get(0);
+                    long samplesPerFragment = 2 * track.getTrackMetaData().getTimescale() / entry.getDelta();
+                    long[] startSamples = new long[(int) ((entry.getCount() + samplesPerFragment - 1) / samplesPerFragment)];
+                    for(int i = 0; i < startSamples.length; i++)
+                        startSamples[i] = 1 + i * samplesPerFragment;
+                    return startSamples;
+                }
+            });
+        }
+
+        @Override
+        public List<Box> createMoofMdat(Movie movie) {
+            return super.createMoofMdat(movie);
+        }
+    }
+
+    /**
+     * Track with constant frame rate and pseudo random sample sizes whose
+     * samples all share one buffer
+     */
+    private static class SyntheticTrack extends AbstractTrack {
+        private final String handler;
+        private final TrackMetaData trackMetaData = new TrackMetaData();
+        private final List<TimeToSampleBox.Entry> stts;
+        private final List<CompositionTimeToSample.Entry> ctts = new ArrayList<CompositionTimeToSample.Entry>();
+        private final List<SampleDependencyTypeBox.Entry> sdtp = new ArrayList<SampleDependencyTypeBox.Entry>();
+        private final long[] syncSamples;
+        private final List<ByteBuffer> samples;
+
+        public SyntheticTrack(String handler, long timescale, long delta, final int count, int gop) {
+            this.handler = handler;
+            trackMetaData.setTimescale(timescale);
+            trackMetaData.setTrackId("vide".equals(handler) ? 1 : 2);
+            stts = Collections.singletonList(new TimeToSampleBox.Entry(count, delta));
+
+            if(gop > 0) {
+                syncSamples = new long[(count + gop - 1) / gop];
+                for(int i = 0; i < syncSamples.length; i++)
+                    syncSamples[i] = 1 + i * gop;
+                for(int i = 0; i < count; i++) {
+                    ctts.add(new CompositionTimeToSample.Entry(1, (int) (i % 3 == 0 ? 2 * delta : 0)));
+                    sdtp.add(new SampleDependencyTypeBox.Entry(i % gop == 0 ? 38 : 22));
+                }
+            } else {
+                syncSamples = null;
+            }
+
+            final byte[] payload = new byte[8192];
+            samples = new AbstractList<ByteBuffer>() {
+                @Override
+                public ByteBuffer get(int index) {
+                    return ByteBuffer.wrap(payload, 0, 200 + (index * 7919) % 7000);
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        public SampleDescriptionBox getSampleDescriptionBox() {
+            return new SampleDescriptionBox();
+        }
+
+        public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
+            return stts;
+        }
+
+        public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
+            return ctts;
+        }
+
+        public long[] getSyncSamples() {
+            return syncSamples;
+        }
+
+        public List<SampleDependencyTypeBox.Entry> getSampleDependencies() {
+            return sdtp;
+        }
+
+        public TrackMetaData getTrackMetaData() {
+            return trackMetaData;
+        }
+
+        public String getHandler() {
+            return handler;
+        }
+
+        public List<ByteBuffer> getSamples() {
+            return samples;
+        }
+
+        public AbstractMediaHeaderBox getMediaHeaderBox() {
+            return "vide".equals(handler) ? new VideoMediaHeaderBox() : new SoundMediaHeaderBox();
+        }
+
+        public SubSampleInformationBox getSubsampleInformationBox() {
+            return null;
+        }
+    }
+
+}
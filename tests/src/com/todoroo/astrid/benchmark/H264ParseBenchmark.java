@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+
+import com.googlecode.mp4parser.authoring.tracks.H264TrackImpl.SliceHeader;
+import com.googlecode.mp4parser.h264.model.PictureParameterSet;
+import com.googlecode.mp4parser.h264.model.SeqParameterSet;
+import com.googlecode.mp4parser.h264.read.CAVLCReader;
+import com.googlecode.mp4parser.h264.write.CAVLCWriter;
+import com.todoroo.astrid.benchmark.Benchmark.Workload;
+
+/**
+ * Benchmarks H.264 bitstream parsing on a synthetic stream. Sizes are
+ * numbers of slice headers, or of exp-Golomb codes.
+ */
+@BenchmarkTest
+@SuppressWarnings("nls")
+public class H264ParseBenchmark extends AndroidTestCase {
+
+    private static final int[] HEADERS = new int[] { 1000, 10000 };
+
+    private static final int[] CODES = new int[] { 10000, 100000 };
+
+    /** slice headers of IDR pictures, parsed the way H264TrackImpl does */
+    public void testSliceHeaders() throws Exception {
+        final SeqParameterSet sps = new SeqParameterSet();
+        sps.frame_mbs_only_flag = true;
+        sps.pic_order_cnt_type = 0;
+        sps.log2_max_frame_num_minus4 = 0;
+        sps.log2_max_pic_order_cnt_lsb_minus4 = 2;
+        final PictureParameterSet pps = new PictureParameterSet();
+
+        Benchmark.run("h264-slice-headers", HEADERS, new Workload() {
+            private byte[][] nals;
+            public long sink;
+
+            @Override
+            public void setUp(int size) throws IOException {
+                Random random = new Random(size);
+                nals = new byte[size][];
+                for(int i = 0; i < size; i++) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    out.write(0x65);
+                    CAVLCWriter writer = new CAVLCWriter(out);
+                    writer.writeUE(random.nextInt(8160));
+                    writer.writeUE(7);
+                    writer.writeUE(0);
+                    writer.writeU(i & 15, 4);
+                    writer.writeUE(i & 0x3fff);
+                    writer.writeU(i & 63, 6);
+                    writer.writeTrailingBits();
+                    nals[i] = out.toByteArray();
+                }
+            }
+
+            @Override
+            public void run() throws IOException {
+                for(byte[] nal : nals) {
+                    SliceHeader header = new SliceHeader(new ByteArrayInputStream(nal), sps, pps, true);
+                    sink += header.first_mb_in_slice + header.idr_pic_id;
+                }
+            }
+        });
+    }
+
+    /** ue and se codes read from a byte array */
+    public void testExpGolombFromArray() throws Exception {
+        Benchmark.run("h264-exp-golomb-array", CODES, new ExpGolombWorkload() {
+            @Override
+            protected CAVLCReader open(byte[] data) {
+                return new CAVLCReader(data);
+            }
+        });
+    }
+
+    /** ue and se codes read from an input stream */
+    public void testExpGolombFromStream() throws Exception {
+        Benchmark.run("h264-exp-golomb-stream", CODES, new ExpGolombWorkload() {
+            @Override
+            protected CAVLCReader open(byte[] data) throws IOException {
+                return new CAVLCReader(new ByteArrayInputStream(data));
+            }
+        });
+    }
+
+    /** alternating ue and se codes of mostly small values */
+    private static abstract class ExpGolombWorkload extends Workload {
+        private byte[] data;
+        private int count;
+        public long sink;
+
+        protected abstract CAVLCReader open(byte[] data) throws IOException;
+
+        @Override
+        public void setUp(int size) throws IOException {
+            Random random = new Random(size);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CAVLCWriter writer = new CAVLCWriter(out);
+            for(int i = 0; i < size; i += 2) {
+                writer.writeUE(random.nextInt(1 << random.nextInt(12)));
+                writer.writeSE(random.nextInt(64) - 32, "");
+            }
+            writer.writeTrailingBits();
+            data = out.toByteArray();
+            count = size;
+        }
+
+        @Override
+        public void run() throws IOException {
+            CAVLCReader reader = open(data);
+            for(int i = 0; i < count; i += 2) {
+                sink += reader.readUE("");
+                sink += reader.readSE("");
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            data = null;
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.benchmark;
+
+import java.util.ArrayList;
+
+import com.google.ical.values.Frequency;
+import com.google.ical.values.RRule;
+import com.google.ical.values.Weekday;
+import com.google.ical.values.WeekdayNum;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.benchmark.Benchmark.Workload;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.repeats.RepeatTaskCompleteListener;
+import com.todoroo.astrid.subtasks.AstridOrderedListUpdater;
+import com.todoroo.astrid.subtasks.AstridOrderedListUpdater.Node;
+import com.todoroo.astrid.test.DatabaseTestCase;
+import com.todoroo.astrid.utility.TitleParser;
+
+/**
+ * Benchmarks for quick-add parsing, repeat computation and subtask trees
+ */
+@BenchmarkTest
+@SuppressWarnings("nls")
+public class TaskLogicBenchmark extends DatabaseTestCase {
+
+    /** realistic quick-add titles */
+    public static final String[] TITLES = new String[] {
+        "Buy milk",
+        "Call mom tomorrow at 6pm",
+        "Pay rent every month #finance !!",
+        "Dentist appointment next tuesday 10:30am",
+        "Weekly report every friday #work @office",
+        "Water plants every 3 days",
+        "Submit taxes april 15 !!!",
+        "Gym monday wednesday friday at 7am",
+        "Review #(project plan) with team today",
+        "Renew passport in 2 weeks !",
+        "Pick up dry cleaning",
+        "Email Sarah about the budget",
+        "Book flights for the conference",
+        "Lunch with Alex (friday)",
+        "Take out trash every tuesday night",
+        "Finish slides for 10/12 meeting high priority",
+        "Read chapter 4",
+        "Call plumber about the leak",
+        "Standup daily 9:15am @work",
+        "Grocery run: eggs, bread, coffee",
+    };
+
+    /** TitleParser.parse over a corpus of titles */
+    public void testTitleParser() throws Exception {
+        Benchmark.run("title-parser", new Workload() {
+            private int size;
+            private final Task task = new Task();
+            private final ArrayList<String> tags = new ArrayList<String>();
+            public int sink;
+
+            @Override
+            public void setUp(int newSize) {
+                this.size = newSize;
+            }
+
+            @Override
+            public void run() {
+                for(int i = 0; i < size; i++) {
+                    task.clear();
+                    tags.clear();
+                    task.setValue(Task.TITLE, TITLES[i % TITLES.length]);
+                    if(TitleParser.parse(task, tags))
+                        sink++;
+                }
+            }
+        });
+    }
+
+    /** RepeatTaskCompleteListener.computeNextDueDate for common rules */
+    public void testComputeNextDueDate() throws Exception {
+        Benchmark.run("compute-next-due-date", new Workload() {
+            private Task[] tasks;
+            private String[] rules;
+            public long sink;
+
+            @Override
+            public void setUp(int size) {
+                String[] corpus = new String[] {
+                    rule(Frequency.DAILY, 1),
+                    rule(Frequency.WEEKLY, 1, Weekday.MO, Weekday.WE, Weekday.FR),
+                    rule(Frequency.WEEKLY, 2),
+                    rule(Frequency.MONTHLY, 1),
+                    rule(Frequency.YEARLY, 1),
+                    rule(Frequency.HOURLY, 4),
+                };
+                long now = DateUtilities.now();
+                tasks = new Task[size];
+                rules = new String[size];
+                for(int i = 0; i < size; i++) {
+                    tasks[i] = new Task();
+                    tasks[i].setValue(Task.DUE_DATE, Task.createDueDate(
+                            i % 2 == 0 ? Task.URGENCY_SPECIFIC_DAY : Task.URGENCY_SPECIFIC_DAY_TIME,
+                            now - (i % 30) * DateUtilities.ONE_DAY));
+                    tasks[i].setFlag(Task.FLAGS, Task.FLAG_REPEAT_AFTER_COMPLETION, i % 3 == 0);
+                    rules[i] = corpus[i % corpus.length];
+                }
+            }
+
+            @Override
+            public void run() throws Exception {
+                for(int i = 0; i < tasks.length; i++)
+                    sink += RepeatTaskCompleteListener.computeNextDueDate(tasks[i], rules[i]);
+            }
+
+            @Override
+            public void tearDown() {
+                tasks = null;
+                rules = null;
+            }
+        });
+    }
+
+    /** AstridOrderedListUpdater tree build and serialize */
+    public void testOrderedListTree() throws Exception {
+        Benchmark.run("ordered-list-tree", new Workload() {
+            private String serialized;
+            public int sink;
+
+            @Override
+            public void setUp(int size) {
+                // a list of top level tasks, every fifth with a few subtasks
+                Node root = new Node(-1, null, -1);
+                long id = 1;
+                while(id <= size) {
+                    Node node = new Node(id++, root, 0);
+                    root.children.add(node);
+                    if(id % 5 == 0) {
+                        for(int j = 0; j < 3 && id <= size; j++)
+                            node.children.add(new Node(id++, node, 1));
+                    }
+                }
+                serialized = AstridOrderedListUpdater.serializeTree(root);
+            }
+
+            @Override
+            public void run() {
+                Node root = AstridOrderedListUpdater.buildTreeModel(serialized, null);
+                sink += AstridOrderedListUpdater.serializeTree(root).length();
+            }
+        });
+    }
+
+    private static String rule(Frequency frequency, int interval, Weekday... days) {
+        RRule rrule = new RRule();
+        rrule.setFreq(frequency);
+        rrule.setInterval(interval);
+        ArrayList<WeekdayNum> byDay = new ArrayList<WeekdayNum>();
+        for(Weekday day : days)
+            byDay.add(new WeekdayNum(0, day));
+        rrule.setByDay(byDay);
+        return rrule.toIcal();
+    }
+}
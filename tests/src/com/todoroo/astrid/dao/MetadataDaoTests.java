@@ -5,9 +5,11 @@
  */
 package com.todoroo.astrid.dao;
 
+import com.todoroo.andlib.data.DatabaseDao.CursorReader;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Field;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
 import com.todoroo.astrid.data.Metadata;
@@ -192,4 +194,52 @@ public class MetadataDaoTests extends DatabaseTestCase {
         cursor.close();
     }
 
+    /**
+     * Test that cached query results are reused until the table changes
+     */
+    public void testQueryCached() throws Exception {
+        CursorReader<Metadata, Integer> countReader = new CursorReader<Metadata, Integer>() {
+            @Override
+            public Integer read(TodorooCursor<Metadata> cursor) {
+                readCount++;
+                return cursor.getCount();
+            }
+        };
+
+        readCount = 0;
+        assertEquals(0, metadataDao.queryCached(Query.select(Metadata.ID), countReader).intValue());
+        assertEquals(0, metadataDao.queryCached(Query.select(Metadata.ID), countReader).intValue());
+        assertEquals(1, readCount);
+
+        Metadata metadata = new Metadata();
+        metadata.setValue(Metadata.KEY, "cache");
+        assertTrue(metadataDao.persist(metadata));
+        assertEquals(1, metadataDao.queryCached(Query.select(Metadata.ID), countReader).intValue());
+        assertEquals(2, readCount);
+    }
+
+    /**
+     * Test that queries reading the current time other than through
+     * Functions.now() are never cached
+     */
+    public void testTimeDependentQueryNotCached() throws Exception {
+        CursorReader<Metadata, Integer> countReader = new CursorReader<Metadata, Integer>() {
+            @Override
+            public Integer read(TodorooCursor<Metadata> cursor) {
+                readCount++;
+                return cursor.getCount();
+            }
+        };
+
+        readCount = 0;
+        Field localNow = Field.field("(strftime('%s','now','localtime')*1000)");
+        Query query = Query.select(Metadata.ID).where(Metadata.CREATION_DATE.lt(localNow));
+        assertEquals(0, metadataDao.queryCached(query, countReader).intValue());
+        query = Query.select(Metadata.ID).where(Metadata.CREATION_DATE.lt(localNow));
+        assertEquals(0, metadataDao.queryCached(query, countReader).intValue());
+        assertEquals(2, readCount);
+    }
+
+    private int readCount;
+
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.List;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.data.PendingPush;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+public class PendingPushDaoTests extends DatabaseTestCase {
+
+    private static final long DELAY = 60 * 1000L;
+
+    @Autowired
+    PendingPushDao pendingPushDao;
+
+    public void testFailuresAreCoalescedPerItem() {
+        assertEquals(0, pendingPushDao.getNextAttempt());
+
+        pendingPushDao.schedule(PendingPush.TYPE_TASK, 1, DELAY);
+        pendingPushDao.schedule(PendingPush.TYPE_TASK, 1, DELAY);
+        pendingPushDao.schedule(PendingPush.TYPE_TAG, 1, DELAY);
+
+        List<PendingPush> pushes = pendingPushDao.getDue(Long.MAX_VALUE, 10);
+        assertEquals(2, pushes.size());
+        for(PendingPush push : pushes)
+            assertEquals(1, push.getValue(PendingPush.ATTEMPTS).intValue());
+        assertTrue(pendingPushDao.getNextAttempt() > DateUtilities.now());
+        assertEquals(0, pendingPushDao.getDue(DateUtilities.now(), 10).size());
+    }
+
+    public void testBackoffDoublesWhenRetryFails() {
+        pendingPushDao.schedule(PendingPush.TYPE_TASK, 1, DELAY);
+        makeDue();
+
+        long before = DateUtilities.now();
+        pendingPushDao.schedule(PendingPush.TYPE_TASK, 1, DELAY);
+
+        PendingPush push = pendingPushDao.getDue(Long.MAX_VALUE, 10).get(0);
+        assertEquals(2, push.getValue(PendingPush.ATTEMPTS).intValue());
+        assertTrue(push.getValue(PendingPush.NEXT_ATTEMPT) >= before + 2 * DELAY);
+    }
+
+    public void testRetriedPushIsRemovedUnlessRescheduled() {
+        pendingPushDao.schedule(PendingPush.TYPE_TASK, 1, DELAY);
+        pendingPushDao.schedule(PendingPush.TYPE_UPDATE, 2, DELAY);
+        makeDue();
+
+        long passStart = DateUtilities.now();
+        List<PendingPush> due = pendingPushDao.getDue(passStart, 10);
+        assertEquals(2, due.size());
+
+        // the update fails again while it is retried
+        pendingPushDao.schedule(PendingPush.TYPE_UPDATE, 2, DELAY);
+        for(PendingPush push : due)
+            pendingPushDao.removeIfDue(push.getId(), passStart);
+
+        List<PendingPush> left = pendingPushDao.getDue(Long.MAX_VALUE, 10);
+        assertEquals(1, left.size());
+        assertEquals(PendingPush.TYPE_UPDATE, left.get(0).getValue(PendingPush.TYPE).intValue());
+        assertEquals(2L, left.get(0).getValue(PendingPush.ITEM).longValue());
+    }
+
+    private void makeDue() {
+        PendingPush template = new PendingPush();
+        template.setValue(PendingPush.NEXT_ATTEMPT, DateUtilities.now() - 1);
+        pendingPushDao.update(PendingPush.ID.gt(0), template);
+    }
+
+}
@@ -5,7 +5,9 @@
  */
 package com.todoroo.astrid.dao;
 
+import com.todoroo.andlib.data.DatabaseDao.CursorReader;
 import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.QueryResultCache;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.sql.Order;
@@ -226,6 +228,70 @@ public class TaskDaoTests extends DatabaseTestCase {
         cursor.close();
     }
 
+    /**
+     * Test that sqlite's current time is bound to the start of the minute
+     */
+    public void testBindNowTruncatesToMinute() throws Exception {
+        String sql = Query.select(IDS).from(Task.TABLE).where(TaskCriteria.activeAndVisible()).toString();
+        long minute = 1350650400000L;
+        String bound = QueryResultCache.bindNow(sql, minute + 59999);
+        assertEquals(bound, QueryResultCache.bindNow(sql, minute));
+        assertTrue(bound.contains("1350650400*1000"));
+        assertFalse(QueryResultCache.isTimeDependent(bound));
+        assertFalse(bound.equals(QueryResultCache.bindNow(sql, minute + 60000)));
+
+        String other = "SELECT * FROM tasks WHERE created < strftime('%s','now','localtime')";
+        assertEquals(other, QueryResultCache.bindNow(other, minute));
+        assertTrue(QueryResultCache.isTimeDependent(other));
+    }
+
+    /**
+     * Test that repeated counts of active and visible tasks are cached
+     * within a minute and rerun after a write
+     */
+    public void testActiveAndVisibleCountIsCached() throws Exception {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "visible");
+        assertTrue(taskDao.save(task));
+        task = new Task();
+        task.setValue(Task.TITLE, "hidden");
+        task.setValue(Task.HIDE_UNTIL, DateUtilities.now() + DateUtilities.ONE_DAY);
+        assertTrue(taskDao.save(task));
+
+        // the two queries must bind the same minute, retry if one passed
+        for(int attempt = 0; ; attempt++) {
+            long minute = DateUtilities.now() / DateUtilities.ONE_MINUTE;
+            readCount = 0;
+            assertEquals(1, countActiveAndVisible());
+            assertEquals(1, countActiveAndVisible());
+            if(DateUtilities.now() / DateUtilities.ONE_MINUTE == minute) {
+                assertEquals(1, readCount);
+                break;
+            }
+            assertTrue(attempt < 2);
+        }
+
+        task = new Task();
+        task.setValue(Task.TITLE, "another");
+        assertTrue(taskDao.save(task));
+        readCount = 0;
+        assertEquals(2, countActiveAndVisible());
+        assertEquals(1, readCount);
+    }
+
+    private int countActiveAndVisible() {
+        return taskDao.queryCached(Query.select(IDS).where(TaskCriteria.activeAndVisible()),
+                new CursorReader<Task, Integer>() {
+            @Override
+            public Integer read(TodorooCursor<Task> cursor) {
+                readCount++;
+                return cursor.getCount();
+            }
+        });
+    }
+
+    private int readCount;
+
     // TODO check eventing
 }
 
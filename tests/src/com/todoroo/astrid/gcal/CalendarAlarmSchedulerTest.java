@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.gcal;
+
+import java.util.HashMap;
+
+import android.test.AndroidTestCase;
+
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.gcal.CalendarAlarmScheduler.AlarmChanges;
+
+/**
+ * Checks which event alarms a scheduling run sets and cancels
+ */
+public class CalendarAlarmSchedulerTest extends AndroidTestCase {
+
+    private static final long NOW = 1000 * DateUtilities.ONE_HOUR;
+
+    private final HashMap<Long, Long> scheduled = new HashMap<Long, Long>();
+    private final HashMap<Long, Long> current = new HashMap<Long, Long>();
+
+    public void testAddedEventIsSet() {
+        scheduled.put(1L, NOW + DateUtilities.ONE_HOUR);
+        current.put(1L, NOW + DateUtilities.ONE_HOUR);
+        current.put(2L, NOW + 2 * DateUtilities.ONE_HOUR);
+
+        AlarmChanges changes = CalendarAlarmScheduler.diff(scheduled, current, NOW);
+        assertEquals(1, changes.set.size());
+        assertEquals(NOW + 2 * DateUtilities.ONE_HOUR, changes.set.get(2L).longValue());
+        assertTrue(changes.cancel.isEmpty());
+    }
+
+    public void testMovedEventIsSetAgain() {
+        scheduled.put(1L, NOW + DateUtilities.ONE_HOUR);
+        current.put(1L, NOW + 3 * DateUtilities.ONE_HOUR);
+
+        AlarmChanges changes = CalendarAlarmScheduler.diff(scheduled, current, NOW);
+        assertEquals(NOW + 3 * DateUtilities.ONE_HOUR, changes.set.get(1L).longValue());
+        assertTrue(changes.cancel.isEmpty());
+    }
+
+    public void testUnchangedEventIsLeftAlone() {
+        scheduled.put(1L, NOW + DateUtilities.ONE_HOUR);
+        current.put(1L, NOW + DateUtilities.ONE_HOUR);
+
+        AlarmChanges changes = CalendarAlarmScheduler.diff(scheduled, current, NOW);
+        assertTrue(changes.set.isEmpty());
+        assertTrue(changes.cancel.isEmpty());
+    }
+
+    public void testRemovedEventIsCancelled() {
+        scheduled.put(1L, NOW + DateUtilities.ONE_HOUR);
+        scheduled.put(2L, NOW + 2 * DateUtilities.ONE_HOUR);
+        current.put(2L, NOW + 2 * DateUtilities.ONE_HOUR);
+
+        AlarmChanges changes = CalendarAlarmScheduler.diff(scheduled, current, NOW);
+        assertTrue(changes.set.isEmpty());
+        assertEquals(1, changes.cancel.size());
+        assertEquals(1L, changes.cancel.get(0).longValue());
+    }
+
+    public void testEventStartingSoonIsNotCancelled() {
+        // left the window because its alarm has gone off already
+        scheduled.put(1L, NOW + DateUtilities.ONE_MINUTE * 5);
+
+        AlarmChanges changes = CalendarAlarmScheduler.diff(scheduled, current, NOW);
+        assertTrue(changes.cancel.isEmpty());
+    }
+
+    public void testNothingScheduledSetsAll() {
+        current.put(1L, NOW + DateUtilities.ONE_HOUR);
+        current.put(2L, NOW + 2 * DateUtilities.ONE_HOUR);
+
+        AlarmChanges changes = CalendarAlarmScheduler.diff(scheduled, current, NOW);
+        assertEquals(current, changes.set);
+    }
+
+    public void testBootDetection() {
+        long boot = NOW - DateUtilities.ONE_DAY;
+        assertTrue(CalendarAlarmScheduler.isSameBoot(boot, boot + 1000));
+        assertTrue(CalendarAlarmScheduler.isSameBoot(boot, boot - 1000));
+        assertFalse(CalendarAlarmScheduler.isSameBoot(boot, boot + DateUtilities.ONE_HOUR));
+        assertFalse(CalendarAlarmScheduler.isSameBoot(0, boot));
+    }
+
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.producteev.sync;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.RestClient;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.Preferences;
+import com.todoroo.astrid.core.PluginServices;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.notes.NoteMetadata;
+import com.todoroo.astrid.producteev.ProducteevUtilities;
+import com.todoroo.astrid.producteev.api.ProducteevInvoker;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+/**
+ * Runs the Producteev sync provider against a local stub of the
+ * Producteev endpoints
+ */
+@SuppressWarnings("nls")
+public class ProducteevSyncProviderTest extends DatabaseTestCase {
+
+    private static final String SERVER_TIME = "Sun, 01 Jan 2012 10:00:00 +0000";
+
+    private static final String TASK = task(11, "milk", "");
+
+    private static final String NOTE = "{\"note\":{\"id_note\":5,\"id_creator\":7," +
+            "\"message\":\"buy more\",\"time_create\":\"" + SERVER_TIME + "\",\"deleted\":0}}";
+
+    private StubProducteev server;
+    private ProducteevSyncProvider provider;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new StubProducteev();
+        ProducteevInvoker invoker = new ProducteevInvoker("key", "secret", server);
+        invoker.setCredentials("token", "email", "password");
+        provider = new ProducteevSyncProvider(invoker);
+
+        Preferences.setString(ProducteevUtilities.PREF_SERVER_LAST_SYNC, null);
+        ProducteevUtilities.INSTANCE.setDashboardLastSync(1, null);
+    }
+
+    public void testUnchangedTaskIsNotTransmitted() throws Exception {
+        server.responses.put("tasks/view.json", TASK);
+        ProducteevTaskContainer local = pullTask();
+        ProducteevTaskContainer remote = pullTask();
+        server.requests.clear();
+
+        provider.push(local, remote);
+
+        assertEquals(0, server.requests.size());
+    }
+
+    public void testOnlyChangedFieldIsTransmitted() throws Exception {
+        server.responses.put("tasks/view.json", TASK);
+        ProducteevTaskContainer local = pullTask();
+        ProducteevTaskContainer remote = pullTask();
+        local.task.setValue(Task.TITLE, "cheese");
+        server.requests.clear();
+
+        provider.push(local, remote);
+
+        assertEquals(2, server.requests.size());
+        assertTrue(server.requests.get(0).contains("tasks/set_title.json"));
+        assertTrue(server.requests.get(0).contains("title=cheese"));
+        assertTrue(server.requests.get(1).contains("tasks/view.json"));
+    }
+
+    public void testSecondSyncOnlyFetchesDeltas() throws Exception {
+        server.responses.put("users/view.json", "{\"user\":{\"default_dashboard\":1,\"id_user\":7}}");
+        server.responses.put("time.json", "{\"time\":{\"value\":\"" + SERVER_TIME + "\"}}");
+        server.responses.put("dashboards/show_list.json", "{\"dashboards\":[{\"dashboard\":" +
+                "{\"id_dashboard\":1,\"title\":\"work\",\"deleted\":0,\"accesslist\":[]}}]}");
+        server.responses.put("tasks/show_list.json", "{\"tasks\":[]}");
+
+        provider.performSync();
+        String first = server.find("tasks/show_list.json");
+        assertNotNull(first);
+        assertFalse(first, first.contains("since="));
+        assertEquals(SERVER_TIME, ProducteevUtilities.INSTANCE.getDashboardLastSync(1));
+
+        server.requests.clear();
+        provider.performSync();
+        String second = server.find("tasks/show_list.json");
+        assertNotNull(second);
+        assertTrue(second, second.contains("since=" + URLEncoder.encode(SERVER_TIME, "UTF-8")));
+    }
+
+    public void testNotesAreReplacedWhenWrittenNotWhenParsed() throws Exception {
+        server.responses.put("tasks/view.json", task(11, "milk", NOTE));
+        Metadata note = new Metadata();
+        note.setValue(Metadata.KEY, NoteMetadata.METADATA_KEY);
+        note.setValue(Metadata.TASK, 1L);
+        note.setValue(NoteMetadata.EXT_ID, "5");
+        note.setValue(NoteMetadata.BODY, "old");
+        PluginServices.getMetadataService().save(note);
+
+        ProducteevTaskContainer remote = pullTask();
+        assertEquals(1, countNotes("old"));
+
+        provider.write(remote);
+        assertEquals(0, countNotes("old"));
+        assertEquals(1, countNotes("buy more"));
+    }
+
+    public void testConcurrentPushesMergingWithOneRemoteTask() throws Exception {
+        server.responses.put("users/view.json", "{\"user\":{\"default_dashboard\":1,\"id_user\":7}}");
+        server.responses.put("time.json", "{\"time\":{\"value\":\"" + SERVER_TIME + "\"}}");
+        server.responses.put("dashboards/show_list.json", "{\"dashboards\":[{\"dashboard\":" +
+                "{\"id_dashboard\":1,\"title\":\"work\",\"deleted\":0,\"accesslist\":[]}}]}");
+        server.responses.put("tasks/show_list.json", "{\"tasks\":[" + TASK + "]}");
+        for(long id = 11; id <= 14; id++)
+            server.tasks.put(id, task(id, "milk", ""));
+
+        // two local tasks merge with remote task 11, the others are pulled
+        Task first = createLocal(11, "first");
+        Task second = createLocal(11, "second");
+        Task third = createLocal(13, "third");
+        Task fourth = createLocal(14, "fourth");
+        ProducteevUtilities.INSTANCE.recordSuccessfulSync();
+        long lastSync = ProducteevUtilities.INSTANCE.getLastSyncDate();
+        for(Task task : new Task[] { first, second, third, fourth }) {
+            task.setValue(Task.MODIFICATION_DATE, lastSync + 1000);
+            PluginServices.getTaskService().save(task);
+        }
+        server.requests.clear();
+
+        provider.performSync();
+
+        // the second merge is pushed against the result of the first
+        ArrayList<String> titles = setTitleRequests(11);
+        assertEquals(2, titles.size());
+        assertTrue(titles.get(0), titles.get(0).contains("title=first"));
+        assertTrue(titles.get(1), titles.get(1).contains("title=second"));
+        assertEquals(1, setTitleRequests(13).size());
+        assertEquals(1, setTitleRequests(14).size());
+
+        assertEquals("third", fetchTitle(third));
+        assertEquals("fourth", fetchTitle(fourth));
+    }
+
+    private static String task(long id, String title, String notes) {
+        return "{\"task\":{\"id_task\":" + id + ",\"id_dashboard\":1," +
+            "\"id_responsible\":7,\"id_creator\":7,\"title\":\"" + title + "\"," +
+            "\"time_created\":\"" + SERVER_TIME + "\",\"status\":1,\"deleted\":0," +
+            "\"deadline\":\"\",\"star\":2,\"labels\":[],\"notes\":[" + notes + "]}}";
+    }
+
+    private Task createLocal(long remoteId, String title) {
+        Task task = new Task();
+        task.setValue(Task.TITLE, title);
+        task.setValue(Task.IMPORTANCE, 3);
+        Metadata pdvTask = ProducteevTask.newMetadata();
+        pdvTask.setValue(ProducteevTask.ID, remoteId);
+        pdvTask.setValue(ProducteevTask.DASHBOARD_ID, 1L);
+        pdvTask.setValue(ProducteevTask.RESPONSIBLE_ID, 7L);
+        pdvTask.setValue(ProducteevTask.CREATOR_ID, 7L);
+        ProducteevDataService.getInstance().saveTaskAndMetadata(
+                new ProducteevTaskContainer(task, new ArrayList<Metadata>(), pdvTask));
+        return task;
+    }
+
+    private ArrayList<String> setTitleRequests(long remoteId) {
+        ArrayList<String> found = new ArrayList<String>();
+        for(String request : server.findAll("tasks/set_title.json"))
+            if(request.contains("id_task=" + remoteId + "&"))
+                found.add(request);
+        return found;
+    }
+
+    private String fetchTitle(Task task) {
+        return PluginServices.getTaskService().fetchById(task.getId(), Task.TITLE).getValue(Task.TITLE);
+    }
+
+    private int countNotes(String body) {
+        TodorooCursor<Metadata> cursor = PluginServices.getMetadataService().query(Query.select(Metadata.ID).
+                where(Criterion.and(Metadata.KEY.eq(NoteMetadata.METADATA_KEY),
+                        NoteMetadata.EXT_ID.eq("5"), NoteMetadata.BODY.eq(body))));
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private ProducteevTaskContainer pullTask() throws IOException {
+        ProducteevTaskContainer container = new ProducteevTaskContainer(new Task(),
+                new ArrayList<Metadata>(), (Metadata) null);
+        container.pdvTask.setValue(ProducteevTask.ID, 11L);
+        return provider.pull(container);
+    }
+
+    /**
+     * Answers every request with the canned response for its method,
+     * an empty object if there is none
+     */
+    private static class StubProducteev implements RestClient {
+        private static final String HOST = "api.producteev.com/";
+
+        final ArrayList<String> requests = new ArrayList<String>();
+        final HashMap<String, String> responses = new HashMap<String, String>();
+        /** tasks/view.json responses by task id, if any */
+        final HashMap<Long, String> tasks = new HashMap<Long, String>();
+
+        public synchronized String get(String url) throws IOException {
+            requests.add(url);
+            int start = url.indexOf(HOST) + HOST.length();
+            String method = url.substring(start, url.indexOf('?', start));
+            String response = responses.get(method);
+            if("tasks/view.json".equals(method) && !tasks.isEmpty())
+                response = tasks.get(Long.valueOf(url.replaceAll(".*[?&]id_task=(\\d+).*", "$1")));
+            return response == null ? "{}" : response;
+        }
+
+        public String post(String url, HttpEntity data, Header... headers) throws IOException {
+            return get(url);
+        }
+
+        synchronized String find(String method) {
+            ArrayList<String> found = findAll(method);
+            return found.isEmpty() ? null : found.get(0);
+        }
+
+        synchronized ArrayList<String> findAll(String method) {
+            ArrayList<String> found = new ArrayList<String>();
+            for(String request : requests)
+                if(request.contains(HOST + method))
+                    found.add(request);
+            return found;
+        }
+    }
+
+}
@@ -5,10 +5,18 @@
  */
 package com.todoroo.astrid.provider;
 
+import java.util.ArrayList;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
 
 import com.todoroo.andlib.data.Property.IntegerProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
@@ -16,6 +24,7 @@ import com.todoroo.astrid.api.AstridApiConstants;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.StoreObject;
 import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.data.TaskApiDao;
 import com.todoroo.astrid.test.DatabaseTestCase;
 
 public class Astrid3ProviderTests extends DatabaseTestCase {
@@ -351,4 +360,122 @@ public class Astrid3ProviderTests extends DatabaseTestCase {
         assertEquals(20, cursor.getInt(0));
     }
 
+    /** Test inserting many rows with one call */
+    public void testBulkInsert() throws Exception {
+        ContentResolver resolver = getContext().getContentResolver();
+        CountingObserver observer = CountingObserver.create();
+        resolver.registerContentObserver(Task.CONTENT_URI, true, observer);
+        try {
+            ContentValues[] rows = new ContentValues[100];
+            for(int i = 0; i < rows.length; i++) {
+                rows[i] = new ContentValues();
+                rows[i].put(Task.TITLE.name, "task " + i);
+            }
+            assertEquals(100, resolver.bulkInsert(Task.CONTENT_URI, rows));
+
+            Cursor cursor = resolver.query(Task.CONTENT_URI, PROJECTION, null, null, null);
+            assertEquals(100, cursor.getCount());
+            cursor.close();
+
+            // one notification from the provider, one from the database listener
+            Thread.sleep(500);
+            assertTrue("notified " + observer.changes + " times", observer.changes <= 2);
+        } finally {
+            resolver.unregisterContentObserver(observer);
+            observer.quit();
+        }
+    }
+
+    /** Test applying a batch with back references */
+    public void testApplyBatch() throws Exception {
+        ContentResolver resolver = getContext().getContentResolver();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(Task.CONTENT_URI).
+                withValue(Task.TITLE.name, "hot dog").build());
+        operations.add(ContentProviderOperation.newInsert(Metadata.CONTENT_URI).
+                withValue(Metadata.KEY.name, "tags").
+                withValue(Metadata.VALUE1.name, "food").
+                withValueBackReference(Metadata.TASK.name, 0).build());
+        ContentProviderResult[] results = resolver.applyBatch(AstridApiConstants.API_PACKAGE, operations);
+
+        assertEquals(2, results.length);
+        long taskId = Long.parseLong(results[0].uri.getLastPathSegment());
+        Cursor cursor = resolver.query(Metadata.CONTENT_URI, new String[] { Metadata.TASK.name },
+                null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(taskId, cursor.getLong(0));
+        cursor.close();
+    }
+
+    /** Test that a failing batch is rolled back */
+    public void testApplyBatchRollback() throws Exception {
+        ContentResolver resolver = getContext().getContentResolver();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(Task.CONTENT_URI).
+                withValue(Task.TITLE.name, "hot dog").build());
+        operations.add(ContentProviderOperation.newAssertQuery(Task.CONTENT_URI).
+                withExpectedCount(5).build());
+        try {
+            resolver.applyBatch(AstridApiConstants.API_PACKAGE, operations);
+            fail("expected exception");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+
+        Cursor cursor = resolver.query(Task.CONTENT_URI, PROJECTION, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    /** Test saving a mix of new and existing models through the dao */
+    public void testDaoSaveAll() {
+        TaskApiDao dao = new TaskApiDao(getContext());
+        Task existing = new Task();
+        existing.setValue(Task.TITLE, "existing");
+        dao.save(existing);
+
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        existing.setValue(Task.TITLE, "renamed");
+        tasks.add(existing);
+        for(int i = 0; i < 3; i++) {
+            Task task = new Task();
+            task.setValue(Task.TITLE, "new " + i);
+            tasks.add(task);
+        }
+        assertEquals(4, dao.saveAll(tasks));
+
+        for(Task task : tasks)
+            assertTrue(task.isSaved());
+        assertEquals("renamed", dao.fetch(existing.getId(), Task.TITLE).getValue(Task.TITLE));
+        assertEquals("new 2", dao.fetch(tasks.get(3).getId(), Task.TITLE).getValue(Task.TITLE));
+    }
+
+    private static class CountingObserver extends ContentObserver {
+        private final HandlerThread thread;
+        volatile int changes = 0;
+
+        public static CountingObserver create() {
+            HandlerThread thread = new HandlerThread("observer");
+            thread.start();
+            return new CountingObserver(thread);
+        }
+
+        private CountingObserver(HandlerThread thread) {
+            super(new Handler(thread.getLooper()));
+            this.thread = thread;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            changes++;
+        }
+
+        public void quit() {
+            thread.getLooper().quit();
+        }
+    }
+
 }
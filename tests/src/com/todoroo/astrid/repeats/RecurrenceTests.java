@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.repeats;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.google.ical.iter.RecurrenceIterator;
+import com.google.ical.iter.RecurrenceIteratorFactory;
+import com.google.ical.values.DateValue;
+import com.google.ical.values.DateValueImpl;
+import com.todoroo.andlib.test.TodorooTestCase;
+import com.todoroo.andlib.utility.DateUtilities;
+
+@SuppressWarnings("nls")
+public class RecurrenceTests extends TodorooTestCase {
+
+    private static final String[] RULES = new String[] {
+        "RRULE:FREQ=DAILY;INTERVAL=1",
+        "RRULE:FREQ=DAILY;INTERVAL=3",
+        "RRULE:FREQ=WEEKLY;INTERVAL=1",
+        "RRULE:FREQ=WEEKLY;INTERVAL=1;BYDAY=MO,WE,FR",
+        "RRULE:FREQ=WEEKLY;INTERVAL=2;BYDAY=TU,SU",
+        "RRULE:FREQ=WEEKLY;INTERVAL=3;BYDAY=SA;WKST=SU",
+        "RRULE:FREQ=MONTHLY;INTERVAL=1",
+        "RRULE:FREQ=MONTHLY;INTERVAL=2",
+        "RRULE:FREQ=YEARLY;INTERVAL=1",
+    };
+
+    public void testParsedRulesAreCached() throws ParseException {
+        Recurrence rule = Recurrence.parse(RULES[3]);
+        assertSame(rule, Recurrence.parse(RULES[3]));
+        assertEquals(3, rule.getWeekdays().length);
+    }
+
+    public void testArithmeticMatchesIterator() throws ParseException {
+        Date start = new Date(111, 0, 1, 12, 0, 0);
+        for(String rule : RULES) {
+            Recurrence recurrence = Recurrence.parse(rule);
+            for(int day = 0; day < 400; day++) {
+                Date original = new Date(start.getTime() + day * DateUtilities.ONE_DAY);
+                original.setHours(12);
+                Date next = recurrence.nextOccurrence(original);
+                assertNotNull(rule, next);
+                assertEquals(rule + " from " + original, iterate(recurrence, original), next);
+            }
+        }
+    }
+
+    public void testComplexRulesAreIterated() throws ParseException {
+        Date now = new Date();
+        assertNull(Recurrence.parse("RRULE:FREQ=MONTHLY;BYDAY=2TU").nextOccurrence(now));
+        assertNull(Recurrence.parse("RRULE:FREQ=DAILY;COUNT=5").nextOccurrence(now));
+        assertNull(Recurrence.parse("RRULE:FREQ=YEARLY;BYMONTH=3").nextOccurrence(now));
+    }
+
+    private Date iterate(Recurrence recurrence, Date original) {
+        DateValue start = new DateValueImpl(original.getYear() + 1900,
+                original.getMonth() + 1, original.getDate());
+        RecurrenceIterator iterator = RecurrenceIteratorFactory.createRecurrenceIterator(
+                recurrence.getRRule(), start, TimeZone.getDefault());
+        while(iterator.hasNext()) {
+            DateValue next = iterator.next();
+            if(next.compareTo(start) > 0)
+                return new Date(next.year() - 1900, next.month() - 1, next.day(), 12, 0, 0);
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.Preferences;
+import com.todoroo.astrid.dao.MetadataDao;
+import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.tags.TagService;
+import com.todoroo.astrid.test.DatabaseTestCase;
+import com.todoroo.astrid.utility.AstridPreferences;
+
+public class MetadataServiceTests extends DatabaseTestCase {
+
+    private static final String KEY = "sync-test";
+
+    @Autowired
+    MetadataDao metadataDao;
+
+    @Autowired
+    MetadataService metadataService;
+
+    /**
+     * Test that bulk synchronization keeps matching rows, removes stale
+     * rows and inserts new ones for every task
+     */
+    public void testBulkSynchronize() throws Exception {
+        Metadata keep = createMetadata(1, "keep");
+        Metadata stale = createMetadata(1, "stale");
+        Metadata unchanged = createMetadata(2, "same");
+        Metadata otherKey = createMetadata(3, "other");
+        otherKey.setValue(Metadata.KEY, "other-key");
+        assertTrue(metadataDao.persist(keep));
+        assertTrue(metadataDao.persist(stale));
+        assertTrue(metadataDao.persist(unchanged));
+        assertTrue(metadataDao.persist(otherKey));
+
+        HashMap<Long, ArrayList<Metadata>> metadataByTask = new HashMap<Long, ArrayList<Metadata>>();
+        ArrayList<Metadata> task1 = new ArrayList<Metadata>();
+        task1.add(createMetadata(1, "keep"));
+        task1.add(createMetadata(1, "new"));
+        metadataByTask.put(1L, task1);
+        ArrayList<Metadata> task2 = new ArrayList<Metadata>();
+        task2.add(createMetadata(2, "same"));
+        metadataByTask.put(2L, task2);
+        metadataByTask.put(3L, new ArrayList<Metadata>());
+
+        Set<Long> changed = metadataService.synchronizeMetadata(metadataByTask,
+                MetadataCriteria.withKey(KEY), null);
+        assertEquals(1, changed.size());
+        assertTrue(changed.contains(1L));
+
+        assertNotNull(metadataDao.fetch(keep.getId(), Metadata.ID));
+        assertNull(metadataDao.fetch(stale.getId(), Metadata.ID));
+        assertNotNull(metadataDao.fetch(unchanged.getId(), Metadata.ID));
+        assertNotNull(metadataDao.fetch(otherKey.getId(), Metadata.ID));
+
+        TodorooCursor<Metadata> cursor = metadataDao.query(Query.select(Metadata.VALUE1).where(
+                MetadataCriteria.byTaskAndwithKey(1, KEY)));
+        try {
+            assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Test that tags written by bulk synchronization still count as the
+     * user's first list, as they do when written through persist
+     */
+    public void testBulkSynchronizeReportsFirstList() throws Exception {
+        Preferences.setBoolean(AstridPreferences.P_FIRST_LIST, true);
+
+        HashMap<Long, ArrayList<Metadata>> metadataByTask = new HashMap<Long, ArrayList<Metadata>>();
+        ArrayList<Metadata> tags = new ArrayList<Metadata>();
+        Metadata tag = createMetadata(1, "list");
+        tag.setValue(Metadata.KEY, TagService.KEY);
+        tags.add(tag);
+        metadataByTask.put(1L, tags);
+
+        metadataService.synchronizeMetadata(metadataByTask,
+                MetadataCriteria.withKey(TagService.KEY), null);
+        assertFalse(Preferences.getBoolean(AstridPreferences.P_FIRST_LIST, true));
+    }
+
+    private Metadata createMetadata(long taskId, String value) {
+        Metadata metadata = new Metadata();
+        metadata.setValue(Metadata.TASK, taskId);
+        metadata.setValue(Metadata.KEY, KEY);
+        metadata.setValue(Metadata.VALUE1, value);
+        return metadata;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.todoroo.andlib.test.TodorooTestCase;
+
+@SuppressWarnings("nls")
+public class StartupGraphTest extends TodorooTestCase {
+
+    private final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testDependenciesRunFirst() throws Exception {
+        StartupGraph graph = new StartupGraph();
+        graph.add(new RecordingStep("sync", 1, 0, "flags"));
+        graph.add(new RecordingStep("flags", 1, 0));
+        graph.add(new RecordingStep("stats", 1, 0, "sync", "flags"));
+        graph.start(2);
+
+        assertTrue(graph.await(5000));
+        assertEquals("[flags, sync, stats]", order.toString());
+    }
+
+    public void testCriticalPathRunsFirst() throws Exception {
+        StartupGraph graph = new StartupGraph();
+        graph.add(new RecordingStep("short", 1, 0));
+        graph.add(new RecordingStep("gate", 1, 0));
+        graph.add(new RecordingStep("gated", 2, 0, "gate"));
+        graph.add(new RecordingStep("long", 1, 0));
+        graph.add(new RecordingStep("long-tail", 10, 0, "long"));
+        graph.start(1);
+
+        assertTrue(graph.await(5000));
+        assertEquals("[long, long-tail, gate, gated, short]", order.toString());
+    }
+
+    public void testDeferredStepsWaitForRelease() throws Exception {
+        StartupGraph graph = new StartupGraph();
+        graph.add(new RecordingStep("critical", 1, 0));
+        graph.add(new RecordingStep("later", 1, StartupGraph.DEFERRED));
+        graph.start(2);
+
+        assertFalse(graph.await(300));
+        assertEquals("[critical]", order.toString());
+
+        graph.releaseDeferred();
+        assertTrue(graph.await(5000));
+        assertEquals("[critical, later]", order.toString());
+        assertTrue(graph.getReport(), graph.getReport().contains("later: "));
+    }
+
+    public void testUiStepRunsAfterDependency() throws Exception {
+        StartupGraph graph = new StartupGraph();
+        graph.add(new RecordingStep("background", 1, 0));
+        graph.add(new RecordingStep("dialog", 1, StartupGraph.UI_THREAD, "background"));
+        graph.start(2);
+
+        assertTrue(graph.await(5000));
+        assertEquals("[background, dialog]", order.toString());
+    }
+
+    public void testFailingStepDoesNotBlockDependents() throws Exception {
+        StartupGraph graph = new StartupGraph();
+        graph.add(new StartupGraph.Step("broken", 1, 0) {
+            @Override
+            public void run() {
+                throw new IllegalStateException("broken");
+            }
+        });
+        graph.add(new RecordingStep("after", 1, 0, "broken"));
+        graph.start(1);
+
+        assertTrue(graph.await(5000));
+        assertEquals("[after]", order.toString());
+        assertTrue(graph.getReport().contains("[failed]"));
+    }
+
+    public void testFinishedListenerIsCalled() throws Exception {
+        StartupGraph graph = new StartupGraph();
+        graph.add(new RecordingStep("only", 1, 0));
+        final CountDownLatch finished = new CountDownLatch(1);
+        graph.setOnFinished(new Runnable() {
+            public void run() {
+                order.add("finished");
+                finished.countDown();
+            }
+        });
+        graph.start(1);
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals("[only, finished]", order.toString());
+    }
+
+    public void testUnknownDependencyIsRejected() {
+        StartupGraph graph = new StartupGraph();
+        graph.add(new RecordingStep("orphan", 1, 0, "missing"));
+        try {
+            graph.start(1);
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private class RecordingStep extends StartupGraph.Step {
+        public RecordingStep(String name, int cost, int flags, String... dependencies) {
+            super(name, cost, flags, dependencies);
+        }
+
+        @Override
+        public void run() {
+            order.add(name);
+        }
+    }
+
+}
@@ -155,6 +155,22 @@ public class TitleParserTest extends DatabaseTestCase {
       }
   }
 
+  /** with several times of day, the last one in declaration order wins */
+  public void testDayTimesMatchedByMoreThanOneRule() {
+      TaskService taskService = new TaskService();
+      Task task = new Task();
+      String[] testTitles = {
+              "Jog at breakfast or lunch",
+              "Jog at lunch or breakfast"
+      };
+      for (String testTitle : testTitles) {
+          insertTitleAddTask(testTitle, task, taskService);
+          Date date = new Date(task.getValue(Task.DUE_DATE));
+          assertEquals(testTitle, 12, date.getHours());
+          assertEquals(testTitle, 0, date.getMinutes());
+      }
+  }
+
   private void insertTitleAddTask(String title, Task task, TaskService taskService) {
       task.clear();
       task.setValue(Task.TITLE, title);
@@ -530,6 +546,26 @@ public class TitleParserTest extends DatabaseTestCase {
         }
     }
 
+    /** titles matched by several repeat rules take the first rule in declaration order */
+    public void testRepeatMatchedByMoreThanOneRule() throws Exception {
+        RRule rrule = new RRule();
+        rrule.setInterval(1);
+        String[][] titles = {
+                { "Jog weekly and monthly", "Jog monthly and weekly" },
+                { "Jog every morning and every week", "Jog every week and every morning" }
+        };
+        Frequency[] frequencies = { Frequency.WEEKLY, Frequency.DAILY };
+        for (int i = 0; i < titles.length; i++) {
+            rrule.setFreq(frequencies[i]);
+            for (String title : titles[i]) {
+                Task task = new Task();
+                task.setValue(Task.TITLE, title);
+                TaskService.createWithValues(task, null, title);
+                assertEquals(title, rrule.toIcal(), task.getValue(Task.RECURRENCE));
+            }
+        }
+    }
+
 //----------------Repeats end----------------//
 
 
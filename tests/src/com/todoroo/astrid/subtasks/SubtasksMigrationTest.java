@@ -13,6 +13,7 @@ public class SubtasksMigrationTest extends SubtasksTestCase {
         super.setUp();
 
         Preferences.clear(SubtasksUpdater.ACTIVE_TASKS_ORDER);
+        new SubtasksMetadataMigration().reset();
     }
 
     /* Starting basic state (see SubtasksTestCase):
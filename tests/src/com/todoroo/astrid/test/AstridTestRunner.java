@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.test;
+
+import android.os.Bundle;
+
+import com.todoroo.astrid.benchmark.BenchmarkTest;
+import com.zutubi.android.junitreport.JUnitReportTestRunner;
+
+/**
+ * Test runner for Astrid's tests. Same as {@link JUnitReportTestRunner}, but
+ * leaves out {@link BenchmarkTest} classes unless they are asked for, since
+ * they take minutes and their timings are not pass/fail results.
+ * <p>
+ * To run the benchmarks, pass <code>-e benchmarks true</code>, or name them
+ * with <code>-e class</code> or <code>-e annotation</code>.
+ */
+@SuppressWarnings("nls")
+public class AstridTestRunner extends JUnitReportTestRunner {
+
+    /** argument that includes the benchmarks in the run */
+    private static final String ARG_BENCHMARKS = "benchmarks";
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        if (arguments == null)
+            arguments = new Bundle();
+        if (!Boolean.parseBoolean(arguments.getString(ARG_BENCHMARKS)) &&
+                arguments.getString("class") == null &&
+                arguments.getString("annotation") == null &&
+                arguments.getString("notAnnotation") == null)
+            arguments.putString("notAnnotation", BenchmarkTest.class.getName());
+        super.onCreate(arguments);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.upgrade;
+
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.dao.TaskDao.TaskCriteria;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.service.ChunkedMigration.ProgressListener;
+import com.todoroo.astrid.service.RowMigration;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class ChunkedMigrationTest extends DatabaseTestCase {
+
+    private static final int TASKS = RowMigration.CHUNK_SIZE * 2 + 100;
+
+    @Autowired TaskDao taskDao;
+
+    private int lastDone, lastTotal;
+
+    private final ProgressListener listener = new ProgressListener() {
+        public void onProgress(int done, int total) {
+            lastDone = done;
+            lastTotal = total;
+        }
+    };
+
+    /**
+     * Renames every task, failing at the given row to simulate the process
+     * dying in the middle of a chunk
+     */
+    private class RenameMigration extends RowMigration<Task> {
+        private final int failAt;
+        int migrated = 0;
+
+        public RenameMigration(int failAt) {
+            super("test_rename", taskDao, TaskCriteria.isActive(), Task.ID, Task.TITLE);
+            this.failAt = failAt;
+        }
+
+        @Override
+        protected Task createModel() {
+            return new Task();
+        }
+
+        @Override
+        protected void migrate(Task task) {
+            if(++migrated == failAt)
+                throw new IllegalStateException("killed");
+            task.setValue(Task.TITLE, "migrated " + task.getValue(Task.TITLE));
+            taskDao.save(task);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        new RenameMigration(0).reset();
+        for(int i = 0; i < TASKS; i++) {
+            Task task = new Task();
+            task.setValue(Task.TITLE, "task " + i);
+            taskDao.save(task);
+        }
+    }
+
+    public void testMigratesAllRowsAndReportsProgress() {
+        RenameMigration migration = new RenameMigration(0);
+        migration.run(listener);
+
+        assertTrue(migration.isDone());
+        assertEquals(TASKS, migration.migrated);
+        assertEquals(TASKS, countMigrated());
+        assertEquals(TASKS, lastDone);
+        assertEquals(TASKS, lastTotal);
+
+        // a completed migration is not run again
+        RenameMigration again = new RenameMigration(0);
+        again.run(listener);
+        assertEquals(0, again.migrated);
+    }
+
+    public void testResumesAfterLastCommittedChunk() {
+        RenameMigration interrupted = new RenameMigration(RowMigration.CHUNK_SIZE + 10);
+        try {
+            interrupted.run(listener);
+            fail("expected the migration to be interrupted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertFalse(interrupted.isDone());
+
+        // the failed chunk was rolled back, the one before it was kept
+        assertEquals(RowMigration.CHUNK_SIZE, countMigrated());
+
+        RenameMigration resumed = new RenameMigration(0);
+        resumed.run(listener);
+        assertTrue(resumed.isDone());
+        assertEquals(TASKS - RowMigration.CHUNK_SIZE, resumed.migrated);
+        assertEquals(TASKS - RowMigration.CHUNK_SIZE, lastTotal);
+
+        // no task was renamed twice
+        assertEquals(TASKS, countMigrated());
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID).where(
+                Task.TITLE.like("migrated migrated%")));
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countMigrated() {
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID).where(
+                Task.TITLE.like("migrated task%")));
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.widget;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Checks when a widget update is skipped because its rendering is current
+ */
+@SuppressWarnings("nls")
+public class WidgetRenderCacheTest extends AndroidTestCase {
+
+    private static final int WIDGET = 1001;
+    private static final int OTHER_WIDGET = 1002;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        WidgetRenderCache.invalidate(WIDGET);
+        WidgetRenderCache.invalidate(OTHER_WIDGET);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        WidgetRenderCache.invalidate(WIDGET);
+        WidgetRenderCache.invalidate(OTHER_WIDGET);
+        super.tearDown();
+    }
+
+    public void testNeverRenderedIsNotCurrent() {
+        assertFalse(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a"), colors(1)));
+    }
+
+    public void testSameRenderingIsCurrent() {
+        WidgetRenderCache.put(WIDGET, "key", titles("a", "b"), colors(1, 2));
+        // a new update builds new arrays with equal contents
+        assertTrue(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a", "b"), colors(1, 2)));
+    }
+
+    public void testChangedRowsAreNotCurrent() {
+        WidgetRenderCache.put(WIDGET, "key", titles("a", "b"), colors(1, 2));
+        assertFalse(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a", "c"), colors(1, 2)));
+        assertFalse(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a", "b"), colors(1, 3)));
+        assertFalse(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a"), colors(1)));
+        assertFalse(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a", "b", "c"), colors(1, 2, 3)));
+        assertFalse(WidgetRenderCache.isCurrent(WIDGET, "key", titles("b", "a"), colors(2, 1)));
+    }
+
+    public void testChangedKeyIsNotCurrent() {
+        WidgetRenderCache.put(WIDGET, "query|title|theme", titles("a"), colors(1));
+        assertFalse(WidgetRenderCache.isCurrent(WIDGET, "query|title|other theme", titles("a"), colors(1)));
+    }
+
+    public void testRenderingsAreKeptPerWidget() {
+        WidgetRenderCache.put(WIDGET, "key", titles("a"), colors(1));
+        assertFalse(WidgetRenderCache.isCurrent(OTHER_WIDGET, "key", titles("a"), colors(1)));
+
+        WidgetRenderCache.put(OTHER_WIDGET, "key", titles("b"), colors(1));
+        assertTrue(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a"), colors(1)));
+        assertTrue(WidgetRenderCache.isCurrent(OTHER_WIDGET, "key", titles("b"), colors(1)));
+    }
+
+    public void testInvalidatedIsNotCurrent() {
+        WidgetRenderCache.put(WIDGET, "key", titles("a"), colors(1));
+        WidgetRenderCache.invalidate(WIDGET);
+        assertFalse(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a"), colors(1)));
+
+        // rendering again makes it current
+        WidgetRenderCache.put(WIDGET, "key", titles("a"), colors(1));
+        assertTrue(WidgetRenderCache.isCurrent(WIDGET, "key", titles("a"), colors(1)));
+    }
+
+    public void testEmptyWidgetIsCurrent() {
+        WidgetRenderCache.put(WIDGET, "key", titles(), colors());
+        assertTrue(WidgetRenderCache.isCurrent(WIDGET, "key", titles(), colors()));
+    }
+
+    private static String[] titles(String... titles) {
+        return titles;
+    }
+
+    private static int[] colors(int... colors) {
+        return colors;
+    }
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package org.weloveastrid.rmilk.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.weloveastrid.rmilk.api.Invoker.ResponseParser;
+import org.weloveastrid.rmilk.api.data.RtmData;
+import org.weloveastrid.rmilk.api.data.RtmLists;
+import org.weloveastrid.rmilk.api.data.RtmTask;
+import org.weloveastrid.rmilk.api.data.RtmTaskList;
+import org.weloveastrid.rmilk.api.data.RtmTaskSeries;
+import org.weloveastrid.rmilk.api.data.RtmTasks;
+import org.weloveastrid.rmilk.api.data.RtmTimeline;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Parses recorded RTM responses the way {@link Invoker} reads them off the
+ * connection
+ */
+@SuppressWarnings("nls")
+public class InvokerTest extends AndroidTestCase {
+
+    private static final String TASKS =
+        "<?xml version='1.0' encoding='UTF-8'?>\n" +
+        "<rsp stat=\"ok\">\n" +
+        "  <transaction id=\"42\" undoable=\"0\"/>\n" +
+        "  <tasks rev=\"abc\">\n" +
+        "    <list id=\"100\">\n" +
+        "      <taskseries id=\"5\" created=\"2012-01-01T10:00:00Z\" modified=\"2012-01-02T10:00:00Z\"\n" +
+        "          name=\"Buy milk &amp; eggs\" source=\"api\" url=\"http://x\" location_id=\"7\">\n" +
+        "        <rrule every=\"1\">FREQ=DAILY;INTERVAL=1</rrule>\n" +
+        "        <tags><tag>errands</tag><tag>a&amp;b</tag></tags>\n" +
+        "        <participants><contact id=\"1\" fullname=\"Bob\"/></participants>\n" +
+        "        <notes>\n" +
+        "          <note id=\"9\" created=\"2012-01-01T10:00:00Z\" modified=\"2012-01-01T11:00:00Z\"\n" +
+        "              title=\"where\">first line\nsecond &lt;line&gt;</note>\n" +
+        "        </notes>\n" +
+        "        <task id=\"1\" due=\"\" has_due_time=\"0\" added=\"2012-01-01T10:00:00Z\"\n" +
+        "            completed=\"2012-01-01T11:00:00Z\" deleted=\"\" priority=\"N\" postponed=\"0\" estimate=\"\"/>\n" +
+        "        <task id=\"2\" due=\"2012-02-01T10:00:00Z\" has_due_time=\"1\" added=\"2012-01-02T10:00:00Z\"\n" +
+        "            completed=\"\" deleted=\"\" priority=\"1\" postponed=\"2\" estimate=\"1 hour\"/>\n" +
+        "      </taskseries>\n" +
+        "      <taskseries id=\"6\" created=\"2012-01-01T10:00:00Z\" modified=\"2012-01-01T10:00:00Z\"\n" +
+        "          name=\"Plain\" source=\"js\" url=\"\" location_id=\"\">\n" +
+        "        <tags/>\n" +
+        "        <notes/>\n" +
+        "        <task id=\"3\" due=\"\" has_due_time=\"0\" added=\"2012-01-01T10:00:00Z\"\n" +
+        "            completed=\"\" deleted=\"\" priority=\"2\" postponed=\"\" estimate=\"\"/>\n" +
+        "      </taskseries>\n" +
+        "    </list>\n" +
+        "    <list id=\"101\"/>\n" +
+        "  </tasks>\n" +
+        "</rsp>";
+
+    private static final String LISTS =
+        "<rsp stat=\"ok\"><lists>" +
+        "<list id=\"1\" name=\"Inbox\" deleted=\"0\" locked=\"1\" archived=\"0\" position=\"-1\" smart=\"0\"/>" +
+        "<list id=\"2\" name=\"Urgent\" deleted=\"0\" locked=\"0\" archived=\"0\" position=\"0\" smart=\"1\">" +
+        "<filter>(priority:1)</filter></list>" +
+        "<list id=\"3\" name=\"Old\" deleted=\"0\" locked=\"0\" archived=\"1\" position=\"0\" smart=\"0\"/>" +
+        "</lists></rsp>";
+
+    private static final String TIMELINE =
+        "<rsp stat=\"ok\">\n  <timeline>12741021</timeline>\n</rsp>";
+
+    private static final ResponseParser<RtmTasks> TASKS_PARSER = new ResponseParser<RtmTasks>() {
+        public RtmTasks parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+            return new RtmTasks(parser);
+        }
+    };
+
+    private static final ResponseParser<RtmLists> LISTS_PARSER = new ResponseParser<RtmLists>() {
+        public RtmLists parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+            return new RtmLists(parser);
+        }
+    };
+
+    private static final ResponseParser<RtmTimeline> TIMELINE_PARSER = new ResponseParser<RtmTimeline>() {
+        public RtmTimeline parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+            return new RtmTimeline(parser);
+        }
+    };
+
+    public void testTasks() throws Exception {
+        RtmTasks tasks = parse(TASKS, TASKS_PARSER);
+
+        assertEquals(2, tasks.getLists().size());
+        RtmTaskList list = tasks.getLists().get(0);
+        assertEquals("100", list.getId());
+        assertEquals(2, list.getSeries().size());
+        assertEquals(0, tasks.getLists().get(1).getSeries().size());
+
+        RtmTaskSeries series = list.getSeries().get(0);
+        assertSame(list, series.getList());
+        assertEquals("5", series.getId());
+        assertEquals("Buy milk & eggs", series.getName());
+        assertEquals("api", series.getSource());
+        assertEquals("http://x", series.getURL());
+        assertEquals("7", series.getLocationId());
+        assertEquals(RtmData.parseDate("2012-01-02T10:00:00Z"), series.getModified());
+        assertTrue(series.hasRecurrence());
+        assertEquals("[errands, a&b]", series.getTags().toString());
+        assertEquals(1, series.getNotes().getNotes().size());
+        assertEquals("where", series.getNotes().getNotes().get(0).getTitle());
+        assertEquals("first line\nsecond <line>", series.getNotes().getNotes().get(0).getText());
+
+        // repeating series: the open occurrence wins over the completed one
+        RtmTask task = series.getTask();
+        assertEquals("2", task.getId());
+        assertNull(task.getCompleted());
+        assertEquals(RtmData.parseDate("2012-02-01T10:00:00Z"), task.getDue());
+        assertTrue(task.getHasDueTime());
+        assertEquals(RtmTask.Priority.High, task.getPriority());
+        assertEquals(2, task.getPostponed());
+        assertEquals("1 hour", task.getEstimate());
+
+        RtmTaskSeries plain = list.getSeries().get(1);
+        assertFalse(plain.hasRecurrence());
+        assertNull(plain.getTags());
+        assertEquals(0, plain.getNotes().getNotes().size());
+        assertEquals("3", plain.getTask().getId());
+        assertNull(plain.getTask().getDue());
+        assertEquals(RtmTask.Priority.Medium, plain.getTask().getPriority());
+        assertEquals(0, plain.getTask().getPostponed());
+    }
+
+    public void testLists() throws Exception {
+        RtmLists lists = parse(LISTS, LISTS_PARSER);
+
+        assertEquals(3, lists.getLists().size());
+        assertTrue(lists.getList("1").isInbox());
+        assertEquals("Inbox", lists.getList("1").getName());
+        assertTrue(lists.getList("2").isSmart());
+        assertFalse(lists.getList("2").isInbox());
+        assertTrue(lists.getList("3").isArchived());
+        assertFalse(lists.getList("3").isSmart());
+    }
+
+    public void testTimeline() throws Exception {
+        assertEquals("12741021", parse(TIMELINE, TIMELINE_PARSER).getId());
+    }
+
+    public void testResponseWithoutParser() throws Exception {
+        assertNull(parse(TASKS, null));
+    }
+
+    public void testErrorResponse() throws Exception {
+        try {
+            parse("<rsp stat=\"fail\"><err code=\"98\" msg=\"Login failed / Invalid auth token\"/></rsp>",
+                    TIMELINE_PARSER);
+            fail("expected error");
+        } catch (ServiceException e) {
+            assertFalse(e instanceof ServiceInternalException);
+            assertEquals(98, e.getResponseCode());
+            assertEquals("Login failed / Invalid auth token", e.getResponseMessage());
+        }
+    }
+
+    public void testServiceUnavailableResponse() throws Exception {
+        try {
+            parse("<rsp stat=\"fail\">\n <err code=\"105\" msg=\"Service currently unavailable\"/>\n</rsp>",
+                    TIMELINE_PARSER);
+            fail("expected error");
+        } catch (ServiceException e) {
+            assertEquals(105, e.getResponseCode());
+        }
+    }
+
+    public void testFailureWithoutError() throws Exception {
+        assertInternalError("<rsp stat=\"fail\"></rsp>");
+    }
+
+    public void testResponseWithoutData() throws Exception {
+        assertInternalError("<rsp stat=\"ok\"><transaction id=\"1\"/></rsp>");
+    }
+
+    public void testUnexpectedRoot() throws Exception {
+        assertInternalError("<html><body>Bad gateway</body></html>");
+    }
+
+    public void testTruncatedResponse() throws Exception {
+        try {
+            parse(TASKS.substring(0, TASKS.indexOf("<notes/>")), TASKS_PARSER);
+            fail("expected parse error");
+        } catch (XmlPullParserException e) {
+            // expected
+        }
+    }
+
+    private void assertInternalError(String response) throws Exception {
+        try {
+            parse(response, TIMELINE_PARSER);
+            fail("expected error");
+        } catch (ServiceInternalException e) {
+            assertEquals(-1, e.getResponseCode());
+        }
+    }
+
+    private static <T> T parse(String response, ResponseParser<T> parser) throws Exception {
+        return Invoker.parseResponse(new ByteArrayInputStream(response.getBytes("UTF-8")), parser);
+    }
+}
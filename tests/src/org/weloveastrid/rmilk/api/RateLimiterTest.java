@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package org.weloveastrid.rmilk.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Checks the token bucket on a clock that only moves when it sleeps
+ */
+public class RateLimiterTest extends AndroidTestCase {
+
+    private FakeRateLimiter limiter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        limiter = new FakeRateLimiter(2, 100);
+    }
+
+    public void testBurstThenInterval() throws Exception {
+        limiter.acquire();
+        limiter.acquire();
+        limiter.acquire();
+        limiter.acquire();
+        assertEquals("[100, 100]", limiter.sleeps.toString());
+    }
+
+    public void testIdleRefillsBucket() throws Exception {
+        limiter.acquire();
+        limiter.acquire();
+        limiter.time += 200;
+        limiter.acquire();
+        limiter.acquire();
+        assertEquals(0, limiter.sleeps.size());
+    }
+
+    public void testBackOffDelaysNextCall() throws Exception {
+        limiter.backOff(500);
+        limiter.acquire();
+        assertEquals("[500]", limiter.sleeps.toString());
+    }
+
+    public void testInterruptedAcquireReturnsToken() throws Exception {
+        limiter.acquire();
+        limiter.acquire();
+
+        limiter.interrupt = true;
+        try {
+            limiter.acquire();
+            fail("expected interrupt");
+        } catch (InterruptedException e) {
+            // expected
+        }
+
+        // the next caller waits as if the interrupted call never happened
+        limiter.interrupt = false;
+        limiter.acquire();
+        assertEquals("[100]", limiter.sleeps.toString());
+    }
+
+    private static class FakeRateLimiter extends RateLimiter {
+        final List<Long> sleeps = new ArrayList<Long>();
+        long time = 1000;
+        boolean interrupt = false;
+
+        public FakeRateLimiter(int capacity, long interval) {
+            super(capacity, interval);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+
+        @Override
+        protected void sleep(long millis) throws InterruptedException {
+            if (interrupt)
+                throw new InterruptedException();
+            sleeps.add(millis);
+            time += millis;
+        }
+    }
+}